@@ -17,25 +17,34 @@
 
 package net.pterodactylus.sone.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.pterodactylus.sone.core.EntityRepository.EntityFactory;
 import net.pterodactylus.sone.core.Options.DefaultOption;
 import net.pterodactylus.sone.core.Options.Option;
 import net.pterodactylus.sone.core.Options.OptionWatcher;
+import net.pterodactylus.sone.core.SortedIndex.KeyExtractor;
 import net.pterodactylus.sone.data.Album;
 import net.pterodactylus.sone.data.Client;
+import net.pterodactylus.sone.data.Id;
 import net.pterodactylus.sone.data.Image;
 import net.pterodactylus.sone.data.Post;
 import net.pterodactylus.sone.data.PostReply;
@@ -43,6 +52,7 @@ import net.pterodactylus.sone.data.Profile;
 import net.pterodactylus.sone.data.Profile.Field;
 import net.pterodactylus.sone.data.Reply;
 import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.sone.data.Sone.Section;
 import net.pterodactylus.sone.data.Sone.ShowCustomAvatars;
 import net.pterodactylus.sone.data.Sone.SoneStatus;
 import net.pterodactylus.sone.data.TemporaryImage;
@@ -54,6 +64,8 @@ import net.pterodactylus.sone.freenet.wot.IdentityListener;
 import net.pterodactylus.sone.freenet.wot.IdentityManager;
 import net.pterodactylus.sone.freenet.wot.OwnIdentity;
 import net.pterodactylus.sone.main.SonePlugin;
+import net.pterodactylus.sone.notify.ListNotificationFilters;
+import net.pterodactylus.util.collection.filter.Filter;
 import net.pterodactylus.util.config.Configuration;
 import net.pterodactylus.util.config.ConfigurationException;
 import net.pterodactylus.util.logging.Logging;
@@ -77,6 +89,18 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	/** The logger. */
 	private static final Logger logger = Logging.getLogger(Core.class);
 
+	/** The number of days after which known elements that do not exist anymore are forgotten. */
+	private static final int KNOWN_ELEMENT_EXPIRATION = 180;
+
+	/** Factory for new Sones. */
+	private static final EntityFactory<Sone> SONE_FACTORY = new EntityFactory<Sone>() {
+
+		@Override
+		public Sone newEntity(String id) {
+			return new Sone(id);
+		}
+	};
+
 	/** The start time. */
 	private final long startupTime = System.currentTimeMillis();
 
@@ -101,14 +125,23 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	/** Interface to freenet. */
 	private final FreenetInterface freenetInterface;
 
+	/** The cache of remote Sones. */
+	private final SoneCache soneCache;
+
+	/** The executor that reads remote Sones from the cache. */
+	private final ExecutorService soneCacheReader = Executors.newSingleThreadExecutor();
+
 	/** The Sone downloader. */
 	private final SoneDownloader soneDownloader;
 
 	/** The image inserter. */
 	private final ImageInserter imageInserter;
 
-	/** Sone downloader thread-pool. */
-	private final ExecutorService soneDownloaders = Executors.newFixedThreadPool(10);
+	/** The scheduler for modification checks and insert timers of all Sones. */
+	private final ScheduledExecutorService soneInsertScheduler = Executors.newSingleThreadScheduledExecutor();
+
+	/** The executor for the inserts of all Sones. */
+	private final ExecutorService soneInsertExecutor = Executors.newSingleThreadExecutor();
 
 	/** The update checker. */
 	private final UpdateChecker updateChecker;
@@ -127,35 +160,75 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	private final Set<Sone> lockedSones = new HashSet<Sone>();
 
 	/** Sone inserters. */
-	/* synchronize access on this on localSones. */
-	private final Map<Sone, SoneInserter> soneInserters = new HashMap<Sone, SoneInserter>();
+	/* synchronize compound operations on this on localSones. */
+	private final Map<Sone, SoneInserter> soneInserters = new ConcurrentHashMap<Sone, SoneInserter>();
 
 	/** Sone rescuers. */
 	/* synchronize access on this on localSones. */
 	private final Map<Sone, SoneRescuer> soneRescuers = new HashMap<Sone, SoneRescuer>();
 
 	/** All local Sones. */
-	/* synchronize access on this on itself. */
-	private final Map<String, Sone> localSones = new HashMap<String, Sone>();
+	/* synchronize compound operations on this on itself. */
+	private final EntityRepository<Sone> localSones = new EntityRepository<Sone>(SONE_FACTORY);
 
 	/** All remote Sones. */
-	/* synchronize access on this on itself. */
-	private final Map<String, Sone> remoteSones = new HashMap<String, Sone>();
+	/* synchronize compound operations on this on itself. */
+	private final EntityRepository<Sone> remoteSones = new EntityRepository<Sone>(SONE_FACTORY);
 
 	/** All known Sones. */
-	private final Set<String> knownSones = new HashSet<String>();
+	private final KnownElements knownSones = new KnownElements(new File("sone-known-sones.log"));
 
 	/** All posts. */
-	private final Map<String, Post> posts = new HashMap<String, Post>();
+	private final EntityRepository<Post> posts = new EntityRepository<Post>(new EntityFactory<Post>() {
+
+		@Override
+		public Post newEntity(String id) {
+			return new PostImpl(id);
+		}
+	});
+
+	/** All posts that have a recipient, indexed by the ID of the recipient. */
+	private final SortedIndex<Post> directedPosts = new SortedIndex<Post>(new KeyExtractor<Post>() {
+
+		@Override
+		public String getKey(Post post) {
+			return (post.getRecipient() != null) ? post.getRecipient().getId() : null;
+		}
+	}, Post.TIME_COMPARATOR);
 
 	/** All known posts. */
-	private final Set<String> knownPosts = new HashSet<String>();
+	private final KnownElements knownPosts = new KnownElements(new File("sone-known-posts.log"));
 
 	/** All replies. */
-	private final Map<String, PostReply> replies = new HashMap<String, PostReply>();
+	private final EntityRepository<PostReply> replies = new EntityRepository<PostReply>(new EntityFactory<PostReply>() {
+
+		@Override
+		public PostReply newEntity(String id) {
+			return new PostReply(id);
+		}
+	});
+
+	/** All replies, indexed by the ID of the post they belong to. */
+	private final SortedIndex<PostReply> postReplies = new SortedIndex<PostReply>(new KeyExtractor<PostReply>() {
+
+		@Override
+		public String getKey(PostReply reply) {
+			return (reply.getPost() != null) ? reply.getPost().getId() : null;
+		}
+	}, Reply.TIME_COMPARATOR);
 
 	/** All known replies. */
-	private final Set<String> knownReplies = new HashSet<String>();
+	private final KnownElements knownReplies = new KnownElements(new File("sone-known-replies.log"));
+
+	/** The Sones liking a post, indexed by post ID. */
+	private final LikeIndex postLikes = new LikeIndex();
+
+	/** The Sones liking a reply, indexed by reply ID. */
+	private final LikeIndex replyLikes = new LikeIndex();
+
+	/** The timelines of the local Sones, indexed by the ID of the Sone. */
+	/* synchronize modifications on this on itself. */
+	private final Map<String, Timeline> timelines = new ConcurrentHashMap<String, Timeline>();
 
 	/** All bookmarked posts. */
 	/* synchronize access on itself. */
@@ -165,10 +238,22 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	private final Map<OwnIdentity, Set<Identity>> trustedIdentities = Collections.synchronizedMap(new HashMap<OwnIdentity, Set<Identity>>());
 
 	/** All known albums. */
-	private final Map<String, Album> albums = new HashMap<String, Album>();
+	private final EntityRepository<Album> albums = new EntityRepository<Album>(new EntityFactory<Album>() {
+
+		@Override
+		public Album newEntity(String id) {
+			return new Album(id);
+		}
+	});
 
 	/** All known images. */
-	private final Map<String, Image> images = new HashMap<String, Image>();
+	private final EntityRepository<Image> images = new EntityRepository<Image>(new EntityFactory<Image>() {
+
+		@Override
+		public Image newEntity(String id) {
+			return new Image(id);
+		}
+	});
 
 	/** All temporary images. */
 	private final Map<String, TemporaryImage> temporaryImages = new HashMap<String, TemporaryImage>();
@@ -196,7 +281,8 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		this.configuration = configuration;
 		this.freenetInterface = freenetInterface;
 		this.identityManager = identityManager;
-		this.soneDownloader = new SoneDownloader(this, freenetInterface);
+		this.soneCache = new SoneCache(new File("sone-cache"), new SoneParser(preferences));
+		this.soneDownloader = new SoneDownloader(this, freenetInterface, soneCache);
 		this.imageInserter = new ImageInserter(this, freenetInterface);
 		this.updateChecker = new UpdateChecker(freenetInterface);
 		this.webOfTrustUpdater = webOfTrustUpdater;
@@ -387,9 +473,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * @return {@code true} if the given Sone is local, {@code false} otherwise
 	 */
 	public boolean isLocalSone(Sone sone) {
-		synchronized (localSones) {
-			return localSones.containsKey(sone.getId());
-		}
+		return localSones.contains(sone.getId());
 	}
 
 	/**
@@ -401,9 +485,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 *         otherwise
 	 */
 	public boolean isLocalSone(String id) {
-		synchronized (localSones) {
-			return localSones.containsKey(id);
-		}
+		return localSones.contains(id);
 	}
 
 	/**
@@ -412,9 +494,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * @return All local Sones
 	 */
 	public Set<Sone> getLocalSones() {
-		synchronized (localSones) {
-			return new HashSet<Sone>(localSones.values());
-		}
+		return localSones.getAll();
 	}
 
 	/**
@@ -439,14 +519,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * @return The Sone with the given ID, or {@code null}
 	 */
 	public Sone getLocalSone(String id, boolean create) {
-		synchronized (localSones) {
-			Sone sone = localSones.get(id);
-			if ((sone == null) && create) {
-				sone = new Sone(id);
-				localSones.put(id, sone);
-			}
-			return sone;
-		}
+		return localSones.get(id, create);
 	}
 
 	/**
@@ -455,9 +528,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * @return All remote Sones
 	 */
 	public Set<Sone> getRemoteSones() {
-		synchronized (remoteSones) {
-			return new HashSet<Sone>(remoteSones.values());
-		}
+		return remoteSones.getAll();
 	}
 
 	/**
@@ -471,14 +542,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * @return The Sone with the given ID
 	 */
 	public Sone getRemoteSone(String id, boolean create) {
-		synchronized (remoteSones) {
-			Sone sone = remoteSones.get(id);
-			if ((sone == null) && create && (id != null) && (id.length() == 43)) {
-				sone = new Sone(id);
-				remoteSones.put(id, sone);
-			}
-			return sone;
-		}
+		return remoteSones.get(id, create && (id != null) && (id.length() == 43));
 	}
 
 	/**
@@ -490,9 +554,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 *         otherwise
 	 */
 	public boolean isRemoteSone(Sone sone) {
-		synchronized (remoteSones) {
-			return remoteSones.containsKey(sone.getId());
-		}
+		return remoteSones.contains(sone.getId());
 	}
 
 	/**
@@ -504,9 +566,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 *         {@code false} otherwise
 	 */
 	public boolean isRemoteSone(String id) {
-		synchronized (remoteSones) {
-			return remoteSones.containsKey(id);
-		}
+		return remoteSones.contains(id);
 	}
 
 	/**
@@ -521,6 +581,32 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		return (soneInserters.containsKey(sone)) ? soneInserters.get(sone).isModified() : false;
 	}
 
+	/**
+	 * Returns the delay the inserter of the given Sone would wait before
+	 * inserting the Sone if it was modified now.
+	 *
+	 * @param sone
+	 *            The Sone to get the insertion delay for
+	 * @return The insertion delay of the Sone (in seconds), or {@code -1} if
+	 *         the Sone is not a local Sone
+	 */
+	public int getInsertionDelay(Sone sone) {
+		SoneInserter soneInserter = soneInserters.get(sone);
+		return (soneInserter != null) ? soneInserter.getInsertionDelay() : -1;
+	}
+
+	/**
+	 * Returns the download health of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to get the download health for
+	 * @return The download health of the Sone, or {@code null} if the Sone
+	 *         has not been downloaded yet
+	 */
+	public FetchHealth getFetchHealth(Sone sone) {
+		return soneDownloader.getFetchHealth(sone);
+	}
+
 	/**
 	 * Returns the time when the given was first followed by any local Sone.
 	 *
@@ -575,35 +661,65 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 */
 	@Override
 	public Post getPost(String postId, boolean create) {
-		synchronized (posts) {
-			Post post = posts.get(postId);
-			if ((post == null) && create) {
-				post = new PostImpl(postId);
-				posts.put(postId, post);
-			}
-			return post;
-		}
+		return posts.get(postId, create);
 	}
 
 	/**
-	 * Returns all posts that have the given Sone as recipient.
+	 * Returns all posts that have the given Sone as recipient, sorted by
+	 * time, newest first. The returned list can not be modified.
 	 *
 	 * @see Post#getRecipient()
 	 * @param recipient
 	 *            The recipient of the posts
 	 * @return All posts that have the given Sone as recipient
 	 */
-	public Set<Post> getDirectedPosts(Sone recipient) {
+	public List<Post> getDirectedPosts(Sone recipient) {
 		Validation.begin().isNotNull("Recipient", recipient).check();
-		Set<Post> directedPosts = new HashSet<Post>();
-		synchronized (posts) {
-			for (Post post : posts.values()) {
-				if (recipient.equals(post.getRecipient())) {
-					directedPosts.add(post);
+		return directedPosts.get(recipient.getId());
+	}
+
+	/**
+	 * Returns the timeline of the given local Sone. The timeline is created
+	 * on first access and kept current afterwards.
+	 *
+	 * @param sone
+	 *            The local Sone to get the timeline for
+	 * @return The timeline of the Sone, or {@code null} if the given Sone is
+	 *         not a local Sone
+	 */
+	public Timeline getTimeline(final Sone sone) {
+		Validation.begin().isNotNull("Sone", sone).check();
+		Timeline timeline = timelines.get(sone.getId());
+		if (timeline != null) {
+			return timeline;
+		}
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, String.format("Tried to get timeline of non-local Sone: %s", sone));
+			return null;
+		}
+		synchronized (timelines) {
+			timeline = timelines.get(sone.getId());
+			if (timeline == null) {
+				timeline = new Timeline(sone, new Filter<Post>() {
+
+					@Override
+					public boolean filterObject(Post post) {
+						return ListNotificationFilters.isPostVisible(sone, post);
+					}
+				});
+				Set<Post> timelinePosts = new HashSet<Post>(sone.getPosts());
+				for (String friendSoneId : sone.getFriends()) {
+					Sone friendSone = getSone(friendSoneId, false);
+					if (friendSone != null) {
+						timelinePosts.addAll(friendSone.getPosts());
+					}
 				}
+				timelinePosts.addAll(getDirectedPosts(sone));
+				timeline.setPosts(timelinePosts);
+				timelines.put(sone.getId(), timeline);
 			}
+			return timeline;
 		}
-		return directedPosts;
 	}
 
 	/**
@@ -631,69 +747,65 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * @return The reply, or {@code null} if there is no such reply
 	 */
 	public PostReply getReply(String replyId, boolean create) {
-		synchronized (replies) {
-			PostReply reply = replies.get(replyId);
-			if (create && (reply == null)) {
-				reply = new PostReply(replyId);
-				replies.put(replyId, reply);
-			}
-			return reply;
-		}
+		return replies.get(replyId, create);
 	}
 
 	/**
-	 * Returns all replies for the given post, order ascending by time.
+	 * Returns all replies for the given post, order ascending by time. The
+	 * returned list can not be modified.
 	 *
 	 * @param post
 	 *            The post to get all replies for
 	 * @return All replies for the given post
 	 */
 	public List<PostReply> getReplies(Post post) {
-		Set<Sone> sones = getSones();
-		List<PostReply> replies = new ArrayList<PostReply>();
-		for (Sone sone : sones) {
-			for (PostReply reply : sone.getReplies()) {
-				if (reply.getPost().equals(post)) {
-					replies.add(reply);
-				}
-			}
-		}
-		Collections.sort(replies, Reply.TIME_COMPARATOR);
-		return replies;
+		return postReplies.get(post.getId());
 	}
 
 	/**
-	 * Returns all Sones that have liked the given post.
+	 * Returns all Sones that have liked the given post. The returned set is an
+	 * unmodifiable, live view.
 	 *
 	 * @param post
 	 *            The post to get the liking Sones for
 	 * @return The Sones that like the given post
 	 */
 	public Set<Sone> getLikes(Post post) {
-		Set<Sone> sones = new HashSet<Sone>();
-		for (Sone sone : getSones()) {
-			if (sone.getLikedPostIds().contains(post.getId())) {
-				sones.add(sone);
-			}
-		}
-		return sones;
+		return postLikes.getLikes(post.getId());
 	}
 
 	/**
-	 * Returns all Sones that have liked the given reply.
+	 * Returns the number of Sones that have liked the given post.
+	 *
+	 * @param post
+	 *            The post to count the likes for
+	 * @return The number of Sones that like the given post
+	 */
+	public int getLikeCount(Post post) {
+		return postLikes.getLikeCount(post.getId());
+	}
+
+	/**
+	 * Returns all Sones that have liked the given reply. The returned set is
+	 * an unmodifiable, live view.
 	 *
 	 * @param reply
 	 *            The reply to get the liking Sones for
 	 * @return The Sones that like the given reply
 	 */
 	public Set<Sone> getLikes(PostReply reply) {
-		Set<Sone> sones = new HashSet<Sone>();
-		for (Sone sone : getSones()) {
-			if (sone.getLikedReplyIds().contains(reply.getId())) {
-				sones.add(sone);
-			}
-		}
-		return sones;
+		return replyLikes.getLikes(reply.getId());
+	}
+
+	/**
+	 * Returns the number of Sones that have liked the given reply.
+	 *
+	 * @param reply
+	 *            The reply to count the likes for
+	 * @return The number of Sones that like the given reply
+	 */
+	public int getLikeCount(PostReply reply) {
+		return replyLikes.getLikeCount(reply.getId());
 	}
 
 	/**
@@ -765,14 +877,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 *         given ID exists and {@code create} is {@code false}
 	 */
 	public Album getAlbum(String albumId, boolean create) {
-		synchronized (albums) {
-			Album album = albums.get(albumId);
-			if (create && (album == null)) {
-				album = new Album(albumId);
-				albums.put(albumId, album);
-			}
-			return album;
-		}
+		return albums.get(albumId, create);
 	}
 
 	/**
@@ -799,14 +904,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 *         none was created
 	 */
 	public Image getImage(String imageId, boolean create) {
-		synchronized (images) {
-			Image image = images.get(imageId);
-			if (create && (image == null)) {
-				image = new Image(imageId);
-				images.put(imageId, image);
-			}
-			return image;
-		}
+		return images.get(imageId, create);
 	}
 
 	/**
@@ -841,6 +939,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				coreListenerManager.fireSoneLocked(sone);
 			}
 		}
+		soneChanged(sone);
 	}
 
 	/**
@@ -856,6 +955,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				coreListenerManager.fireSoneUnlocked(sone);
 			}
 		}
+		soneChanged(sone);
 	}
 
 	/**
@@ -883,12 +983,13 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			sone.setKnown(true);
 			/* TODO - load posts ’n stuff */
 			localSones.put(ownIdentity.getId(), sone);
-			final SoneInserter soneInserter = new SoneInserter(this, freenetInterface, sone);
+			final SoneInserter soneInserter = new SoneInserter(this, freenetInterface, sone, soneInsertScheduler, soneInsertExecutor);
 			soneInserter.addSoneInsertListener(this);
 			soneInserters.put(sone, soneInserter);
 			sone.setStatus(SoneStatus.idle);
 			loadSone(sone);
 			soneInserter.start();
+			soneDownloader.updateSubscriptions();
 			return sone;
 		}
 	}
@@ -906,12 +1007,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			return null;
 		}
 		Sone sone = addLocalSone(ownIdentity);
-		sone.getOptions().addBooleanOption("AutoFollow", new DefaultOption<Boolean>(false));
-		sone.getOptions().addBooleanOption("EnableSoneInsertNotifications", new DefaultOption<Boolean>(false));
-		sone.getOptions().addBooleanOption("ShowNotification/NewSones", new DefaultOption<Boolean>(true));
-		sone.getOptions().addBooleanOption("ShowNotification/NewPosts", new DefaultOption<Boolean>(true));
-		sone.getOptions().addBooleanOption("ShowNotification/NewReplies", new DefaultOption<Boolean>(true));
-		sone.getOptions().addEnumOption("ShowCustomAvatars", new DefaultOption<ShowCustomAvatars>(ShowCustomAvatars.NEVER));
+		initializeSoneOptions(sone);
 
 		followSone(sone, getSone("nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI"));
 		touchConfiguration();
@@ -936,9 +1032,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			sone.setRequestUri(getSoneUri(identity.getRequestUri()));
 			sone.setLatestEdition(Numbers.safeParseLong(identity.getProperty("Sone.LatestEdition"), (long) 0));
 			if (newSone) {
-				synchronized (knownSones) {
-					newSone = !knownSones.contains(sone.getId());
-				}
+				newSone = !knownSones.contains(Id.valueOf(sone.getId()));
 				sone.setKnown(!newSone);
 				if (newSone) {
 					coreListenerManager.fireNewSoneFound(sone);
@@ -949,16 +1043,11 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 					}
 				}
 			}
+			if ((sone.getTime() == 0) && soneCache.contains(sone.getId())) {
+				loadCachedSone(sone);
+			}
 			soneDownloader.addSone(sone);
-			soneDownloaders.execute(new Runnable() {
-
-				@Override
-				@SuppressWarnings("synthetic-access")
-				public void run() {
-					soneDownloader.fetchSone(sone, sone.getRequestUri());
-				}
-
-			});
+			soneDownloader.scheduleFetch(sone, sone.getRequestUri());
 			return sone;
 		}
 	}
@@ -995,6 +1084,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	public void followSone(Sone sone, Sone followedSone) {
 		Validation.begin().isNotNull("Sone", sone).isNotNull("Followed Sone", followedSone).check();
 		sone.addFriend(followedSone.getId());
+		updateTimeline(sone, Collections.<Post> emptyList(), followedSone.getPosts());
 		synchronized (soneFollowingTimes) {
 			if (!soneFollowingTimes.containsKey(followedSone)) {
 				long now = System.currentTimeMillis();
@@ -1011,6 +1101,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				}
 			}
 		}
+		soneDownloader.updateSubscription(followedSone);
 		touchConfiguration();
 	}
 
@@ -1040,6 +1131,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	public void unfollowSone(Sone sone, Sone unfollowedSone) {
 		Validation.begin().isNotNull("Sone", sone).isNotNull("Unfollowed Sone", unfollowedSone).check();
 		sone.removeFriend(unfollowedSone.getId());
+		updateTimeline(sone, unfollowedSone.getPosts(), unfollowedSone.getPosts());
 		boolean unfollowedSoneStillFollowed = false;
 		for (Sone localSone : getLocalSones()) {
 			unfollowedSoneStillFollowed |= localSone.hasFriend(unfollowedSone.getId());
@@ -1049,6 +1141,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				soneFollowingTimes.remove(unfollowedSone);
 			}
 		}
+		soneDownloader.updateSubscription(unfollowedSone);
 		touchConfiguration();
 	}
 
@@ -1065,6 +1158,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	public void setTrust(Sone origin, Sone target, int trustValue) {
 		Validation.begin().isNotNull("Trust Origin", origin).check().isInstanceOf("Trust Origin", origin.getIdentity(), OwnIdentity.class).isNotNull("Trust Target", target).isLessOrEqual("Trust Value", trustValue, 100).isGreaterOrEqual("Trust Value", trustValue, -100).check();
 		webOfTrustUpdater.setTrust((OwnIdentity) origin.getIdentity(), target.getIdentity(), trustValue, preferences.getTrustComment());
+		invalidateTimeline(origin);
 	}
 
 	/**
@@ -1078,6 +1172,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	public void removeTrust(Sone origin, Sone target) {
 		Validation.begin().isNotNull("Trust Origin", origin).isNotNull("Trust Target", target).check().isInstanceOf("Trust Origin Identity", origin.getIdentity(), OwnIdentity.class).check();
 		webOfTrustUpdater.setTrust((OwnIdentity) origin.getIdentity(), target.getIdentity(), null, null);
+		invalidateTimeline(origin);
 	}
 
 	/**
@@ -1130,6 +1225,14 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * Updates the stored Sone with the given Sone. If {@code soneRescueMode} is
 	 * {@code true}, an older Sone than the current Sone can be given to restore
 	 * an old state.
+	 * <p>
+	 * Only the posts, replies, albums, and images that have been added or
+	 * removed are changed in the core; elements that the stored Sone and the
+	 * given Sone have in common are left alone. The elements of the given Sone
+	 * are expected to be detached from the core, as created by
+	 * {@link SoneParser}; new elements are registered here, and the recipients
+	 * of posts and the posts of replies are resolved here. Events are fired
+	 * after the stored Sone has been updated.
 	 *
 	 * @param sone
 	 *            The Sone to update
@@ -1140,107 +1243,225 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	public void updateSone(Sone sone, boolean soneRescueMode) {
 		if (hasSone(sone.getId())) {
 			Sone storedSone = getSone(sone.getId());
-			if (!soneRescueMode && !(sone.getTime() > storedSone.getTime())) {
-				logger.log(Level.FINE, String.format("Downloaded Sone %s is not newer than stored Sone %s.", sone, storedSone));
-				return;
-			}
-			synchronized (posts) {
+			List<Post> removedPosts = new ArrayList<Post>();
+			List<Post> newPosts = new ArrayList<Post>();
+			List<PostReply> removedReplies = new ArrayList<PostReply>();
+			List<PostReply> newReplies = new ArrayList<PostReply>();
+
+			/*
+			 * the stored Sone is locked from the age check until all changes
+			 * have been applied, so that an older state, e.g. from the Sone
+			 * cache, can not overwrite a newer state that is applied at the
+			 * same time.
+			 */
+			synchronized (storedSone) {
+				if (!soneRescueMode && !(sone.getTime() > storedSone.getTime())) {
+					logger.log(Level.FINE, String.format("Downloaded Sone %s is not newer than stored Sone %s.", sone, storedSone));
+					return;
+				}
+
+				/* calculate the changes. */
+				Map<String, Post> storedPosts = new HashMap<String, Post>();
+				for (Post post : storedSone.getPosts()) {
+					storedPosts.put(post.getId(), post);
+				}
+				Set<String> parsedPostIds = new HashSet<String>();
+				for (Post post : sone.getPosts()) {
+					parsedPostIds.add(post.getId());
+				}
 				if (!soneRescueMode) {
-					for (Post post : storedSone.getPosts()) {
-						posts.remove(post.getId());
-						if (!sone.getPosts().contains(post)) {
-							coreListenerManager.firePostRemoved(post);
+					for (Post post : storedPosts.values()) {
+						if (!parsedPostIds.contains(post.getId())) {
+							removedPosts.add(post);
 						}
 					}
 				}
-				List<Post> storedPosts = storedSone.getPosts();
-				synchronized (knownPosts) {
-					for (Post post : sone.getPosts()) {
-						post.setSone(storedSone).setKnown(knownPosts.contains(post.getId()));
-						if (!storedPosts.contains(post)) {
-							if (post.getTime() < getSoneFollowingTime(sone)) {
-								knownPosts.add(post.getId());
-							} else if (!knownPosts.contains(post.getId())) {
-								sone.setKnown(false);
-								coreListenerManager.fireNewPostFound(post);
-							}
-						}
-						posts.put(post.getId(), post);
+				List<Post> currentPosts = new ArrayList<Post>();
+				List<Post> addedPosts = new ArrayList<Post>();
+				for (Post post : sone.getPosts()) {
+					Post storedPost = storedPosts.get(post.getId());
+					if (storedPost != null) {
+						currentPosts.add(storedPost);
+					} else {
+						addedPosts.add(post);
 					}
 				}
-			}
-			synchronized (replies) {
+				Map<String, PostReply> storedReplies = new HashMap<String, PostReply>();
+				for (PostReply reply : storedSone.getReplies()) {
+					storedReplies.put(reply.getId(), reply);
+				}
+				Set<String> parsedReplyIds = new HashSet<String>();
+				for (PostReply reply : sone.getReplies()) {
+					parsedReplyIds.add(reply.getId());
+				}
 				if (!soneRescueMode) {
-					for (PostReply reply : storedSone.getReplies()) {
-						replies.remove(reply.getId());
-						if (!sone.getReplies().contains(reply)) {
-							coreListenerManager.fireReplyRemoved(reply);
+					for (PostReply reply : storedReplies.values()) {
+						if (!parsedReplyIds.contains(reply.getId())) {
+							removedReplies.add(reply);
 						}
 					}
 				}
-				Set<PostReply> storedReplies = storedSone.getReplies();
-				synchronized (knownReplies) {
-					for (PostReply reply : sone.getReplies()) {
-						reply.setSone(storedSone).setKnown(knownReplies.contains(reply.getId()));
-						if (!storedReplies.contains(reply)) {
-							if (reply.getTime() < getSoneFollowingTime(sone)) {
-								knownReplies.add(reply.getId());
-							} else if (!knownReplies.contains(reply.getId())) {
-								reply.setKnown(false);
-								coreListenerManager.fireNewReplyFound(reply);
-							}
-						}
-						replies.put(reply.getId(), reply);
+				List<PostReply> currentReplies = new ArrayList<PostReply>();
+				List<PostReply> addedReplies = new ArrayList<PostReply>();
+				for (PostReply reply : sone.getReplies()) {
+					PostReply storedReply = storedReplies.get(reply.getId());
+					if (storedReply != null) {
+						currentReplies.add(storedReply);
+					} else {
+						addedReplies.add(reply);
 					}
 				}
-			}
-			synchronized (albums) {
-				synchronized (images) {
-					for (Album album : storedSone.getAlbums()) {
-						albums.remove(album.getId());
-						for (Image image : album.getImages()) {
-							images.remove(image.getId());
+
+				/*
+				 * the repositories are concurrent, no need to lock them. posts
+				 * that only exist as placeholders for replies of other Sones are
+				 * filled instead of being replaced.
+				 */
+				long soneFollowingTime = getSoneFollowingTime(sone);
+				for (Post post : removedPosts) {
+					posts.remove(post.getId());
+					directedPosts.remove(post);
+				}
+				for (ListIterator<Post> addedPostIterator = addedPosts.listIterator(); addedPostIterator.hasNext();) {
+					Post parsedPost = addedPostIterator.next();
+					Sone recipient = (parsedPost.getRecipient() != null) ? getSone(parsedPost.getRecipient().getId()) : null;
+					Post post = posts.putIfAbsent(parsedPost.getId(), parsedPost.setSone(storedSone).setRecipient(recipient));
+					if (post != parsedPost) {
+						post.setSone(storedSone).setRecipient(recipient).setTime(parsedPost.getTime()).setText(parsedPost.getText());
+						addedPostIterator.set(post);
+					}
+					Id postId = Id.valueOf(post.getId());
+					post.setKnown(knownPosts.contains(postId));
+					if (post.getTime() < soneFollowingTime) {
+						knownPosts.add(postId);
+					} else if (!knownPosts.contains(postId)) {
+						sone.setKnown(false);
+						newPosts.add(post);
+					}
+					directedPosts.add(post);
+					currentPosts.add(post);
+				}
+				updateTimelines(removedPosts, addedPosts);
+				for (PostReply reply : removedReplies) {
+					replies.remove(reply.getId());
+					postReplies.remove(reply);
+				}
+				for (ListIterator<PostReply> addedReplyIterator = addedReplies.listIterator(); addedReplyIterator.hasNext();) {
+					PostReply parsedReply = addedReplyIterator.next();
+					Post post = getPost(parsedReply.getPost().getId());
+					PostReply reply = replies.putIfAbsent(parsedReply.getId(), parsedReply.setSone(storedSone).setPost(post));
+					if (reply != parsedReply) {
+						reply.setSone(storedSone).setPost(post).setTime(parsedReply.getTime()).setText(parsedReply.getText());
+						addedReplyIterator.set(reply);
+					}
+					Id replyId = Id.valueOf(reply.getId());
+					reply.setKnown(knownReplies.contains(replyId));
+					if (reply.getTime() < soneFollowingTime) {
+						knownReplies.add(replyId);
+					} else if (!knownReplies.contains(replyId)) {
+						reply.setKnown(false);
+						newReplies.add(reply);
+					}
+					postReplies.add(reply);
+					currentReplies.add(reply);
+				}
+
+				/*
+				 * the parsed albums and images replace the stored ones; in rescue
+				 * mode only albums that are not yet stored are added.
+				 */
+				List<Album> addedAlbums = new ArrayList<Album>();
+				if (!soneRescueMode) {
+					List<Album> currentAlbums = sone.getAllAlbums();
+					List<Image> currentImages = sone.getAllImages();
+					Set<Album> currentAlbumSet = new HashSet<Album>(currentAlbums);
+					for (Album album : storedSone.getAllAlbums()) {
+						if (!currentAlbumSet.contains(album)) {
+							albums.remove(album.getId(), album);
 						}
 					}
-					for (Album album : sone.getAlbums()) {
+					Set<Image> currentImageSet = new HashSet<Image>(currentImages);
+					for (Image image : storedSone.getAllImages()) {
+						if (!currentImageSet.contains(image)) {
+							images.remove(image.getId(), image);
+						}
+					}
+					for (Album album : currentAlbums) {
 						albums.put(album.getId(), album);
-						for (Image image : album.getImages()) {
-							images.put(image.getId(), image);
+					}
+					for (Image image : currentImages) {
+						images.put(image.getId(), image);
+					}
+				} else {
+					Set<Album> storedAlbums = new HashSet<Album>(storedSone.getAllAlbums());
+					for (Album album : sone.getAlbums()) {
+						if (storedAlbums.contains(album)) {
+							continue;
+						}
+						addedAlbums.add(album);
+						List<Album> addedAlbumTree = new ArrayList<Album>(Collections.singleton(album));
+						for (int albumIndex = 0; albumIndex < addedAlbumTree.size(); ++albumIndex) {
+							Album addedAlbum = addedAlbumTree.get(albumIndex);
+							addedAlbumTree.addAll(addedAlbum.getAlbums());
+							albums.putIfAbsent(addedAlbum.getId(), addedAlbum);
+							for (Image image : addedAlbum.getImages()) {
+								images.putIfAbsent(image.getId(), image);
+							}
 						}
 					}
 				}
-			}
-			synchronized (storedSone) {
 				if (!soneRescueMode || (sone.getTime() > storedSone.getTime())) {
 					storedSone.setTime(sone.getTime());
 				}
 				storedSone.setClient(sone.getClient());
 				storedSone.setProfile(sone.getProfile());
 				if (soneRescueMode) {
-					for (Post post : sone.getPosts()) {
+					for (Post post : addedPosts) {
 						storedSone.addPost(post);
 					}
-					for (PostReply reply : sone.getReplies()) {
+					for (PostReply reply : addedReplies) {
 						storedSone.addReply(reply);
 					}
 					for (String likedPostId : sone.getLikedPostIds()) {
 						storedSone.addLikedPostId(likedPostId);
+						postLikes.addLike(storedSone, likedPostId);
 					}
 					for (String likedReplyId : sone.getLikedReplyIds()) {
 						storedSone.addLikedReplyId(likedReplyId);
+						replyLikes.addLike(storedSone, likedReplyId);
 					}
-					for (Album album : sone.getAlbums()) {
+					for (Album album : addedAlbums) {
 						storedSone.addAlbum(album);
 					}
 				} else {
-					storedSone.setPosts(sone.getPosts());
-					storedSone.setReplies(sone.getReplies());
+					if (!removedPosts.isEmpty() || !addedPosts.isEmpty()) {
+						storedSone.setPosts(currentPosts);
+					}
+					if (!removedReplies.isEmpty() || !addedReplies.isEmpty()) {
+						storedSone.setReplies(currentReplies);
+					}
+					postLikes.updateLikes(storedSone, storedSone.getLikedPostIds(), sone.getLikedPostIds());
 					storedSone.setLikePostIds(sone.getLikedPostIds());
+					replyLikes.updateLikes(storedSone, storedSone.getLikedReplyIds(), sone.getLikedReplyIds());
 					storedSone.setLikeReplyIds(sone.getLikedReplyIds());
 					storedSone.setAlbums(sone.getAlbums());
 				}
 				storedSone.setLatestEdition(sone.getLatestEdition());
 			}
+
+			/* fire events after the Sone has been updated. */
+			for (Post post : removedPosts) {
+				coreListenerManager.firePostRemoved(post);
+			}
+			for (Post post : newPosts) {
+				coreListenerManager.fireNewPostFound(post);
+			}
+			for (PostReply reply : removedReplies) {
+				coreListenerManager.fireReplyRemoved(reply);
+			}
+			for (PostReply reply : newReplies) {
+				coreListenerManager.fireNewReplyFound(reply);
+			}
 		}
 	}
 
@@ -1258,17 +1479,22 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			return;
 		}
 		synchronized (localSones) {
-			if (!localSones.containsKey(sone.getId())) {
+			if (!localSones.contains(sone.getId())) {
 				logger.log(Level.WARNING, String.format("Tried to delete non-local Sone: %s", sone));
 				return;
 			}
 			localSones.remove(sone.getId());
+			removeTimeline(sone);
+			postLikes.removeLikes(sone, sone.getLikedPostIds());
+			replyLikes.removeLikes(sone, sone.getLikedReplyIds());
 			SoneInserter soneInserter = soneInserters.remove(sone);
 			soneInserter.removeSoneInsertListener(this);
 			soneInserter.stop();
 		}
+		soneDownloader.updateSubscriptions();
 		webOfTrustUpdater.removeContext((OwnIdentity) sone.getIdentity(), "Sone");
 		webOfTrustUpdater.removeProperty((OwnIdentity) sone.getIdentity(), "Sone.LatestEdition");
+		webOfTrustUpdater.removeProperty((OwnIdentity) sone.getIdentity(), "Sone.CompressedDocument");
 		try {
 			configuration.getLongValue("Sone/" + sone.getId() + "/Time").setValue(null);
 		} catch (ConfigurationException ce1) {
@@ -1286,9 +1512,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	public void markSoneKnown(Sone sone) {
 		if (!sone.isKnown()) {
 			sone.setKnown(true);
-			synchronized (knownSones) {
-				knownSones.add(sone.getId());
-			}
+			knownSones.add(Id.valueOf(sone.getId()));
 			coreListenerManager.fireMarkSoneKnown(sone);
 			touchConfiguration();
 		}
@@ -1308,12 +1532,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		}
 
 		/* initialize options. */
-		sone.getOptions().addBooleanOption("AutoFollow", new DefaultOption<Boolean>(false));
-		sone.getOptions().addBooleanOption("EnableSoneInsertNotifications", new DefaultOption<Boolean>(false));
-		sone.getOptions().addBooleanOption("ShowNotification/NewSones", new DefaultOption<Boolean>(true));
-		sone.getOptions().addBooleanOption("ShowNotification/NewPosts", new DefaultOption<Boolean>(true));
-		sone.getOptions().addBooleanOption("ShowNotification/NewReplies", new DefaultOption<Boolean>(true));
-		sone.getOptions().addEnumOption("ShowCustomAvatars", new DefaultOption<ShowCustomAvatars>(ShowCustomAvatars.NEVER));
+		initializeSoneOptions(sone);
 
 		/* load Sone. */
 		String sonePrefix = "Sone/" + sone.getId();
@@ -1481,6 +1700,31 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			profile.setAvatar(getImage(avatarId, false));
 		}
 
+		/* load inserted archives. */
+		Map<SoneArchive, String> insertedArchives = new HashMap<SoneArchive, String>();
+		while (true) {
+			String archivePrefix = sonePrefix + "/Archives/" + insertedArchives.size();
+			String key = configuration.getStringValue(archivePrefix + "/Key").getValue(null);
+			if (key == null) {
+				break;
+			}
+			Long startTime = configuration.getLongValue(archivePrefix + "/StartTime").getValue(null);
+			Long endTime = configuration.getLongValue(archivePrefix + "/EndTime").getValue(null);
+			String fingerprint = configuration.getStringValue(archivePrefix + "/Fingerprint").getValue(null);
+			if ((startTime == null) || (endTime == null) || (fingerprint == null)) {
+				logger.log(Level.WARNING, "Invalid inserted archive found, ignoring inserted archives.");
+				insertedArchives.clear();
+				break;
+			}
+			try {
+				insertedArchives.put(new SoneArchive(startTime, endTime, new FreenetURI(key)), fingerprint);
+			} catch (MalformedURLException mue1) {
+				logger.log(Level.WARNING, String.format("Invalid key of inserted archive found, ignoring inserted archives: %s", key), mue1);
+				insertedArchives.clear();
+				break;
+			}
+		}
+
 		/* load options. */
 		sone.getOptions().getBooleanOption("AutoFollow").set(configuration.getBooleanValue(sonePrefix + "/Options/AutoFollow").getValue(null));
 		sone.getOptions().getBooleanOption("EnableSoneInsertNotifications").set(configuration.getBooleanValue(sonePrefix + "/Options/EnableSoneInsertNotifications").getValue(null));
@@ -1495,29 +1739,34 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			sone.setProfile(profile);
 			sone.setPosts(posts);
 			sone.setReplies(replies);
+			postLikes.updateLikes(sone, sone.getLikedPostIds(), likedPostIds);
 			sone.setLikePostIds(likedPostIds);
+			replyLikes.updateLikes(sone, sone.getLikedReplyIds(), likedReplyIds);
 			sone.setLikeReplyIds(likedReplyIds);
 			for (String friendId : friends) {
 				followSone(sone, friendId);
 			}
 			sone.setAlbums(topLevelAlbums);
 			soneInserters.get(sone).setLastInsertFingerprint(lastInsertFingerprint);
-		}
-		synchronized (knownSones) {
-			for (String friend : friends) {
-				knownSones.add(friend);
+			for (Entry<SoneArchive, String> insertedArchive : insertedArchives.entrySet()) {
+				soneInserters.get(sone).addInsertedArchive(insertedArchive.getKey(), insertedArchive.getValue());
 			}
+			/* everything was just loaded from the configuration. */
+			sone.getModifiedSections();
 		}
-		synchronized (knownPosts) {
-			for (Post post : posts) {
-				knownPosts.add(post.getId());
-			}
+		for (String friend : friends) {
+			knownSones.add(Id.valueOf(friend));
 		}
-		synchronized (knownReplies) {
-			for (PostReply reply : replies) {
-				knownReplies.add(reply.getId());
-			}
+		for (Post post : posts) {
+			knownPosts.add(Id.valueOf(post.getId()));
 		}
+		directedPosts.addAll(posts);
+		removeTimeline(sone);
+		updateTimelines(Collections.<Post> emptyList(), posts);
+		for (PostReply reply : replies) {
+			knownReplies.add(Id.valueOf(reply.getId()));
+		}
+		postReplies.addAll(replies);
 	}
 
 	/**
@@ -1587,9 +1836,9 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		if (recipient != null) {
 			post.setRecipient(recipient);
 		}
-		synchronized (posts) {
-			posts.put(post.getId(), post);
-		}
+		posts.put(post.getId(), post);
+		directedPosts.add(post);
+		updateTimelines(Collections.<Post> emptyList(), Collections.singleton(post));
 		coreListenerManager.fireNewPostFound(post);
 		sone.addPost(post);
 		touchConfiguration();
@@ -1618,9 +1867,9 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			return;
 		}
 		post.getSone().removePost(post);
-		synchronized (posts) {
-			posts.remove(post.getId());
-		}
+		posts.remove(post.getId());
+		directedPosts.remove(post);
+		updateTimelines(Collections.singleton(post), Collections.<Post> emptyList());
 		coreListenerManager.firePostRemoved(post);
 		markPostKnown(post);
 		touchConfiguration();
@@ -1635,11 +1884,9 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 */
 	public void markPostKnown(Post post) {
 		post.setKnown(true);
-		synchronized (knownPosts) {
-			coreListenerManager.fireMarkPostKnown(post);
-			if (knownPosts.add(post.getId())) {
-				touchConfiguration();
-			}
+		coreListenerManager.fireMarkPostKnown(post);
+		if (knownPosts.add(Id.valueOf(post.getId()))) {
+			touchConfiguration();
 		}
 		for (PostReply reply : getReplies(post)) {
 			markReplyKnown(reply);
@@ -1690,6 +1937,66 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		}
 	}
 
+	/**
+	 * Lets the given local Sone like the post with the given ID.
+	 *
+	 * @param sone
+	 *            The local Sone that likes the post
+	 * @param postId
+	 *            The ID of the liked post
+	 */
+	public void likePost(Sone sone, String postId) {
+		Validation.begin().isNotNull("Sone", sone).isNotNull("Post ID", postId).check();
+		sone.addLikedPostId(postId);
+		postLikes.addLike(sone, postId);
+		touchConfiguration();
+	}
+
+	/**
+	 * Lets the given local Sone unlike the post with the given ID.
+	 *
+	 * @param sone
+	 *            The local Sone that unlikes the post
+	 * @param postId
+	 *            The ID of the unliked post
+	 */
+	public void unlikePost(Sone sone, String postId) {
+		Validation.begin().isNotNull("Sone", sone).isNotNull("Post ID", postId).check();
+		sone.removeLikedPostId(postId);
+		postLikes.removeLike(sone, postId);
+		touchConfiguration();
+	}
+
+	/**
+	 * Lets the given local Sone like the reply with the given ID.
+	 *
+	 * @param sone
+	 *            The local Sone that likes the reply
+	 * @param replyId
+	 *            The ID of the liked reply
+	 */
+	public void likeReply(Sone sone, String replyId) {
+		Validation.begin().isNotNull("Sone", sone).isNotNull("Reply ID", replyId).check();
+		sone.addLikedReplyId(replyId);
+		replyLikes.addLike(sone, replyId);
+		touchConfiguration();
+	}
+
+	/**
+	 * Lets the given local Sone unlike the reply with the given ID.
+	 *
+	 * @param sone
+	 *            The local Sone that unlikes the reply
+	 * @param replyId
+	 *            The ID of the unliked reply
+	 */
+	public void unlikeReply(Sone sone, String replyId) {
+		Validation.begin().isNotNull("Sone", sone).isNotNull("Reply ID", replyId).check();
+		sone.removeLikedReplyId(replyId);
+		replyLikes.removeLike(sone, replyId);
+		touchConfiguration();
+	}
+
 	/**
 	 * Creates a new reply.
 	 *
@@ -1724,12 +2031,9 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			return null;
 		}
 		final PostReply reply = new PostReply(sone, post, System.currentTimeMillis(), text);
-		synchronized (replies) {
-			replies.put(reply.getId(), reply);
-		}
-		synchronized (knownReplies) {
-			coreListenerManager.fireNewReplyFound(reply);
-		}
+		replies.put(reply.getId(), reply);
+		postReplies.add(reply);
+		coreListenerManager.fireNewReplyFound(reply);
 		sone.addReply(reply);
 		touchConfiguration();
 		localElementTicker.registerEvent(System.currentTimeMillis() + 10 * 1000, new Runnable() {
@@ -1757,13 +2061,10 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			logger.log(Level.FINE, String.format("Tried to delete non-local reply: %s", reply));
 			return;
 		}
-		synchronized (replies) {
-			replies.remove(reply.getId());
-		}
-		synchronized (knownReplies) {
-			markReplyKnown(reply);
-			knownReplies.remove(reply.getId());
-		}
+		replies.remove(reply.getId());
+		postReplies.remove(reply);
+		markReplyKnown(reply);
+		knownReplies.remove(Id.valueOf(reply.getId()));
 		sone.removeReply(reply);
 		touchConfiguration();
 	}
@@ -1777,11 +2078,9 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 */
 	public void markReplyKnown(PostReply reply) {
 		reply.setKnown(true);
-		synchronized (knownReplies) {
-			coreListenerManager.fireMarkReplyKnown(reply);
-			if (knownReplies.add(reply.getId())) {
-				touchConfiguration();
-			}
+		coreListenerManager.fireMarkReplyKnown(reply);
+		if (knownReplies.add(Id.valueOf(reply.getId()))) {
+			touchConfiguration();
 		}
 	}
 
@@ -1808,9 +2107,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 */
 	public Album createAlbum(Sone sone, Album parent) {
 		Album album = new Album();
-		synchronized (albums) {
-			albums.put(album.getId(), album);
-		}
+		albums.put(album.getId(), album);
 		album.setSone(sone);
 		if (parent != null) {
 			parent.addAlbum(album);
@@ -1837,9 +2134,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		} else {
 			album.getParent().removeAlbum(album);
 		}
-		synchronized (albums) {
-			albums.remove(album.getId());
-		}
+		albums.remove(album.getId());
 		touchConfiguration();
 	}
 
@@ -1858,9 +2153,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		Validation.begin().isNotNull("Sone", sone).isNotNull("Album", album).isNotNull("Temporary Image", temporaryImage).check().is("Local Sone", isLocalSone(sone)).check().isEqual("Owner and Album Owner", sone, album.getSone()).check();
 		Image image = new Image(temporaryImage.getId()).setSone(sone).setCreationTime(System.currentTimeMillis());
 		album.addImage(image);
-		synchronized (images) {
-			images.put(image.getId(), image);
-		}
+		images.put(image.getId(), image);
 		imageInserter.insertImage(temporaryImage, image);
 		return image;
 	}
@@ -1877,9 +2170,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		Validation.begin().isNotNull("Image", image).check().is("Local Sone", isLocalSone(image.getSone())).check();
 		deleteTemporaryImage(image.getId());
 		image.getAlbum().removeImage(image);
-		synchronized (images) {
-			images.remove(image.getId());
-		}
+		images.remove(image.getId());
 		touchConfiguration();
 	}
 
@@ -1932,10 +2223,14 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	/**
 	 * Notifies the core that the configuration, either of the core or of a
 	 * single local Sone, has changed, and that the configuration should be
-	 * saved.
+	 * saved. The Sone inserters are notified as well so that modified Sones
+	 * will be inserted.
 	 */
 	public void touchConfiguration() {
 		lastConfigurationUpdate = System.currentTimeMillis();
+		for (SoneInserter soneInserter : soneInserters.values()) {
+			soneInserter.soneChanged();
+		}
 	}
 
 	//
@@ -1948,6 +2243,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	@Override
 	public void serviceStart() {
 		loadConfiguration();
+		soneCache.load();
 		updateChecker.addUpdateListener(this);
 		updateChecker.start();
 		webOfTrustUpdater.start();
@@ -1959,9 +2255,16 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	@Override
 	public void serviceRun() {
 		long lastSaved = System.currentTimeMillis();
+		long lastExpiration = lastSaved;
 		while (!shouldStop()) {
 			sleep(1000);
 			long now = System.currentTimeMillis();
+			/* only expire after the remote Sones had time to be loaded. */
+			if ((now - lastExpiration) > (24 * 60 * 60 * 1000)) {
+				expireKnownElements();
+				lastExpiration = now;
+				touchConfiguration();
+			}
 			if (shouldStop() || ((lastConfigurationUpdate > lastSaved) && ((now - lastConfigurationUpdate) > 5000))) {
 				for (Sone localSone : getLocalSones()) {
 					saveSone(localSone);
@@ -1984,6 +2287,9 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				saveSone(soneInserter.getKey());
 			}
 		}
+		soneInsertScheduler.shutdown();
+		soneInsertExecutor.shutdown();
+		soneCacheReader.shutdown();
 		saveConfiguration();
 		webOfTrustUpdater.stop();
 		updateChecker.stop();
@@ -1996,147 +2302,335 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	//
 
 	/**
-	 * Saves the given Sone. This will persist all local settings for the given
-	 * Sone, such as the friends list and similar, private options.
+	 * Adds the Sone-specific options to the given local Sone. Changing any of
+	 * the options marks the {@link Section#OPTIONS options} of the Sone as
+	 * modified.
 	 *
 	 * @param sone
-	 *            The Sone to save
+	 *            The Sone to add the options to
 	 */
-	private synchronized void saveSone(Sone sone) {
-		if (!isLocalSone(sone)) {
-			logger.log(Level.FINE, String.format("Tried to save non-local Sone: %s", sone));
-			return;
-		}
-		if (!(sone.getIdentity() instanceof OwnIdentity)) {
-			logger.log(Level.WARNING, String.format("Local Sone without OwnIdentity found, refusing to save: %s", sone));
-			return;
-		}
+	private static void initializeSoneOptions(final Sone sone) {
+		OptionWatcher<Boolean> booleanOptionWatcher = new OptionWatcher<Boolean>() {
 
-		logger.log(Level.INFO, String.format("Saving Sone: %s", sone));
-		try {
-			/* save Sone into configuration. */
-			String sonePrefix = "Sone/" + sone.getId();
-			configuration.getLongValue(sonePrefix + "/Time").setValue(sone.getTime());
-			configuration.getStringValue(sonePrefix + "/LastInsertFingerprint").setValue(soneInserters.get(sone).getLastInsertFingerprint());
-
-			/* save profile. */
-			Profile profile = sone.getProfile();
-			configuration.getStringValue(sonePrefix + "/Profile/FirstName").setValue(profile.getFirstName());
-			configuration.getStringValue(sonePrefix + "/Profile/MiddleName").setValue(profile.getMiddleName());
-			configuration.getStringValue(sonePrefix + "/Profile/LastName").setValue(profile.getLastName());
-			configuration.getIntValue(sonePrefix + "/Profile/BirthDay").setValue(profile.getBirthDay());
-			configuration.getIntValue(sonePrefix + "/Profile/BirthMonth").setValue(profile.getBirthMonth());
-			configuration.getIntValue(sonePrefix + "/Profile/BirthYear").setValue(profile.getBirthYear());
-			configuration.getStringValue(sonePrefix + "/Profile/Avatar").setValue(profile.getAvatar());
-
-			/* save profile fields. */
-			int fieldCounter = 0;
-			for (Field profileField : profile.getFields()) {
-				String fieldPrefix = sonePrefix + "/Profile/Fields/" + fieldCounter++;
-				configuration.getStringValue(fieldPrefix + "/Name").setValue(profileField.getName());
-				configuration.getStringValue(fieldPrefix + "/Value").setValue(profileField.getValue());
-			}
-			configuration.getStringValue(sonePrefix + "/Profile/Fields/" + fieldCounter + "/Name").setValue(null);
-
-			/* save posts. */
-			int postCounter = 0;
-			for (Post post : sone.getPosts()) {
-				String postPrefix = sonePrefix + "/Posts/" + postCounter++;
-				configuration.getStringValue(postPrefix + "/ID").setValue(post.getId());
-				configuration.getStringValue(postPrefix + "/Recipient").setValue((post.getRecipient() != null) ? post.getRecipient().getId() : null);
-				configuration.getLongValue(postPrefix + "/Time").setValue(post.getTime());
-				configuration.getStringValue(postPrefix + "/Text").setValue(post.getText());
-			}
-			configuration.getStringValue(sonePrefix + "/Posts/" + postCounter + "/ID").setValue(null);
-
-			/* save replies. */
-			int replyCounter = 0;
-			for (PostReply reply : sone.getReplies()) {
-				String replyPrefix = sonePrefix + "/Replies/" + replyCounter++;
-				configuration.getStringValue(replyPrefix + "/ID").setValue(reply.getId());
-				configuration.getStringValue(replyPrefix + "/Post/ID").setValue(reply.getPost().getId());
-				configuration.getLongValue(replyPrefix + "/Time").setValue(reply.getTime());
-				configuration.getStringValue(replyPrefix + "/Text").setValue(reply.getText());
-			}
-			configuration.getStringValue(sonePrefix + "/Replies/" + replyCounter + "/ID").setValue(null);
-
-			/* save post likes. */
-			int postLikeCounter = 0;
-			for (String postId : sone.getLikedPostIds()) {
-				configuration.getStringValue(sonePrefix + "/Likes/Post/" + postLikeCounter++ + "/ID").setValue(postId);
-			}
-			configuration.getStringValue(sonePrefix + "/Likes/Post/" + postLikeCounter + "/ID").setValue(null);
-
-			/* save reply likes. */
-			int replyLikeCounter = 0;
-			for (String replyId : sone.getLikedReplyIds()) {
-				configuration.getStringValue(sonePrefix + "/Likes/Reply/" + replyLikeCounter++ + "/ID").setValue(replyId);
-			}
-			configuration.getStringValue(sonePrefix + "/Likes/Reply/" + replyLikeCounter + "/ID").setValue(null);
-
-			/* save friends. */
-			int friendCounter = 0;
-			for (String friendId : sone.getFriends()) {
-				configuration.getStringValue(sonePrefix + "/Friends/" + friendCounter++ + "/ID").setValue(friendId);
-			}
-			configuration.getStringValue(sonePrefix + "/Friends/" + friendCounter + "/ID").setValue(null);
-
-			/* save albums. first, collect in a flat structure, top-level first. */
-			List<Album> albums = sone.getAllAlbums();
-
-			int albumCounter = 0;
-			for (Album album : albums) {
-				String albumPrefix = sonePrefix + "/Albums/" + albumCounter++;
-				configuration.getStringValue(albumPrefix + "/ID").setValue(album.getId());
-				configuration.getStringValue(albumPrefix + "/Title").setValue(album.getTitle());
-				configuration.getStringValue(albumPrefix + "/Description").setValue(album.getDescription());
-				configuration.getStringValue(albumPrefix + "/Parent").setValue(album.getParent() == null ? null : album.getParent().getId());
-				configuration.getStringValue(albumPrefix + "/AlbumImage").setValue(album.getAlbumImage() == null ? null : album.getAlbumImage().getId());
-			}
-			configuration.getStringValue(sonePrefix + "/Albums/" + albumCounter + "/ID").setValue(null);
-
-			/* save images. */
-			int imageCounter = 0;
-			for (Album album : albums) {
-				for (Image image : album.getImages()) {
-					if (!image.isInserted()) {
-						continue;
-					}
-					String imagePrefix = sonePrefix + "/Images/" + imageCounter++;
-					configuration.getStringValue(imagePrefix + "/ID").setValue(image.getId());
-					configuration.getStringValue(imagePrefix + "/Album").setValue(album.getId());
-					configuration.getStringValue(imagePrefix + "/Key").setValue(image.getKey());
-					configuration.getStringValue(imagePrefix + "/Title").setValue(image.getTitle());
-					configuration.getStringValue(imagePrefix + "/Description").setValue(image.getDescription());
-					configuration.getLongValue(imagePrefix + "/CreationTime").setValue(image.getCreationTime());
-					configuration.getIntValue(imagePrefix + "/Width").setValue(image.getWidth());
-					configuration.getIntValue(imagePrefix + "/Height").setValue(image.getHeight());
-				}
+			@Override
+			public void optionChanged(Option<Boolean> option, Boolean oldValue, Boolean newValue) {
+				sone.setModified(Section.OPTIONS);
 			}
-			configuration.getStringValue(sonePrefix + "/Images/" + imageCounter + "/ID").setValue(null);
 
-			/* save options. */
-			configuration.getBooleanValue(sonePrefix + "/Options/AutoFollow").setValue(sone.getOptions().getBooleanOption("AutoFollow").getReal());
-			configuration.getBooleanValue(sonePrefix + "/Options/ShowNotification/NewSones").setValue(sone.getOptions().getBooleanOption("ShowNotification/NewSones").getReal());
-			configuration.getBooleanValue(sonePrefix + "/Options/ShowNotification/NewPosts").setValue(sone.getOptions().getBooleanOption("ShowNotification/NewPosts").getReal());
-			configuration.getBooleanValue(sonePrefix + "/Options/ShowNotification/NewReplies").setValue(sone.getOptions().getBooleanOption("ShowNotification/NewReplies").getReal());
-			configuration.getBooleanValue(sonePrefix + "/Options/EnableSoneInsertNotifications").setValue(sone.getOptions().getBooleanOption("EnableSoneInsertNotifications").getReal());
-			configuration.getStringValue(sonePrefix + "/Options/ShowCustomAvatars").setValue(sone.getOptions().<ShowCustomAvatars> getEnumOption("ShowCustomAvatars").get().name());
+		};
+		sone.getOptions().addBooleanOption("AutoFollow", new DefaultOption<Boolean>(false, booleanOptionWatcher));
+		sone.getOptions().addBooleanOption("EnableSoneInsertNotifications", new DefaultOption<Boolean>(false, booleanOptionWatcher));
+		sone.getOptions().addBooleanOption("ShowNotification/NewSones", new DefaultOption<Boolean>(true, booleanOptionWatcher));
+		sone.getOptions().addBooleanOption("ShowNotification/NewPosts", new DefaultOption<Boolean>(true, booleanOptionWatcher));
+		sone.getOptions().addBooleanOption("ShowNotification/NewReplies", new DefaultOption<Boolean>(true, booleanOptionWatcher));
+		sone.getOptions().addEnumOption("ShowCustomAvatars", new DefaultOption<ShowCustomAvatars>(ShowCustomAvatars.NEVER, new OptionWatcher<ShowCustomAvatars>() {
 
-			configuration.save();
-
-			webOfTrustUpdater.setProperty((OwnIdentity) sone.getIdentity(), "Sone.LatestEdition", String.valueOf(sone.getLatestEdition()));
+			@Override
+			public void optionChanged(Option<ShowCustomAvatars> option, ShowCustomAvatars oldValue, ShowCustomAvatars newValue) {
+				sone.setModified(Section.OPTIONS);
+			}
 
-			logger.log(Level.INFO, String.format("Sone %s saved.", sone));
-		} catch (ConfigurationException ce1) {
-			logger.log(Level.WARNING, String.format("Could not save Sone: %s", sone), ce1);
-		}
+		}));
 	}
 
 	/**
-	 * Saves the current options.
+	 * Reads the given remote Sone from the {@link SoneCache} in the
+	 * background and updates it with the cached state. The Sone is still
+	 * downloaded afterwards; {@link #updateSone(Sone)} makes sure that the
+	 * cached state never replaces a newer state.
+	 *
+	 * @param sone
+	 *            The Sone to read from the cache
 	 */
-	private void saveConfiguration() {
+	private void loadCachedSone(final Sone sone) {
+		soneCacheReader.execute(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				Sone cachedSone = soneCache.read(sone);
+				if (cachedSone == null) {
+					return;
+				}
+				logger.log(Level.FINE, String.format("Loaded edition %d of Sone %s from cache.", cachedSone.getLatestEdition(), sone));
+				updateSone(cachedSone);
+				if (sone.getStatus() == SoneStatus.unknown) {
+					sone.setStatus(SoneStatus.idle);
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Notifies the Sone inserter of the given Sone that the Sone might have
+	 * been changed.
+	 *
+	 * @param sone
+	 *            The Sone that might have been changed
+	 */
+	private void soneChanged(Sone sone) {
+		SoneInserter soneInserter = soneInserters.get(sone);
+		if (soneInserter != null) {
+			soneInserter.soneChanged();
+		}
+	}
+
+	/**
+	 * Removes and adds the given posts to the timeline of the given Sone, if
+	 * it has already been created.
+	 *
+	 * @param sone
+	 *            The Sone whose timeline to update
+	 * @param removedPosts
+	 *            The posts to remove
+	 * @param addedPosts
+	 *            The posts to add
+	 */
+	private void updateTimeline(Sone sone, Collection<? extends Post> removedPosts, Collection<? extends Post> addedPosts) {
+		synchronized (timelines) {
+			Timeline timeline = timelines.get(sone.getId());
+			if (timeline != null) {
+				timeline.updatePosts(removedPosts, addedPosts);
+			}
+		}
+	}
+
+	/**
+	 * Removes and adds the given posts to all timelines that have already
+	 * been created.
+	 *
+	 * @param removedPosts
+	 *            The posts to remove
+	 * @param addedPosts
+	 *            The posts to add
+	 */
+	private void updateTimelines(Collection<? extends Post> removedPosts, Collection<? extends Post> addedPosts) {
+		synchronized (timelines) {
+			for (Timeline timeline : timelines.values()) {
+				timeline.updatePosts(removedPosts, addedPosts);
+			}
+		}
+	}
+
+	/**
+	 * Invalidates the visible posts of the timeline of the given Sone, e.g.
+	 * after its trust in another Sone has changed.
+	 *
+	 * @param sone
+	 *            The Sone whose timeline to invalidate
+	 */
+	private void invalidateTimeline(Sone sone) {
+		Timeline timeline = timelines.get(sone.getId());
+		if (timeline != null) {
+			timeline.invalidate();
+		}
+	}
+
+	/**
+	 * Invalidates the visible posts of all timelines.
+	 */
+	private void invalidateTimelines() {
+		for (Timeline timeline : timelines.values()) {
+			timeline.invalidate();
+		}
+	}
+
+	/**
+	 * Removes the timeline of the given Sone. It will be recreated on its
+	 * next access.
+	 *
+	 * @param sone
+	 *            The Sone whose timeline to remove
+	 */
+	private void removeTimeline(Sone sone) {
+		synchronized (timelines) {
+			timelines.remove(sone.getId());
+		}
+	}
+
+	/**
+	 * Saves the given Sone. This will persist all local settings for the given
+	 * Sone, such as the friends list and similar, private options. Only the
+	 * {@link Sone#getModifiedSections() sections that have been modified}
+	 * since the Sone was last saved are written to the configuration; the
+	 * configuration itself is stored by {@link #saveConfiguration()}.
+	 *
+	 * @param sone
+	 *            The Sone to save
+	 */
+	private synchronized void saveSone(Sone sone) {
+		if (!isLocalSone(sone)) {
+			logger.log(Level.FINE, String.format("Tried to save non-local Sone: %s", sone));
+			return;
+		}
+		if (!(sone.getIdentity() instanceof OwnIdentity)) {
+			logger.log(Level.WARNING, String.format("Local Sone without OwnIdentity found, refusing to save: %s", sone));
+			return;
+		}
+
+		Set<Section> modifiedSections = sone.getModifiedSections();
+		if (modifiedSections.isEmpty()) {
+			logger.log(Level.FINEST, String.format("Sone %s unchanged, not saved.", sone));
+			return;
+		}
+		try {
+			String sonePrefix = "Sone/" + sone.getId();
+			if (modifiedSections.contains(Section.INSERT)) {
+				/* save Sone into configuration. */
+				configuration.getLongValue(sonePrefix + "/Time").setValue(sone.getTime());
+				configuration.getStringValue(sonePrefix + "/LastInsertFingerprint").setValue(soneInserters.get(sone).getLastInsertFingerprint());
+
+				/* save inserted archives. */
+				int archiveCounter = 0;
+				for (Entry<SoneArchive, String> insertedArchive : soneInserters.get(sone).getInsertedArchives().entrySet()) {
+					String archivePrefix = sonePrefix + "/Archives/" + archiveCounter++;
+					configuration.getLongValue(archivePrefix + "/StartTime").setValue(insertedArchive.getKey().getStartTime());
+					configuration.getLongValue(archivePrefix + "/EndTime").setValue(insertedArchive.getKey().getEndTime());
+					configuration.getStringValue(archivePrefix + "/Key").setValue(insertedArchive.getKey().getKey().toString());
+					configuration.getStringValue(archivePrefix + "/Fingerprint").setValue(insertedArchive.getValue());
+				}
+				configuration.getStringValue(sonePrefix + "/Archives/" + archiveCounter + "/Key").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.PROFILE)) {
+				/* save profile. */
+				Profile profile = sone.getProfile();
+				configuration.getStringValue(sonePrefix + "/Profile/FirstName").setValue(profile.getFirstName());
+				configuration.getStringValue(sonePrefix + "/Profile/MiddleName").setValue(profile.getMiddleName());
+				configuration.getStringValue(sonePrefix + "/Profile/LastName").setValue(profile.getLastName());
+				configuration.getIntValue(sonePrefix + "/Profile/BirthDay").setValue(profile.getBirthDay());
+				configuration.getIntValue(sonePrefix + "/Profile/BirthMonth").setValue(profile.getBirthMonth());
+				configuration.getIntValue(sonePrefix + "/Profile/BirthYear").setValue(profile.getBirthYear());
+				configuration.getStringValue(sonePrefix + "/Profile/Avatar").setValue(profile.getAvatar());
+
+				/* save profile fields. */
+				int fieldCounter = 0;
+				for (Field profileField : profile.getFields()) {
+					String fieldPrefix = sonePrefix + "/Profile/Fields/" + fieldCounter++;
+					configuration.getStringValue(fieldPrefix + "/Name").setValue(profileField.getName());
+					configuration.getStringValue(fieldPrefix + "/Value").setValue(profileField.getValue());
+				}
+				configuration.getStringValue(sonePrefix + "/Profile/Fields/" + fieldCounter + "/Name").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.POSTS)) {
+				/* save posts. */
+				int postCounter = 0;
+				for (Post post : sone.getPosts()) {
+					String postPrefix = sonePrefix + "/Posts/" + postCounter++;
+					configuration.getStringValue(postPrefix + "/ID").setValue(post.getId());
+					configuration.getStringValue(postPrefix + "/Recipient").setValue((post.getRecipient() != null) ? post.getRecipient().getId() : null);
+					configuration.getLongValue(postPrefix + "/Time").setValue(post.getTime());
+					configuration.getStringValue(postPrefix + "/Text").setValue(post.getText());
+				}
+				configuration.getStringValue(sonePrefix + "/Posts/" + postCounter + "/ID").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.REPLIES)) {
+				/* save replies. */
+				int replyCounter = 0;
+				for (PostReply reply : sone.getReplies()) {
+					String replyPrefix = sonePrefix + "/Replies/" + replyCounter++;
+					configuration.getStringValue(replyPrefix + "/ID").setValue(reply.getId());
+					configuration.getStringValue(replyPrefix + "/Post/ID").setValue(reply.getPost().getId());
+					configuration.getLongValue(replyPrefix + "/Time").setValue(reply.getTime());
+					configuration.getStringValue(replyPrefix + "/Text").setValue(reply.getText());
+				}
+				configuration.getStringValue(sonePrefix + "/Replies/" + replyCounter + "/ID").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.LIKED_POSTS)) {
+				/* save post likes. */
+				int postLikeCounter = 0;
+				for (String postId : sone.getLikedPostIds()) {
+					configuration.getStringValue(sonePrefix + "/Likes/Post/" + postLikeCounter++ + "/ID").setValue(postId);
+				}
+				configuration.getStringValue(sonePrefix + "/Likes/Post/" + postLikeCounter + "/ID").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.LIKED_REPLIES)) {
+				/* save reply likes. */
+				int replyLikeCounter = 0;
+				for (String replyId : sone.getLikedReplyIds()) {
+					configuration.getStringValue(sonePrefix + "/Likes/Reply/" + replyLikeCounter++ + "/ID").setValue(replyId);
+				}
+				configuration.getStringValue(sonePrefix + "/Likes/Reply/" + replyLikeCounter + "/ID").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.FRIENDS)) {
+				/* save friends. */
+				int friendCounter = 0;
+				for (String friendId : sone.getFriends()) {
+					configuration.getStringValue(sonePrefix + "/Friends/" + friendCounter++ + "/ID").setValue(friendId);
+				}
+				configuration.getStringValue(sonePrefix + "/Friends/" + friendCounter + "/ID").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.ALBUMS)) {
+				/* save albums. first, collect in a flat structure, top-level first. */
+				List<Album> albums = sone.getAllAlbums();
+
+				int albumCounter = 0;
+				for (Album album : albums) {
+					String albumPrefix = sonePrefix + "/Albums/" + albumCounter++;
+					configuration.getStringValue(albumPrefix + "/ID").setValue(album.getId());
+					configuration.getStringValue(albumPrefix + "/Title").setValue(album.getTitle());
+					configuration.getStringValue(albumPrefix + "/Description").setValue(album.getDescription());
+					configuration.getStringValue(albumPrefix + "/Parent").setValue(album.getParent() == null ? null : album.getParent().getId());
+					configuration.getStringValue(albumPrefix + "/AlbumImage").setValue(album.getAlbumImage() == null ? null : album.getAlbumImage().getId());
+				}
+				configuration.getStringValue(sonePrefix + "/Albums/" + albumCounter + "/ID").setValue(null);
+
+				/* save images. */
+				int imageCounter = 0;
+				for (Album album : albums) {
+					for (Image image : album.getImages()) {
+						if (!image.isInserted()) {
+							continue;
+						}
+						String imagePrefix = sonePrefix + "/Images/" + imageCounter++;
+						configuration.getStringValue(imagePrefix + "/ID").setValue(image.getId());
+						configuration.getStringValue(imagePrefix + "/Album").setValue(album.getId());
+						configuration.getStringValue(imagePrefix + "/Key").setValue(image.getKey());
+						configuration.getStringValue(imagePrefix + "/Title").setValue(image.getTitle());
+						configuration.getStringValue(imagePrefix + "/Description").setValue(image.getDescription());
+						configuration.getLongValue(imagePrefix + "/CreationTime").setValue(image.getCreationTime());
+						configuration.getIntValue(imagePrefix + "/Width").setValue(image.getWidth());
+						configuration.getIntValue(imagePrefix + "/Height").setValue(image.getHeight());
+					}
+				}
+				configuration.getStringValue(sonePrefix + "/Images/" + imageCounter + "/ID").setValue(null);
+			}
+
+			if (modifiedSections.contains(Section.OPTIONS)) {
+				/* save options. */
+				configuration.getBooleanValue(sonePrefix + "/Options/AutoFollow").setValue(sone.getOptions().getBooleanOption("AutoFollow").getReal());
+				configuration.getBooleanValue(sonePrefix + "/Options/ShowNotification/NewSones").setValue(sone.getOptions().getBooleanOption("ShowNotification/NewSones").getReal());
+				configuration.getBooleanValue(sonePrefix + "/Options/ShowNotification/NewPosts").setValue(sone.getOptions().getBooleanOption("ShowNotification/NewPosts").getReal());
+				configuration.getBooleanValue(sonePrefix + "/Options/ShowNotification/NewReplies").setValue(sone.getOptions().getBooleanOption("ShowNotification/NewReplies").getReal());
+				configuration.getBooleanValue(sonePrefix + "/Options/EnableSoneInsertNotifications").setValue(sone.getOptions().getBooleanOption("EnableSoneInsertNotifications").getReal());
+				configuration.getStringValue(sonePrefix + "/Options/ShowCustomAvatars").setValue(sone.getOptions().<ShowCustomAvatars> getEnumOption("ShowCustomAvatars").get().name());
+			}
+
+			if (modifiedSections.contains(Section.INSERT)) {
+				webOfTrustUpdater.setProperty((OwnIdentity) sone.getIdentity(), "Sone.LatestEdition", String.valueOf(sone.getLatestEdition()));
+			}
+
+			logger.log(Level.INFO, String.format("Sone %s saved (%s).", sone, modifiedSections));
+		} catch (ConfigurationException ce1) {
+			logger.log(Level.WARNING, String.format("Could not save Sone: %s", sone), ce1);
+			/* try again on the next save. */
+			for (Section section : modifiedSections) {
+				sone.setModified(section);
+			}
+		}
+	}
+
+	/**
+	 * Saves the current options.
+	 */
+	private void saveConfiguration() {
 		synchronized (configuration) {
 			if (storingConfiguration) {
 				logger.log(Level.FINE, "Already storing configuration…");
@@ -2149,6 +2643,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		try {
 			configuration.getIntValue("Option/ConfigurationVersion").setValue(0);
 			configuration.getIntValue("Option/InsertionDelay").setValue(options.getIntegerOption("InsertionDelay").getReal());
+			configuration.getBooleanValue("Option/AdaptiveInsertionDelay").setValue(options.getBooleanOption("AdaptiveInsertionDelay").getReal());
 			configuration.getIntValue("Option/PostsPerPage").setValue(options.getIntegerOption("PostsPerPage").getReal());
 			configuration.getIntValue("Option/ImagesPerPage").setValue(options.getIntegerOption("ImagesPerPage").getReal());
 			configuration.getIntValue("Option/CharactersPerPost").setValue(options.getIntegerOption("CharactersPerPost").getReal());
@@ -2159,18 +2654,20 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			configuration.getStringValue("Option/TrustComment").setValue(options.getStringOption("TrustComment").getReal());
 			configuration.getBooleanValue("Option/ActivateFcpInterface").setValue(options.getBooleanOption("ActivateFcpInterface").getReal());
 			configuration.getIntValue("Option/FcpFullAccessRequired").setValue(options.getIntegerOption("FcpFullAccessRequired").getReal());
-
-			/* save known Sones. */
-			int soneCounter = 0;
-			synchronized (knownSones) {
-				for (String knownSoneId : knownSones) {
-					configuration.getStringValue("KnownSone/" + soneCounter++ + "/ID").setValue(knownSoneId);
-				}
-				configuration.getStringValue("KnownSone/" + soneCounter + "/ID").setValue(null);
-			}
+			configuration.getIntValue("Option/ConcurrentSoneDownloads").setValue(options.getIntegerOption("ConcurrentSoneDownloads").getReal());
+			configuration.getBooleanValue("Option/PeriodicKnownSoneChecks").setValue(options.getBooleanOption("PeriodicKnownSoneChecks").getReal());
+			configuration.getBooleanValue("Option/InsertPostArchives").setValue(options.getBooleanOption("InsertPostArchives").getReal());
+			configuration.getBooleanValue("Option/CompressSoneDocuments").setValue(options.getBooleanOption("CompressSoneDocuments").getReal());
+			configuration.getIntValue("Option/MaximumSoneSize").setValue(options.getIntegerOption("MaximumSoneSize").getReal());
+			configuration.getIntValue("Option/MaximumSonePosts").setValue(options.getIntegerOption("MaximumSonePosts").getReal());
+			configuration.getIntValue("Option/MaximumSoneReplies").setValue(options.getIntegerOption("MaximumSoneReplies").getReal());
+			configuration.getIntValue("Option/MaximumSoneLikes").setValue(options.getIntegerOption("MaximumSoneLikes").getReal());
+			configuration.getIntValue("Option/MaximumSoneAlbums").setValue(options.getIntegerOption("MaximumSoneAlbums").getReal());
+			configuration.getIntValue("Option/MaximumSoneImages").setValue(options.getIntegerOption("MaximumSoneImages").getReal());
+			configuration.getIntValue("Option/MaximumSoneTextLength").setValue(options.getIntegerOption("MaximumSoneTextLength").getReal());
 
 			/* save Sone following times. */
-			soneCounter = 0;
+			int soneCounter = 0;
 			synchronized (soneFollowingTimes) {
 				for (Entry<Sone, Long> soneFollowingTime : soneFollowingTimes.entrySet()) {
 					configuration.getStringValue("SoneFollowingTimes/" + soneCounter + "/Sone").setValue(soneFollowingTime.getKey().getId());
@@ -2180,23 +2677,10 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				configuration.getStringValue("SoneFollowingTimes/" + soneCounter + "/Sone").setValue(null);
 			}
 
-			/* save known posts. */
-			int postCounter = 0;
-			synchronized (knownPosts) {
-				for (String knownPostId : knownPosts) {
-					configuration.getStringValue("KnownPosts/" + postCounter++ + "/ID").setValue(knownPostId);
-				}
-				configuration.getStringValue("KnownPosts/" + postCounter + "/ID").setValue(null);
-			}
-
-			/* save known replies. */
-			int replyCounter = 0;
-			synchronized (knownReplies) {
-				for (String knownReplyId : knownReplies) {
-					configuration.getStringValue("KnownReplies/" + replyCounter++ + "/ID").setValue(knownReplyId);
-				}
-				configuration.getStringValue("KnownReplies/" + replyCounter + "/ID").setValue(null);
-			}
+			/* known elements are stored in their own logs. */
+			saveKnownElements(knownSones);
+			saveKnownElements(knownPosts);
+			saveKnownElements(knownReplies);
 
 			/* save bookmarked posts. */
 			int bookmarkedPostCounter = 0;
@@ -2232,6 +2716,14 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				SoneInserter.setInsertionDelay(newValue);
 			}
 
+		}));
+		options.addBooleanOption("AdaptiveInsertionDelay", new DefaultOption<Boolean>(false, new OptionWatcher<Boolean>() {
+
+			@Override
+			public void optionChanged(Option<Boolean> option, Boolean oldValue, Boolean newValue) {
+				SoneInserter.setAdaptiveInsertionDelay(newValue);
+			}
+
 		}));
 		options.addIntegerOption("PostsPerPage", new DefaultOption<Integer>(10, new IntegerRangeValidator(1, Integer.MAX_VALUE)));
 		options.addIntegerOption("ImagesPerPage", new DefaultOption<Integer>(9, new IntegerRangeValidator(1, Integer.MAX_VALUE)));
@@ -2249,6 +2741,33 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 				fcpInterface.setActive(newValue);
 			}
 		}));
+		options.addIntegerOption("ConcurrentSoneDownloads", new DefaultOption<Integer>(5, new IntegerRangeValidator(1, 100), new OptionWatcher<Integer>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void optionChanged(Option<Integer> option, Integer oldValue, Integer newValue) {
+				soneDownloader.setConcurrentDownloads(newValue);
+			}
+
+		}));
+		options.addBooleanOption("PeriodicKnownSoneChecks", new DefaultOption<Boolean>(false, new OptionWatcher<Boolean>() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void optionChanged(Option<Boolean> option, Boolean oldValue, Boolean newValue) {
+				soneDownloader.setPeriodicKnownSoneChecks(newValue);
+			}
+
+		}));
+		options.addBooleanOption("InsertPostArchives", new DefaultOption<Boolean>(false));
+		options.addBooleanOption("CompressSoneDocuments", new DefaultOption<Boolean>(false));
+		options.addIntegerOption("MaximumSoneSize", new DefaultOption<Integer>(4194304, new IntegerRangeValidator(1024, Integer.MAX_VALUE)));
+		options.addIntegerOption("MaximumSonePosts", new DefaultOption<Integer>(10000, new IntegerRangeValidator(1, Integer.MAX_VALUE)));
+		options.addIntegerOption("MaximumSoneReplies", new DefaultOption<Integer>(20000, new IntegerRangeValidator(1, Integer.MAX_VALUE)));
+		options.addIntegerOption("MaximumSoneLikes", new DefaultOption<Integer>(50000, new IntegerRangeValidator(1, Integer.MAX_VALUE)));
+		options.addIntegerOption("MaximumSoneAlbums", new DefaultOption<Integer>(1000, new IntegerRangeValidator(1, Integer.MAX_VALUE)));
+		options.addIntegerOption("MaximumSoneImages", new DefaultOption<Integer>(10000, new IntegerRangeValidator(1, Integer.MAX_VALUE)));
+		options.addIntegerOption("MaximumSoneTextLength", new DefaultOption<Integer>(65536, new IntegerRangeValidator(1024, Integer.MAX_VALUE)));
 		options.addIntegerOption("FcpFullAccessRequired", new DefaultOption<Integer>(2, new OptionWatcher<Integer>() {
 
 			@Override
@@ -2260,6 +2779,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		}));
 
 		loadConfigurationValue("InsertionDelay");
+		options.getBooleanOption("AdaptiveInsertionDelay").set(configuration.getBooleanValue("Option/AdaptiveInsertionDelay").getValue(null));
 		loadConfigurationValue("PostsPerPage");
 		loadConfigurationValue("ImagesPerPage");
 		loadConfigurationValue("CharactersPerPost");
@@ -2270,21 +2790,26 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		options.getStringOption("TrustComment").set(configuration.getStringValue("Option/TrustComment").getValue(null));
 		options.getBooleanOption("ActivateFcpInterface").set(configuration.getBooleanValue("Option/ActivateFcpInterface").getValue(null));
 		options.getIntegerOption("FcpFullAccessRequired").set(configuration.getIntValue("Option/FcpFullAccessRequired").getValue(null));
-
-		/* load known Sones. */
-		int soneCounter = 0;
-		while (true) {
-			String knownSoneId = configuration.getStringValue("KnownSone/" + soneCounter++ + "/ID").getValue(null);
-			if (knownSoneId == null) {
-				break;
-			}
-			synchronized (knownSones) {
-				knownSones.add(knownSoneId);
-			}
-		}
+		loadConfigurationValue("ConcurrentSoneDownloads");
+		soneDownloader.setConcurrentDownloads(options.getIntegerOption("ConcurrentSoneDownloads").get());
+		options.getBooleanOption("PeriodicKnownSoneChecks").set(configuration.getBooleanValue("Option/PeriodicKnownSoneChecks").getValue(null));
+		options.getBooleanOption("InsertPostArchives").set(configuration.getBooleanValue("Option/InsertPostArchives").getValue(null));
+		options.getBooleanOption("CompressSoneDocuments").set(configuration.getBooleanValue("Option/CompressSoneDocuments").getValue(null));
+		loadConfigurationValue("MaximumSoneSize");
+		loadConfigurationValue("MaximumSonePosts");
+		loadConfigurationValue("MaximumSoneReplies");
+		loadConfigurationValue("MaximumSoneLikes");
+		loadConfigurationValue("MaximumSoneAlbums");
+		loadConfigurationValue("MaximumSoneImages");
+		loadConfigurationValue("MaximumSoneTextLength");
+
+		/* load known elements. */
+		loadKnownElements(knownSones, "KnownSone");
+		loadKnownElements(knownPosts, "KnownPosts");
+		loadKnownElements(knownReplies, "KnownReplies");
 
 		/* load Sone following times. */
-		soneCounter = 0;
+		int soneCounter = 0;
 		while (true) {
 			String soneId = configuration.getStringValue("SoneFollowingTimes/" + soneCounter + "/Sone").getValue(null);
 			if (soneId == null) {
@@ -2302,42 +2827,111 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			++soneCounter;
 		}
 
-		/* load known posts. */
-		int postCounter = 0;
+		/* load bookmarked posts. */
+		int bookmarkedPostCounter = 0;
 		while (true) {
-			String knownPostId = configuration.getStringValue("KnownPosts/" + postCounter++ + "/ID").getValue(null);
-			if (knownPostId == null) {
+			String bookmarkedPostId = configuration.getStringValue("Bookmarks/Post/" + bookmarkedPostCounter++ + "/ID").getValue(null);
+			if (bookmarkedPostId == null) {
 				break;
 			}
-			synchronized (knownPosts) {
-				knownPosts.add(knownPostId);
+			synchronized (bookmarkedPosts) {
+				bookmarkedPosts.add(bookmarkedPostId);
 			}
 		}
 
-		/* load known replies. */
-		int replyCounter = 0;
+	}
+
+	/**
+	 * Loads the given known elements from their log. If there is no log yet,
+	 * the known elements are read from the configuration where older versions
+	 * stored them, and written to a new log. Once the known elements are
+	 * stored in the log, they are removed from the configuration.
+	 *
+	 * @param knownElements
+	 *            The known elements to load
+	 * @param configurationPrefix
+	 *            The prefix of the known elements in the configuration
+	 */
+	private void loadKnownElements(KnownElements knownElements, String configurationPrefix) {
+		boolean loaded = false;
+		try {
+			loaded = knownElements.load();
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not load known elements!", ioe1);
+		}
+		List<String> knownElementIds = new ArrayList<String>();
 		while (true) {
-			String knownReplyId = configuration.getStringValue("KnownReplies/" + replyCounter++ + "/ID").getValue(null);
-			if (knownReplyId == null) {
+			String knownElementId = configuration.getStringValue(configurationPrefix + "/" + knownElementIds.size() + "/ID").getValue(null);
+			if (knownElementId == null) {
 				break;
 			}
-			synchronized (knownReplies) {
-				knownReplies.add(knownReplyId);
+			knownElementIds.add(knownElementId);
+		}
+		if (knownElementIds.isEmpty()) {
+			return;
+		}
+		if (!loaded) {
+			for (String knownElementId : knownElementIds) {
+				knownElements.add(Id.valueOf(knownElementId));
+			}
+			if (!saveKnownElements(knownElements)) {
+				return;
+			}
+		}
+		try {
+			for (int elementIndex = 0; elementIndex < knownElementIds.size(); ++elementIndex) {
+				configuration.getStringValue(configurationPrefix + "/" + elementIndex + "/ID").setValue(null);
 			}
+		} catch (ConfigurationException ce1) {
+			logger.log(Level.WARNING, "Could not remove known elements from configuration!", ce1);
 		}
+	}
 
-		/* load bookmarked posts. */
-		int bookmarkedPostCounter = 0;
-		while (true) {
-			String bookmarkedPostId = configuration.getStringValue("Bookmarks/Post/" + bookmarkedPostCounter++ + "/ID").getValue(null);
-			if (bookmarkedPostId == null) {
-				break;
+	/**
+	 * Saves the changes of the given known elements to their log.
+	 *
+	 * @param knownElements
+	 *            The known elements to save
+	 * @return {@code true} if the known elements were saved, {@code false}
+	 *         otherwise
+	 */
+	private boolean saveKnownElements(KnownElements knownElements) {
+		try {
+			knownElements.save();
+			return true;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, "Could not save known elements!", ioe1);
+			return false;
+		}
+	}
+
+	/**
+	 * Forgets all known Sones, posts, and replies that have not been seen
+	 * for {@link #KNOWN_ELEMENT_EXPIRATION} days and do not exist anymore.
+	 */
+	private void expireKnownElements() {
+		int expiredSones = knownSones.expire(KNOWN_ELEMENT_EXPIRATION, new Filter<Id>() {
+
+			@Override
+			public boolean filterObject(Id soneId) {
+				return localSones.contains(soneId.toString()) || remoteSones.contains(soneId.toString());
 			}
-			synchronized (bookmarkedPosts) {
-				bookmarkedPosts.add(bookmarkedPostId);
+		});
+		int expiredPosts = knownPosts.expire(KNOWN_ELEMENT_EXPIRATION, new Filter<Id>() {
+
+			@Override
+			public boolean filterObject(Id postId) {
+				return posts.contains(postId.toString());
 			}
-		}
+		});
+		int expiredReplies = knownReplies.expire(KNOWN_ELEMENT_EXPIRATION, new Filter<Id>() {
 
+			@Override
+			public boolean filterObject(Id replyId) {
+				return replies.contains(replyId.toString());
+			}
+		});
+		logger.log(Level.FINE, String.format("Expired %d known Sones, %d known posts, and %d known replies.", expiredSones, expiredPosts, expiredReplies));
 	}
 
 	/**
@@ -2411,19 +3005,13 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	 * {@inheritDoc}
 	 */
 	@Override
-	public void identityUpdated(OwnIdentity ownIdentity, final Identity identity) {
-		new Thread(new Runnable() {
-
-			@Override
-			@SuppressWarnings("synthetic-access")
-			public void run() {
-				Sone sone = getRemoteSone(identity.getId(), false);
-				sone.setIdentity(identity);
-				sone.setLatestEdition(Numbers.safeParseLong(identity.getProperty("Sone.LatestEdition"), sone.getLatestEdition()));
-				soneDownloader.addSone(sone);
-				soneDownloader.fetchSone(sone);
-			}
-		}).start();
+	public void identityUpdated(OwnIdentity ownIdentity, Identity identity) {
+		Sone sone = getRemoteSone(identity.getId(), false);
+		sone.setIdentity(identity);
+		invalidateTimelines();
+		sone.setLatestEdition(Numbers.safeParseLong(identity.getProperty("Sone.LatestEdition"), sone.getLatestEdition()));
+		soneDownloader.addSone(sone);
+		soneDownloader.scheduleFetch(sone);
 	}
 
 	/**
@@ -2443,6 +3031,10 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		}
 		if (foundIdentity) {
 			/* some local identity still trusts this identity, don’t remove. */
+			Sone sone = getSone(identity.getId(), false);
+			if (sone != null) {
+				soneDownloader.updateSubscription(sone);
+			}
 			return;
 		}
 		Sone sone = getSone(identity.getId(), false);
@@ -2450,25 +3042,21 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			/* TODO - we don’t have the Sone anymore. should this happen? */
 			return;
 		}
-		synchronized (posts) {
-			synchronized (knownPosts) {
-				for (Post post : sone.getPosts()) {
-					posts.remove(post.getId());
-					coreListenerManager.firePostRemoved(post);
-				}
-			}
-		}
-		synchronized (replies) {
-			synchronized (knownReplies) {
-				for (PostReply reply : sone.getReplies()) {
-					replies.remove(reply.getId());
-					coreListenerManager.fireReplyRemoved(reply);
-				}
-			}
+		for (Post post : sone.getPosts()) {
+			posts.remove(post.getId());
+			directedPosts.remove(post);
+			coreListenerManager.firePostRemoved(post);
 		}
-		synchronized (remoteSones) {
-			remoteSones.remove(identity.getId());
+		updateTimelines(sone.getPosts(), Collections.<Post> emptyList());
+		for (PostReply reply : sone.getReplies()) {
+			replies.remove(reply.getId());
+			postReplies.remove(reply);
+			coreListenerManager.fireReplyRemoved(reply);
 		}
+		postLikes.removeLikes(sone, sone.getLikedPostIds());
+		replyLikes.removeLikes(sone, sone.getLikedReplyIds());
+		remoteSones.remove(identity.getId());
+		soneDownloader.removeSone(sone);
 		coreListenerManager.fireSoneRemoved(sone);
 	}
 
@@ -2502,6 +3090,19 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 	@Override
 	public void insertFinished(Sone sone, long insertDuration) {
 		coreListenerManager.fireSoneInserted(sone, insertDuration);
+		/* advertise the compressed document to other clients. */
+		SoneInserter soneInserter = soneInserters.get(sone);
+		if ((soneInserter != null) && (sone.getIdentity() instanceof OwnIdentity)) {
+			boolean compressedDocumentAdvertised = "true".equals(sone.getIdentity().getProperty("Sone.CompressedDocument"));
+			if (soneInserter.isCompressedDocumentInserted() && !compressedDocumentAdvertised) {
+				webOfTrustUpdater.setProperty((OwnIdentity) sone.getIdentity(), "Sone.CompressedDocument", "true");
+			} else if (!soneInserter.isCompressedDocumentInserted() && compressedDocumentAdvertised) {
+				webOfTrustUpdater.removeProperty((OwnIdentity) sone.getIdentity(), "Sone.CompressedDocument");
+			}
+		}
+		/* store the new edition and the inserted archives. */
+		sone.setModified(Section.INSERT);
+		touchConfiguration();
 	}
 
 	/**
@@ -2555,6 +3156,7 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 		coreListenerManager.fireImageInsertFailed(image, cause);
 	}
 
+
 	/**
 	 * Convenience interface for external classes that want to access the core’s
 	 * configuration.
@@ -2610,6 +3212,32 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			return this;
 		}
 
+		/**
+		 * Returns whether the insertion delay adapts to the duration of the
+		 * inserts of each Sone.
+		 *
+		 * @return {@code true} if the insertion delay is adaptive,
+		 *         {@code false} otherwise
+		 */
+		public boolean isAdaptiveInsertionDelay() {
+			return options.getBooleanOption("AdaptiveInsertionDelay").get();
+		}
+
+		/**
+		 * Sets whether the insertion delay adapts to the duration of the
+		 * inserts of each Sone.
+		 *
+		 * @param adaptiveInsertionDelay
+		 *            {@code true} to adapt the insertion delay, {@code false}
+		 *            to always use the insertion delay, or {@code null} to
+		 *            restore the default value
+		 * @return This preferences
+		 */
+		public Preferences setAdaptiveInsertionDelay(Boolean adaptiveInsertionDelay) {
+			options.getBooleanOption("AdaptiveInsertionDelay").set(adaptiveInsertionDelay);
+			return this;
+		}
+
 		/**
 		 * Returns the number of posts to show per page.
 		 *
@@ -2907,6 +3535,364 @@ public class Core extends AbstractService implements IdentityListener, UpdateLis
 			return this;
 		}
 
+		/**
+		 * Returns the maximum number of Sones that are downloaded at the same
+		 * time.
+		 *
+		 * @return The maximum number of concurrent Sone downloads
+		 */
+		public int getConcurrentSoneDownloads() {
+			return options.getIntegerOption("ConcurrentSoneDownloads").get();
+		}
+
+		/**
+		 * Validates the maximum number of concurrent Sone downloads.
+		 *
+		 * @param concurrentSoneDownloads
+		 *            The maximum number of concurrent Sone downloads
+		 * @return {@code true} if the number is valid, {@code false} otherwise
+		 */
+		public boolean validateConcurrentSoneDownloads(Integer concurrentSoneDownloads) {
+			return options.getIntegerOption("ConcurrentSoneDownloads").validate(concurrentSoneDownloads);
+		}
+
+		/**
+		 * Sets the maximum number of Sones that are downloaded at the same
+		 * time.
+		 *
+		 * @param concurrentSoneDownloads
+		 *            The maximum number of concurrent Sone downloads, or
+		 *            {@code null} to restore the default value
+		 * @return This preferences
+		 */
+		public Preferences setConcurrentSoneDownloads(Integer concurrentSoneDownloads) {
+			options.getIntegerOption("ConcurrentSoneDownloads").set(concurrentSoneDownloads);
+			return this;
+		}
+
+		/**
+		 * Returns whether Sones that are neither followed nor trusted by a
+		 * local Sone are only checked for updates periodically instead of
+		 * being subscribed permanently.
+		 *
+		 * @return {@code true} if known Sones are checked periodically,
+		 *         {@code false} otherwise
+		 */
+		public boolean isPeriodicKnownSoneChecks() {
+			return options.getBooleanOption("PeriodicKnownSoneChecks").get();
+		}
+
+		/**
+		 * Sets whether Sones that are neither followed nor trusted by a local
+		 * Sone are only checked for updates periodically.
+		 *
+		 * @param periodicKnownSoneChecks
+		 *            {@code true} to check known Sones periodically,
+		 *            {@code false} to subscribe them permanently, or
+		 *            {@code null} to restore the default value
+		 * @return This preferences
+		 */
+		public Preferences setPeriodicKnownSoneChecks(Boolean periodicKnownSoneChecks) {
+			options.getBooleanOption("PeriodicKnownSoneChecks").set(periodicKnownSoneChecks);
+			return this;
+		}
+
+		/**
+		 * Returns whether posts and replies of past
+		 * {@link SoneArchive#PERIOD periods} are inserted as separate archive
+		 * pages. Clients that do not know archive pages can not read Sones
+		 * that are inserted with archive pages.
+		 *
+		 * @return {@code true} if archive pages are inserted, {@code false}
+		 *         otherwise
+		 */
+		public boolean isInsertPostArchives() {
+			return options.getBooleanOption("InsertPostArchives").get();
+		}
+
+		/**
+		 * Sets whether posts and replies of past periods are inserted as
+		 * separate archive pages.
+		 *
+		 * @param insertPostArchives
+		 *            {@code true} to insert archive pages, {@code false} to
+		 *            insert all posts and replies with the Sone, or
+		 *            {@code null} to restore the default value
+		 * @return This preferences
+		 */
+		public Preferences setInsertPostArchives(Boolean insertPostArchives) {
+			options.getBooleanOption("InsertPostArchives").set(insertPostArchives);
+			return this;
+		}
+
+		/**
+		 * Returns whether the documents of local Sones are also inserted
+		 * compressed, as {@code sone.xml.gz} next to the plain
+		 * {@code sone.xml}. Clients that know the compressed document fetch it
+		 * instead of the plain one.
+		 *
+		 * @return {@code true} if documents are also inserted compressed,
+		 *         {@code false} otherwise
+		 */
+		public boolean isCompressSoneDocuments() {
+			return options.getBooleanOption("CompressSoneDocuments").get();
+		}
+
+		/**
+		 * Sets whether the documents of local Sones are also inserted
+		 * compressed.
+		 *
+		 * @param compressSoneDocuments
+		 *            {@code true} to also insert compressed documents,
+		 *            {@code false} to only insert plain documents, or
+		 *            {@code null} to restore the default value
+		 * @return This preferences
+		 */
+		public Preferences setCompressSoneDocuments(Boolean compressSoneDocuments) {
+			options.getBooleanOption("CompressSoneDocuments").set(compressSoneDocuments);
+			return this;
+		}
+
+		/**
+		 * Returns the maximum size of a Sone document in bytes.
+		 *
+		 * @return The maximum size of a Sone document in bytes
+		 */
+		public int getMaximumSoneSize() {
+			return options.getIntegerOption("MaximumSoneSize").get();
+		}
+
+		/**
+		 * Validates the maximum size of a Sone document in bytes.
+		 *
+		 * @param maximumSoneSize
+		 *            The maximum size of a Sone document in bytes to validate
+		 * @return {@code true} if the value is valid, {@code false} otherwise
+		 */
+		public boolean validateMaximumSoneSize(Integer maximumSoneSize) {
+			return options.getIntegerOption("MaximumSoneSize").validate(maximumSoneSize);
+		}
+
+		/**
+		 * Sets the maximum size of a Sone document in bytes.
+		 *
+		 * @param maximumSoneSize
+		 *            The new maximum size of a Sone document in bytes, or {@code null} to restore the
+		 *            default value
+		 * @return This preferences
+		 */
+		public Preferences setMaximumSoneSize(Integer maximumSoneSize) {
+			options.getIntegerOption("MaximumSoneSize").set(maximumSoneSize);
+			return this;
+		}
+
+		/**
+		 * Returns the maximum number of posts of a Sone.
+		 *
+		 * @return The maximum number of posts of a Sone
+		 */
+		public int getMaximumSonePosts() {
+			return options.getIntegerOption("MaximumSonePosts").get();
+		}
+
+		/**
+		 * Validates the maximum number of posts of a Sone.
+		 *
+		 * @param maximumSonePosts
+		 *            The maximum number of posts of a Sone to validate
+		 * @return {@code true} if the value is valid, {@code false} otherwise
+		 */
+		public boolean validateMaximumSonePosts(Integer maximumSonePosts) {
+			return options.getIntegerOption("MaximumSonePosts").validate(maximumSonePosts);
+		}
+
+		/**
+		 * Sets the maximum number of posts of a Sone.
+		 *
+		 * @param maximumSonePosts
+		 *            The new maximum number of posts of a Sone, or {@code null} to restore the
+		 *            default value
+		 * @return This preferences
+		 */
+		public Preferences setMaximumSonePosts(Integer maximumSonePosts) {
+			options.getIntegerOption("MaximumSonePosts").set(maximumSonePosts);
+			return this;
+		}
+
+		/**
+		 * Returns the maximum number of replies of a Sone.
+		 *
+		 * @return The maximum number of replies of a Sone
+		 */
+		public int getMaximumSoneReplies() {
+			return options.getIntegerOption("MaximumSoneReplies").get();
+		}
+
+		/**
+		 * Validates the maximum number of replies of a Sone.
+		 *
+		 * @param maximumSoneReplies
+		 *            The maximum number of replies of a Sone to validate
+		 * @return {@code true} if the value is valid, {@code false} otherwise
+		 */
+		public boolean validateMaximumSoneReplies(Integer maximumSoneReplies) {
+			return options.getIntegerOption("MaximumSoneReplies").validate(maximumSoneReplies);
+		}
+
+		/**
+		 * Sets the maximum number of replies of a Sone.
+		 *
+		 * @param maximumSoneReplies
+		 *            The new maximum number of replies of a Sone, or {@code null} to restore the
+		 *            default value
+		 * @return This preferences
+		 */
+		public Preferences setMaximumSoneReplies(Integer maximumSoneReplies) {
+			options.getIntegerOption("MaximumSoneReplies").set(maximumSoneReplies);
+			return this;
+		}
+
+		/**
+		 * Returns the maximum number of likes of a Sone.
+		 *
+		 * @return The maximum number of likes of a Sone
+		 */
+		public int getMaximumSoneLikes() {
+			return options.getIntegerOption("MaximumSoneLikes").get();
+		}
+
+		/**
+		 * Validates the maximum number of likes of a Sone.
+		 *
+		 * @param maximumSoneLikes
+		 *            The maximum number of likes of a Sone to validate
+		 * @return {@code true} if the value is valid, {@code false} otherwise
+		 */
+		public boolean validateMaximumSoneLikes(Integer maximumSoneLikes) {
+			return options.getIntegerOption("MaximumSoneLikes").validate(maximumSoneLikes);
+		}
+
+		/**
+		 * Sets the maximum number of likes of a Sone.
+		 *
+		 * @param maximumSoneLikes
+		 *            The new maximum number of likes of a Sone, or {@code null} to restore the
+		 *            default value
+		 * @return This preferences
+		 */
+		public Preferences setMaximumSoneLikes(Integer maximumSoneLikes) {
+			options.getIntegerOption("MaximumSoneLikes").set(maximumSoneLikes);
+			return this;
+		}
+
+		/**
+		 * Returns the maximum number of albums of a Sone.
+		 *
+		 * @return The maximum number of albums of a Sone
+		 */
+		public int getMaximumSoneAlbums() {
+			return options.getIntegerOption("MaximumSoneAlbums").get();
+		}
+
+		/**
+		 * Validates the maximum number of albums of a Sone.
+		 *
+		 * @param maximumSoneAlbums
+		 *            The maximum number of albums of a Sone to validate
+		 * @return {@code true} if the value is valid, {@code false} otherwise
+		 */
+		public boolean validateMaximumSoneAlbums(Integer maximumSoneAlbums) {
+			return options.getIntegerOption("MaximumSoneAlbums").validate(maximumSoneAlbums);
+		}
+
+		/**
+		 * Sets the maximum number of albums of a Sone.
+		 *
+		 * @param maximumSoneAlbums
+		 *            The new maximum number of albums of a Sone, or {@code null} to restore the
+		 *            default value
+		 * @return This preferences
+		 */
+		public Preferences setMaximumSoneAlbums(Integer maximumSoneAlbums) {
+			options.getIntegerOption("MaximumSoneAlbums").set(maximumSoneAlbums);
+			return this;
+		}
+
+		/**
+		 * Returns the maximum number of images of a Sone.
+		 *
+		 * @return The maximum number of images of a Sone
+		 */
+		public int getMaximumSoneImages() {
+			return options.getIntegerOption("MaximumSoneImages").get();
+		}
+
+		/**
+		 * Validates the maximum number of images of a Sone.
+		 *
+		 * @param maximumSoneImages
+		 *            The maximum number of images of a Sone to validate
+		 * @return {@code true} if the value is valid, {@code false} otherwise
+		 */
+		public boolean validateMaximumSoneImages(Integer maximumSoneImages) {
+			return options.getIntegerOption("MaximumSoneImages").validate(maximumSoneImages);
+		}
+
+		/**
+		 * Sets the maximum number of images of a Sone.
+		 *
+		 * @param maximumSoneImages
+		 *            The new maximum number of images of a Sone, or {@code null} to restore the
+		 *            default value
+		 * @return This preferences
+		 */
+		public Preferences setMaximumSoneImages(Integer maximumSoneImages) {
+			options.getIntegerOption("MaximumSoneImages").set(maximumSoneImages);
+			return this;
+		}
+
+		/**
+		 * Returns the maximum length of a text of a Sone.
+		 *
+		 * @return The maximum length of a text of a Sone
+		 */
+		public int getMaximumSoneTextLength() {
+			return options.getIntegerOption("MaximumSoneTextLength").get();
+		}
+
+		/**
+		 * Validates the maximum length of a text of a Sone.
+		 *
+		 * @param maximumSoneTextLength
+		 *            The maximum length of a text of a Sone to validate
+		 * @return {@code true} if the value is valid, {@code false} otherwise
+		 */
+		public boolean validateMaximumSoneTextLength(Integer maximumSoneTextLength) {
+			return options.getIntegerOption("MaximumSoneTextLength").validate(maximumSoneTextLength);
+		}
+
+		/**
+		 * Sets the maximum length of a text of a Sone.
+		 *
+		 * @param maximumSoneTextLength
+		 *            The new maximum length of a text of a Sone, or {@code null} to restore the
+		 *            default value
+		 * @return This preferences
+		 */
+		public Preferences setMaximumSoneTextLength(Integer maximumSoneTextLength) {
+			options.getIntegerOption("MaximumSoneTextLength").set(maximumSoneTextLength);
+			return this;
+		}
+
+		/**
+		 * Returns the limits downloaded Sones have to stay within.
+		 *
+		 * @return The limits for downloaded Sones
+		 */
+		public SoneLimits getSoneLimits() {
+			return new SoneLimits(options.getIntegerOption("MaximumSoneSize").get(), options.getIntegerOption("MaximumSonePosts").get(), options.getIntegerOption("MaximumSoneReplies").get(), options.getIntegerOption("MaximumSoneLikes").get(), options.getIntegerOption("MaximumSoneAlbums").get(), options.getIntegerOption("MaximumSoneImages").get(), options.getIntegerOption("MaximumSoneTextLength").get());
+		}
+
 	}
 
 }
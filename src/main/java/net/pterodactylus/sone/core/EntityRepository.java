@@ -0,0 +1,255 @@
+/*
+ * Sone - EntityRepository.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Concurrent repository for entities (Sones, posts, replies, albums, images)
+ * that are identified by their ID. Reads never block, writes are striped over
+ * a number of segments so that concurrent writers only contend when they
+ * touch the same segment, and {@link #get(String, boolean)} creates missing
+ * entities atomically so that two threads asking for the same ID will always
+ * receive the same entity.
+ *
+ * @param <T>
+ *            The type of the entities
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class EntityRepository<T> {
+
+	/** The default number of concurrently writing threads. */
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	/** The factory for new entities. */
+	private final EntityFactory<T> entityFactory;
+
+	/** The entities, indexed by their ID. */
+	private final ConcurrentMap<String, T> entities;
+
+	/**
+	 * Creates a new entity repository.
+	 *
+	 * @param entityFactory
+	 *            The factory for new entities
+	 */
+	public EntityRepository(EntityFactory<T> entityFactory) {
+		this(entityFactory, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * Creates a new entity repository.
+	 *
+	 * @param entityFactory
+	 *            The factory for new entities
+	 * @param concurrencyLevel
+	 *            The estimated number of concurrently writing threads
+	 */
+	public EntityRepository(EntityFactory<T> entityFactory, int concurrencyLevel) {
+		this.entityFactory = entityFactory;
+		this.entities = new ConcurrentHashMap<String, T>(64, 0.75f, concurrencyLevel);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the entity with the given ID.
+	 *
+	 * @param id
+	 *            The ID of the entity
+	 * @return The entity with the given ID, or {@code null} if there is no
+	 *         such entity
+	 */
+	public T get(String id) {
+		return get(id, false);
+	}
+
+	/**
+	 * Returns the entity with the given ID, optionally creating it. If two
+	 * threads try to create the same entity at the same time, both of them
+	 * will receive the entity that was stored first.
+	 *
+	 * @param id
+	 *            The ID of the entity
+	 * @param create
+	 *            {@code true} to create a new entity if there is no entity
+	 *            with the given ID, {@code false} to return {@code null}
+	 *            instead
+	 * @return The entity with the given ID, or {@code null}
+	 */
+	public T get(String id, boolean create) {
+		if (id == null) {
+			return null;
+		}
+		T entity = entities.get(id);
+		if ((entity != null) || !create) {
+			return entity;
+		}
+		T newEntity = entityFactory.newEntity(id);
+		entity = entities.putIfAbsent(id, newEntity);
+		return (entity != null) ? entity : newEntity;
+	}
+
+	/**
+	 * Returns whether this repository contains an entity with the given ID.
+	 *
+	 * @param id
+	 *            The ID of the entity
+	 * @return {@code true} if there is an entity with the given ID,
+	 *         {@code false} otherwise
+	 */
+	public boolean contains(String id) {
+		return (id != null) && entities.containsKey(id);
+	}
+
+	/**
+	 * Returns a snapshot of all entities in this repository.
+	 *
+	 * @return All entities
+	 */
+	public Set<T> getAll() {
+		return new HashSet<T>(entities.values());
+	}
+
+	/**
+	 * Returns a live, weakly consistent view of all entities in this
+	 * repository. The returned collection can be iterated while the
+	 * repository is modified but must not be modified itself.
+	 *
+	 * @return All entities
+	 */
+	public Collection<T> values() {
+		return entities.values();
+	}
+
+	/**
+	 * Returns the number of entities in this repository.
+	 *
+	 * @return The number of entities
+	 */
+	public int size() {
+		return entities.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Stores the given entity, replacing any entity that is stored under the
+	 * same ID.
+	 *
+	 * @param id
+	 *            The ID of the entity
+	 * @param entity
+	 *            The entity to store
+	 * @return The entity that was previously stored under the given ID, or
+	 *         {@code null}
+	 */
+	public T put(String id, T entity) {
+		return entities.put(id, entity);
+	}
+
+	/**
+	 * Stores the given entity only if there is no entity stored under the
+	 * same ID yet.
+	 *
+	 * @param id
+	 *            The ID of the entity
+	 * @param entity
+	 *            The entity to store
+	 * @return The entity stored under the given ID after this operation
+	 */
+	public T putIfAbsent(String id, T entity) {
+		T existingEntity = entities.putIfAbsent(id, entity);
+		return (existingEntity != null) ? existingEntity : entity;
+	}
+
+	/**
+	 * Removes the entity with the given ID.
+	 *
+	 * @param id
+	 *            The ID of the entity to remove
+	 * @return The removed entity, or {@code null} if there was no entity with
+	 *         the given ID
+	 */
+	public T remove(String id) {
+		return (id == null) ? null : entities.remove(id);
+	}
+
+	/**
+	 * Removes the entity with the given ID, but only if it is the given
+	 * entity.
+	 *
+	 * @param id
+	 *            The ID of the entity to remove
+	 * @param entity
+	 *            The entity to remove
+	 * @return {@code true} if the entity was removed, {@code false} otherwise
+	 */
+	public boolean remove(String id, T entity) {
+		return entities.remove(id, entity);
+	}
+
+	/**
+	 * Removes all entities with the given IDs.
+	 *
+	 * @param ids
+	 *            The IDs of the entities to remove
+	 * @return The removed entities
+	 */
+	public List<T> removeAll(Collection<String> ids) {
+		List<T> removedEntities = new ArrayList<T>(ids.size());
+		for (String id : ids) {
+			T removedEntity = remove(id);
+			if (removedEntity != null) {
+				removedEntities.add(removedEntity);
+			}
+		}
+		return removedEntities;
+	}
+
+	/**
+	 * Factory for new entities.
+	 *
+	 * @param <T>
+	 *            The type of the entities
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static interface EntityFactory<T> {
+
+		/**
+		 * Creates a new entity with the given ID.
+		 *
+		 * @param id
+		 *            The ID of the entity
+		 * @return The new entity
+		 */
+		public T newEntity(String id);
+
+	}
+
+}
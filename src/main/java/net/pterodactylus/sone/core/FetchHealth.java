@@ -0,0 +1,166 @@
+/*
+ * Sone - FetchHealth.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+/**
+ * Keeps track of how well the downloads of a single Sone work. After every
+ * failed download the next download is delayed, starting with
+ * {@link #MINIMUM_BACKOFF} and doubling with every consecutive failure up to
+ * {@link #MAXIMUM_BACKOFF}. A successful download resets the delay.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FetchHealth {
+
+	/** The delay after the first failure, in milliseconds. */
+	public static final long MINIMUM_BACKOFF = 60 * 1000;
+
+	/** The maximum delay after consecutive failures, in milliseconds. */
+	public static final long MAXIMUM_BACKOFF = 2 * 60 * 60 * 1000;
+
+	/** The number of consecutive failures of a chronically failing Sone. */
+	public static final int CHRONIC_FAILURES = 3;
+
+	/** The number of consecutive failures. */
+	private int consecutiveFailures;
+
+	/** The name of the last error. */
+	private String lastError;
+
+	/** The time of the last failure. */
+	private long lastFailureTime;
+
+	/** The number of downloads that were rejected while parsing. */
+	private int parseRejections;
+
+	/** The time of the last successful download. */
+	private long lastSuccessTime;
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of consecutive failed downloads.
+	 *
+	 * @return The number of consecutive failures
+	 */
+	public synchronized int getConsecutiveFailures() {
+		return consecutiveFailures;
+	}
+
+	/**
+	 * Returns the name of the last error.
+	 *
+	 * @return The name of the last error, or {@code null} if no download has
+	 *         failed yet
+	 */
+	public synchronized String getLastError() {
+		return lastError;
+	}
+
+	/**
+	 * Returns the time of the last failed download.
+	 *
+	 * @return The time of the last failure (in milliseconds since Jan 1,
+	 *         1970), or {@code 0} if no download has failed yet
+	 */
+	public synchronized long getLastFailureTime() {
+		return lastFailureTime;
+	}
+
+	/**
+	 * Returns the number of downloads that were rejected while parsing them.
+	 *
+	 * @return The number of parse rejections
+	 */
+	public synchronized int getParseRejections() {
+		return parseRejections;
+	}
+
+	/**
+	 * Returns the time of the last successful download.
+	 *
+	 * @return The time of the last success (in milliseconds since Jan 1,
+	 *         1970), or {@code 0} if no download has succeeded yet
+	 */
+	public synchronized long getLastSuccessTime() {
+		return lastSuccessTime;
+	}
+
+	/**
+	 * Returns whether the downloads of the Sone fail chronically.
+	 *
+	 * @return {@code true} if at least {@link #CHRONIC_FAILURES} downloads
+	 *         have failed in a row, {@code false} otherwise
+	 */
+	public synchronized boolean isFailingChronically() {
+		return consecutiveFailures >= CHRONIC_FAILURES;
+	}
+
+	/**
+	 * Returns the time until which the next download should be delayed.
+	 *
+	 * @return The end of the backoff (in milliseconds since Jan 1, 1970), or
+	 *         {@code 0} if the last download did not fail
+	 */
+	public synchronized long getBackoffEnd() {
+		if (consecutiveFailures == 0) {
+			return 0;
+		}
+		long backoff = MINIMUM_BACKOFF << Math.min(consecutiveFailures - 1, 16);
+		return lastFailureTime + Math.min(backoff, MAXIMUM_BACKOFF);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Records a successful download.
+	 */
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		lastSuccessTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Records a failed download.
+	 *
+	 * @param error
+	 *            The name of the error
+	 */
+	public synchronized void recordFailure(String error) {
+		++consecutiveFailures;
+		lastError = error;
+		lastFailureTime = System.currentTimeMillis();
+	}
+
+	/**
+	 * Records a download that could be fetched but was rejected while parsing
+	 * it.
+	 *
+	 * @param error
+	 *            The name of the error
+	 */
+	public synchronized void recordParseRejection(String error) {
+		recordFailure(error);
+		++parseRejections;
+	}
+
+}
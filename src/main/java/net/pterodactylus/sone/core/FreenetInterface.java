@@ -17,6 +17,7 @@
 
 package net.pterodactylus.sone.core;
 
+import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -35,6 +36,7 @@ import net.pterodactylus.util.logging.Logging;
 import com.db4o.ObjectContainer;
 
 import freenet.client.ClientMetadata;
+import freenet.client.FetchContext;
 import freenet.client.FetchException;
 import freenet.client.FetchResult;
 import freenet.client.HighLevelSimpleClient;
@@ -43,9 +45,13 @@ import freenet.client.InsertBlock;
 import freenet.client.InsertContext;
 import freenet.client.InsertException;
 import freenet.client.async.BaseClientPutter;
+import freenet.client.async.BaseManifestPutter;
 import freenet.client.async.ClientContext;
+import freenet.client.async.ClientGetCallback;
+import freenet.client.async.ClientGetter;
 import freenet.client.async.ClientPutCallback;
 import freenet.client.async.ClientPutter;
+import freenet.client.async.DefaultManifestPutter;
 import freenet.client.async.USKCallback;
 import freenet.keys.FreenetURI;
 import freenet.keys.InsertableClientSSK;
@@ -72,7 +78,7 @@ public class FreenetInterface {
 	private final HighLevelSimpleClient client;
 
 	/** The USK callbacks. */
-	private final Map<String, USKCallback> soneUskCallbacks = new HashMap<String, USKCallback>();
+	private final Map<String, USKCallback> soneUskCallbacks = Collections.synchronizedMap(new HashMap<String, USKCallback>());
 
 	/** The not-Sone-related USK callbacks. */
 	private final Map<FreenetURI, USKCallback> uriUskCallbacks = Collections.synchronizedMap(new HashMap<FreenetURI, USKCallback>());
@@ -93,26 +99,55 @@ public class FreenetInterface {
 	//
 
 	/**
-	 * Fetches the given URI.
+	 * Starts fetching the given URI and returns immediately. Permanent
+	 * redirects are followed automatically. The outcome of the fetch is
+	 * reported to the given callback, on a thread of the node; this includes
+	 * errors that prevent the fetch from being started.
 	 *
 	 * @param uri
 	 *            The URI to fetch
-	 * @return The result of the fetch, or {@code null} if an error occured
+	 * @param maximumSize
+	 *            The maximum size of the data, in bytes
+	 * @param fetchCallback
+	 *            The callback to notify when the fetch has finished
+	 * @return The fetch token that can be used to cancel the fetch
 	 */
-	public Pair<FreenetURI, FetchResult> fetchUri(FreenetURI uri) {
+	public FetchToken fetchUri(FreenetURI uri, long maximumSize, FetchCallback fetchCallback) {
+		FetchToken fetchToken = new FetchToken(maximumSize, fetchCallback);
+		fetchToken.start(new FreenetURI(uri));
+		return fetchToken;
+	}
+
+	/**
+	 * Fetches the given URI, aborting the fetch as soon as the data is known
+	 * to be larger than the given maximum size.
+	 *
+	 * @param uri
+	 *            The URI to fetch
+	 * @param maximumSize
+	 *            The maximum size of the data, in bytes
+	 * @return The result of the fetch
+	 * @throws SoneLimitExceededException
+	 *             if the data is larger than the maximum size
+	 * @throws SoneException
+	 *             if the data could not be fetched
+	 */
+	public Pair<FreenetURI, FetchResult> fetchUri(FreenetURI uri, long maximumSize) throws SoneException {
 		FetchResult fetchResult = null;
 		FreenetURI currentUri = new FreenetURI(uri);
 		while (true) {
 			try {
-				fetchResult = client.fetch(currentUri);
+				fetchResult = client.fetch(currentUri, maximumSize);
 				return new Pair<FreenetURI, FetchResult>(currentUri, fetchResult);
 			} catch (FetchException fe1) {
 				if (fe1.getMode() == FetchException.PERMANENT_REDIRECT) {
 					currentUri = fe1.newURI;
 					continue;
 				}
-				logger.log(Level.WARNING, String.format("Could not fetch “%s”!", uri), fe1);
-				return null;
+				if (fe1.getMode() == FetchException.TOO_BIG) {
+					throw new SoneLimitExceededException(String.format("“%s” is larger than %d bytes!", uri, maximumSize));
+				}
+				throw new SoneException(String.format("Could not fetch “%s”!", uri), fe1);
 			}
 		}
 	}
@@ -158,7 +193,9 @@ public class FreenetInterface {
 	}
 
 	/**
-	 * Inserts a directory into Freenet.
+	 * Starts inserting a directory into Freenet and returns immediately. The
+	 * outcome of the insert is reported to the given callback, on a thread of
+	 * the node.
 	 *
 	 * @param insertUri
 	 *            The insert URI
@@ -166,30 +203,87 @@ public class FreenetInterface {
 	 *            The directory entries
 	 * @param defaultFile
 	 *            The name of the default file
-	 * @return The generated URI
+	 * @param insertCallback
+	 *            The callback to notify when the insert has finished
+	 * @return The insert token that can be used to cancel the insert
 	 * @throws SoneException
-	 *             if an insert error occurs
+	 *             if the insert could not be started
 	 */
-	public FreenetURI insertDirectory(FreenetURI insertUri, HashMap<String, Object> manifestEntries, String defaultFile) throws SoneException {
+	public CallbackInsertToken insertDirectory(FreenetURI insertUri, HashMap<String, Object> manifestEntries, String defaultFile, InsertCallback insertCallback) throws SoneException {
+		CallbackInsertToken callbackInsertToken = new CallbackInsertToken(insertCallback);
 		try {
-			return client.insertManifest(insertUri, manifestEntries, defaultFile);
+			DefaultManifestPutter manifestPutter = new DefaultManifestPutter(callbackInsertToken, BaseManifestPutter.bucketsByNameToManifestEntries(manifestEntries), RequestStarter.INTERACTIVE_PRIORITY_CLASS, insertUri, defaultFile, client.getInsertContext(true), false, (HighLevelSimpleClientImpl) client, false, false, null, null, node.clientCore.clientContext);
+			callbackInsertToken.setClientPutter(manifestPutter);
+			node.clientCore.clientContext.start(manifestPutter);
+		} catch (Exception e1) {
+			/* creating and starting the putter can fail in various ways. */
+			throw new SoneException("Could not start directory insert.", e1);
+		}
+		return callbackInsertToken;
+	}
+
+	/**
+	 * Starts inserting the given data as a CHK and returns immediately. The
+	 * outcome of the insert is reported to the given callback, on a thread of
+	 * the node.
+	 *
+	 * @param bucket
+	 *            The data to insert
+	 * @param contentType
+	 *            The content type of the data
+	 * @param insertCallback
+	 *            The callback to notify when the insert has finished
+	 * @return The insert token that can be used to cancel the insert
+	 * @throws SoneException
+	 *             if the insert could not be started
+	 */
+	public CallbackInsertToken insertChk(Bucket bucket, String contentType, InsertCallback insertCallback) throws SoneException {
+		CallbackInsertToken callbackInsertToken = new CallbackInsertToken(insertCallback);
+		InsertBlock insertBlock = new InsertBlock(bucket, new ClientMetadata(contentType), FreenetURI.EMPTY_CHK_URI);
+		try {
+			ClientPutter clientPutter = client.insert(insertBlock, false, null, false, client.getInsertContext(true), callbackInsertToken, RequestStarter.INTERACTIVE_PRIORITY_CLASS);
+			callbackInsertToken.setClientPutter(clientPutter);
 		} catch (InsertException ie1) {
-			throw new SoneException(ie1);
+			throw new SoneInsertException("Could not start CHK insert.", ie1);
 		}
+		return callbackInsertToken;
+	}
+
+	/**
+	 * Creates a temporary bucket for data of unknown size. The node keeps the
+	 * data of the bucket in memory while it is small and moves it to a
+	 * temporary file once it grows beyond the node’s memory threshold.
+	 *
+	 * @return A new temporary bucket
+	 * @throws IOException
+	 *             if the bucket can not be created
+	 */
+	public Bucket createTemporaryBucket() throws IOException {
+		return node.clientCore.tempBucketFactory.makeBucket(-1);
 	}
 
 	/**
 	 * Registers the USK for the given Sone and notifies the given
-	 * {@link SoneDownloader} if an update was found.
+	 * {@link SoneDownloader} if an update was found. An existing registration
+	 * of the Sone is replaced. The node polls for updates with the priorities
+	 * of the given subscription tier.
 	 *
 	 * @param sone
 	 *            The Sone to watch
+	 * @param subscriptionTier
+	 *            The subscription tier of the Sone
+	 * @param backgroundPolling
+	 *            {@code true} to let the node poll for updates in the
+	 *            background, {@code false} to only check for updates once
 	 * @param soneDownloader
 	 *            The Sone download to notify on updates
 	 */
-	public void registerUsk(final Sone sone, final SoneDownloader soneDownloader) {
+	public void registerUsk(final Sone sone, SubscriptionTier subscriptionTier, boolean backgroundPolling, final SoneDownloader soneDownloader) {
+		unregisterUsk(sone);
+		final short pollingPriorityNormal = getPollingPriorityNormal(subscriptionTier);
+		final short pollingPriorityProgress = getPollingPriorityProgress(subscriptionTier);
 		try {
-			logger.log(Level.FINE, String.format("Registering Sone “%s” for USK updates at %s…", sone, sone.getRequestUri().setMetaString(new String[] { "sone.xml" })));
+			logger.log(Level.FINE, String.format("Registering Sone “%s” for USK updates at %s in tier %s…", sone, sone.getRequestUri().setMetaString(new String[] { "sone.xml" }), subscriptionTier));
 			USKCallback uskCallback = new USKCallback() {
 
 				@Override
@@ -198,28 +292,22 @@ public class FreenetInterface {
 					logger.log(Level.FINE, String.format("Found USK update for Sone “%s” at %s, new known good: %s, new slot too: %s.", sone, key, newKnownGood, newSlotToo));
 					if (edition > sone.getLatestEdition()) {
 						sone.setLatestEdition(edition);
-						new Thread(new Runnable() {
-
-							@Override
-							public void run() {
-								soneDownloader.fetchSone(sone);
-							}
-						}, "Sone Downloader").start();
+						soneDownloader.scheduleFetch(sone);
 					}
 				}
 
 				@Override
 				public short getPollingPriorityProgress() {
-					return RequestStarter.INTERACTIVE_PRIORITY_CLASS;
+					return pollingPriorityProgress;
 				}
 
 				@Override
 				public short getPollingPriorityNormal() {
-					return RequestStarter.INTERACTIVE_PRIORITY_CLASS;
+					return pollingPriorityNormal;
 				}
 			};
 			soneUskCallbacks.put(sone.getId(), uskCallback);
-			node.clientCore.uskManager.subscribe(USK.create(sone.getRequestUri()), uskCallback, (System.currentTimeMillis() - sone.getTime()) < 7 * 24 * 60 * 60 * 1000, (HighLevelSimpleClientImpl) client);
+			node.clientCore.uskManager.subscribe(USK.create(sone.getRequestUri()), uskCallback, backgroundPolling, (HighLevelSimpleClientImpl) client);
 		} catch (MalformedURLException mue1) {
 			logger.log(Level.WARNING, String.format("Could not subscribe USK “%s”!", sone.getRequestUri()), mue1);
 		}
@@ -299,6 +387,48 @@ public class FreenetInterface {
 		}
 	}
 
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the priority with which the node polls for updates of a Sone in
+	 * the given subscription tier.
+	 *
+	 * @param subscriptionTier
+	 *            The subscription tier
+	 * @return The normal polling priority
+	 */
+	private static short getPollingPriorityNormal(SubscriptionTier subscriptionTier) {
+		switch (subscriptionTier) {
+		case FOLLOWED:
+			return RequestStarter.INTERACTIVE_PRIORITY_CLASS;
+		case TRUSTED:
+			return RequestStarter.UPDATE_PRIORITY_CLASS;
+		default:
+			return RequestStarter.PREFETCH_PRIORITY_CLASS;
+		}
+	}
+
+	/**
+	 * Returns the priority with which the node polls for updates of a Sone in
+	 * the given subscription tier while it is making progress.
+	 *
+	 * @param subscriptionTier
+	 *            The subscription tier
+	 * @return The progress polling priority
+	 */
+	private static short getPollingPriorityProgress(SubscriptionTier subscriptionTier) {
+		switch (subscriptionTier) {
+		case FOLLOWED:
+			return RequestStarter.INTERACTIVE_PRIORITY_CLASS;
+		case TRUSTED:
+			return RequestStarter.IMMEDIATE_SPLITFILE_PRIORITY_CLASS;
+		default:
+			return RequestStarter.BULK_SPLITFILE_PRIORITY_CLASS;
+		}
+	}
+
 	/**
 	 * Callback for USK watcher events.
 	 *
@@ -323,6 +453,291 @@ public class FreenetInterface {
 
 	}
 
+	/**
+	 * Callback for asynchronous fetches.
+	 *
+	 * @see FreenetInterface#fetchUri(FreenetURI, long, FetchCallback)
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static interface FetchCallback {
+
+		/**
+		 * Notifies a listener that a fetch has succeeded. The listener is
+		 * responsible for freeing the bucket of the fetch result.
+		 *
+		 * @param uri
+		 *            The URI the data was fetched from, after following all
+		 *            redirects
+		 * @param fetchResult
+		 *            The result of the fetch
+		 */
+		public void fetchSucceeded(FreenetURI uri, FetchResult fetchResult);
+
+		/**
+		 * Notifies a listener that a fetch has failed.
+		 *
+		 * @param uri
+		 *            The URI that could not be fetched
+		 * @param soneException
+		 *            The reason of the failure; a
+		 *            {@link SoneLimitExceededException} if the data was too
+		 *            large
+		 */
+		public void fetchFailed(FreenetURI uri, SoneException soneException);
+
+	}
+
+	/**
+	 * Callback for asynchronous directory inserts.
+	 *
+	 * @see FreenetInterface#insertDirectory(FreenetURI, HashMap, String,
+	 *      InsertCallback)
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static interface InsertCallback {
+
+		/**
+		 * Notifies a listener that an insert has succeeded.
+		 *
+		 * @param uri
+		 *            The final URI of the inserted directory
+		 */
+		public void insertSucceeded(FreenetURI uri);
+
+		/**
+		 * Notifies a listener that an insert has failed.
+		 *
+		 * @param soneException
+		 *            The reason of the failure
+		 */
+		public void insertFailed(SoneException soneException);
+
+	}
+
+	/**
+	 * Fetch token that follows permanent redirects and can be used to cancel
+	 * a running fetch.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public class FetchToken implements ClientGetCallback {
+
+		/** The maximum size of the data. */
+		private final long maximumSize;
+
+		/** The callback to notify. */
+		private final FetchCallback fetchCallback;
+
+		/** The URI currently being fetched. */
+		private volatile FreenetURI currentUri;
+
+		/** The client getter of the current fetch. */
+		private volatile ClientGetter clientGetter;
+
+		/** Whether the fetch has been cancelled. */
+		private volatile boolean cancelled;
+
+		/**
+		 * Creates a new fetch token.
+		 *
+		 * @param maximumSize
+		 *            The maximum size of the data
+		 * @param fetchCallback
+		 *            The callback to notify
+		 */
+		private FetchToken(long maximumSize, FetchCallback fetchCallback) {
+			this.maximumSize = maximumSize;
+			this.fetchCallback = fetchCallback;
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Cancels the fetch. The callback will be notified of the failure.
+		 */
+		@SuppressWarnings("synthetic-access")
+		public void cancel() {
+			cancelled = true;
+			ClientGetter clientGetter = this.clientGetter;
+			if (clientGetter != null) {
+				clientGetter.cancel(null, node.clientCore.clientContext);
+			}
+		}
+
+		//
+		// PRIVATE METHODS
+		//
+
+		/**
+		 * Starts fetching the given URI.
+		 *
+		 * @param uri
+		 *            The URI to fetch
+		 */
+		@SuppressWarnings("synthetic-access")
+		private void start(FreenetURI uri) {
+			currentUri = uri;
+			FetchContext fetchContext = client.getFetchContext();
+			fetchContext.maxOutputLength = maximumSize;
+			fetchContext.maxTempLength = maximumSize;
+			try {
+				clientGetter = client.fetch(uri, maximumSize, (HighLevelSimpleClientImpl) client, this, fetchContext);
+			} catch (FetchException fe1) {
+				onFailure(fe1, null, null);
+			}
+		}
+
+		//
+		// INTERFACE ClientGetCallback
+		//
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onMajorProgress(ObjectContainer objectContainer) {
+			/* ignore, we don’t care. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onSuccess(FetchResult fetchResult, ClientGetter clientGetter, ObjectContainer objectContainer) {
+			fetchCallback.fetchSucceeded(currentUri, fetchResult);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onFailure(FetchException fetchException, ClientGetter clientGetter, ObjectContainer objectContainer) {
+			if ((fetchException.getMode() == FetchException.PERMANENT_REDIRECT) && !cancelled) {
+				start(fetchException.newURI);
+				return;
+			}
+			if (fetchException.getMode() == FetchException.TOO_BIG) {
+				fetchCallback.fetchFailed(currentUri, new SoneLimitExceededException(String.format("“%s” is larger than %d bytes!", currentUri, maximumSize)));
+				return;
+			}
+			fetchCallback.fetchFailed(currentUri, new SoneException(String.format("Could not fetch “%s”!", currentUri), fetchException));
+		}
+
+	}
+
+	/**
+	 * Insert token for inserts that report their outcome to an
+	 * {@link InsertCallback}. It can be used to cancel a running insert.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public class CallbackInsertToken implements ClientPutCallback {
+
+		/** The callback to notify. */
+		private final InsertCallback insertCallback;
+
+		/** The client putter. */
+		private volatile BaseClientPutter clientPutter;
+
+		/** The final URI. */
+		private volatile FreenetURI resultingUri;
+
+		/**
+		 * Creates a new callback insert token.
+		 *
+		 * @param insertCallback
+		 *            The callback to notify
+		 */
+		private CallbackInsertToken(InsertCallback insertCallback) {
+			this.insertCallback = insertCallback;
+		}
+
+		//
+		// ACCESSORS
+		//
+
+		/**
+		 * Sets the client putter that is running the insert.
+		 *
+		 * @param clientPutter
+		 *            The client putter
+		 */
+		private void setClientPutter(BaseClientPutter clientPutter) {
+			this.clientPutter = clientPutter;
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Cancels the running insert. The callback will be notified of the
+		 * failure.
+		 */
+		@SuppressWarnings("synthetic-access")
+		public void cancel() {
+			BaseClientPutter clientPutter = this.clientPutter;
+			if (clientPutter != null) {
+				clientPutter.cancel(null, node.clientCore.clientContext);
+			}
+		}
+
+		//
+		// INTERFACE ClientPutCallback
+		//
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onMajorProgress(ObjectContainer objectContainer) {
+			/* ignore, we don’t care. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onFailure(InsertException insertException, BaseClientPutter clientPutter, ObjectContainer objectContainer) {
+			insertCallback.insertFailed(new SoneException(insertException));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onFetchable(BaseClientPutter clientPutter, ObjectContainer objectContainer) {
+			/* ignore, we don’t care. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onGeneratedMetadata(Bucket metadata, BaseClientPutter clientPutter, ObjectContainer objectContainer) {
+			/* ignore, we don’t care. */
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onGeneratedURI(FreenetURI generatedUri, BaseClientPutter clientPutter, ObjectContainer objectContainer) {
+			resultingUri = generatedUri;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void onSuccess(BaseClientPutter clientPutter, ObjectContainer objectContainer) {
+			insertCallback.insertSucceeded(resultingUri);
+		}
+
+	}
+
 	/**
 	 * Insert token that can be used to add {@link ImageInsertListener}s and
 	 * cancel a running insert.
@@ -0,0 +1,694 @@
+/*
+ * Sone - KnownElements.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.sone.data.Id;
+import net.pterodactylus.util.collection.filter.Filter;
+import net.pterodactylus.util.io.Closer;
+import net.pterodactylus.util.logging.Logging;
+
+/**
+ * Stores the IDs of elements (Sones, posts, or replies) the user has already
+ * seen, together with the day each element was last seen. The elements are
+ * persisted in a log file: {@link #save()} only appends the changes since the
+ * last save, and the log is only rewritten once it has grown considerably
+ * larger than the number of stored elements. Elements that have not been
+ * seen for a given time can be {@link #expire(int, Filter) expired}.
+ * <p>
+ * In memory, IDs that can be {@link Id#getPackedLength() packed} are kept in
+ * sorted primitive arrays, so that a known post or reply only takes the 16
+ * bytes of its ID and the 4 bytes of its day.
+ * <p>
+ * Every line of the log contains either the day an element was last seen and
+ * its ID, separated by a space, or a “-” and the ID of a removed element.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class KnownElements {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(KnownElements.class);
+
+	/** The number of milliseconds per day. */
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000;
+
+	/** The log file. */
+	private final File logFile;
+
+	/** The known post and reply IDs. */
+	/* synchronize access on this object. */
+	private final PackedTable uuids = new PackedTable(2);
+
+	/** The known Sone IDs. */
+	/* synchronize access on this object. */
+	private final PackedTable routingKeys = new PackedTable(4);
+
+	/** The known IDs that can not be packed. */
+	/* synchronize access on this object. */
+	private final PackedTable texts = new PackedTable(0);
+
+	/** The log records that have not been written yet. */
+	/* synchronize access on this object. */
+	private List<String> pendingRecords = new ArrayList<String>();
+
+	/** The number of records in the log file. */
+	/* synchronize access on this object. */
+	private int logRecordCount;
+
+	/** Object used to serialize the writing of the log file. */
+	private final Object saveLock = new Object();
+
+	/**
+	 * Creates a new store for known elements.
+	 *
+	 * @param logFile
+	 *            The log file to persist the elements in
+	 */
+	public KnownElements(File logFile) {
+		this.logFile = logFile;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the element with the given ID is known.
+	 *
+	 * @param id
+	 *            The ID of the element
+	 * @return {@code true} if the element is known, {@code false} otherwise
+	 */
+	public synchronized boolean contains(Id id) {
+		return getTable(id).get(id) != PackedTable.NONE;
+	}
+
+	/**
+	 * Returns the number of known elements.
+	 *
+	 * @return The number of known elements
+	 */
+	public synchronized int size() {
+		return uuids.size() + routingKeys.size() + texts.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Marks the element with the given ID as known.
+	 *
+	 * @param id
+	 *            The ID of the element
+	 * @return {@code true} if the element was not known before, {@code false}
+	 *         otherwise
+	 */
+	public synchronized boolean add(Id id) {
+		int day = currentDay();
+		int oldDay = getTable(id).put(id, day);
+		if (day != oldDay) {
+			pendingRecords.add(day + " " + id);
+		}
+		return oldDay == PackedTable.NONE;
+	}
+
+	/**
+	 * Records that a known element has been seen today, preventing it from
+	 * being expired. Unknown elements are ignored.
+	 *
+	 * @param id
+	 *            The ID of the element
+	 */
+	public synchronized void touch(Id id) {
+		int day = currentDay();
+		PackedTable table = getTable(id);
+		int oldDay = table.get(id);
+		if ((oldDay == PackedTable.NONE) || (oldDay == day)) {
+			return;
+		}
+		table.put(id, day);
+		pendingRecords.add(day + " " + id);
+	}
+
+	/**
+	 * Marks the element with the given ID as not known.
+	 *
+	 * @param id
+	 *            The ID of the element
+	 * @return {@code true} if the element was known before, {@code false}
+	 *         otherwise
+	 */
+	public synchronized boolean remove(Id id) {
+		if (getTable(id).remove(id) == PackedTable.NONE) {
+			return false;
+		}
+		pendingRecords.add("- " + id);
+		return true;
+	}
+
+	/**
+	 * Removes all elements that have not been seen for the given number of
+	 * days. Elements that still exist according to the given filter are not
+	 * removed but marked as seen today.
+	 *
+	 * @param maximumAge
+	 *            The maximum number of days since an element was last seen
+	 * @param existingElementFilter
+	 *            Filter that returns {@code true} for the IDs of elements that
+	 *            still exist
+	 * @return The number of removed elements
+	 */
+	public int expire(int maximumAge, Filter<Id> existingElementFilter) {
+		int oldestDay = currentDay() - maximumAge;
+		List<Id> oldIds = new ArrayList<Id>();
+		synchronized (this) {
+			uuids.getIdsSeenBefore(oldestDay, oldIds);
+			routingKeys.getIdsSeenBefore(oldestDay, oldIds);
+			texts.getIdsSeenBefore(oldestDay, oldIds);
+		}
+		int removedElements = 0;
+		for (Id oldId : oldIds) {
+			if (existingElementFilter.filterObject(oldId)) {
+				touch(oldId);
+			} else if (remove(oldId)) {
+				++removedElements;
+			}
+		}
+		return removedElements;
+	}
+
+	/**
+	 * Loads the known elements from the log file.
+	 *
+	 * @return {@code true} if the log file exists and was read, {@code false}
+	 *         if there is no log file yet
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public boolean load() throws IOException {
+		BufferedReader logReader = null;
+		try {
+			logReader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), "UTF-8"));
+		} catch (FileNotFoundException fnfe1) {
+			return false;
+		}
+		try {
+			int recordCount = 0;
+			String line;
+			while ((line = logReader.readLine()) != null) {
+				++recordCount;
+				int space = line.indexOf(' ');
+				if ((space < 1) || (space == (line.length() - 1))) {
+					logger.log(Level.WARNING, String.format("Ignoring invalid record in %s: %s", logFile, line));
+					continue;
+				}
+				Id id = Id.valueOf(line.substring(space + 1));
+				String day = line.substring(0, space);
+				synchronized (this) {
+					if (day.equals("-")) {
+						getTable(id).remove(id);
+						continue;
+					}
+					try {
+						getTable(id).put(id, Integer.parseInt(day));
+					} catch (NumberFormatException nfe1) {
+						logger.log(Level.WARNING, String.format("Ignoring invalid record in %s: %s", logFile, line));
+					}
+				}
+			}
+			synchronized (this) {
+				logRecordCount = recordCount;
+			}
+			return true;
+		} finally {
+			Closer.close(logReader);
+		}
+	}
+
+	/**
+	 * Writes all changes since the last save to the log file. If the log file
+	 * contains a lot more records than there are known elements, it is
+	 * rewritten from scratch.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void save() throws IOException {
+		synchronized (saveLock) {
+			List<String> records;
+			List<PackedTable> tables = null;
+			synchronized (this) {
+				if (pendingRecords.isEmpty() && logFile.exists()) {
+					return;
+				}
+				records = pendingRecords;
+				pendingRecords = new ArrayList<String>();
+				if (!logFile.exists() || ((logRecordCount + records.size()) > (2 * size() + 1024))) {
+					tables = Arrays.asList(uuids.copy(), routingKeys.copy(), texts.copy());
+				}
+			}
+			boolean success = false;
+			try {
+				if (tables != null) {
+					compact(tables);
+				} else {
+					append(records);
+				}
+				success = true;
+			} finally {
+				if (!success) {
+					synchronized (this) {
+						records.addAll(pendingRecords);
+						pendingRecords = records;
+					}
+				}
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the table that stores the given ID.
+	 *
+	 * @param id
+	 *            The ID
+	 * @return The table for the ID
+	 */
+	private PackedTable getTable(Id id) {
+		switch (id.getPackedLength()) {
+		case 2:
+			return uuids;
+		case 4:
+			return routingKeys;
+		default:
+			return texts;
+		}
+	}
+
+	/**
+	 * Appends the given records to the log file.
+	 *
+	 * @param records
+	 *            The records to append
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void append(List<String> records) throws IOException {
+		Writer logWriter = null;
+		try {
+			logWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(logFile, true), "UTF-8"));
+			for (String record : records) {
+				logWriter.write(record);
+				logWriter.write('\n');
+			}
+			logWriter.flush();
+		} finally {
+			Closer.close(logWriter);
+		}
+		synchronized (this) {
+			logRecordCount += records.size();
+		}
+	}
+
+	/**
+	 * Rewrites the log file so that it contains exactly one record for every
+	 * element of the given tables. Changes that happen while the log is
+	 * rewritten are kept for the next save.
+	 *
+	 * @param tables
+	 *            Copies of the tables to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void compact(List<PackedTable> tables) throws IOException {
+		File temporaryLogFile = new File(logFile.getPath() + ".new");
+		Writer logWriter = null;
+		int recordCount = 0;
+		try {
+			logWriter = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temporaryLogFile), "UTF-8"));
+			for (PackedTable table : tables) {
+				recordCount += table.write(logWriter);
+			}
+			logWriter.flush();
+		} finally {
+			Closer.close(logWriter);
+		}
+		if (!temporaryLogFile.renameTo(logFile)) {
+			logFile.delete();
+			if (!temporaryLogFile.renameTo(logFile)) {
+				throw new IOException("Could not rename " + temporaryLogFile + " to " + logFile + "!");
+			}
+		}
+		synchronized (this) {
+			logRecordCount = recordCount;
+		}
+	}
+
+	/**
+	 * Returns the current day as the number of days since the epoch.
+	 *
+	 * @return The current day
+	 */
+	private static int currentDay() {
+		return (int) (System.currentTimeMillis() / MILLIS_PER_DAY);
+	}
+
+	/**
+	 * Table of IDs with the same {@link Id#getPackedLength() packed length}
+	 * and the days they were last seen. The packed IDs are kept sorted in a
+	 * single {@code long} array so that they can be found by a binary search.
+	 * New IDs are collected in a small map first and merged into the arrays
+	 * once the map has grown too large; removed IDs are only marked as removed
+	 * until the next merge. IDs that can not be packed are only kept in the
+	 * map.
+	 * <p>
+	 * This class is not thread-safe.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class PackedTable {
+
+		/** The day returned for unknown IDs, and stored for removed IDs. */
+		static final int NONE = Integer.MIN_VALUE;
+
+		/** The minimum number of unmerged IDs that triggers a merge. */
+		private static final int MINIMUM_MERGE_SIZE = 1024;
+
+		/** The number of {@code long}s per packed ID. */
+		private final int packedLength;
+
+		/** Compares IDs by their packed {@code long}s. */
+		private final Comparator<Id> packedIdComparator = new Comparator<Id>() {
+
+			@Override
+			public int compare(Id leftId, Id rightId) {
+				for (int index = 0; index < packedLength; ++index) {
+					long left = leftId.getPackedLong(index);
+					long right = rightId.getPackedLong(index);
+					if (left != right) {
+						return (left < right) ? -1 : 1;
+					}
+				}
+				return 0;
+			}
+		};
+
+		/** The sorted packed IDs. */
+		private long[] packedIds = new long[0];
+
+		/** The days of the sorted IDs, {@link #NONE} for removed IDs. */
+		private int[] days = new int[0];
+
+		/** The number of removed sorted IDs. */
+		private int removedCount;
+
+		/** The IDs that have not been merged into the sorted IDs yet. */
+		private final Map<Id, Integer> unmergedIds = new HashMap<Id, Integer>();
+
+		/**
+		 * Creates a new table.
+		 *
+		 * @param packedLength
+		 *            The number of {@code long}s per packed ID, {@code 0} for
+		 *            IDs that can not be packed
+		 */
+		public PackedTable(int packedLength) {
+			this.packedLength = packedLength;
+		}
+
+		//
+		// ACCESSORS
+		//
+
+		/**
+		 * Returns the number of IDs in this table.
+		 *
+		 * @return The number of IDs
+		 */
+		public int size() {
+			return days.length - removedCount + unmergedIds.size();
+		}
+
+		/**
+		 * Returns the day the given ID was last seen.
+		 *
+		 * @param id
+		 *            The ID
+		 * @return The day the ID was last seen, or {@link #NONE} if the ID is
+		 *         not in this table
+		 */
+		public int get(Id id) {
+			int index = indexOf(id);
+			if (index >= 0) {
+				return days[index];
+			}
+			Integer day = unmergedIds.get(id);
+			return (day == null) ? NONE : day;
+		}
+
+		/**
+		 * Adds all IDs that were last seen before the given day to the given
+		 * list.
+		 *
+		 * @param day
+		 *            The day
+		 * @param ids
+		 *            The list to add the IDs to
+		 */
+		public void getIdsSeenBefore(int day, List<Id> ids) {
+			for (int index = 0; index < days.length; ++index) {
+				if ((days[index] != NONE) && (days[index] < day)) {
+					ids.add(Id.valueOf(packedIds, index * packedLength, packedLength));
+				}
+			}
+			for (Entry<Id, Integer> unmergedId : unmergedIds.entrySet()) {
+				if (unmergedId.getValue() < day) {
+					ids.add(unmergedId.getKey());
+				}
+			}
+		}
+
+		//
+		// ACTIONS
+		//
+
+		/**
+		 * Stores the day the given ID was last seen.
+		 *
+		 * @param id
+		 *            The ID
+		 * @param day
+		 *            The day the ID was last seen
+		 * @return The day the ID was seen before, or {@link #NONE} if the ID
+		 *         was not in this table
+		 */
+		public int put(Id id, int day) {
+			int index = indexOf(id);
+			if (index >= 0) {
+				int oldDay = days[index];
+				days[index] = day;
+				if (oldDay == NONE) {
+					--removedCount;
+				}
+				return oldDay;
+			}
+			Integer oldDay = unmergedIds.put(id, day);
+			if ((packedLength > 0) && (unmergedIds.size() > Math.max(MINIMUM_MERGE_SIZE, days.length / 8))) {
+				merge();
+			}
+			return (oldDay == null) ? NONE : oldDay;
+		}
+
+		/**
+		 * Removes the given ID.
+		 *
+		 * @param id
+		 *            The ID to remove
+		 * @return The day the ID was last seen, or {@link #NONE} if the ID was
+		 *         not in this table
+		 */
+		public int remove(Id id) {
+			int index = indexOf(id);
+			if (index >= 0) {
+				int oldDay = days[index];
+				if (oldDay != NONE) {
+					days[index] = NONE;
+					++removedCount;
+				}
+				return oldDay;
+			}
+			Integer oldDay = unmergedIds.remove(id);
+			return (oldDay == null) ? NONE : oldDay;
+		}
+
+		/**
+		 * Returns a copy of this table.
+		 *
+		 * @return A copy of this table
+		 */
+		public PackedTable copy() {
+			PackedTable packedTable = new PackedTable(packedLength);
+			packedTable.packedIds = packedIds.clone();
+			packedTable.days = days.clone();
+			packedTable.removedCount = removedCount;
+			packedTable.unmergedIds.putAll(unmergedIds);
+			return packedTable;
+		}
+
+		/**
+		 * Writes a log record for every ID of this table to the given writer.
+		 *
+		 * @param writer
+		 *            The writer to write the records to
+		 * @return The number of written records
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 */
+		public int write(Writer writer) throws IOException {
+			int recordCount = 0;
+			for (int index = 0; index < days.length; ++index) {
+				if (days[index] == NONE) {
+					continue;
+				}
+				writer.write(days[index] + " " + Id.valueOf(packedIds, index * packedLength, packedLength));
+				writer.write('\n');
+				++recordCount;
+			}
+			for (Entry<Id, Integer> unmergedId : unmergedIds.entrySet()) {
+				writer.write(unmergedId.getValue() + " " + unmergedId.getKey());
+				writer.write('\n');
+				++recordCount;
+			}
+			return recordCount;
+		}
+
+		//
+		// PRIVATE METHODS
+		//
+
+		/**
+		 * Returns the index of the given ID in the sorted IDs.
+		 *
+		 * @param id
+		 *            The ID to find
+		 * @return The index of the ID, or {@code -1} if the sorted IDs do not
+		 *         contain the ID
+		 */
+		private int indexOf(Id id) {
+			if (packedLength == 0) {
+				return -1;
+			}
+			int low = 0;
+			int high = days.length - 1;
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				int comparison = compare(middle, id);
+				if (comparison < 0) {
+					low = middle + 1;
+				} else if (comparison > 0) {
+					high = middle - 1;
+				} else {
+					return middle;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Compares the sorted ID at the given index with the given ID.
+		 *
+		 * @param index
+		 *            The index of the sorted ID
+		 * @param id
+		 *            The ID to compare with
+		 * @return A negative number, zero, or a positive number if the sorted
+		 *         ID is less than, equal to, or greater than the given ID
+		 */
+		private int compare(int index, Id id) {
+			int offset = index * packedLength;
+			for (int longIndex = 0; longIndex < packedLength; ++longIndex) {
+				long packedLong = packedIds[offset + longIndex];
+				long idLong = id.getPackedLong(longIndex);
+				if (packedLong != idLong) {
+					return (packedLong < idLong) ? -1 : 1;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Merges the unmerged IDs into the sorted IDs, dropping all removed
+		 * IDs.
+		 */
+		private void merge() {
+			List<Id> newIds = new ArrayList<Id>(unmergedIds.keySet());
+			Collections.sort(newIds, packedIdComparator);
+			int newSize = days.length - removedCount + newIds.size();
+			long[] newPackedIds = new long[newSize * packedLength];
+			int[] newDays = new int[newSize];
+			int oldIndex = 0;
+			int newIdIndex = 0;
+			for (int index = 0; index < newSize; ++index) {
+				while ((oldIndex < days.length) && (days[oldIndex] == NONE)) {
+					++oldIndex;
+				}
+				if ((newIdIndex == newIds.size()) || ((oldIndex < days.length) && (compare(oldIndex, newIds.get(newIdIndex)) < 0))) {
+					System.arraycopy(packedIds, oldIndex * packedLength, newPackedIds, index * packedLength, packedLength);
+					newDays[index] = days[oldIndex++];
+				} else {
+					Id newId = newIds.get(newIdIndex++);
+					for (int longIndex = 0; longIndex < packedLength; ++longIndex) {
+						newPackedIds[index * packedLength + longIndex] = newId.getPackedLong(longIndex);
+					}
+					newDays[index] = unmergedIds.get(newId);
+				}
+			}
+			packedIds = newPackedIds;
+			days = newDays;
+			removedCount = 0;
+			unmergedIds.clear();
+		}
+
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Sone - LikeIndex.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.pterodactylus.sone.data.Sone;
+
+/**
+ * Inverted index from the ID of a liked element (a post or a reply) to the
+ * Sones that like it. Reading the likes of an element does not block and
+ * does not copy anything; the index is updated incrementally whenever the
+ * likes of a Sone change, replacing the immutable set of liking Sones of
+ * every changed element.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class LikeIndex {
+
+	/**
+	 * The liking Sones, indexed by the ID of the liked element. The sets are
+	 * never modified once they are stored in this map.
+	 */
+	/* modifications are synchronized on this map. */
+	private final ConcurrentMap<String, Set<Sone>> likes = new ConcurrentHashMap<String, Set<Sone>>();
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the Sones that like the element with the given ID. The returned
+	 * set is an unmodifiable snapshot that does not change when the likes of
+	 * the element change.
+	 *
+	 * @param elementId
+	 *            The ID of the liked element
+	 * @return The Sones that like the element with the given ID
+	 */
+	public Set<Sone> getLikes(String elementId) {
+		Set<Sone> sones = (elementId == null) ? null : likes.get(elementId);
+		return (sones == null) ? Collections.<Sone> emptySet() : sones;
+	}
+
+	/**
+	 * Returns the number of Sones that like the element with the given ID.
+	 *
+	 * @param elementId
+	 *            The ID of the liked element
+	 * @return The number of Sones that like the element
+	 */
+	public int getLikeCount(String elementId) {
+		Set<Sone> sones = (elementId == null) ? null : likes.get(elementId);
+		return (sones == null) ? 0 : sones.size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Records that the given Sone likes the element with the given ID.
+	 *
+	 * @param sone
+	 *            The liking Sone
+	 * @param elementId
+	 *            The ID of the liked element
+	 */
+	public void addLike(Sone sone, String elementId) {
+		synchronized (likes) {
+			Set<Sone> sones = likes.get(elementId);
+			if ((sones != null) && sones.contains(sone)) {
+				return;
+			}
+			Set<Sone> newSones = (sones == null) ? new HashSet<Sone>() : new HashSet<Sone>(sones);
+			newSones.add(sone);
+			likes.put(elementId, Collections.unmodifiableSet(newSones));
+		}
+	}
+
+	/**
+	 * Records that the given Sone does not like the element with the given ID
+	 * anymore.
+	 *
+	 * @param sone
+	 *            The Sone
+	 * @param elementId
+	 *            The ID of the element
+	 */
+	public void removeLike(Sone sone, String elementId) {
+		synchronized (likes) {
+			Set<Sone> sones = likes.get(elementId);
+			if ((sones == null) || !sones.contains(sone)) {
+				return;
+			}
+			if (sones.size() == 1) {
+				likes.remove(elementId);
+				return;
+			}
+			Set<Sone> newSones = new HashSet<Sone>(sones);
+			newSones.remove(sone);
+			likes.put(elementId, Collections.unmodifiableSet(newSones));
+		}
+	}
+
+	/**
+	 * Updates the likes of the given Sone. Only the difference between the old
+	 * and the new likes is applied to this index.
+	 *
+	 * @param sone
+	 *            The Sone whose likes changed
+	 * @param oldElementIds
+	 *            The IDs of the elements the Sone liked before
+	 * @param newElementIds
+	 *            The IDs of the elements the Sone likes now
+	 */
+	public void updateLikes(Sone sone, Collection<String> oldElementIds, Collection<String> newElementIds) {
+		Set<String> newElementIdSet = new HashSet<String>(newElementIds);
+		synchronized (likes) {
+			for (String oldElementId : oldElementIds) {
+				if (!newElementIdSet.contains(oldElementId)) {
+					removeLike(sone, oldElementId);
+				}
+			}
+			for (String newElementId : newElementIdSet) {
+				addLike(sone, newElementId);
+			}
+		}
+	}
+
+	/**
+	 * Removes all likes of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to remove
+	 * @param elementIds
+	 *            The IDs of the elements the Sone liked
+	 */
+	public void removeLikes(Sone sone, Collection<String> elementIds) {
+		synchronized (likes) {
+			for (String elementId : elementIds) {
+				removeLike(sone, elementId);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,168 @@
+/*
+ * Sone - LimitedInputStream.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Input stream that fails once more than a given number of bytes have been
+ * read from it, so that a decompressed document can not exceed the maximum
+ * size of a Sone.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+class LimitedInputStream extends FilterInputStream {
+
+	/** The maximum number of bytes to read. */
+	private final long limit;
+
+	/** The number of bytes read so far. */
+	private long count;
+
+	/** Whether the limit has been exceeded. */
+	private boolean exceeded;
+
+	/**
+	 * Creates a new limited input stream.
+	 *
+	 * @param inputStream
+	 *            The input stream to read from
+	 * @param limit
+	 *            The maximum number of bytes to read
+	 */
+	public LimitedInputStream(InputStream inputStream, long limit) {
+		super(inputStream);
+		this.limit = limit;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether more than the maximum number of bytes have been
+	 * read.
+	 *
+	 * @return {@code true} if the limit has been exceeded, {@code false}
+	 *         otherwise
+	 */
+	public boolean isExceeded() {
+		return exceeded;
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns a limited stream of the decoded document from the given stream
+	 * of fetched data. Documents compressed with gzip are recognized by their
+	 * magic number and decompressed while they are read; all other documents
+	 * are returned as they are. The limit applies to the decoded document.
+	 *
+	 * @param dataInputStream
+	 *            The stream of the fetched data
+	 * @param limit
+	 *            The maximum number of bytes of the decoded document
+	 * @return The limited stream of the decoded document
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static LimitedInputStream decodeDocument(InputStream dataInputStream, long limit) throws IOException {
+		BufferedInputStream bufferedInputStream = new BufferedInputStream(dataInputStream);
+		bufferedInputStream.mark(2);
+		int firstByte = bufferedInputStream.read();
+		int secondByte = bufferedInputStream.read();
+		bufferedInputStream.reset();
+		if ((firstByte == (GZIPInputStream.GZIP_MAGIC & 0xff)) && (secondByte == (GZIPInputStream.GZIP_MAGIC >> 8))) {
+			return new LimitedInputStream(new GZIPInputStream(bufferedInputStream), limit);
+		}
+		return new LimitedInputStream(bufferedInputStream, limit);
+	}
+
+	//
+	// FILTERINPUTSTREAM METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read() throws IOException {
+		int data = super.read();
+		if (data != -1) {
+			count(1);
+		}
+		return data;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int read = super.read(buffer, offset, length);
+		if (read > 0) {
+			count(read);
+		}
+		return read;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public long skip(long length) throws IOException {
+		long skipped = super.skip(length);
+		count(skipped);
+		return skipped;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Counts the given number of read bytes.
+	 *
+	 * @param read
+	 *            The number of read bytes
+	 * @throws IOException
+	 *             if the limit has been exceeded
+	 */
+	private void count(long read) throws IOException {
+		count += read;
+		if (count > limit) {
+			exceeded = true;
+			throw new IOException(String.format("More than %d bytes read!", limit));
+		}
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Sone - ProcessedEditions.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the last processed edition of every downloaded Sone together
+ * with the digest of its document, so that editions that have already been
+ * processed are not fetched again and documents that have not changed are
+ * not parsed again.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProcessedEditions {
+
+	/** The last processed editions, indexed by Sone ID. */
+	private final Map<String, ProcessedEdition> processedEditions = new ConcurrentHashMap<String, ProcessedEdition>();
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether the given edition of the Sone with the given ID, or a
+	 * later edition, has already been processed.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @param edition
+	 *            The edition, or {@code -1} if it is not known
+	 * @return {@code true} if the edition has already been processed,
+	 *         {@code false} otherwise
+	 */
+	public boolean isProcessed(String soneId, long edition) {
+		ProcessedEdition processedEdition = processedEditions.get(soneId);
+		return (processedEdition != null) && (edition > -1) && (edition <= processedEdition.getEdition());
+	}
+
+	/**
+	 * Returns whether a document with the given digest is the last processed
+	 * document of the Sone with the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @param digest
+	 *            The SHA-256 digest of the document (may be {@code null})
+	 * @return {@code true} if the document has not changed since it was last
+	 *         processed, {@code false} otherwise
+	 */
+	public boolean isUnchanged(String soneId, byte[] digest) {
+		ProcessedEdition processedEdition = processedEditions.get(soneId);
+		return (digest != null) && (processedEdition != null) && Arrays.equals(digest, processedEdition.getDigest());
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Stores the given edition as the last processed edition of the Sone with
+	 * the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @param edition
+	 *            The processed edition
+	 * @param digest
+	 *            The SHA-256 digest of the processed document
+	 */
+	public void setProcessed(String soneId, long edition, byte[] digest) {
+		processedEditions.put(soneId, new ProcessedEdition(edition, digest));
+	}
+
+	/**
+	 * Forgets the processed edition of the Sone with the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 */
+	public void remove(String soneId) {
+		processedEditions.remove(soneId);
+	}
+
+	/**
+	 * The last processed edition of a Sone and the digest of its document.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class ProcessedEdition {
+
+		/** The edition. */
+		private final long edition;
+
+		/** The SHA-256 digest of the document. */
+		private final byte[] digest;
+
+		/**
+		 * Creates a new processed edition.
+		 *
+		 * @param edition
+		 *            The edition
+		 * @param digest
+		 *            The SHA-256 digest of the document
+		 */
+		public ProcessedEdition(long edition, byte[] digest) {
+			this.edition = edition;
+			this.digest = digest;
+		}
+
+		/**
+		 * Returns the edition.
+		 *
+		 * @return The edition
+		 */
+		public long getEdition() {
+			return edition;
+		}
+
+		/**
+		 * Returns the digest of the document.
+		 *
+		 * @return The SHA-256 digest of the document
+		 */
+		public byte[] getDigest() {
+			return digest;
+		}
+
+	}
+
+}
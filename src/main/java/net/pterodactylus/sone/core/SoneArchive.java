@@ -0,0 +1,170 @@
+/*
+ * Sone - SoneArchive.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import freenet.keys.FreenetURI;
+
+/**
+ * Reference to an archive page of a Sone. An archive page contains all posts
+ * and replies of a Sone that were created in a single {@link #PERIOD period}.
+ * Once a period is over its archive page does not change anymore, so it is
+ * inserted only once, as a CHK, and referenced from every following edition
+ * of the Sone.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneArchive implements Comparable<SoneArchive> {
+
+	/** The length of the period covered by a single archive page. */
+	public static final long PERIOD = 30L * 24 * 60 * 60 * 1000;
+
+	/** The start of the period (inclusive). */
+	private final long startTime;
+
+	/** The end of the period (exclusive). */
+	private final long endTime;
+
+	/** The key of the archive page. */
+	private final FreenetURI key;
+
+	/**
+	 * Creates a new archive reference.
+	 *
+	 * @param startTime
+	 *            The start of the period (inclusive)
+	 * @param endTime
+	 *            The end of the period (exclusive)
+	 * @param key
+	 *            The key of the archive page
+	 */
+	public SoneArchive(long startTime, long endTime, FreenetURI key) {
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.key = key;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the start of the period covered by this archive page.
+	 *
+	 * @return The start of the period (inclusive)
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * Returns the end of the period covered by this archive page.
+	 *
+	 * @return The end of the period (exclusive)
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * Returns the key of this archive page.
+	 *
+	 * @return The key of the archive page
+	 */
+	public FreenetURI getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns whether the given time lies within the period of this archive
+	 * page.
+	 *
+	 * @param time
+	 *            The time to check
+	 * @return {@code true} if the time lies within the period of this archive
+	 *         page, {@code false} otherwise
+	 */
+	public boolean contains(long time) {
+		return (time >= startTime) && (time < endTime);
+	}
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Returns the start of the period that contains the given time.
+	 *
+	 * @param time
+	 *            The time
+	 * @return The start of the period containing the time
+	 */
+	public static long getPeriodStart(long time) {
+		return time - (time % PERIOD);
+	}
+
+	//
+	// INTERFACE Comparable
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int compareTo(SoneArchive soneArchive) {
+		if (startTime != soneArchive.startTime) {
+			return (startTime < soneArchive.startTime) ? -1 : 1;
+		}
+		if (endTime != soneArchive.endTime) {
+			return (endTime < soneArchive.endTime) ? -1 : 1;
+		}
+		return key.toString().compareTo(soneArchive.key.toString());
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (startTime ^ (startTime >>> 32)) ^ (int) (endTime ^ (endTime >>> 32)) ^ key.toString().hashCode();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(Object object) {
+		if (!(object instanceof SoneArchive)) {
+			return false;
+		}
+		SoneArchive soneArchive = (SoneArchive) object;
+		return (startTime == soneArchive.startTime) && (endTime == soneArchive.endTime) && key.toString().equals(soneArchive.key.toString());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return getClass().getName() + "[startTime=" + startTime + ",endTime=" + endTime + ",key=" + key + "]";
+	}
+
+}
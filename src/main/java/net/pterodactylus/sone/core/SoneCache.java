@@ -0,0 +1,312 @@
+/*
+ * Sone - SoneCache.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.util.io.Closer;
+import net.pterodactylus.util.logging.Logging;
+import freenet.keys.FreenetURI;
+
+/**
+ * Stores the last successfully parsed state of remote Sones on disk so that
+ * they are available immediately after a restart, before they have been
+ * downloaded again. Every Sone is stored in its own file, named after the ID
+ * of the Sone, that contains the ID and the edition of the Sone and the
+ * {@link SoneArchive archive pages} it references, followed by a
+ * {@link SoneSnapshot#writeSnapshot(Sone, java.io.DataOutput) snapshot} of the
+ * Sone, compressed with gzip. The archive pages of the stored state are kept
+ * in memory so that they do not have to be fetched again after a restart.
+ * <p>
+ * {@link #load()} only lists the stored Sones; a Sone is only read when it is
+ * {@link #read(Sone) requested}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneCache {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(SoneCache.class);
+
+	/** The magic number at the start of every file. */
+	private static final int MAGIC = 0x536f6e43;
+
+	/** The version of the file format. */
+	private static final int VERSION = 1;
+
+	/** The extension of the cache files. */
+	private static final String EXTENSION = ".sone";
+
+	/** The directory to store the Sones in. */
+	private final File directory;
+
+	/** The parser for the snapshots. */
+	private final SoneParser soneParser;
+
+	/** The stored editions, indexed by Sone ID; -1 if not yet known. */
+	private final ConcurrentMap<String, Long> editions = new ConcurrentHashMap<String, Long>();
+
+	/** The archive pages of the stored states, indexed by Sone ID. */
+	private final ConcurrentMap<String, Set<SoneArchive>> archives = new ConcurrentHashMap<String, Set<SoneArchive>>();
+
+	/**
+	 * Creates a new Sone cache.
+	 *
+	 * @param directory
+	 *            The directory to store the Sones in
+	 * @param soneParser
+	 *            The parser for the snapshots
+	 */
+	public SoneCache(File directory, SoneParser soneParser) {
+		this.directory = directory;
+		this.soneParser = soneParser;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns whether a state of the Sone with the given ID is stored.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @return {@code true} if the Sone is stored, {@code false} otherwise
+	 */
+	public boolean contains(String soneId) {
+		return editions.containsKey(soneId);
+	}
+
+	/**
+	 * Returns the archive pages referenced by the stored state of the Sone
+	 * with the given ID. The archive pages are only known once the Sone has
+	 * been {@link #read(Sone) read} or {@link #store(Sone, Collection)
+	 * stored}.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @return The archive pages of the stored state, or {@code null} if they
+	 *         are not known
+	 */
+	public Set<SoneArchive> getArchives(String soneId) {
+		return archives.get(soneId);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Lists the stored Sones. The Sones themselves are not read.
+	 */
+	public void load() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(EXTENSION)) {
+				editions.putIfAbsent(name.substring(0, name.length() - EXTENSION.length()), -1L);
+			}
+		}
+		logger.log(Level.INFO, String.format("Found %d cached Sones.", editions.size()));
+	}
+
+	/**
+	 * Reads the stored state of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to read
+	 * @return The stored state of the Sone, or {@code null} if the Sone is not
+	 *         stored or could not be read
+	 */
+	public Sone read(Sone sone) {
+		if (!contains(sone.getId())) {
+			return null;
+		}
+		File file = getFile(sone.getId());
+		DataInputStream dataInputStream = null;
+		try {
+			dataInputStream = new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+			if (dataInputStream.readInt() != MAGIC) {
+				logger.log(Level.WARNING, String.format("Cache file %s of Sone %s is not a cache file!", file, sone));
+				return null;
+			}
+			if (dataInputStream.readInt() != VERSION) {
+				logger.log(Level.INFO, String.format("Cache file %s of Sone %s has an old format, ignoring.", file, sone));
+				return null;
+			}
+			if (!dataInputStream.readUTF().equals(sone.getId())) {
+				logger.log(Level.WARNING, String.format("Cache file %s does not belong to Sone %s!", file, sone));
+				return null;
+			}
+			long edition = dataInputStream.readLong();
+			Set<SoneArchive> cachedArchives = readArchives(dataInputStream);
+			Sone cachedSone = SoneSnapshot.readSnapshot(soneParser, sone, dataInputStream);
+			if (cachedSone == null) {
+				logger.log(Level.WARNING, String.format("Cache file %s of Sone %s is not valid!", file, sone));
+				return null;
+			}
+			cachedSone.setLatestEdition(edition);
+			/* a newer state might have been stored in the meantime. */
+			if (editions.replace(sone.getId(), -1L, edition)) {
+				archives.put(sone.getId(), cachedArchives);
+			}
+			return cachedSone;
+		} catch (SoneLimitExceededException slee1) {
+			logger.log(Level.WARNING, String.format("Cache file %s of Sone %s exceeds the limits: %s", file, sone, slee1.getMessage()));
+			return null;
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, String.format("Could not read cache file %s of Sone %s!", file, sone), ioe1);
+			return null;
+		} finally {
+			Closer.close(dataInputStream);
+		}
+	}
+
+	/**
+	 * Stores the given Sone, unless a newer edition of the Sone is already
+	 * stored.
+	 *
+	 * @param sone
+	 *            The Sone to store
+	 * @param soneArchives
+	 *            The archive pages referenced by the Sone
+	 */
+	public void store(Sone sone, Collection<SoneArchive> soneArchives) {
+		Long storedEdition = editions.get(sone.getId());
+		if ((storedEdition != null) && (storedEdition >= sone.getLatestEdition())) {
+			return;
+		}
+		archives.put(sone.getId(), Collections.unmodifiableSet(new HashSet<SoneArchive>(soneArchives)));
+		if (!directory.exists() && !directory.mkdirs()) {
+			logger.log(Level.WARNING, String.format("Could not create cache directory %s!", directory));
+			return;
+		}
+		File file = getFile(sone.getId());
+		File temporaryFile = new File(directory, sone.getId() + EXTENSION + ".new");
+		DataOutputStream dataOutputStream = null;
+		try {
+			dataOutputStream = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(temporaryFile))));
+			dataOutputStream.writeInt(MAGIC);
+			dataOutputStream.writeInt(VERSION);
+			dataOutputStream.writeUTF(sone.getId());
+			dataOutputStream.writeLong(sone.getLatestEdition());
+			dataOutputStream.writeInt(soneArchives.size());
+			for (SoneArchive soneArchive : soneArchives) {
+				dataOutputStream.writeLong(soneArchive.getStartTime());
+				dataOutputStream.writeLong(soneArchive.getEndTime());
+				dataOutputStream.writeUTF(soneArchive.getKey().toString());
+			}
+			SoneSnapshot.writeSnapshot(sone, dataOutputStream);
+			dataOutputStream.close();
+			dataOutputStream = null;
+			if (!temporaryFile.renameTo(file)) {
+				file.delete();
+				if (!temporaryFile.renameTo(file)) {
+					throw new IOException("Could not rename " + temporaryFile + " to " + file + "!");
+				}
+			}
+			editions.put(sone.getId(), sone.getLatestEdition());
+		} catch (IOException ioe1) {
+			logger.log(Level.WARNING, String.format("Could not store Sone %s in cache!", sone), ioe1);
+			temporaryFile.delete();
+		} finally {
+			Closer.close(dataOutputStream);
+		}
+	}
+
+	/**
+	 * Removes the stored state of the Sone with the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone to remove
+	 */
+	public void remove(String soneId) {
+		editions.remove(soneId);
+		archives.remove(soneId);
+		File file = getFile(soneId);
+		if (file.exists() && !file.delete()) {
+			logger.log(Level.WARNING, String.format("Could not delete cache file %s!", file));
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the cache file of the Sone with the given ID.
+	 *
+	 * @param soneId
+	 *            The ID of the Sone
+	 * @return The cache file of the Sone
+	 */
+	private File getFile(String soneId) {
+		return new File(directory, soneId + EXTENSION);
+	}
+
+	/**
+	 * Reads the archive pages of a stored Sone from the given input stream.
+	 *
+	 * @param dataInputStream
+	 *            The input stream to read from
+	 * @return The archive pages
+	 * @throws IOException
+	 *             if an I/O error occurs, or the archive pages are not valid
+	 */
+	private static Set<SoneArchive> readArchives(DataInputStream dataInputStream) throws IOException {
+		int archiveCount = dataInputStream.readInt();
+		if ((archiveCount < 0) || (archiveCount > SoneParser.MAX_ARCHIVES)) {
+			throw new IOException("Invalid number of archives: " + archiveCount);
+		}
+		Set<SoneArchive> soneArchives = new HashSet<SoneArchive>();
+		for (int archiveIndex = 0; archiveIndex < archiveCount; ++archiveIndex) {
+			long startTime = dataInputStream.readLong();
+			long endTime = dataInputStream.readLong();
+			String key = dataInputStream.readUTF();
+			try {
+				soneArchives.add(new SoneArchive(startTime, endTime, new FreenetURI(key)));
+			} catch (MalformedURLException mue1) {
+				throw new IOException("Invalid archive key: " + key);
+			}
+		}
+		return Collections.unmodifiableSet(soneArchives);
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Sone - SoneDocument.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.sone.core.SoneParser.ParsedPost;
+import net.pterodactylus.sone.core.SoneParser.ParsedReply;
+import net.pterodactylus.sone.core.SoneParser.ParsedSone;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.PostReply;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.util.logging.Logging;
+
+/**
+ * The document of a Sone whose {@link SoneArchive archive pages} may not yet
+ * have been resolved. An archive page is resolved either by
+ * {@link SoneParser#readArchive(SoneDocument, SoneArchive, java.io.InputStream)
+ * reading} it or by {@link #copyArchive(SoneArchive, Sone, SoneLimits)
+ * copying} its posts and replies from an earlier state of the Sone; the Sone
+ * can only be {@link SoneParser#createSone(Sone, SoneDocument) created} once
+ * all archive pages have been resolved.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneDocument {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(SoneDocument.class);
+
+	/** The values read from the document. */
+	/* synchronize access on this document. */
+	private final ParsedSone parsedSone;
+
+	/** The archive pages referenced by the document. */
+	private final List<SoneArchive> archives;
+
+	/** The archive pages that have been resolved. */
+	/* synchronize access on this document. */
+	private final Set<SoneArchive> resolvedArchives = new HashSet<SoneArchive>();
+
+	/**
+	 * Creates a new Sone document.
+	 *
+	 * @param parsedSone
+	 *            The values read from the document
+	 * @param archives
+	 *            The archive pages referenced by the document
+	 */
+	SoneDocument(ParsedSone parsedSone, List<SoneArchive> archives) {
+		this.parsedSone = parsedSone;
+		this.archives = archives;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the values read from the document, including the posts and
+	 * replies of all archive pages resolved so far.
+	 *
+	 * @return The values of this document
+	 */
+	ParsedSone getParsedSone() {
+		return parsedSone;
+	}
+
+	/**
+	 * Returns the archive pages referenced by this document.
+	 *
+	 * @return The archive pages of this document
+	 */
+	public List<SoneArchive> getArchives() {
+		return Collections.unmodifiableList(archives);
+	}
+
+	/**
+	 * Returns the archive pages of this document that have not yet been
+	 * resolved.
+	 *
+	 * @return The unresolved archive pages of this document
+	 */
+	public synchronized List<SoneArchive> getUnresolvedArchives() {
+		List<SoneArchive> unresolvedArchives = new ArrayList<SoneArchive>();
+		for (SoneArchive archive : archives) {
+			if (!resolvedArchives.contains(archive)) {
+				unresolvedArchives.add(archive);
+			}
+		}
+		return unresolvedArchives;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Resolves an archive page of this document with the posts and replies
+	 * read from the archive page. All posts and replies of the archive page
+	 * have to lie within the period of the archive page.
+	 *
+	 * @param soneArchive
+	 *            The archive page
+	 * @param parsedArchive
+	 *            The values read from the archive page
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @return {@code true} if the archive page was resolved, {@code false} if
+	 *         it is not valid
+	 * @throws SoneLimitExceededException
+	 *             if the Sone exceeds one of the {@link SoneLimits}
+	 */
+	boolean addArchive(SoneArchive soneArchive, ParsedSone parsedArchive, SoneLimits soneLimits) throws SoneLimitExceededException {
+		List<ParsedPost> parsedPosts = (parsedArchive.posts != null) ? parsedArchive.posts : Collections.<ParsedPost> emptyList();
+		List<ParsedReply> parsedReplies = (parsedArchive.replies != null) ? parsedArchive.replies : Collections.<ParsedReply> emptyList();
+		for (ParsedPost parsedPost : parsedPosts) {
+			if (!isWithin(soneArchive, parsedPost.time)) {
+				logger.log(Level.WARNING, String.format("Archive %s contains post with invalid time: %s", soneArchive, parsedPost.time));
+				return false;
+			}
+		}
+		for (ParsedReply parsedReply : parsedReplies) {
+			if (!isWithin(soneArchive, parsedReply.time)) {
+				logger.log(Level.WARNING, String.format("Archive %s contains reply with invalid time: %s", soneArchive, parsedReply.time));
+				return false;
+			}
+		}
+		addArchive(soneArchive, parsedPosts, parsedReplies, soneLimits);
+		return true;
+	}
+
+	/**
+	 * Resolves an archive page of this document by copying the posts and
+	 * replies within the period of the archive page from an earlier state of
+	 * the Sone. This must only be used if the archive page has already been
+	 * read for the given state of the Sone.
+	 *
+	 * @param soneArchive
+	 *            The archive page to resolve
+	 * @param storedSone
+	 *            The earlier state of the Sone
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @throws SoneLimitExceededException
+	 *             if the Sone exceeds one of the {@link SoneLimits}
+	 */
+	public void copyArchive(SoneArchive soneArchive, Sone storedSone, SoneLimits soneLimits) throws SoneLimitExceededException {
+		List<ParsedPost> parsedPosts = new ArrayList<ParsedPost>();
+		for (Post post : storedSone.getPosts()) {
+			if (soneArchive.contains(post.getTime())) {
+				checkTextLength(post.getText(), soneLimits);
+				ParsedPost parsedPost = new ParsedPost();
+				parsedPost.id = post.getId();
+				parsedPost.recipient = (post.getRecipient() != null) ? post.getRecipient().getId() : null;
+				parsedPost.time = String.valueOf(post.getTime());
+				parsedPost.text = post.getText();
+				parsedPosts.add(parsedPost);
+			}
+		}
+		List<ParsedReply> parsedReplies = new ArrayList<ParsedReply>();
+		for (PostReply reply : storedSone.getReplies()) {
+			if (soneArchive.contains(reply.getTime())) {
+				checkTextLength(reply.getText(), soneLimits);
+				ParsedReply parsedReply = new ParsedReply();
+				parsedReply.id = reply.getId();
+				parsedReply.postId = reply.getPost().getId();
+				parsedReply.time = String.valueOf(reply.getTime());
+				parsedReply.text = reply.getText();
+				parsedReplies.add(parsedReply);
+			}
+		}
+		addArchive(soneArchive, parsedPosts, parsedReplies, soneLimits);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Adds the posts and replies of an archive page to this document and
+	 * marks the archive page as resolved.
+	 *
+	 * @param soneArchive
+	 *            The archive page
+	 * @param parsedPosts
+	 *            The posts of the archive page
+	 * @param parsedReplies
+	 *            The replies of the archive page
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @throws SoneLimitExceededException
+	 *             if the document would contain more posts or replies than
+	 *             allowed by the limits
+	 */
+	private synchronized void addArchive(SoneArchive soneArchive, List<ParsedPost> parsedPosts, List<ParsedReply> parsedReplies, SoneLimits soneLimits) throws SoneLimitExceededException {
+		if (parsedSone.posts == null) {
+			parsedSone.posts = new ArrayList<ParsedPost>();
+		}
+		if (parsedSone.replies == null) {
+			parsedSone.replies = new ArrayList<ParsedReply>();
+		}
+		if ((parsedSone.posts.size() + parsedPosts.size()) > soneLimits.getMaximumPosts()) {
+			throw new SoneLimitExceededException(String.format("More than %d posts!", soneLimits.getMaximumPosts()));
+		}
+		if ((parsedSone.replies.size() + parsedReplies.size()) > soneLimits.getMaximumReplies()) {
+			throw new SoneLimitExceededException(String.format("More than %d replies!", soneLimits.getMaximumReplies()));
+		}
+		parsedSone.posts.addAll(parsedPosts);
+		parsedSone.replies.addAll(parsedReplies);
+		resolvedArchives.add(soneArchive);
+	}
+
+	/**
+	 * Checks the length of a text copied from an earlier state of a Sone
+	 * against the current limits.
+	 *
+	 * @param text
+	 *            The text to check (may be {@code null})
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @throws SoneLimitExceededException
+	 *             if the text is longer than allowed by the limits
+	 */
+	private static void checkTextLength(String text, SoneLimits soneLimits) throws SoneLimitExceededException {
+		if ((text != null) && (text.length() > soneLimits.getMaximumTextLength())) {
+			throw new SoneLimitExceededException(String.format("Text is longer than %d characters!", soneLimits.getMaximumTextLength()));
+		}
+	}
+
+	/**
+	 * Returns whether the given time lies within the period of the given
+	 * archive page.
+	 *
+	 * @param soneArchive
+	 *            The archive page
+	 * @param time
+	 *            The time to check (may be {@code null})
+	 * @return {@code true} if the time is valid and lies within the period of
+	 *         the archive page, {@code false} otherwise
+	 */
+	private static boolean isWithin(SoneArchive soneArchive, String time) {
+		if (time == null) {
+			return false;
+		}
+		try {
+			return soneArchive.contains(Long.parseLong(time));
+		} catch (NumberFormatException nfe1) {
+			return false;
+		}
+	}
+
+}
@@ -17,32 +17,39 @@
 
 package net.pterodactylus.sone.core;
 
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.MalformedURLException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import net.pterodactylus.sone.data.Album;
-import net.pterodactylus.sone.data.Client;
-import net.pterodactylus.sone.data.Image;
-import net.pterodactylus.sone.data.Post;
-import net.pterodactylus.sone.data.PostReply;
-import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.core.FreenetInterface.FetchCallback;
+import net.pterodactylus.sone.core.FreenetInterface.FetchToken;
 import net.pterodactylus.sone.data.Sone;
 import net.pterodactylus.sone.data.Sone.SoneStatus;
 import net.pterodactylus.util.collection.Pair;
 import net.pterodactylus.util.io.Closer;
 import net.pterodactylus.util.logging.Logging;
-import net.pterodactylus.util.number.Numbers;
 import net.pterodactylus.util.service.AbstractService;
-import net.pterodactylus.util.xml.SimpleXML;
-import net.pterodactylus.util.xml.XML;
-
-import org.w3c.dom.Document;
+import net.pterodactylus.util.validation.Validation;
 
 import freenet.client.FetchResult;
 import freenet.keys.FreenetURI;
@@ -58,8 +65,14 @@ public class SoneDownloader extends AbstractService {
 	/** The logger. */
 	private static final Logger logger = Logging.getLogger(SoneDownloader.class);
 
-	/** The maximum protocol version. */
-	private static final int MAX_PROTOCOL_VERSION = 0;
+	/** The number of known Sones that are checked for updates at once. */
+	private static final int KNOWN_SONE_CHECK_BATCH_SIZE = 50;
+
+	/** The delay between two checks of known Sones, in minutes. */
+	private static final int KNOWN_SONE_CHECK_DELAY = 5;
+
+	/** The time after which a Sone is no longer considered active. */
+	private static final long ACTIVITY_TIMEOUT = 7 * 24 * 60 * 60 * 1000L;
 
 	/** The core. */
 	private final Core core;
@@ -67,8 +80,70 @@ public class SoneDownloader extends AbstractService {
 	/** The Freenet interface. */
 	private final FreenetInterface freenetInterface;
 
+	/** The cache for successfully parsed Sones. */
+	private final SoneCache soneCache;
+
+	/** The parser for downloaded Sones. */
+	private final SoneParser soneParser;
+
 	/** The sones to update. */
-	private final Set<Sone> sones = new HashSet<Sone>();
+	private final Set<Sone> sones = Collections.synchronizedSet(new HashSet<Sone>());
+
+	/** The subscription tiers of the Sones, indexed by Sone ID. */
+	private final Map<String, SubscriptionTier> subscriptionTiers = new ConcurrentHashMap<String, SubscriptionTier>();
+
+	/** Whether known Sones are only checked periodically. */
+	/* synchronize access on checkedSones. */
+	private boolean periodicKnownSoneChecks;
+
+	/** The known Sones that are currently being checked. */
+	/* synchronize access on itself. */
+	private final List<Sone> checkedSones = new ArrayList<Sone>();
+
+	/** The index of the next known Sone to check. */
+	/* synchronize access on checkedSones. */
+	private int nextKnownSoneCheck;
+
+	/** The rejected editions, indexed by the ID of their Sone. */
+	private final Map<String, Long> rejectedEditions = new ConcurrentHashMap<String, Long>();
+
+	/** The download health of all Sones, indexed by the ID of their Sone. */
+	private final ConcurrentMap<String, FetchHealth> fetchHealths = new ConcurrentHashMap<String, FetchHealth>();
+
+	/** The last processed editions. */
+	private final ProcessedEditions processedEditions = new ProcessedEditions();
+
+	/**
+	 * The executor that processes fetched Sones, with as many threads as
+	 * there are concurrent downloads.
+	 */
+	private final ThreadPoolExecutor parseExecutor;
+
+	/** The scheduler for downloads that are delayed after failures. */
+	private final ScheduledExecutorService delayedDownloadScheduler;
+
+	/** The downloads that have not yet been started, indexed by Sone ID. */
+	/* synchronize access on itself. */
+	private final Map<String, ScheduledDownload> scheduledDownloads = new HashMap<String, ScheduledDownload>();
+
+	/** The downloads that can be started, ordered by priority. */
+	/* synchronize access on scheduledDownloads. */
+	private final PriorityQueue<ScheduledDownload> downloadQueue = new PriorityQueue<ScheduledDownload>();
+
+	/** The IDs of the Sones that are currently being downloaded. */
+	/* synchronize access on scheduledDownloads. */
+	private final Set<String> runningDownloads = new HashSet<String>();
+
+	/** The maximum number of concurrent downloads. */
+	/* synchronize access on scheduledDownloads. */
+	private int concurrentDownloads = 1;
+
+	/** The tokens of the running fetches, indexed by Sone ID. */
+	private final Map<String, FetchToken> fetchTokens = new ConcurrentHashMap<String, FetchToken>();
+
+	/** Counter for the order of scheduled downloads of the same priority. */
+	/* synchronize access on scheduledDownloads. */
+	private long scheduledDownloadCounter;
 
 	/**
 	 * Creates a new Sone downloader.
@@ -77,11 +152,115 @@ public class SoneDownloader extends AbstractService {
 	 *            The core
 	 * @param freenetInterface
 	 *            The Freenet interface
+	 * @param soneCache
+	 *            The cache to store successfully parsed Sones in
 	 */
-	public SoneDownloader(Core core, FreenetInterface freenetInterface) {
+	public SoneDownloader(Core core, FreenetInterface freenetInterface, SoneCache soneCache) {
 		super("Sone Downloader", false);
 		this.core = core;
 		this.freenetInterface = freenetInterface;
+		this.soneCache = soneCache;
+		this.soneParser = new SoneParser(core.getPreferences());
+		this.parseExecutor = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "Sone Parser");
+			}
+
+		});
+		this.parseExecutor.allowCoreThreadTimeOut(true);
+		this.delayedDownloadScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				return new Thread(runnable, "Sone Download Scheduler");
+			}
+
+		});
+		this.delayedDownloadScheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				checkKnownSones();
+			}
+
+		}, KNOWN_SONE_CHECK_DELAY, KNOWN_SONE_CHECK_DELAY, TimeUnit.MINUTES);
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the download health of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to get the download health for
+	 * @return The download health of the Sone, or {@code null} if the Sone
+	 *         has not been downloaded yet
+	 */
+	public FetchHealth getFetchHealth(Sone sone) {
+		return fetchHealths.get(sone.getId());
+	}
+
+	/**
+	 * Sets the maximum number of Sones that are downloaded at the same time.
+	 * The same number of fetched Sones can be parsed at the same time.
+	 *
+	 * @param concurrentDownloads
+	 *            The maximum number of concurrent downloads
+	 */
+	public void setConcurrentDownloads(int concurrentDownloads) {
+		Validation.begin().isGreater("Concurrent Downloads", concurrentDownloads, 0).check();
+		synchronized (scheduledDownloads) {
+			this.concurrentDownloads = concurrentDownloads;
+			if (concurrentDownloads > parseExecutor.getMaximumPoolSize()) {
+				parseExecutor.setMaximumPoolSize(concurrentDownloads);
+				parseExecutor.setCorePoolSize(concurrentDownloads);
+			} else {
+				parseExecutor.setCorePoolSize(concurrentDownloads);
+				parseExecutor.setMaximumPoolSize(concurrentDownloads);
+			}
+		}
+		startQueuedDownloads();
+	}
+
+	/**
+	 * Returns the subscription tier of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to get the subscription tier for
+	 * @return The subscription tier of the Sone, or {@code null} if the Sone
+	 *         is not watched for updates
+	 */
+	public SubscriptionTier getSubscriptionTier(Sone sone) {
+		return subscriptionTiers.get(sone.getId());
+	}
+
+	/**
+	 * Sets whether Sones in the {@link SubscriptionTier#KNOWN} tier are
+	 * subscribed permanently or only checked for updates periodically, a
+	 * batch of Sones at a time.
+	 *
+	 * @param periodicKnownSoneChecks
+	 *            {@code true} to check known Sones periodically, {@code false}
+	 *            to subscribe them permanently
+	 */
+	public void setPeriodicKnownSoneChecks(boolean periodicKnownSoneChecks) {
+		synchronized (checkedSones) {
+			if (this.periodicKnownSoneChecks == periodicKnownSoneChecks) {
+				return;
+			}
+			this.periodicKnownSoneChecks = periodicKnownSoneChecks;
+			checkedSones.clear();
+		}
+		for (Sone sone : getSones()) {
+			if (subscriptionTiers.get(sone.getId()) == SubscriptionTier.KNOWN) {
+				subscribe(sone, SubscriptionTier.KNOWN);
+			}
+		}
 	}
 
 	//
@@ -95,14 +274,43 @@ public class SoneDownloader extends AbstractService {
 	 *            The Sone to add
 	 */
 	public void addSone(Sone sone) {
-		if (!sones.add(sone)) {
-			freenetInterface.unregisterUsk(sone);
+		sones.add(sone);
+		subscribe(sone, calculateSubscriptionTier(sone));
+	}
+
+	/**
+	 * Promotes or demotes the subscription of the given Sone if its relation
+	 * to the local Sones has changed. Nothing happens if the Sone is not
+	 * watched for updates.
+	 *
+	 * @param sone
+	 *            The Sone to update the subscription for
+	 */
+	public void updateSubscription(Sone sone) {
+		if (!sones.contains(sone)) {
+			return;
+		}
+		SubscriptionTier subscriptionTier = calculateSubscriptionTier(sone);
+		SubscriptionTier oldSubscriptionTier = subscriptionTiers.get(sone.getId());
+		if (subscriptionTier == oldSubscriptionTier) {
+			return;
 		}
-		freenetInterface.registerUsk(sone, this);
+		logger.log(Level.FINE, String.format("Moving Sone “%s” from tier %s to %s.", sone, oldSubscriptionTier, subscriptionTier));
+		subscribe(sone, subscriptionTier);
 	}
 
 	/**
-	 * Removes the given Sone from the downloader.
+	 * Promotes or demotes the subscriptions of all Sones whose relation to the
+	 * local Sones has changed.
+	 */
+	public void updateSubscriptions() {
+		for (Sone sone : getSones()) {
+			updateSubscription(sone);
+		}
+	}
+
+	/**
+	 * Removes the given Sone from the downloader and deletes its cached state.
 	 *
 	 * @param sone
 	 *            The Sone to stop watching
@@ -111,34 +319,75 @@ public class SoneDownloader extends AbstractService {
 		if (sones.remove(sone)) {
 			freenetInterface.unregisterUsk(sone);
 		}
+		subscriptionTiers.remove(sone.getId());
+		processedEditions.remove(sone.getId());
+		fetchHealths.remove(sone.getId());
+		soneCache.remove(sone.getId());
 	}
 
 	/**
-	 * Fetches the updated Sone. This method is a callback method for
-	 * {@link FreenetInterface#registerUsk(Sone, SoneDownloader)}.
+	 * Schedules a download of the latest known edition of the given Sone.
+	 * This method is a callback method for
+	 * {@link FreenetInterface#registerUsk(Sone, SubscriptionTier, boolean, SoneDownloader)}.
 	 *
+	 * @see #scheduleFetch(Sone, FreenetURI)
 	 * @param sone
 	 *            The Sone to fetch
 	 */
-	public void fetchSone(Sone sone) {
-		fetchSone(sone, sone.getRequestUri().sskForUSK());
+	public void scheduleFetch(Sone sone) {
+		scheduleFetch(sone, sone.getRequestUri().sskForUSK());
 	}
 
 	/**
-	 * Fetches the updated Sone. This method can be used to fetch a Sone from a
-	 * specific URI.
+	 * Schedules a download of the given Sone from the given URI. Only one
+	 * download per Sone is kept waiting; if a download of the Sone is already
+	 * waiting, its URI is replaced if the given URI has a newer edition. A
+	 * Sone is never downloaded more than once at the same time. Downloads are
+	 * run asynchronously by the node, so the number of
+	 * {@link #setConcurrentDownloads(int) concurrent downloads} does not
+	 * depend on the number of threads. Downloads of
+	 * Sones that are followed by a local Sone are started first, then
+	 * downloads of Sones that are trusted by a local Sone, then all others,
+	 * and then Sones whose downloads keep failing. After a failed download the
+	 * next download of the Sone is delayed according to its
+	 * {@link FetchHealth}.
 	 *
 	 * @param sone
 	 *            The Sone to fetch
 	 * @param soneUri
 	 *            The URI to fetch the Sone from
 	 */
-	public void fetchSone(Sone sone, FreenetURI soneUri) {
-		fetchSone(sone, soneUri, false);
+	public void scheduleFetch(Sone sone, FreenetURI soneUri) {
+		int priority = getPriority(sone);
+		ScheduledDownload scheduledDownload;
+		synchronized (scheduledDownloads) {
+			scheduledDownload = scheduledDownloads.get(sone.getId());
+			if (scheduledDownload != null) {
+				if (getEdition(soneUri) > getEdition(scheduledDownload.getSoneUri())) {
+					logger.log(Level.FINEST, String.format("Replacing scheduled download of Sone “%s” with %s.", sone, soneUri));
+					scheduledDownload.setSoneUri(soneUri);
+				}
+				return;
+			}
+			scheduledDownload = new ScheduledDownload(sone, soneUri, priority, scheduledDownloadCounter++);
+			scheduledDownloads.put(sone.getId(), scheduledDownload);
+			if (runningDownloads.contains(sone.getId())) {
+				/* will be started once the running download has finished. */
+				return;
+			}
+		}
+		startDownload(scheduledDownload);
 	}
 
 	/**
-	 * Fetches the Sone from the given URI.
+	 * Fetches the Sone from the given URI and waits for the fetch to finish.
+	 * If the edition of the Sone has been rejected before because it could
+	 * not be parsed or exceeded the {@link SoneLimits}, it is not fetched
+	 * again. Unless the Sone is only fetched, editions that are not newer
+	 * than the last processed edition are not fetched, a document that is
+	 * identical to the last processed document is not parsed, and the outcome
+	 * of the download is recorded in the {@link FetchHealth} of the Sone.
+	 * Archive pages referenced by the Sone are fetched one after the other.
 	 *
 	 * @param sone
 	 *            The Sone to fetch
@@ -151,369 +400,874 @@ public class SoneDownloader extends AbstractService {
 	 *         downloaded
 	 */
 	public Sone fetchSone(Sone sone, FreenetURI soneUri, boolean fetchOnly) {
+		long edition = getEdition(soneUri);
+		if (!isFetchNecessary(sone, edition, fetchOnly)) {
+			return null;
+		}
 		logger.log(Level.FINE, String.format("Starting fetch for Sone “%s” from %s…", sone, soneUri));
-		FreenetURI requestUri = soneUri.setMetaString(new String[] { "sone.xml" });
 		sone.setStatus(SoneStatus.downloading);
 		try {
-			Pair<FreenetURI, FetchResult> fetchResults = freenetInterface.fetchUri(requestUri);
-			if (fetchResults == null) {
-				/* TODO - mark Sone as bad. */
-				return null;
-			}
-			logger.log(Level.FINEST, String.format("Got %d bytes back.", fetchResults.getRight().size()));
-			Sone parsedSone = parseSone(sone, fetchResults.getRight(), fetchResults.getLeft());
-			if (parsedSone != null) {
-				if (!fetchOnly) {
-					core.updateSone(parsedSone);
-					addSone(parsedSone);
+			Pair<FreenetURI, FetchResult> fetchResults = null;
+			if (isCompressedDocumentAdvertised(sone)) {
+				try {
+					fetchResults = freenetInterface.fetchUri(getDocumentUri(soneUri, true), core.getPreferences().getSoneLimits().getMaximumSize());
+				} catch (SoneException se1) {
+					logger.log(Level.FINE, String.format("Could not fetch compressed document of Sone “%s”, fetching plain document…", sone), se1);
 				}
 			}
-			return parsedSone;
+			if (fetchResults == null) {
+				fetchResults = freenetInterface.fetchUri(getDocumentUri(soneUri, false), core.getPreferences().getSoneLimits().getMaximumSize());
+			}
+			return processFetchResult(sone, edition, fetchResults.getLeft(), fetchResults.getRight(), fetchOnly);
+		} catch (SoneException se1) {
+			processFetchFailure(sone, edition, se1, fetchOnly);
+			return null;
 		} finally {
 			sone.setStatus((sone.getTime() == 0) ? SoneStatus.unknown : SoneStatus.idle);
 		}
 	}
 
 	/**
-	 * Parses a Sone from a fetch result.
+	 * Parses a Sone from the given input stream and creates a new Sone from the
+	 * parsed data.
 	 *
 	 * @param originalSone
-	 *            The sone to parse, or {@code null} if the Sone is yet unknown
+	 *            The Sone to update
+	 * @param soneInputStream
+	 *            The input stream to parse the Sone from
+	 * @return The parsed Sone, or {@code null} if the Sone could not be parsed
+	 * @throws SoneLimitExceededException
+	 *             if the Sone exceeds one of the {@link SoneLimits}
+	 */
+	public Sone parseSone(Sone originalSone, InputStream soneInputStream) throws SoneLimitExceededException {
+		return soneParser.parseSone(originalSone, soneInputStream);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Returns the download health of the given Sone, creating it if the Sone
+	 * does not have one yet.
+	 *
+	 * @param sone
+	 *            The Sone to get the download health for
+	 * @return The download health of the Sone
+	 */
+	private FetchHealth getOrCreateFetchHealth(Sone sone) {
+		FetchHealth fetchHealth = fetchHealths.get(sone.getId());
+		if (fetchHealth == null) {
+			fetchHealth = new FetchHealth();
+			FetchHealth existingFetchHealth = fetchHealths.putIfAbsent(sone.getId(), fetchHealth);
+			if (existingFetchHealth != null) {
+				fetchHealth = existingFetchHealth;
+			}
+		}
+		return fetchHealth;
+	}
+
+	/**
+	 * Returns the edition of the given Sone URI.
+	 *
+	 * @param soneUri
+	 *            The URI of a Sone
+	 * @return The edition of the URI, or {@code -1} if the URI does not have
+	 *         an edition
+	 */
+	private static long getEdition(FreenetURI soneUri) {
+		try {
+			return soneUri.getEdition();
+		} catch (IllegalStateException ise1) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns whether the given edition of the given Sone has to be fetched.
+	 *
+	 * @param sone
+	 *            The Sone to fetch
+	 * @param edition
+	 *            The edition to fetch, or {@code -1} if the edition is not
+	 *            known
+	 * @param fetchOnly
+	 *            {@code true} if the Sone is only fetched and not updated
+	 * @return {@code true} if the edition has to be fetched, {@code false} if
+	 *         it has been rejected or processed before
+	 */
+	private boolean isFetchNecessary(Sone sone, long edition, boolean fetchOnly) {
+		Long rejectedEdition = rejectedEditions.get(sone.getId());
+		if ((rejectedEdition != null) && (rejectedEdition == edition)) {
+			logger.log(Level.FINE, String.format("Not fetching rejected edition %d of Sone “%s”.", edition, sone));
+			return false;
+		}
+		if (!fetchOnly && processedEditions.isProcessed(sone.getId(), edition)) {
+			logger.log(Level.FINE, String.format("Not fetching already processed edition %d of Sone “%s”.", edition, sone));
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Processes the result of a successful fetch of a Sone. Archive pages that
+	 * are referenced by the Sone and that have not been processed before are
+	 * fetched, waiting for each fetch to finish. The bucket of the fetch
+	 * result is freed.
+	 *
+	 * @param sone
+	 *            The fetched Sone
+	 * @param edition
+	 *            The requested edition, or {@code -1} if the edition was not
+	 *            known
+	 * @param fetchedUri
+	 *            The URI the Sone was fetched from
 	 * @param fetchResult
-	 *            The fetch result
-	 * @param requestUri
-	 *            The requested URI
+	 *            The result of the fetch
+	 * @param fetchOnly
+	 *            {@code true} to only parse the Sone, {@code false} to
+	 *            {@link Core#updateSone(Sone) update} it in the core
 	 * @return The parsed Sone, or {@code null} if the Sone could not be parsed
 	 */
-	public Sone parseSone(Sone originalSone, FetchResult fetchResult, FreenetURI requestUri) {
-		logger.log(Level.FINEST, String.format("Parsing FetchResult (%d bytes, %s) for %s…", fetchResult.size(), fetchResult.getMimeType(), originalSone));
-		Bucket soneBucket = fetchResult.asBucket();
-		InputStream soneInputStream = null;
+	private Sone processFetchResult(Sone sone, long edition, FreenetURI fetchedUri, FetchResult fetchResult, boolean fetchOnly) {
+		SoneDownload soneDownload = new SoneDownload(sone, edition, fetchedUri, fetchOnly);
+		if (isUnchanged(soneDownload, fetchResult)) {
+			return sone;
+		}
+		if (!readDocument(soneDownload, fetchResult)) {
+			return null;
+		}
+		List<SoneArchive> missingArchives;
 		try {
-			soneInputStream = soneBucket.getInputStream();
-			Sone parsedSone = parseSone(originalSone, soneInputStream);
-			if (parsedSone != null) {
-				parsedSone.setLatestEdition(requestUri.getEdition());
-				if (requestUri.getKeyType().equals("USK")) {
-					parsedSone.setRequestUri(requestUri.setMetaString(new String[0]));
-				} else {
-					parsedSone.setRequestUri(requestUri.setKeyType("USK").setDocName("Sone").setMetaString(new String[0]));
+			missingArchives = getMissingArchives(soneDownload);
+		} catch (SoneLimitExceededException slee1) {
+			failDownload(soneDownload, slee1);
+			return null;
+		}
+		for (SoneArchive archive : missingArchives) {
+			try {
+				Pair<FreenetURI, FetchResult> archiveResults = freenetInterface.fetchUri(archive.getKey(), core.getPreferences().getSoneLimits().getMaximumSize());
+				if (!readArchive(soneDownload, archive, archiveResults.getRight())) {
+					return null;
 				}
+			} catch (SoneException se1) {
+				failDownload(soneDownload, se1);
+				return null;
 			}
-			return parsedSone;
+		}
+		return completeDownload(soneDownload);
+	}
+
+	/**
+	 * Processes the result of a successful asynchronous fetch of a Sone. If
+	 * the Sone references archive pages that have not been processed before,
+	 * they are fetched asynchronously and the download is finished once all of
+	 * them have been processed. The bucket of the fetch result is freed.
+	 *
+	 * @param sone
+	 *            The fetched Sone
+	 * @param edition
+	 *            The requested edition, or {@code -1} if the edition was not
+	 *            known
+	 * @param fetchedUri
+	 *            The URI the Sone was fetched from
+	 * @param fetchResult
+	 *            The result of the fetch
+	 */
+	private void processFetchResult(Sone sone, long edition, FreenetURI fetchedUri, FetchResult fetchResult) {
+		SoneDownload soneDownload = new SoneDownload(sone, edition, fetchedUri, false);
+		boolean finished = true;
+		try {
+			if (isUnchanged(soneDownload, fetchResult) || !readDocument(soneDownload, fetchResult)) {
+				return;
+			}
+			List<SoneArchive> missingArchives;
+			try {
+				missingArchives = getMissingArchives(soneDownload);
+			} catch (SoneLimitExceededException slee1) {
+				failDownload(soneDownload, slee1);
+				return;
+			}
+			if (missingArchives.isEmpty()) {
+				completeDownload(soneDownload);
+				return;
+			}
+			finished = false;
+			fetchArchives(soneDownload, missingArchives);
+		} finally {
+			if (finished) {
+				finishDownload(sone);
+			}
+		}
+	}
+
+	/**
+	 * Checks whether the fetched document is identical to the last processed
+	 * document of the Sone. If it is, the fetch is recorded as successful and
+	 * the bucket of the fetch result is freed.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 * @param fetchResult
+	 *            The result of the fetch
+	 * @return {@code true} if the document is unchanged, {@code false}
+	 *         otherwise
+	 */
+	private boolean isUnchanged(SoneDownload soneDownload, FetchResult fetchResult) {
+		Sone sone = soneDownload.getSone();
+		long fetchedEdition = getEdition(soneDownload.getFetchedUri());
+		logger.log(Level.FINEST, String.format("Got %d bytes back.", fetchResult.size()));
+		if (soneDownload.isFetchOnly()) {
+			return false;
+		}
+		byte[] digest = getDigest(fetchResult);
+		soneDownload.setDigest(digest);
+		if (!processedEditions.isUnchanged(sone.getId(), digest)) {
+			return false;
+		}
+		logger.log(Level.FINE, String.format("Edition %d of Sone “%s” is unchanged, not parsing.", fetchedEdition, sone));
+		fetchResult.asBucket().free();
+		sone.setLatestEdition(fetchedEdition);
+		processedEditions.setProcessed(sone.getId(), fetchedEdition, digest);
+		getOrCreateFetchHealth(sone).recordSuccess();
+		return true;
+	}
+
+	/**
+	 * Reads the fetched document of a Sone. Compressed documents are
+	 * decompressed while they are read. If the document can not be read, the
+	 * download is rejected. The bucket of the fetch result is freed.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 * @param fetchResult
+	 *            The result of the fetch
+	 * @return {@code true} if the document was read, {@code false} otherwise
+	 */
+	private boolean readDocument(SoneDownload soneDownload, FetchResult fetchResult) {
+		logger.log(Level.FINEST, String.format("Parsing FetchResult (%d bytes, %s) for %s…", fetchResult.size(), fetchResult.getMimeType(), soneDownload.getSone()));
+		int maximumSize = core.getPreferences().getSoneLimits().getMaximumSize();
+		Bucket soneBucket = fetchResult.asBucket();
+		InputStream bucketInputStream = null;
+		LimitedInputStream soneInputStream = null;
+		try {
+			if (fetchResult.size() > maximumSize) {
+				throw new SoneLimitExceededException(String.format("Sone is larger than %d bytes!", maximumSize));
+			}
+			bucketInputStream = soneBucket.getInputStream();
+			soneInputStream = LimitedInputStream.decodeDocument(bucketInputStream, maximumSize);
+			SoneDocument soneDocument = soneParser.readDocument(soneDownload.getSone(), soneInputStream);
+			if (soneDocument != null) {
+				soneDownload.setSoneDocument(soneDocument);
+				return true;
+			}
+		} catch (SoneLimitExceededException slee1) {
+			failDownload(soneDownload, slee1);
+			return false;
 		} catch (Exception e1) {
-			logger.log(Level.WARNING, String.format("Could not parse Sone from %s!", requestUri), e1);
+			logger.log(Level.WARNING, String.format("Could not parse Sone from %s!", soneDownload.getFetchedUri()), e1);
 		} finally {
 			Closer.close(soneInputStream);
+			Closer.close(bucketInputStream);
 			soneBucket.free();
 		}
-		return null;
+		if ((soneInputStream != null) && soneInputStream.isExceeded()) {
+			failDownload(soneDownload, new SoneLimitExceededException(String.format("Sone is larger than %d bytes!", maximumSize)));
+			return false;
+		}
+		rejectDownload(soneDownload);
+		return false;
 	}
 
 	/**
-	 * Parses a Sone from the given input stream and creates a new Sone from the
-	 * parsed data.
+	 * Returns the archive pages of the downloaded document that have to be
+	 * fetched. Archive pages that have already been processed for the stored
+	 * state of the Sone are copied from the stored Sone instead.
 	 *
-	 * @param originalSone
-	 *            The Sone to update
-	 * @param soneInputStream
-	 *            The input stream to parse the Sone from
-	 * @return The parsed Sone
-	 * @throws SoneException
-	 *             if a parse error occurs, or the protocol is invalid
+	 * @param soneDownload
+	 *            The download of the Sone
+	 * @return The archive pages that have to be fetched
+	 * @throws SoneLimitExceededException
+	 *             if the copied archive pages exceed the limits
+	 */
+	private List<SoneArchive> getMissingArchives(SoneDownload soneDownload) throws SoneLimitExceededException {
+		Sone sone = soneDownload.getSone();
+		SoneDocument soneDocument = soneDownload.getSoneDocument();
+		Set<SoneArchive> knownArchives = soneDownload.isFetchOnly() ? null : soneCache.getArchives(sone.getId());
+		Sone storedSone = core.getSone(sone.getId(), false);
+		List<SoneArchive> missingArchives = new ArrayList<SoneArchive>();
+		for (SoneArchive archive : soneDocument.getArchives()) {
+			if ((knownArchives != null) && (storedSone != null) && knownArchives.contains(archive)) {
+				soneDocument.copyArchive(archive, storedSone, core.getPreferences().getSoneLimits());
+			} else {
+				missingArchives.add(archive);
+			}
+		}
+		if (!missingArchives.isEmpty()) {
+			logger.log(Level.FINE, String.format("Fetching %d of %d archives of Sone “%s”.", missingArchives.size(), soneDocument.getArchives().size(), sone));
+		}
+		return missingArchives;
+	}
+
+	/**
+	 * Starts asynchronous fetches of the given archive pages. The fetched
+	 * archive pages are read on the parse executor; once the last fetch has
+	 * finished, the download is completed and finished.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 * @param archives
+	 *            The archive pages to fetch
 	 */
-	public Sone parseSone(Sone originalSone, InputStream soneInputStream) throws SoneException {
-		/* TODO - impose a size limit? */
+	private void fetchArchives(final SoneDownload soneDownload, List<SoneArchive> archives) {
+		soneDownload.setPendingArchives(archives.size());
+		for (final SoneArchive archive : archives) {
+			freenetInterface.fetchUri(archive.getKey(), core.getPreferences().getSoneLimits().getMaximumSize(), new FetchCallback() {
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void fetchSucceeded(FreenetURI uri, final FetchResult fetchResult) {
+					try {
+						parseExecutor.execute(new Runnable() {
 
-		Document document;
-		/* XML parsing is not thread-safe. */
-		synchronized (this) {
-			document = XML.transformToDocument(soneInputStream);
+							@Override
+							public void run() {
+								try {
+									readArchive(soneDownload, archive, fetchResult);
+								} finally {
+									archiveFinished(soneDownload);
+								}
+							}
+						});
+					} catch (RejectedExecutionException ree1) {
+						/* the downloader has been stopped. */
+						fetchResult.asBucket().free();
+					}
+				}
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void fetchFailed(FreenetURI uri, SoneException soneException) {
+					try {
+						failDownload(soneDownload, soneException);
+					} finally {
+						archiveFinished(soneDownload);
+					}
+				}
+			});
 		}
-		if (document == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Could not parse XML for Sone %s!", originalSone));
-			return null;
+	}
+
+	/**
+	 * Marks the fetch of one archive page as finished. When the last archive
+	 * page has been processed, the download is completed on the parse
+	 * executor, unless it has failed, and finished.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 */
+	private void archiveFinished(final SoneDownload soneDownload) {
+		if (!soneDownload.archiveFinished()) {
+			return;
 		}
+		try {
+			parseExecutor.execute(new Runnable() {
 
-		Sone sone = new Sone(originalSone.getId()).setIdentity(originalSone.getIdentity());
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void run() {
+					try {
+						if (!soneDownload.isFailed()) {
+							completeDownload(soneDownload);
+						}
+					} finally {
+						finishDownload(soneDownload.getSone());
+					}
+				}
+			});
+		} catch (RejectedExecutionException ree1) {
+			/* the downloader has been stopped. */
+			finishDownload(soneDownload.getSone());
+		}
+	}
 
-		SimpleXML soneXml;
+	/**
+	 * Reads a fetched archive page of a Sone. Compressed archive pages are
+	 * decompressed while they are read. If the archive page can not be read,
+	 * the download fails. The bucket of the fetch result is freed.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 * @param archive
+	 *            The fetched archive page
+	 * @param fetchResult
+	 *            The result of the fetch
+	 * @return {@code true} if the archive page was read, {@code false}
+	 *         otherwise
+	 */
+	private boolean readArchive(SoneDownload soneDownload, SoneArchive archive, FetchResult fetchResult) {
+		int maximumSize = core.getPreferences().getSoneLimits().getMaximumSize();
+		Bucket archiveBucket = fetchResult.asBucket();
+		InputStream bucketInputStream = null;
+		LimitedInputStream archiveInputStream = null;
 		try {
-			soneXml = SimpleXML.fromDocument(document);
-		} catch (NullPointerException npe1) {
-			/* for some reason, invalid XML can cause NPEs. */
-			logger.log(Level.WARNING, String.format("XML for Sone %s can not be parsed!", sone), npe1);
+			if (soneDownload.isFailed()) {
+				return false;
+			}
+			bucketInputStream = archiveBucket.getInputStream();
+			archiveInputStream = LimitedInputStream.decodeDocument(bucketInputStream, maximumSize);
+			if (soneParser.readArchive(soneDownload.getSoneDocument(), archive, archiveInputStream)) {
+				return true;
+			}
+		} catch (SoneLimitExceededException slee1) {
+			failDownload(soneDownload, slee1);
+			return false;
+		} catch (Exception e1) {
+			logger.log(Level.WARNING, String.format("Could not parse archive from %s!", archive.getKey()), e1);
+		} finally {
+			Closer.close(archiveInputStream);
+			Closer.close(bucketInputStream);
+			archiveBucket.free();
+		}
+		if ((archiveInputStream != null) && archiveInputStream.isExceeded()) {
+			failDownload(soneDownload, new SoneLimitExceededException(String.format("Archive is larger than %d bytes!", maximumSize)));
+			return false;
+		}
+		rejectDownload(soneDownload);
+		return false;
+	}
+
+	/**
+	 * Creates the Sone from the completely resolved document and, unless the
+	 * Sone is only fetched, {@link Core#updateSone(Sone) updates} it in the
+	 * core.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 * @return The parsed Sone, or {@code null} if the Sone could not be parsed
+	 */
+	private Sone completeDownload(SoneDownload soneDownload) {
+		Sone sone = soneDownload.getSone();
+		FreenetURI fetchedUri = soneDownload.getFetchedUri();
+		Sone parsedSone = soneParser.createSone(sone, soneDownload.getSoneDocument());
+		if (parsedSone == null) {
+			rejectDownload(soneDownload);
 			return null;
 		}
+		parsedSone.setLatestEdition(fetchedUri.getEdition());
+		if (fetchedUri.getKeyType().equals("USK")) {
+			parsedSone.setRequestUri(fetchedUri.setMetaString(new String[0]));
+		} else {
+			parsedSone.setRequestUri(fetchedUri.setKeyType("USK").setDocName("Sone").setMetaString(new String[0]));
+		}
+		if (soneDownload.isFetchOnly()) {
+			return parsedSone;
+		}
+		getOrCreateFetchHealth(sone).recordSuccess();
+		core.updateSone(parsedSone);
+		addSone(parsedSone);
+		soneCache.store(parsedSone, soneDownload.getSoneDocument().getArchives());
+		if (soneDownload.getDigest() != null) {
+			processedEditions.setProcessed(sone.getId(), getEdition(fetchedUri), soneDownload.getDigest());
+		}
+		return parsedSone;
+	}
 
-		Integer protocolVersion = null;
-		String soneProtocolVersion = soneXml.getValue("protocol-version", null);
-		if (soneProtocolVersion != null) {
-			protocolVersion = Numbers.safeParseInteger(soneProtocolVersion);
+	/**
+	 * Rejects the downloaded edition of a Sone because it could not be
+	 * parsed. Only the first failure of a download is recorded.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 */
+	private void rejectDownload(SoneDownload soneDownload) {
+		if (!soneDownload.fail()) {
+			return;
 		}
-		if (protocolVersion == null) {
-			logger.log(Level.INFO, "No protocol version found, assuming 0.");
-			protocolVersion = 0;
+		if (soneDownload.getEdition() > -1) {
+			rejectedEditions.put(soneDownload.getSone().getId(), soneDownload.getEdition());
 		}
+		if (!soneDownload.isFetchOnly()) {
+			getOrCreateFetchHealth(soneDownload.getSone()).recordParseRejection("InvalidSone");
+		}
+	}
 
-		if (protocolVersion < 0) {
-			logger.log(Level.WARNING, String.format("Invalid protocol version: %d! Not parsing Sone.", protocolVersion));
-			return null;
+	/**
+	 * Records a failure of a download. Only the first failure of a download is
+	 * recorded.
+	 *
+	 * @param soneDownload
+	 *            The download of the Sone
+	 * @param soneException
+	 *            The reason of the failure
+	 */
+	private void failDownload(SoneDownload soneDownload, SoneException soneException) {
+		if (soneDownload.fail()) {
+			processFetchFailure(soneDownload.getSone(), soneDownload.getEdition(), soneException, soneDownload.isFetchOnly());
 		}
+	}
 
-		/* check for valid versions. */
-		if (protocolVersion > MAX_PROTOCOL_VERSION) {
-			logger.log(Level.WARNING, String.format("Unknown protocol version: %d! Not parsing Sone.", protocolVersion));
-			return null;
+	/**
+	 * Processes a failed fetch of a Sone.
+	 *
+	 * @param sone
+	 *            The Sone that could not be fetched
+	 * @param edition
+	 *            The requested edition, or {@code -1} if the edition was not
+	 *            known
+	 * @param soneException
+	 *            The reason of the failure
+	 * @param fetchOnly
+	 *            {@code true} if the Sone was only fetched and not updated
+	 */
+	private void processFetchFailure(Sone sone, long edition, SoneException soneException, boolean fetchOnly) {
+		FetchHealth fetchHealth = fetchOnly ? new FetchHealth() : getOrCreateFetchHealth(sone);
+		if (soneException instanceof SoneLimitExceededException) {
+			logger.log(Level.WARNING, String.format("Rejecting edition %d of Sone “%s”: %s", edition, sone, soneException.getMessage()));
+			if (edition > -1) {
+				rejectedEditions.put(sone.getId(), edition);
+			}
+			fetchHealth.recordParseRejection(soneException.getClass().getSimpleName());
+			return;
 		}
+		logger.log(Level.WARNING, String.format("Could not fetch edition %d of Sone “%s”!", edition, sone), soneException);
+		Throwable cause = (soneException.getCause() != null) ? soneException.getCause() : soneException;
+		fetchHealth.recordFailure(cause.getClass().getSimpleName());
+	}
 
-		String soneTime = soneXml.getValue("time", null);
-		if (soneTime == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Downloaded time for Sone %s was null!", sone));
-			return null;
+	/**
+	 * Starts the given download, delaying it until the end of the backoff of
+	 * the Sone’s {@link FetchHealth}.
+	 *
+	 * @param scheduledDownload
+	 *            The download to start
+	 */
+	private void startDownload(final ScheduledDownload scheduledDownload) {
+		FetchHealth fetchHealth = getFetchHealth(scheduledDownload.getSone());
+		long delay = (fetchHealth != null) ? (fetchHealth.getBackoffEnd() - System.currentTimeMillis()) : 0;
+		if (delay <= 0) {
+			queueDownload(scheduledDownload);
+			return;
 		}
+		logger.log(Level.FINE, String.format("Delaying download of Sone “%s” by %d ms.", scheduledDownload.getSone(), delay));
 		try {
-			sone.setTime(Long.parseLong(soneTime));
-		} catch (NumberFormatException nfe1) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Downloaded Sone %s with invalid time: %s", sone, soneTime));
-			return null;
-		}
+			delayedDownloadScheduler.schedule(new Runnable() {
 
-		SimpleXML clientXml = soneXml.getNode("client");
-		if (clientXml != null) {
-			String clientName = clientXml.getValue("name", null);
-			String clientVersion = clientXml.getValue("version", null);
-			if ((clientName == null) || (clientVersion == null)) {
-				logger.log(Level.WARNING, String.format("Download Sone %s with client XML but missing name or version!", sone));
-				return null;
-			}
-			sone.setClient(new Client(clientName, clientVersion));
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void run() {
+					queueDownload(scheduledDownload);
+				}
+
+			}, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException ree1) {
+			/* the downloader has been stopped. */
 		}
+	}
 
-		String soneRequestUri = soneXml.getValue("request-uri", null);
-		if (soneRequestUri != null) {
-			try {
-				sone.setRequestUri(new FreenetURI(soneRequestUri));
-			} catch (MalformedURLException mue1) {
-				/* TODO - mark Sone as bad. */
-				logger.log(Level.WARNING, String.format("Downloaded Sone %s has invalid request URI: %s", sone, soneRequestUri), mue1);
-				return null;
+	/**
+	 * Adds the given download to the download queue and starts as many queued
+	 * downloads as allowed.
+	 *
+	 * @param scheduledDownload
+	 *            The download to queue
+	 */
+	private void queueDownload(ScheduledDownload scheduledDownload) {
+		synchronized (scheduledDownloads) {
+			if (scheduledDownloads.get(scheduledDownload.getSone().getId()) != scheduledDownload) {
+				return;
 			}
+			downloadQueue.add(scheduledDownload);
 		}
+		startQueuedDownloads();
+	}
 
-		String soneInsertUri = soneXml.getValue("insert-uri", null);
-		if ((soneInsertUri != null) && (sone.getInsertUri() == null)) {
-			try {
-				sone.setInsertUri(new FreenetURI(soneInsertUri));
-				sone.setLatestEdition(Math.max(sone.getRequestUri().getEdition(), sone.getInsertUri().getEdition()));
-			} catch (MalformedURLException mue1) {
-				/* TODO - mark Sone as bad. */
-				logger.log(Level.WARNING, String.format("Downloaded Sone %s has invalid insert URI: %s", sone, soneInsertUri), mue1);
-				return null;
+	/**
+	 * Starts queued downloads, in the order of their priority, until the
+	 * maximum number of concurrent downloads is reached.
+	 */
+	private void startQueuedDownloads() {
+		List<ScheduledDownload> startedDownloads = new ArrayList<ScheduledDownload>();
+		synchronized (scheduledDownloads) {
+			while ((runningDownloads.size() < concurrentDownloads) && !downloadQueue.isEmpty()) {
+				ScheduledDownload scheduledDownload = downloadQueue.poll();
+				String soneId = scheduledDownload.getSone().getId();
+				if ((scheduledDownloads.get(soneId) != scheduledDownload) || runningDownloads.contains(soneId)) {
+					continue;
+				}
+				scheduledDownloads.remove(soneId);
+				runningDownloads.add(soneId);
+				startedDownloads.add(scheduledDownload);
 			}
 		}
+		/* start the fetches without holding the lock. */
+		for (ScheduledDownload startedDownload : startedDownloads) {
+			startFetch(startedDownload.getSone(), startedDownload.getSoneUri());
+		}
+	}
 
-		SimpleXML profileXml = soneXml.getNode("profile");
-		if (profileXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no profile!", sone));
-			return null;
+	/**
+	 * Starts an asynchronous fetch of the given Sone. The fetched Sone is
+	 * processed on the parse executor.
+	 *
+	 * @param sone
+	 *            The Sone to fetch
+	 * @param soneUri
+	 *            The URI to fetch the Sone from
+	 */
+	private void startFetch(Sone sone, FreenetURI soneUri) {
+		startFetch(sone, soneUri, isCompressedDocumentAdvertised(sone));
+	}
+
+	/**
+	 * Starts an asynchronous fetch of the given Sone. The fetched Sone is
+	 * processed on the parse executor. If the compressed document can not be
+	 * fetched, the plain document is fetched instead.
+	 *
+	 * @param sone
+	 *            The Sone to fetch
+	 * @param soneUri
+	 *            The URI to fetch the Sone from
+	 * @param compressed
+	 *            {@code true} to fetch the compressed document, {@code false}
+	 *            to fetch the plain document
+	 */
+	private void startFetch(final Sone sone, final FreenetURI soneUri, final boolean compressed) {
+		final long edition = getEdition(soneUri);
+		if (!isFetchNecessary(sone, edition, false)) {
+			finishDownload(sone);
+			return;
 		}
+		logger.log(Level.FINE, String.format("Starting fetch for Sone “%s” from %s…", sone, soneUri));
+		sone.setStatus(SoneStatus.downloading);
+		FetchToken fetchToken = freenetInterface.fetchUri(getDocumentUri(soneUri, compressed), core.getPreferences().getSoneLimits().getMaximumSize(), new FetchCallback() {
 
-		/* parse profile. */
-		String profileFirstName = profileXml.getValue("first-name", null);
-		String profileMiddleName = profileXml.getValue("middle-name", null);
-		String profileLastName = profileXml.getValue("last-name", null);
-		Integer profileBirthDay = Numbers.safeParseInteger(profileXml.getValue("birth-day", null));
-		Integer profileBirthMonth = Numbers.safeParseInteger(profileXml.getValue("birth-month", null));
-		Integer profileBirthYear = Numbers.safeParseInteger(profileXml.getValue("birth-year", null));
-		Profile profile = new Profile(sone).setFirstName(profileFirstName).setMiddleName(profileMiddleName).setLastName(profileLastName);
-		profile.setBirthDay(profileBirthDay).setBirthMonth(profileBirthMonth).setBirthYear(profileBirthYear);
-		/* avatar is processed after images are loaded. */
-		String avatarId = profileXml.getValue("avatar", null);
-
-		/* parse profile fields. */
-		SimpleXML profileFieldsXml = profileXml.getNode("fields");
-		if (profileFieldsXml != null) {
-			for (SimpleXML fieldXml : profileFieldsXml.getNodes("field")) {
-				String fieldName = fieldXml.getValue("field-name", null);
-				String fieldValue = fieldXml.getValue("field-value", "");
-				if (fieldName == null) {
-					logger.log(Level.WARNING, String.format("Downloaded profile field for Sone %s with missing data! Name: %s, Value: %s", sone, fieldName, fieldValue));
-					return null;
-				}
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void fetchSucceeded(final FreenetURI uri, final FetchResult fetchResult) {
 				try {
-					profile.addField(fieldName).setValue(fieldValue);
-				} catch (IllegalArgumentException iae1) {
-					logger.log(Level.WARNING, String.format("Duplicate field: %s", fieldName), iae1);
-					return null;
+					parseExecutor.execute(new Runnable() {
+
+						@Override
+						public void run() {
+							processFetchResult(sone, edition, uri, fetchResult);
+						}
+					});
+				} catch (RejectedExecutionException ree1) {
+					/* the downloader has been stopped. */
+					fetchResult.asBucket().free();
 				}
 			}
-		}
 
-		/* parse posts. */
-		SimpleXML postsXml = soneXml.getNode("posts");
-		Set<Post> posts = new HashSet<Post>();
-		if (postsXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no posts!", sone));
-		} else {
-			for (SimpleXML postXml : postsXml.getNodes("post")) {
-				String postId = postXml.getValue("id", null);
-				String postRecipientId = postXml.getValue("recipient", null);
-				String postTime = postXml.getValue("time", null);
-				String postText = postXml.getValue("text", null);
-				if ((postId == null) || (postTime == null) || (postText == null)) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, String.format("Downloaded post for Sone %s with missing data! ID: %s, Time: %s, Text: %s", sone, postId, postTime, postText));
-					return null;
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void fetchFailed(FreenetURI uri, SoneException soneException) {
+				if (compressed) {
+					logger.log(Level.FINE, String.format("Could not fetch compressed document of Sone “%s”, fetching plain document…", sone), soneException);
+					fetchTokens.remove(sone.getId());
+					startFetch(sone, soneUri, false);
+					return;
 				}
 				try {
-					Post post = core.getPost(postId).setSone(sone).setTime(Long.parseLong(postTime)).setText(postText);
-					if ((postRecipientId != null) && (postRecipientId.length() == 43)) {
-						post.setRecipient(core.getSone(postRecipientId));
-					}
-					posts.add(post);
-				} catch (NumberFormatException nfe1) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, String.format("Downloaded post for Sone %s with invalid time: %s", sone, postTime));
-					return null;
+					processFetchFailure(sone, edition, soneException, false);
+				} finally {
+					finishDownload(sone);
 				}
 			}
+		});
+		/* the fetch might already be finished or replaced by a fallback. */
+		synchronized (scheduledDownloads) {
+			if (runningDownloads.contains(sone.getId()) && !fetchTokens.containsKey(sone.getId())) {
+				fetchTokens.put(sone.getId(), fetchToken);
+			}
 		}
+	}
 
-		/* parse replies. */
-		SimpleXML repliesXml = soneXml.getNode("replies");
-		Set<PostReply> replies = new HashSet<PostReply>();
-		if (repliesXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no replies!", sone));
-		} else {
-			for (SimpleXML replyXml : repliesXml.getNodes("reply")) {
-				String replyId = replyXml.getValue("id", null);
-				String replyPostId = replyXml.getValue("post-id", null);
-				String replyTime = replyXml.getValue("time", null);
-				String replyText = replyXml.getValue("text", null);
-				if ((replyId == null) || (replyPostId == null) || (replyTime == null) || (replyText == null)) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, String.format("Downloaded reply for Sone %s with missing data! ID: %s, Post: %s, Time: %s, Text: %s", sone, replyId, replyPostId, replyTime, replyText));
-					return null;
-				}
-				try {
-					replies.add(core.getReply(replyId).setSone(sone).setPost(core.getPost(replyPostId)).setTime(Long.parseLong(replyTime)).setText(replyText));
-				} catch (NumberFormatException nfe1) {
-					/* TODO - mark Sone as bad. */
-					logger.log(Level.WARNING, String.format("Downloaded reply for Sone %s with invalid time: %s", sone, replyTime));
-					return null;
-				}
+	/**
+	 * Marks the download of the given Sone as finished, starts a download of
+	 * the Sone that has been scheduled in the meantime, and starts further
+	 * queued downloads.
+	 *
+	 * @param sone
+	 *            The Sone whose download has finished
+	 */
+	private void finishDownload(Sone sone) {
+		sone.setStatus((sone.getTime() == 0) ? SoneStatus.unknown : SoneStatus.idle);
+		ScheduledDownload nextDownload;
+		synchronized (scheduledDownloads) {
+			runningDownloads.remove(sone.getId());
+			fetchTokens.remove(sone.getId());
+			nextDownload = scheduledDownloads.get(sone.getId());
+		}
+		if (nextDownload != null) {
+			startDownload(nextDownload);
+		}
+		startQueuedDownloads();
+	}
+
+	/**
+	 * Returns the priority of downloads of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to download
+	 * @return {@code 0} if the Sone is followed by a local Sone, {@code 1} if
+	 *         it is trusted by a local Sone, {@code 3} if its downloads fail
+	 *         chronically, {@code 2} otherwise
+	 */
+	private int getPriority(Sone sone) {
+		FetchHealth fetchHealth = getFetchHealth(sone);
+		if ((fetchHealth != null) && fetchHealth.isFailingChronically()) {
+			return 3;
+		}
+		return calculateSubscriptionTier(sone).ordinal();
+	}
+
+	/**
+	 * Calculates the subscription tier of the given Sone from its relation to
+	 * the local Sones.
+	 *
+	 * @param sone
+	 *            The Sone to calculate the subscription tier for
+	 * @return The subscription tier of the Sone
+	 */
+	private SubscriptionTier calculateSubscriptionTier(Sone sone) {
+		SubscriptionTier subscriptionTier = SubscriptionTier.KNOWN;
+		for (Sone localSone : core.getLocalSones()) {
+			if (localSone.hasFriend(sone.getId())) {
+				return SubscriptionTier.FOLLOWED;
+			}
+			if ((sone.getIdentity() != null) && core.isSoneTrusted(localSone, sone)) {
+				subscriptionTier = SubscriptionTier.TRUSTED;
 			}
 		}
+		return subscriptionTier;
+	}
 
-		/* parse liked post IDs. */
-		SimpleXML likePostIdsXml = soneXml.getNode("post-likes");
-		Set<String> likedPostIds = new HashSet<String>();
-		if (likePostIdsXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no post likes!", sone));
-		} else {
-			for (SimpleXML likedPostIdXml : likePostIdsXml.getNodes("post-like")) {
-				String postId = likedPostIdXml.getValue();
-				likedPostIds.add(postId);
+	/**
+	 * Subscribes the given Sone in the given tier. Sones in the
+	 * {@link SubscriptionTier#KNOWN} tier are not subscribed if known Sones
+	 * are only checked periodically.
+	 *
+	 * @param sone
+	 *            The Sone to subscribe
+	 * @param subscriptionTier
+	 *            The subscription tier of the Sone
+	 */
+	private void subscribe(Sone sone, SubscriptionTier subscriptionTier) {
+		subscriptionTiers.put(sone.getId(), subscriptionTier);
+		synchronized (checkedSones) {
+			checkedSones.remove(sone);
+			if ((subscriptionTier == SubscriptionTier.KNOWN) && periodicKnownSoneChecks) {
+				freenetInterface.unregisterUsk(sone);
+				return;
 			}
+			boolean backgroundPolling = (subscriptionTier == SubscriptionTier.FOLLOWED) || ((System.currentTimeMillis() - sone.getTime()) < ACTIVITY_TIMEOUT);
+			freenetInterface.registerUsk(sone, subscriptionTier, backgroundPolling, this);
 		}
+	}
 
-		/* parse liked reply IDs. */
-		SimpleXML likeReplyIdsXml = soneXml.getNode("reply-likes");
-		Set<String> likedReplyIds = new HashSet<String>();
-		if (likeReplyIdsXml == null) {
-			/* TODO - mark Sone as bad. */
-			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no reply likes!", sone));
-		} else {
-			for (SimpleXML likedReplyIdXml : likeReplyIdsXml.getNodes("reply-like")) {
-				String replyId = likedReplyIdXml.getValue();
-				likedReplyIds.add(replyId);
-			}
-		}
-
-		/* parse albums. */
-		SimpleXML albumsXml = soneXml.getNode("albums");
-		List<Album> topLevelAlbums = new ArrayList<Album>();
-		if (albumsXml != null) {
-			for (SimpleXML albumXml : albumsXml.getNodes("album")) {
-				String id = albumXml.getValue("id", null);
-				String parentId = albumXml.getValue("parent", null);
-				String title = albumXml.getValue("title", null);
-				String description = albumXml.getValue("description", "");
-				String albumImageId = albumXml.getValue("album-image", null);
-				if ((id == null) || (title == null) || (description == null)) {
-					logger.log(Level.WARNING, String.format("Downloaded Sone %s contains invalid album!", sone));
-					return null;
-				}
-				Album parent = null;
-				if (parentId != null) {
-					parent = core.getAlbum(parentId, false);
-					if (parent == null) {
-						logger.log(Level.WARNING, String.format("Downloaded Sone %s has album with invalid parent!", sone));
-						return null;
-					}
-				}
-				Album album = core.getAlbum(id).setSone(sone).setTitle(title).setDescription(description);
-				if (parent != null) {
-					parent.addAlbum(album);
-				} else {
-					topLevelAlbums.add(album);
-				}
-				SimpleXML imagesXml = albumXml.getNode("images");
-				if (imagesXml != null) {
-					for (SimpleXML imageXml : imagesXml.getNodes("image")) {
-						String imageId = imageXml.getValue("id", null);
-						String imageCreationTimeString = imageXml.getValue("creation-time", null);
-						String imageKey = imageXml.getValue("key", null);
-						String imageTitle = imageXml.getValue("title", null);
-						String imageDescription = imageXml.getValue("description", "");
-						String imageWidthString = imageXml.getValue("width", null);
-						String imageHeightString = imageXml.getValue("height", null);
-						if ((imageId == null) || (imageCreationTimeString == null) || (imageKey == null) || (imageTitle == null) || (imageWidthString == null) || (imageHeightString == null)) {
-							logger.log(Level.WARNING, String.format("Downloaded Sone %s contains invalid images!", sone));
-							return null;
-						}
-						long creationTime = Numbers.safeParseLong(imageCreationTimeString, 0L);
-						int imageWidth = Numbers.safeParseInteger(imageWidthString, 0);
-						int imageHeight = Numbers.safeParseInteger(imageHeightString, 0);
-						if ((imageWidth < 1) || (imageHeight < 1)) {
-							logger.log(Level.WARNING, String.format("Downloaded Sone %s contains image %s with invalid dimensions (%s, %s)!", sone, imageId, imageWidthString, imageHeightString));
-							return null;
-						}
-						Image image = core.getImage(imageId).setSone(sone).setKey(imageKey).setCreationTime(creationTime);
-						image.setTitle(imageTitle).setDescription(imageDescription);
-						image.setWidth(imageWidth).setHeight(imageHeight);
-						album.addImage(image);
-					}
+	/**
+	 * Checks the next batch of Sones in the {@link SubscriptionTier#KNOWN}
+	 * tier for updates, if known Sones are only checked periodically. The
+	 * Sones of the previous batch are unsubscribed.
+	 */
+	private void checkKnownSones() {
+		synchronized (checkedSones) {
+			for (Sone checkedSone : checkedSones) {
+				freenetInterface.unregisterUsk(checkedSone);
+			}
+			checkedSones.clear();
+			if (!periodicKnownSoneChecks) {
+				return;
+			}
+			List<Sone> knownSones = new ArrayList<Sone>();
+			for (Sone sone : getSones()) {
+				if (subscriptionTiers.get(sone.getId()) == SubscriptionTier.KNOWN) {
+					knownSones.add(sone);
 				}
-				album.setAlbumImage(albumImageId);
 			}
+			if (knownSones.isEmpty()) {
+				return;
+			}
+			Collections.sort(knownSones, Sone.NICE_NAME_COMPARATOR);
+			int firstKnownSone = nextKnownSoneCheck % knownSones.size();
+			int batchSize = Math.min(KNOWN_SONE_CHECK_BATCH_SIZE, knownSones.size());
+			logger.log(Level.FINE, String.format("Checking %d of %d known Sones for updates.", batchSize, knownSones.size()));
+			for (int index = 0; index < batchSize; ++index) {
+				Sone knownSone = knownSones.get((firstKnownSone + index) % knownSones.size());
+				freenetInterface.registerUsk(knownSone, SubscriptionTier.KNOWN, true, this);
+				checkedSones.add(knownSone);
+			}
+			nextKnownSoneCheck = firstKnownSone + batchSize;
 		}
+	}
 
-		/* process avatar. */
-		if (avatarId != null) {
-			profile.setAvatar(core.getImage(avatarId, false));
+	/**
+	 * Returns a copy of the Sones that are watched for updates.
+	 *
+	 * @return The watched Sones
+	 */
+	private Set<Sone> getSones() {
+		synchronized (sones) {
+			return new HashSet<Sone>(sones);
 		}
+	}
 
-		/* okay, apparently everything was parsed correctly. Now import. */
-		/* atomic setter operation on the Sone. */
-		synchronized (sone) {
-			sone.setProfile(profile);
-			sone.setPosts(posts);
-			sone.setReplies(replies);
-			sone.setLikePostIds(likedPostIds);
-			sone.setLikeReplyIds(likedReplyIds);
-			sone.setAlbums(topLevelAlbums);
-		}
+	/**
+	 * Returns whether the given Sone advertises that its editions contain the
+	 * compressed document {@code sone.xml.gz}.
+	 *
+	 * @param sone
+	 *            The Sone to check
+	 * @return {@code true} if the Sone advertises the compressed document,
+	 *         {@code false} otherwise
+	 */
+	private static boolean isCompressedDocumentAdvertised(Sone sone) {
+		return (sone.getIdentity() != null) && "true".equals(sone.getIdentity().getProperty("Sone.CompressedDocument"));
+	}
 
-		return sone;
+	/**
+	 * Returns the URI of the document of a Sone edition.
+	 *
+	 * @param soneUri
+	 *            The URI of the Sone edition
+	 * @param compressed
+	 *            {@code true} for the compressed document, {@code false} for
+	 *            the plain document
+	 * @return The URI of the document
+	 */
+	private static FreenetURI getDocumentUri(FreenetURI soneUri, boolean compressed) {
+		return soneUri.setMetaString(new String[] { compressed ? "sone.xml.gz" : "sone.xml" });
+	}
+
+	/**
+	 * Calculates the SHA-256 digest of the data of the given fetch result.
+	 *
+	 * @param fetchResult
+	 *            The fetch result
+	 * @return The digest of the data, or {@code null} if the data can not be
+	 *         read
+	 */
+	private static byte[] getDigest(FetchResult fetchResult) {
+		InputStream dataInputStream = null;
+		try {
+			MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+			dataInputStream = fetchResult.asBucket().getInputStream();
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = dataInputStream.read(buffer)) != -1) {
+				messageDigest.update(buffer, 0, read);
+			}
+			return messageDigest.digest();
+		} catch (NoSuchAlgorithmException nsae1) {
+			/* every Java implementation has to support SHA-256. */
+			logger.log(Level.SEVERE, "SHA-256 is not available!", nsae1);
+		} catch (IOException ioe1) {
+			logger.log(Level.FINE, "Could not read fetched data!", ioe1);
+		} finally {
+			Closer.close(dataInputStream);
+		}
+		return null;
 	}
 
 	//
@@ -525,9 +1279,267 @@ public class SoneDownloader extends AbstractService {
 	 */
 	@Override
 	protected void serviceStop() {
-		for (Sone sone : sones) {
+		for (Sone sone : getSones()) {
 			freenetInterface.unregisterUsk(sone);
 		}
+		delayedDownloadScheduler.shutdownNow();
+		for (FetchToken fetchToken : fetchTokens.values()) {
+			fetchToken.cancel();
+		}
+		parseExecutor.shutdown();
+	}
+
+	/**
+	 * A download of a Sone that is waiting in the download queue.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class ScheduledDownload implements Comparable<ScheduledDownload> {
+
+		/** The Sone to download. */
+		private final Sone sone;
+
+		/** The URI to download the Sone from. */
+		/* synchronize access on scheduledDownloads. */
+		private FreenetURI soneUri;
+
+		/** The priority of the download, lower values come first. */
+		private final int priority;
+
+		/** The order of the download within its priority. */
+		private final long order;
+
+		/**
+		 * Creates a new scheduled download.
+		 *
+		 * @param sone
+		 *            The Sone to download
+		 * @param soneUri
+		 *            The URI to download the Sone from
+		 * @param priority
+		 *            The priority of the download
+		 * @param order
+		 *            The order of the download within its priority
+		 */
+		public ScheduledDownload(Sone sone, FreenetURI soneUri, int priority, long order) {
+			this.sone = sone;
+			this.soneUri = soneUri;
+			this.priority = priority;
+			this.order = order;
+		}
+
+		/**
+		 * Returns the Sone to download.
+		 *
+		 * @return The Sone to download
+		 */
+		public Sone getSone() {
+			return sone;
+		}
+
+		/**
+		 * Returns the URI to download the Sone from.
+		 *
+		 * @return The URI of the Sone
+		 */
+		public FreenetURI getSoneUri() {
+			return soneUri;
+		}
+
+		/**
+		 * Sets the URI to download the Sone from.
+		 *
+		 * @param soneUri
+		 *            The URI of the Sone
+		 */
+		public void setSoneUri(FreenetURI soneUri) {
+			this.soneUri = soneUri;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int compareTo(ScheduledDownload scheduledDownload) {
+			if (priority != scheduledDownload.priority) {
+				return (priority < scheduledDownload.priority) ? -1 : 1;
+			}
+			return (order < scheduledDownload.order) ? -1 : ((order > scheduledDownload.order) ? 1 : 0);
+		}
+
+	}
+
+	/**
+	 * The state of a single download of a Sone whose document has been
+	 * fetched, while its archive pages are being resolved.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class SoneDownload {
+
+		/** The downloaded Sone. */
+		private final Sone sone;
+
+		/** The requested edition, or {@code -1} if it was not known. */
+		private final long edition;
+
+		/** The URI the Sone was fetched from. */
+		private final FreenetURI fetchedUri;
+
+		/** Whether the Sone is only fetched and not updated. */
+		private final boolean fetchOnly;
+
+		/** The digest of the fetched document. */
+		private byte[] digest;
+
+		/** The fetched document. */
+		private SoneDocument soneDocument;
+
+		/** The number of archive pages that are still being fetched. */
+		/* synchronize access on this. */
+		private int pendingArchives;
+
+		/** Whether the download has failed. */
+		/* synchronize access on this. */
+		private boolean failed;
+
+		/**
+		 * Creates a new Sone download.
+		 *
+		 * @param sone
+		 *            The downloaded Sone
+		 * @param edition
+		 *            The requested edition, or {@code -1} if it was not known
+		 * @param fetchedUri
+		 *            The URI the Sone was fetched from
+		 * @param fetchOnly
+		 *            Whether the Sone is only fetched and not updated
+		 */
+		public SoneDownload(Sone sone, long edition, FreenetURI fetchedUri, boolean fetchOnly) {
+			this.sone = sone;
+			this.edition = edition;
+			this.fetchedUri = fetchedUri;
+			this.fetchOnly = fetchOnly;
+		}
+
+		/**
+		 * Returns the downloaded Sone.
+		 *
+		 * @return The downloaded Sone
+		 */
+		public Sone getSone() {
+			return sone;
+		}
+
+		/**
+		 * Returns the requested edition.
+		 *
+		 * @return The requested edition, or {@code -1} if it was not known
+		 */
+		public long getEdition() {
+			return edition;
+		}
+
+		/**
+		 * Returns the URI the Sone was fetched from.
+		 *
+		 * @return The fetched URI
+		 */
+		public FreenetURI getFetchedUri() {
+			return fetchedUri;
+		}
+
+		/**
+		 * Returns whether the Sone is only fetched and not updated.
+		 *
+		 * @return {@code true} if the Sone is only fetched, {@code false}
+		 *         otherwise
+		 */
+		public boolean isFetchOnly() {
+			return fetchOnly;
+		}
+
+		/**
+		 * Returns the digest of the fetched document.
+		 *
+		 * @return The digest of the document, or {@code null} if it is not
+		 *         known
+		 */
+		public byte[] getDigest() {
+			return digest;
+		}
+
+		/**
+		 * Sets the digest of the fetched document.
+		 *
+		 * @param digest
+		 *            The digest of the document
+		 */
+		public void setDigest(byte[] digest) {
+			this.digest = digest;
+		}
+
+		/**
+		 * Returns the fetched document.
+		 *
+		 * @return The fetched document
+		 */
+		public SoneDocument getSoneDocument() {
+			return soneDocument;
+		}
+
+		/**
+		 * Sets the fetched document.
+		 *
+		 * @param soneDocument
+		 *            The fetched document
+		 */
+		public void setSoneDocument(SoneDocument soneDocument) {
+			this.soneDocument = soneDocument;
+		}
+
+		/**
+		 * Sets the number of archive pages that are being fetched.
+		 *
+		 * @param pendingArchives
+		 *            The number of archive pages being fetched
+		 */
+		public synchronized void setPendingArchives(int pendingArchives) {
+			this.pendingArchives = pendingArchives;
+		}
+
+		/**
+		 * Marks the fetch of one archive page as finished.
+		 *
+		 * @return {@code true} if this was the last pending archive page,
+		 *         {@code false} otherwise
+		 */
+		public synchronized boolean archiveFinished() {
+			return --pendingArchives == 0;
+		}
+
+		/**
+		 * Returns whether this download has failed.
+		 *
+		 * @return {@code true} if this download has failed, {@code false}
+		 *         otherwise
+		 */
+		public synchronized boolean isFailed() {
+			return failed;
+		}
+
+		/**
+		 * Marks this download as failed.
+		 *
+		 * @return {@code true} if this download had not failed before,
+		 *         {@code false} otherwise
+		 */
+		public synchronized boolean fail() {
+			boolean firstFailure = !failed;
+			failed = true;
+			return firstFailure;
+		}
+
 	}
 
 }
@@ -17,28 +17,45 @@
 
 package net.pterodactylus.sone.core;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.StringWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import net.pterodactylus.sone.data.Album;
+import net.pterodactylus.sone.data.FingerprintBuilder;
 import net.pterodactylus.sone.data.Post;
 import net.pterodactylus.sone.data.PostReply;
-import net.pterodactylus.sone.data.Reply;
+import net.pterodactylus.sone.data.Profile;
 import net.pterodactylus.sone.data.Sone;
 import net.pterodactylus.sone.data.Sone.SoneStatus;
-import net.pterodactylus.sone.freenet.StringBucket;
 import net.pterodactylus.sone.main.SonePlugin;
-import net.pterodactylus.util.collection.ListBuilder;
-import net.pterodactylus.util.collection.ReverseComparator;
 import net.pterodactylus.util.io.Closer;
 import net.pterodactylus.util.logging.Logging;
-import net.pterodactylus.util.service.AbstractService;
 import net.pterodactylus.util.template.HtmlFilter;
 import net.pterodactylus.util.template.ReflectionAccessor;
 import net.pterodactylus.util.template.Template;
@@ -49,13 +66,39 @@ import net.pterodactylus.util.template.TemplateParser;
 import net.pterodactylus.util.template.XmlFilter;
 import freenet.client.async.ManifestElement;
 import freenet.keys.FreenetURI;
+import freenet.support.api.Bucket;
 
 /**
  * A Sone inserter is responsible for inserting a Sone if it has changed.
+ * <p>
+ * Sone inserters do not have threads of their own. A Sone inserter is
+ * {@link #soneChanged() notified} whenever its Sone might have been changed;
+ * it then compares the Sone’s fingerprint on the shared insert scheduler and,
+ * if the Sone has really been modified, arms a timer that starts the insert
+ * once the Sone has not been modified for the {@link #setInsertionDelay(int)
+ * insertion delay}. Inserts are prepared on the shared insert executor and
+ * then run asynchronously by the node, so no thread waits for an insert to
+ * finish.
+ * <p>
+ * If {@link Core.Preferences#isInsertPostArchives() enabled}, posts and
+ * replies of past {@link SoneArchive#PERIOD periods} are inserted as separate
+ * archive pages. An archive page is only inserted again when the posts and
+ * replies of its period have changed; the Sone itself only references it.
+ * If {@link Core.Preferences#isCompressSoneDocuments() enabled}, the Sone
+ * document is additionally inserted compressed with gzip as
+ * {@code sone.xml.gz}, next to the plain {@code sone.xml} that older clients
+ * read. This makes every insert larger; only fetching the Sone gets cheaper.
+ * <p>
+ * With an {@link #setAdaptiveInsertionDelay(boolean) adaptive insertion
+ * delay}, modifications made while an insert is running are collected into a
+ * single insert that is scheduled once the running insert has finished, and
+ * the time between the end of one insert and the start of the next is at
+ * least {@link #INSERT_COST_FACTOR} times the average duration of the recent
+ * inserts of the Sone.
  *
  * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
  */
-public class SoneInserter extends AbstractService {
+public class SoneInserter {
 
 	/** The logger. */
 	private static final Logger logger = Logging.getLogger(SoneInserter.class);
@@ -63,6 +106,21 @@ public class SoneInserter extends AbstractService {
 	/** The insertion delay (in seconds). */
 	private static volatile int insertionDelay = 60;
 
+	/** Whether the insertion delay adapts to the duration of inserts. */
+	private static volatile boolean adaptiveInsertionDelay = false;
+
+	/**
+	 * The factor by which the minimum time between two inserts exceeds the
+	 * average insert duration.
+	 */
+	private static final int INSERT_COST_FACTOR = 2;
+
+	/** The maximum adaptive insertion delay (in seconds). */
+	private static final int MAXIMUM_ADAPTIVE_DELAY = 60 * 60;
+
+	/** The weight of the last insert duration in the average (in percent). */
+	private static final int INSERT_DURATION_WEIGHT = 25;
+
 	/** The template factory used to create the templates. */
 	private static final TemplateContextFactory templateContextFactory = new TemplateContextFactory();
 
@@ -75,6 +133,9 @@ public class SoneInserter extends AbstractService {
 	/** The UTF-8 charset. */
 	private static final Charset utf8Charset = Charset.forName("UTF-8");
 
+	/** The parsed insert templates, indexed by their names. */
+	private static final Map<String, Template> templates = new ConcurrentHashMap<String, Template>();
+
 	/** The core. */
 	private final Core core;
 
@@ -84,6 +145,12 @@ public class SoneInserter extends AbstractService {
 	/** The Sone to insert. */
 	private final Sone sone;
 
+	/** The scheduler for modification checks and insert timers. */
+	private final ScheduledExecutorService insertScheduler;
+
+	/** The executor for the inserts. */
+	private final Executor insertExecutor;
+
 	/** The insert listener manager. */
 	private SoneInsertListenerManager soneInsertListenerManager;
 
@@ -93,6 +160,35 @@ public class SoneInserter extends AbstractService {
 	/** The fingerprint of the last insert. */
 	private volatile String lastInsertFingerprint;
 
+	/** Whether the last insert contained the compressed Sone document. */
+	private volatile boolean compressedDocumentInserted;
+
+	/** The fingerprint of the last modification check. */
+	/* synchronize access to the following fields on this inserter. */
+	private String lastFingerprint = "";
+
+	/** The timer for the next insert, {@code null} if none is armed. */
+	private ScheduledFuture<?> insertTimer;
+
+	/** Whether a modification check is already queued. */
+	private boolean checkQueued;
+
+	/** Whether an insert is currently running. */
+	private boolean inserting;
+
+	/** Whether this inserter has been stopped. */
+	private boolean stopped;
+
+	/** The average duration of the recent inserts, {@code -1} if unknown. */
+	private long averageInsertDuration = -1;
+
+	/** The time the last insert finished. */
+	private long lastInsertFinished;
+
+	/** The inserted archive pages, indexed by the start of their period. */
+	/* synchronize access on this inserter. */
+	private final Map<Long, InsertedArchive> insertedArchives = new HashMap<Long, InsertedArchive>();
+
 	/**
 	 * Creates a new Sone inserter.
 	 *
@@ -102,12 +198,17 @@ public class SoneInserter extends AbstractService {
 	 *            The freenet interface
 	 * @param sone
 	 *            The Sone to insert
+	 * @param insertScheduler
+	 *            The scheduler for modification checks and insert timers
+	 * @param insertExecutor
+	 *            The executor for the inserts
 	 */
-	public SoneInserter(Core core, FreenetInterface freenetInterface, Sone sone) {
-		super("Sone Inserter for “" + sone.getName() + "”", false);
+	public SoneInserter(Core core, FreenetInterface freenetInterface, Sone sone, ScheduledExecutorService insertScheduler, Executor insertExecutor) {
 		this.core = core;
 		this.freenetInterface = freenetInterface;
 		this.sone = sone;
+		this.insertScheduler = insertScheduler;
+		this.insertExecutor = insertExecutor;
 		this.soneInsertListenerManager = new SoneInsertListenerManager(sone);
 	}
 
@@ -150,6 +251,39 @@ public class SoneInserter extends AbstractService {
 		SoneInserter.insertionDelay = insertionDelay;
 	}
 
+	/**
+	 * Sets whether the insertion delay adapts to the duration of the inserts
+	 * of each Sone. The {@link #setInsertionDelay(int) insertion delay} is
+	 * then used as the minimum delay.
+	 *
+	 * @param adaptiveInsertionDelay
+	 *            {@code true} to adapt the insertion delay, {@code false} to
+	 *            always use the insertion delay
+	 */
+	public static void setAdaptiveInsertionDelay(boolean adaptiveInsertionDelay) {
+		SoneInserter.adaptiveInsertionDelay = adaptiveInsertionDelay;
+	}
+
+	/**
+	 * Returns the delay this inserter would wait before inserting the Sone if
+	 * a modification was detected now.
+	 *
+	 * @return The insertion delay of the Sone (in seconds)
+	 */
+	public synchronized int getInsertionDelay() {
+		return calculateInsertionDelay(System.currentTimeMillis());
+	}
+
+	/**
+	 * Returns the average duration of the recent inserts of the Sone.
+	 *
+	 * @return The average insert duration (in milliseconds), or {@code -1} if
+	 *         the Sone has not been inserted yet
+	 */
+	public synchronized long getAverageInsertDuration() {
+		return averageInsertDuration;
+	}
+
 	/**
 	 * Returns the fingerprint of the last insert.
 	 *
@@ -169,6 +303,46 @@ public class SoneInserter extends AbstractService {
 		this.lastInsertFingerprint = lastInsertFingerprint;
 	}
 
+	/**
+	 * Returns whether the last insert of the Sone contained the compressed
+	 * Sone document.
+	 *
+	 * @return {@code true} if the last insert contained {@code sone.xml.gz},
+	 *         {@code false} otherwise
+	 */
+	public boolean isCompressedDocumentInserted() {
+		return compressedDocumentInserted;
+	}
+
+	/**
+	 * Returns the archive pages that have been inserted, together with the
+	 * fingerprints of the IDs of the posts and replies they contain.
+	 *
+	 * @return The inserted archive pages, mapped to their fingerprints
+	 */
+	public synchronized Map<SoneArchive, String> getInsertedArchives() {
+		Map<SoneArchive, String> archives = new HashMap<SoneArchive, String>();
+		for (InsertedArchive insertedArchive : insertedArchives.values()) {
+			archives.put(insertedArchive.getArchive(), insertedArchive.getElementFingerprint());
+		}
+		return archives;
+	}
+
+	/**
+	 * Adds an archive page that has been inserted before, e.g. when loading
+	 * the Sone, so that it is not inserted again as long as the posts and
+	 * replies it contains do not change.
+	 *
+	 * @param archive
+	 *            The inserted archive page
+	 * @param elementFingerprint
+	 *            The fingerprint of the IDs of the posts and replies of the
+	 *            archive page
+	 */
+	public synchronized void addInsertedArchive(SoneArchive archive, String elementFingerprint) {
+		insertedArchives.put(archive.getStartTime(), new InsertedArchive(elementFingerprint, archive));
+	}
+
 	/**
 	 * Returns whether the Sone inserter has detected a modification of the
 	 * Sone.
@@ -181,100 +355,496 @@ public class SoneInserter extends AbstractService {
 	}
 
 	//
-	// SERVICE METHODS
+	// ACTIONS
 	//
 
 	/**
-	 * {@inheritDoc}
+	 * Starts this Sone inserter by checking the Sone for modifications.
 	 */
-	@Override
-	protected void serviceRun() {
-		long lastModificationTime = 0;
-		String lastInsertedFingerprint = lastInsertFingerprint;
-		String lastFingerprint = "";
-		while (!shouldStop()) { try {
-			/* check every seconds. */
-			sleep(1000);
+	public void start() {
+		soneChanged();
+	}
+
+	/**
+	 * Stops this Sone inserter. A running insert is not interrupted but its
+	 * result will be ignored.
+	 */
+	public synchronized void stop() {
+		stopped = true;
+		cancelInsertTimer();
+	}
+
+	/**
+	 * Notifies this Sone inserter that its Sone might have been modified, or
+	 * that it has been locked or unlocked. The Sone is checked for
+	 * modifications on the insert scheduler; notifications that arrive while
+	 * a check is already queued are coalesced.
+	 */
+	public void soneChanged() {
+		synchronized (this) {
+			if (stopped || checkQueued) {
+				return;
+			}
+			checkQueued = true;
+		}
+		insertScheduler.execute(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				try {
+					checkForModification();
+				} catch (Throwable t1) {
+					logger.log(Level.SEVERE, "SoneInserter threw an Exception!", t1);
+				}
+			}
+		});
+	}
 
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Compares the fingerprint of the Sone with the fingerprints of the last
+	 * check and the last insert, and arms or cancels the insert timer
+	 * accordingly.
+	 */
+	private void checkForModification() {
+		synchronized (this) {
+			checkQueued = false;
+			if (stopped) {
+				return;
+			}
+		}
+		String fingerprint;
+		synchronized (sone) {
+			fingerprint = sone.getFingerprint();
+		}
+		synchronized (this) {
 			/* don’t insert locked Sones. */
 			if (core.isLocked(sone)) {
+				cancelInsertTimer();
+				modified = !fingerprint.equals(lastInsertFingerprint);
 				/* trigger redetection when the Sone is unlocked. */
-				synchronized (sone) {
-					modified = !sone.getFingerprint().equals(lastInsertedFingerprint);
-				}
 				lastFingerprint = "";
-				lastModificationTime = 0;
-				continue;
+				return;
 			}
+			if (fingerprint.equals(lastFingerprint)) {
+				return;
+			}
+			lastFingerprint = fingerprint;
+			if (fingerprint.equals(lastInsertFingerprint)) {
+				modified = false;
+				cancelInsertTimer();
+				logger.log(Level.FINE, String.format("Sone %s has been reverted to last insert state.", sone));
+			} else {
+				modified = true;
+				cancelInsertTimer();
+				if (inserting && adaptiveInsertionDelay) {
+					/* the end of the insert triggers redetection. */
+					logger.log(Level.FINE, String.format("Sone %s has been modified during its insert, waiting for the insert to finish.", sone.getName()));
+					return;
+				}
+				int delay = calculateInsertionDelay(System.currentTimeMillis());
+				logger.log(Level.FINE, String.format("Sone %s has been modified, waiting %d seconds before inserting.", sone.getName(), delay));
+				insertTimer = insertScheduler.schedule(new Runnable() {
 
-			InsertInformation insertInformation = null;
-			synchronized (sone) {
-				String fingerprint = sone.getFingerprint();
-				if (!fingerprint.equals(lastFingerprint)) {
-					if (fingerprint.equals(lastInsertedFingerprint)) {
-						modified = false;
-						lastModificationTime = 0;
-						logger.log(Level.FINE, String.format("Sone %s has been reverted to last insert state.", sone));
-					} else {
-						lastModificationTime = System.currentTimeMillis();
-						modified = true;
-						logger.log(Level.FINE, String.format("Sone %s has been modified, waiting %d seconds before inserting.", sone.getName(), insertionDelay));
+					@Override
+					@SuppressWarnings("synthetic-access")
+					public void run() {
+						startInsert();
 					}
-					lastFingerprint = fingerprint;
+				}, delay, TimeUnit.SECONDS);
+			}
+		}
+	}
+
+	/**
+	 * Hands the insert of the Sone to the insert executor, unless the Sone
+	 * has been locked or reverted, or another insert is still running in the
+	 * meantime. This method is called when the insert timer fires.
+	 */
+	private void startInsert() {
+		synchronized (this) {
+			insertTimer = null;
+			if (stopped || !modified || inserting || core.isLocked(sone)) {
+				return;
+			}
+			inserting = true;
+		}
+		insertExecutor.execute(new Runnable() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				try {
+					insert();
+				} catch (Throwable t1) {
+					logger.log(Level.SEVERE, "SoneInserter threw an Exception!", t1);
+					insertDone();
 				}
-				if (modified && (lastModificationTime > 0) && ((System.currentTimeMillis() - lastModificationTime) > (insertionDelay * 1000))) {
-					lastInsertedFingerprint = fingerprint;
-					insertInformation = new InsertInformation(sone);
+			}
+		});
+	}
+
+	/**
+	 * Renders the Sone and starts its insert. Changed archive pages are
+	 * inserted first, the Sone itself once all of them have been inserted.
+	 * The inserts do not block the insert executor; their outcome is processed
+	 * on the insert executor once the node reports it.
+	 */
+	private void insert() {
+		InsertInformation insertInformation;
+		String fingerprint;
+		synchronized (sone) {
+			fingerprint = sone.getFingerprint();
+			insertInformation = new InsertInformation(sone, core.getPreferences().isInsertPostArchives(), core.getPreferences().isCompressSoneDocuments());
+		}
+
+		logger.log(Level.INFO, String.format("Inserting Sone “%s”…", sone.getName()));
+		sone.setStatus(SoneStatus.inserting);
+		long insertTime = System.currentTimeMillis();
+		insertInformation.setTime(insertTime);
+		soneInsertListenerManager.fireInsertStarted();
+
+		List<Long> changedPeriods = new ArrayList<Long>();
+		synchronized (this) {
+			for (Long period : insertInformation.getArchivePeriods()) {
+				InsertedArchive insertedArchive = insertedArchives.get(period);
+				if ((insertedArchive != null) && insertedArchive.getElementFingerprint().equals(insertInformation.getArchiveElementFingerprint(period))) {
+					insertInformation.setArchive(period, insertedArchive.getArchive());
+				} else {
+					changedPeriods.add(period);
 				}
 			}
+		}
+		if (changedPeriods.isEmpty()) {
+			insertSone(insertInformation, fingerprint, insertTime);
+		} else {
+			insertArchives(insertInformation, changedPeriods, fingerprint, insertTime);
+		}
+	}
 
-			if (insertInformation != null) {
-				logger.log(Level.INFO, String.format("Inserting Sone “%s”…", sone.getName()));
+	/**
+	 * Starts the inserts of the archive pages of the given periods. Once all
+	 * of them have been inserted, the Sone itself is inserted.
+	 *
+	 * @param insertInformation
+	 *            The information of the insert
+	 * @param changedPeriods
+	 *            The starts of the periods whose archive pages have changed
+	 * @param fingerprint
+	 *            The fingerprint of the Sone
+	 * @param insertTime
+	 *            The time of the insert
+	 */
+	private void insertArchives(final InsertInformation insertInformation, final List<Long> changedPeriods, final String fingerprint, final long insertTime) {
+		logger.log(Level.FINE, String.format("Inserting %d archives of Sone “%s”…", changedPeriods.size(), sone.getName()));
+		final AtomicInteger pendingInserts = new AtomicInteger(changedPeriods.size());
+		final AtomicReference<SoneException> insertFailure = new AtomicReference<SoneException>();
+		final Runnable archiveInsertFinished = new Runnable() {
 
-				boolean success = false;
-				try {
-					sone.setStatus(SoneStatus.inserting);
-					long insertTime = System.currentTimeMillis();
-					insertInformation.setTime(insertTime);
-					soneInsertListenerManager.fireInsertStarted();
-					FreenetURI finalUri = freenetInterface.insertDirectory(insertInformation.getInsertUri(), insertInformation.generateManifestEntries(), "index.html");
-					soneInsertListenerManager.fireInsertFinished(System.currentTimeMillis() - insertTime);
-					/* at this point we might already be stopped. */
-					if (shouldStop()) {
-						/* if so, bail out, don’t change anything. */
-						break;
-					}
-					sone.setTime(insertTime);
-					sone.setLatestEdition(finalUri.getEdition());
-					core.touchConfiguration();
-					success = true;
-					logger.log(Level.INFO, String.format("Inserted Sone “%s” at %s.", sone.getName(), finalUri));
-				} catch (SoneException se1) {
-					soneInsertListenerManager.fireInsertAborted(se1);
-					logger.log(Level.WARNING, String.format("Could not insert Sone “%s”!", sone.getName()), se1);
-				} finally {
-					sone.setStatus(SoneStatus.idle);
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void run() {
+				if (pendingInserts.decrementAndGet() > 0) {
+					return;
 				}
+				executeInsertCallback(new Runnable() {
 
-				/*
-				 * reset modification counter if Sone has not been modified
-				 * while it was inserted.
-				 */
-				if (success) {
-					synchronized (sone) {
-						if (lastInsertedFingerprint.equals(sone.getFingerprint())) {
-							logger.log(Level.FINE, String.format("Sone “%s” was not modified further, resetting counter…", sone));
-							lastModificationTime = 0;
-							lastInsertFingerprint = lastInsertedFingerprint;
-							core.touchConfiguration();
-							modified = false;
+					@Override
+					public void run() {
+						if (insertFailure.get() != null) {
+							insertInformation.freeBuckets();
+							insertFailed(insertFailure.get());
+							return;
+						}
+						synchronized (SoneInserter.this) {
+							for (Long period : changedPeriods) {
+								insertedArchives.put(period, new InsertedArchive(insertInformation.getArchiveElementFingerprint(period), insertInformation.getArchive(period)));
+							}
+							insertedArchives.keySet().retainAll(insertInformation.getArchivePeriods());
 						}
+						insertSone(insertInformation, fingerprint, insertTime);
 					}
+				});
+			}
+		};
+		for (final Long period : changedPeriods) {
+			try {
+				freenetInterface.insertChk(insertInformation.createArchiveBucket(period), "text/xml; charset=utf-8", new FreenetInterface.InsertCallback() {
+
+					@Override
+					public void insertSucceeded(FreenetURI finalUri) {
+						insertInformation.setArchive(period, new SoneArchive(period, period + SoneArchive.PERIOD, finalUri));
+						archiveInsertFinished.run();
+					}
+
+					@Override
+					public void insertFailed(SoneException soneException) {
+						insertFailure.compareAndSet(null, soneException);
+						archiveInsertFinished.run();
+					}
+				});
+			} catch (SoneException se1) {
+				insertFailure.compareAndSet(null, se1);
+				archiveInsertFinished.run();
+			}
+		}
+	}
+
+	/**
+	 * Starts the insert of the Sone itself.
+	 *
+	 * @param insertInformation
+	 *            The information of the insert
+	 * @param fingerprint
+	 *            The fingerprint of the Sone
+	 * @param insertTime
+	 *            The time of the insert
+	 */
+	private void insertSone(final InsertInformation insertInformation, final String fingerprint, final long insertTime) {
+		try {
+			freenetInterface.insertDirectory(insertInformation.getInsertUri(), insertInformation.generateManifestEntries(), "index.html", new FreenetInterface.InsertCallback() {
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void insertSucceeded(final FreenetURI finalUri) {
+					insertInformation.freeBuckets();
+					executeInsertCallback(new Runnable() {
+
+						@Override
+						public void run() {
+							SoneInserter.this.insertSucceeded(fingerprint, insertTime, finalUri, insertInformation.isCompressDocuments());
+						}
+					});
+				}
+
+				@Override
+				@SuppressWarnings("synthetic-access")
+				public void insertFailed(final SoneException soneException) {
+					insertInformation.freeBuckets();
+					executeInsertCallback(new Runnable() {
+
+						@Override
+						public void run() {
+							SoneInserter.this.insertFailed(soneException);
+						}
+					});
+				}
+			});
+		} catch (SoneException se1) {
+			insertInformation.freeBuckets();
+			insertFailed(se1);
+		}
+	}
+
+	/**
+	 * Runs the given insert callback on the insert executor. If the executor
+	 * has already been shut down, the callback is run on the current thread.
+	 *
+	 * @param insertCallback
+	 *            The callback to run
+	 */
+	private void executeInsertCallback(Runnable insertCallback) {
+		try {
+			insertExecutor.execute(insertCallback);
+		} catch (RejectedExecutionException ree1) {
+			insertCallback.run();
+		}
+	}
+
+	/**
+	 * Processes a successful insert.
+	 *
+	 * @param fingerprint
+	 *            The fingerprint of the inserted Sone
+	 * @param insertTime
+	 *            The time of the insert
+	 * @param finalUri
+	 *            The final URI of the inserted Sone
+	 * @param compressedDocumentInserted
+	 *            {@code true} if the compressed document has been inserted,
+	 *            {@code false} otherwise
+	 */
+	private void insertSucceeded(String fingerprint, long insertTime, FreenetURI finalUri, boolean compressedDocumentInserted) {
+		try {
+			long insertDuration = System.currentTimeMillis() - insertTime;
+			this.compressedDocumentInserted = compressedDocumentInserted;
+			soneInsertListenerManager.fireInsertFinished(insertDuration);
+			synchronized (this) {
+				if (averageInsertDuration < 0) {
+					averageInsertDuration = insertDuration;
+				} else {
+					averageInsertDuration = (averageInsertDuration * (100 - INSERT_DURATION_WEIGHT) + insertDuration * INSERT_DURATION_WEIGHT) / 100;
 				}
 			}
-		} catch (Throwable t1) {
-			logger.log(Level.SEVERE, "SoneInserter threw an Exception!", t1);
-		}}
+			/* at this point we might already be stopped. */
+			synchronized (this) {
+				if (stopped) {
+					/* if so, bail out, don’t change anything. */
+					return;
+				}
+			}
+			sone.setTime(insertTime);
+			sone.setLatestEdition(finalUri.getEdition());
+			String currentFingerprint;
+			synchronized (sone) {
+				currentFingerprint = sone.getFingerprint();
+			}
+			synchronized (this) {
+				lastInsertFingerprint = fingerprint;
+				if (fingerprint.equals(currentFingerprint)) {
+					logger.log(Level.FINE, String.format("Sone “%s” was not modified further, resetting counter…", sone));
+					lastFingerprint = fingerprint;
+					modified = false;
+				}
+			}
+			core.touchConfiguration();
+			logger.log(Level.INFO, String.format("Inserted Sone “%s” at %s.", sone.getName(), finalUri));
+		} finally {
+			insertDone();
+		}
+	}
+
+	/**
+	 * Processes a failed insert.
+	 *
+	 * @param soneException
+	 *            The reason of the failure
+	 */
+	private void insertFailed(SoneException soneException) {
+		try {
+			soneInsertListenerManager.fireInsertAborted(soneException);
+			logger.log(Level.WARNING, String.format("Could not insert Sone “%s”!", sone.getName()), soneException);
+		} finally {
+			insertDone();
+		}
+	}
+
+	/**
+	 * Marks the running insert as done and checks the Sone for further
+	 * modifications.
+	 */
+	private void insertDone() {
+		sone.setStatus(SoneStatus.idle);
+		synchronized (this) {
+			inserting = false;
+			lastInsertFinished = System.currentTimeMillis();
+			/* trigger redetection if the Sone is still modified. */
+			if (modified) {
+				lastFingerprint = "";
+			}
+		}
+		soneChanged();
+	}
+
+	/**
+	 * Calculates the delay before the next insert. Without an adaptive
+	 * insertion delay this is always the configured insertion delay. This
+	 * method has to be called with the lock on this inserter held.
+	 *
+	 * @param now
+	 *            The current time
+	 * @return The delay before the next insert (in seconds)
+	 */
+	private int calculateInsertionDelay(long now) {
+		int delay = insertionDelay;
+		if (!adaptiveInsertionDelay || (averageInsertDuration < 0)) {
+			return delay;
+		}
+		long minimumGapEnd = lastInsertFinished + averageInsertDuration * INSERT_COST_FACTOR;
+		long remainingGap = (minimumGapEnd - now + 999) / 1000;
+		return (int) Math.max(delay, Math.min(remainingGap, MAXIMUM_ADAPTIVE_DELAY));
+	}
+
+	/**
+	 * Cancels the insert timer, if it is armed. This method has to be called
+	 * with the lock on this inserter held.
+	 */
+	private void cancelInsertTimer() {
+		if (insertTimer != null) {
+			insertTimer.cancel(false);
+			insertTimer = null;
+		}
+	}
+
+	/**
+	 * Returns the insert template with the given name. Templates are only
+	 * parsed once and then kept.
+	 *
+	 * @param templateName
+	 *            The name of the template
+	 * @return The parsed template, or {@code null} if the template can not be
+	 *         parsed
+	 */
+	private static Template getTemplate(String templateName) {
+		Template template = templates.get(templateName);
+		if (template != null) {
+			return template;
+		}
+		InputStreamReader templateInputStreamReader = null;
+		try {
+			templateInputStreamReader = new InputStreamReader(SoneInserter.class.getResourceAsStream(templateName), utf8Charset);
+			template = TemplateParser.parse(templateInputStreamReader);
+			templates.put(templateName, template);
+			return template;
+		} catch (TemplateException te1) {
+			logger.log(Level.SEVERE, String.format("Could not parse template “%s”!", templateName), te1);
+			return null;
+		} finally {
+			Closer.close(templateInputStreamReader);
+		}
+	}
+
+	/**
+	 * An archive page that has been inserted, together with the fingerprint of
+	 * the IDs of the posts and replies it contains.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class InsertedArchive {
+
+		/** The fingerprint of the IDs of the posts and replies. */
+		private final String elementFingerprint;
+
+		/** The inserted archive page. */
+		private final SoneArchive archive;
+
+		/**
+		 * Creates a new inserted archive page.
+		 *
+		 * @param elementFingerprint
+		 *            The fingerprint of the IDs of the posts and replies of
+		 *            the archive page
+		 * @param archive
+		 *            The inserted archive page
+		 */
+		public InsertedArchive(String elementFingerprint, SoneArchive archive) {
+			this.elementFingerprint = elementFingerprint;
+			this.archive = archive;
+		}
+
+		/**
+		 * Returns the fingerprint of the IDs of the posts and replies of the
+		 * archive page.
+		 *
+		 * @return The fingerprint of the IDs of the posts and replies
+		 */
+		public String getElementFingerprint() {
+			return elementFingerprint;
+		}
+
+		/**
+		 * Returns the inserted archive page.
+		 *
+		 * @return The inserted archive page
+		 */
+		public SoneArchive getArchive() {
+			return archive;
+		}
+
 	}
 
 	/**
@@ -289,24 +859,99 @@ public class SoneInserter extends AbstractService {
 		/** All properties of the Sone, copied for thread safety. */
 		private final Map<String, Object> soneProperties = new HashMap<String, Object>();
 
+		/** The time of the Sone. */
+		private long time;
+
+		/** The profile of the Sone. */
+		private final Profile profile;
+
+		/** The posts of the Sone that are not archived. */
+		private final List<Post> posts = new ArrayList<Post>();
+
+		/** The replies of the Sone that are not archived, oldest first. */
+		private final List<PostReply> replies = new ArrayList<PostReply>();
+
+		/** The archived posts, indexed by the start of their period. */
+		private final SortedMap<Long, List<Post>> archivedPosts = new TreeMap<Long, List<Post>>();
+
+		/** The archived replies, indexed by the start of their period. */
+		private final SortedMap<Long, List<PostReply>> archivedReplies = new TreeMap<Long, List<PostReply>>();
+
+		/** The archive pages, indexed by the start of their period. */
+		/* synchronize access on itself. */
+		private final SortedMap<Long, SoneArchive> archives = new TreeMap<Long, SoneArchive>();
+
+		/** The IDs of the posts liked by the Sone. */
+		private final Set<String> likedPostIds;
+
+		/** The IDs of the replies liked by the Sone. */
+		private final Set<String> likedReplyIds;
+
+		/** All albums of the Sone. */
+		private final List<Album> albums;
+
+		/** Whether the Sone document is also inserted compressed. */
+		private final boolean compressDocuments;
+
+		/** The buckets of the generated manifest entries. */
+		private final List<Bucket> buckets = new ArrayList<Bucket>();
+
 		/**
 		 * Creates a new insert information container.
 		 *
 		 * @param sone
 		 *            The sone to insert
+		 * @param archivePosts
+		 *            {@code true} to move posts and replies of past periods
+		 *            into archive pages, {@code false} to insert all of them
+		 *            with the Sone
+		 * @param compressDocuments
+		 *            {@code true} to also insert the Sone document compressed,
+		 *            {@code false} to only insert the plain document
 		 */
-		public InsertInformation(Sone sone) {
+		public InsertInformation(Sone sone, boolean archivePosts, boolean compressDocuments) {
+			this.compressDocuments = compressDocuments;
+			time = sone.getTime();
+			profile = sone.getProfile();
+			long currentPeriod = SoneArchive.getPeriodStart(System.currentTimeMillis());
+			for (Post post : sone.getPosts()) {
+				long period = SoneArchive.getPeriodStart(post.getTime());
+				if (archivePosts && (post.getTime() >= 0) && (period < currentPeriod)) {
+					if (!archivedPosts.containsKey(period)) {
+						archivedPosts.put(period, new ArrayList<Post>());
+					}
+					archivedPosts.get(period).add(post);
+				} else {
+					posts.add(post);
+				}
+			}
+			List<PostReply> allReplies = new ArrayList<PostReply>(sone.getReplies());
+			Collections.reverse(allReplies);
+			for (PostReply reply : allReplies) {
+				long period = SoneArchive.getPeriodStart(reply.getTime());
+				if (archivePosts && (reply.getTime() >= 0) && (period < currentPeriod)) {
+					if (!archivedReplies.containsKey(period)) {
+						archivedReplies.put(period, new ArrayList<PostReply>());
+					}
+					archivedReplies.get(period).add(reply);
+				} else {
+					replies.add(reply);
+				}
+			}
+			likedPostIds = new HashSet<String>(sone.getLikedPostIds());
+			likedReplyIds = new HashSet<String>(sone.getLikedReplyIds());
+			albums = sone.getAllAlbums();
 			soneProperties.put("id", sone.getId());
 			soneProperties.put("name", sone.getName());
-			soneProperties.put("time", sone.getTime());
+			soneProperties.put("time", time);
 			soneProperties.put("requestUri", sone.getRequestUri());
 			soneProperties.put("insertUri", sone.getInsertUri());
-			soneProperties.put("profile", sone.getProfile());
-			soneProperties.put("posts", new ListBuilder<Post>(new ArrayList<Post>(sone.getPosts())).sort(Post.TIME_COMPARATOR).get());
-			soneProperties.put("replies", new ListBuilder<PostReply>(new ArrayList<PostReply>(sone.getReplies())).sort(new ReverseComparator<Reply<?>>(Reply.TIME_COMPARATOR)).get());
-			soneProperties.put("likedPostIds", new HashSet<String>(sone.getLikedPostIds()));
-			soneProperties.put("likedReplyIds", new HashSet<String>(sone.getLikedReplyIds()));
-			soneProperties.put("albums", sone.getAllAlbums());
+			soneProperties.put("profile", profile);
+			soneProperties.put("posts", posts);
+			soneProperties.put("replies", replies);
+			soneProperties.put("likedPostIds", likedPostIds);
+			soneProperties.put("likedReplyIds", likedReplyIds);
+			soneProperties.put("albums", albums);
 		}
 
 		//
@@ -329,28 +974,159 @@ public class SoneInserter extends AbstractService {
 		 *            The time of the Sone
 		 */
 		public void setTime(long time) {
+			this.time = time;
 			soneProperties.put("time", time);
 		}
 
+		/**
+		 * Returns whether the Sone document is also inserted compressed.
+		 *
+		 * @return {@code true} if the compressed document is inserted,
+		 *         {@code false} otherwise
+		 */
+		public boolean isCompressDocuments() {
+			return compressDocuments;
+		}
+
+		/**
+		 * Returns the starts of all periods that have archived posts or
+		 * replies.
+		 *
+		 * @return The starts of the archived periods
+		 */
+		public Set<Long> getArchivePeriods() {
+			Set<Long> archivePeriods = new TreeSet<Long>(archivedPosts.keySet());
+			archivePeriods.addAll(archivedReplies.keySet());
+			return archivePeriods;
+		}
+
+		/**
+		 * Returns the fingerprint of the IDs of all posts and replies archived
+		 * in the given period.
+		 *
+		 * @param period
+		 *            The start of the period
+		 * @return The fingerprint of the IDs of the archived posts and replies
+		 */
+		public String getArchiveElementFingerprint(long period) {
+			List<String> elementIds = new ArrayList<String>();
+			for (Post post : getArchivedPosts(period)) {
+				elementIds.add(post.getId());
+			}
+			for (PostReply reply : getArchivedReplies(period)) {
+				elementIds.add(reply.getId());
+			}
+			Collections.sort(elementIds);
+			FingerprintBuilder fingerprintBuilder = new FingerprintBuilder("Archive");
+			fingerprintBuilder.add("Elements", elementIds.size());
+			for (String elementId : elementIds) {
+				fingerprintBuilder.add("ID", elementId);
+			}
+			return fingerprintBuilder.build();
+		}
+
+		/**
+		 * Returns the archive page of the given period.
+		 *
+		 * @param period
+		 *            The start of the period
+		 * @return The archive page, or {@code null} if it has not been set
+		 */
+		public SoneArchive getArchive(long period) {
+			synchronized (archives) {
+				return archives.get(period);
+			}
+		}
+
+		/**
+		 * Sets the archive page of the given period.
+		 *
+		 * @param period
+		 *            The start of the period
+		 * @param archive
+		 *            The archive page
+		 */
+		public void setArchive(long period, SoneArchive archive) {
+			synchronized (archives) {
+				archives.put(period, archive);
+			}
+		}
+
 		//
 		// ACTIONS
 		//
 
 		/**
-		 * Generates all manifest entries required to insert this Sone.
+		 * Generates all manifest entries required to insert this Sone. The
+		 * buckets of the entries have to be {@link #freeBuckets() freed} once
+		 * the insert has finished.
 		 *
 		 * @return The manifest entries for the Sone insert
+		 * @throws SoneException
+		 *             if the manifest entries can not be generated
 		 */
-		public HashMap<String, Object> generateManifestEntries() {
+		public HashMap<String, Object> generateManifestEntries() throws SoneException {
 			HashMap<String, Object> manifestEntries = new HashMap<String, Object>();
+			try {
+				/* first, create an index.html. */
+				manifestEntries.put("index.html", createManifestElement("index.html", "text/html; charset=utf-8", "/templates/insert/index.html"));
 
-			/* first, create an index.html. */
-			manifestEntries.put("index.html", createManifestElement("index.html", "text/html; charset=utf-8", "/templates/insert/index.html"));
+				/*
+				 * now, store the sone. the plain document is always inserted
+				 * because clients that do not know the compressed document
+				 * only fetch sone.xml, and whether all followers know it can
+				 * not be determined. the compressed document therefore adds
+				 * about a third of the blocks of the plain document to every
+				 * insert; it only saves blocks for the followers that fetch
+				 * it instead of the plain document.
+				 */
+				manifestEntries.put("sone.xml", createSoneXmlManifestElement(false));
+				if (compressDocuments) {
+					manifestEntries.put("sone.xml.gz", createSoneXmlManifestElement(true));
+				}
+			} catch (SoneException se1) {
+				freeBuckets();
+				throw se1;
+			}
+			return manifestEntries;
+		}
 
-			/* now, store the sone. */
-			manifestEntries.put("sone.xml", createManifestElement("sone.xml", "text/xml; charset=utf-8", "/templates/insert/sone.xml"));
+		/**
+		 * Creates a bucket containing the archive page of the given period.
+		 * The bucket has to be {@link #freeBuckets() freed} once the insert
+		 * has finished.
+		 *
+		 * @param period
+		 *            The start of the period
+		 * @return The bucket containing the archive page
+		 * @throws SoneException
+		 *             if the archive page can not be written
+		 */
+		@SuppressWarnings("synthetic-access")
+		public Bucket createArchiveBucket(long period) throws SoneException {
+			Bucket bucket = createBucket();
+			Writer writer = null;
+			try {
+				writer = new BufferedWriter(new OutputStreamWriter(bucket.getOutputStream(), utf8Charset));
+				new SoneXmlWriter(writer).writeArchive(getArchivedPosts(period), getArchivedReplies(period));
+				writer.close();
+				writer = null;
+				return bucket;
+			} catch (IOException ioe1) {
+				throw new SoneException("Could not write archive XML!", ioe1);
+			} finally {
+				Closer.close(writer);
+			}
+		}
 
-			return manifestEntries;
+		/**
+		 * Frees the buckets of all generated manifest entries.
+		 */
+		public void freeBuckets() {
+			for (Bucket bucket : buckets) {
+				bucket.free();
+			}
+			buckets.clear();
 		}
 
 		//
@@ -358,7 +1134,7 @@ public class SoneInserter extends AbstractService {
 		//
 
 		/**
-		 * Creates a new manifest element.
+		 * Creates a new manifest element from a template.
 		 *
 		 * @param name
 		 *            The name of the file
@@ -367,19 +1143,14 @@ public class SoneInserter extends AbstractService {
 		 * @param templateName
 		 *            The name of the template to render
 		 * @return The manifest element
+		 * @throws SoneException
+		 *             if the template can not be rendered
 		 */
 		@SuppressWarnings("synthetic-access")
-		private ManifestElement createManifestElement(String name, String contentType, String templateName) {
-			InputStreamReader templateInputStreamReader = null;
-			Template template;
-			try {
-				templateInputStreamReader = new InputStreamReader(getClass().getResourceAsStream(templateName), utf8Charset);
-				template = TemplateParser.parse(templateInputStreamReader);
-			} catch (TemplateException te1) {
-				logger.log(Level.SEVERE, String.format("Could not parse template “%s”!", templateName), te1);
-				return null;
-			} finally {
-				Closer.close(templateInputStreamReader);
+		private ManifestElement createManifestElement(String name, String contentType, String templateName) throws SoneException {
+			Template template = getTemplate(templateName);
+			if (template == null) {
+				throw new SoneException(String.format("Could not parse template “%s”!", templateName));
 			}
 
 			TemplateContext templateContext = templateContextFactory.createTemplateContext();
@@ -387,20 +1158,102 @@ public class SoneInserter extends AbstractService {
 			templateContext.set("currentSone", soneProperties);
 			templateContext.set("currentEdition", core.getUpdateChecker().getLatestEdition());
 			templateContext.set("version", SonePlugin.VERSION);
-			StringWriter writer = new StringWriter();
-			StringBucket bucket = null;
+			Bucket bucket = createBucket();
+			Writer writer = null;
 			try {
+				writer = new OutputStreamWriter(bucket.getOutputStream(), utf8Charset);
 				template.render(templateContext, writer);
-				bucket = new StringBucket(writer.toString(), utf8Charset);
+				writer.close();
+				writer = null;
 				return new ManifestElement(name, bucket, contentType, bucket.size());
+			} catch (IOException ioe1) {
+				throw new SoneException(String.format("Could not render template “%s”!", templateName), ioe1);
 			} catch (TemplateException te1) {
-				logger.log(Level.SEVERE, String.format("Could not render template “%s”!", templateName), te1);
-				return null;
+				throw new SoneException(String.format("Could not render template “%s”!", templateName), te1);
 			} finally {
 				Closer.close(writer);
-				if (bucket != null) {
-					bucket.free();
+			}
+		}
+
+		/**
+		 * Creates the manifest element containing the XML document of the Sone.
+		 * The document is written directly into the bucket of the element; a
+		 * compressed document is compressed while it is written.
+		 *
+		 * @param compressed
+		 *            {@code true} to create the compressed {@code sone.xml.gz},
+		 *            {@code false} to create the plain {@code sone.xml}
+		 * @return The manifest element
+		 * @throws SoneException
+		 *             if the document can not be written
+		 */
+		@SuppressWarnings("synthetic-access")
+		private ManifestElement createSoneXmlManifestElement(boolean compressed) throws SoneException {
+			Bucket bucket = createBucket();
+			Writer writer = null;
+			try {
+				OutputStream outputStream = bucket.getOutputStream();
+				if (compressed) {
+					outputStream = new GZIPOutputStream(outputStream);
+				}
+				writer = new BufferedWriter(new OutputStreamWriter(outputStream, utf8Charset));
+				List<SoneArchive> soneArchives;
+				synchronized (archives) {
+					soneArchives = new ArrayList<SoneArchive>(archives.values());
 				}
+				new SoneXmlWriter(writer).writeSone(time, SonePlugin.VERSION.toString(), profile, posts, replies, likedPostIds, likedReplyIds, albums, soneArchives);
+				writer.close();
+				writer = null;
+				if (compressed) {
+					return new ManifestElement("sone.xml.gz", bucket, "application/x-gzip", bucket.size());
+				}
+				return new ManifestElement("sone.xml", bucket, "text/xml; charset=utf-8", bucket.size());
+			} catch (IOException ioe1) {
+				throw new SoneException("Could not write Sone XML!", ioe1);
+			} finally {
+				Closer.close(writer);
+			}
+		}
+
+		/**
+		 * Returns the posts archived in the given period.
+		 *
+		 * @param period
+		 *            The start of the period
+		 * @return The archived posts
+		 */
+		private List<Post> getArchivedPosts(long period) {
+			List<Post> periodPosts = archivedPosts.get(period);
+			return (periodPosts != null) ? periodPosts : Collections.<Post> emptyList();
+		}
+
+		/**
+		 * Returns the replies archived in the given period, oldest first.
+		 *
+		 * @param period
+		 *            The start of the period
+		 * @return The archived replies
+		 */
+		private List<PostReply> getArchivedReplies(long period) {
+			List<PostReply> periodReplies = archivedReplies.get(period);
+			return (periodReplies != null) ? periodReplies : Collections.<PostReply> emptyList();
+		}
+
+		/**
+		 * Creates a temporary bucket that is freed by {@link #freeBuckets()}.
+		 *
+		 * @return A new temporary bucket
+		 * @throws SoneException
+		 *             if the bucket can not be created
+		 */
+		@SuppressWarnings("synthetic-access")
+		private Bucket createBucket() throws SoneException {
+			try {
+				Bucket bucket = freenetInterface.createTemporaryBucket();
+				buckets.add(bucket);
+				return bucket;
+			} catch (IOException ioe1) {
+				throw new SoneException("Could not create temporary bucket!", ioe1);
 			}
 		}
 
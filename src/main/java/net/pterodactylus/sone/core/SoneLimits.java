@@ -0,0 +1,145 @@
+/*
+ * Sone - SoneLimits.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+/**
+ * The limits a downloaded Sone has to stay within. Sones that exceed any of
+ * these limits are rejected.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneLimits {
+
+	/** The maximum size of a Sone document, in bytes. */
+	private final int maximumSize;
+
+	/** The maximum number of posts. */
+	private final int maximumPosts;
+
+	/** The maximum number of replies. */
+	private final int maximumReplies;
+
+	/** The maximum number of liked posts and replies. */
+	private final int maximumLikes;
+
+	/** The maximum number of albums. */
+	private final int maximumAlbums;
+
+	/** The maximum number of images. */
+	private final int maximumImages;
+
+	/** The maximum length of a single text. */
+	private final int maximumTextLength;
+
+	/**
+	 * Creates new Sone limits.
+	 *
+	 * @param maximumSize
+	 *            The maximum size of a Sone document, in bytes
+	 * @param maximumPosts
+	 *            The maximum number of posts
+	 * @param maximumReplies
+	 *            The maximum number of replies
+	 * @param maximumLikes
+	 *            The maximum number of liked posts and replies
+	 * @param maximumAlbums
+	 *            The maximum number of albums
+	 * @param maximumImages
+	 *            The maximum number of images
+	 * @param maximumTextLength
+	 *            The maximum length of a single text, in characters
+	 */
+	public SoneLimits(int maximumSize, int maximumPosts, int maximumReplies, int maximumLikes, int maximumAlbums, int maximumImages, int maximumTextLength) {
+		this.maximumSize = maximumSize;
+		this.maximumPosts = maximumPosts;
+		this.maximumReplies = maximumReplies;
+		this.maximumLikes = maximumLikes;
+		this.maximumAlbums = maximumAlbums;
+		this.maximumImages = maximumImages;
+		this.maximumTextLength = maximumTextLength;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the maximum size of a Sone document.
+	 *
+	 * @return The maximum size of a Sone document, in bytes
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Returns the maximum number of posts.
+	 *
+	 * @return The maximum number of posts
+	 */
+	public int getMaximumPosts() {
+		return maximumPosts;
+	}
+
+	/**
+	 * Returns the maximum number of replies.
+	 *
+	 * @return The maximum number of replies
+	 */
+	public int getMaximumReplies() {
+		return maximumReplies;
+	}
+
+	/**
+	 * Returns the maximum number of liked posts and replies.
+	 *
+	 * @return The maximum number of likes
+	 */
+	public int getMaximumLikes() {
+		return maximumLikes;
+	}
+
+	/**
+	 * Returns the maximum number of albums.
+	 *
+	 * @return The maximum number of albums
+	 */
+	public int getMaximumAlbums() {
+		return maximumAlbums;
+	}
+
+	/**
+	 * Returns the maximum number of images.
+	 *
+	 * @return The maximum number of images
+	 */
+	public int getMaximumImages() {
+		return maximumImages;
+	}
+
+	/**
+	 * Returns the maximum length of a single text, such as the text of a post
+	 * or the title of an image.
+	 *
+	 * @return The maximum length of a text, in characters
+	 */
+	public int getMaximumTextLength() {
+		return maximumTextLength;
+	}
+
+}
@@ -0,0 +1,1303 @@
+/*
+ * Sone - SoneParser.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import net.pterodactylus.sone.core.Core.Preferences;
+import net.pterodactylus.sone.data.Album;
+import net.pterodactylus.sone.data.Client;
+import net.pterodactylus.sone.data.Image;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.PostReply;
+import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.sone.data.impl.PostImpl;
+import net.pterodactylus.util.logging.Logging;
+import net.pterodactylus.util.number.Numbers;
+
+import freenet.keys.FreenetURI;
+
+/**
+ * Parses the XML document of a Sone. The document is read with a streaming
+ * pull parser into plain values first; only when the complete document has
+ * been read are the values validated and turned into a {@link Sone}. No
+ * document tree is built, and parsers in several threads do not block each
+ * other. The {@link SoneLimits} are enforced while reading, so that reading
+ * stops as soon as a limit is exceeded.
+ * <p>
+ * As with a document tree, only the first occurrence of an element is used;
+ * further occurrences are skipped.
+ * <p>
+ * Starting with protocol version 1 a Sone document may reference
+ * {@link SoneArchive archive pages} that contain its older posts and replies.
+ * Such a document is {@link #readDocument(Sone, InputStream) read} first; the
+ * Sone is only created once all of its archive pages have either been
+ * {@link #readArchive(SoneDocument, SoneArchive, InputStream) read} or
+ * {@link SoneDocument#copyArchive(SoneArchive, Sone, SoneLimits) copied}
+ * from an earlier state of the Sone.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneParser {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(SoneParser.class);
+
+	/** The maximum protocol version. */
+	static final int MAX_PROTOCOL_VERSION = 1;
+
+	/** The maximum number of archive pages referenced by a Sone. */
+	static final int MAX_ARCHIVES = 1000;
+
+	/** The XML input factories, one per thread. */
+	private static final ThreadLocal<XMLInputFactory> xmlInputFactories = new ThreadLocal<XMLInputFactory>() {
+
+		@Override
+		protected XMLInputFactory initialValue() {
+			XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+			xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+			xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+			xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+			return xmlInputFactory;
+		}
+	};
+
+	/** The preferences containing the limits for downloaded Sones. */
+	private final Preferences preferences;
+
+	/**
+	 * Creates a new Sone parser.
+	 *
+	 * @param preferences
+	 *            The preferences containing the limits for downloaded Sones
+	 */
+	public SoneParser(Preferences preferences) {
+		this.preferences = preferences;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the limits for downloaded Sones.
+	 *
+	 * @return The limits for downloaded Sones
+	 */
+	SoneLimits getSoneLimits() {
+		return preferences.getSoneLimits();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Parses a Sone from the given input stream and creates a new Sone from the
+	 * parsed data.
+	 *
+	 * @param originalSone
+	 *            The Sone to update
+	 * @param soneInputStream
+	 *            The input stream to parse the Sone from
+	 * @return The parsed Sone, or {@code null} if the Sone could not be parsed
+	 * @throws SoneLimitExceededException
+	 *             if the Sone exceeds one of the {@link SoneLimits}
+	 */
+	public Sone parseSone(Sone originalSone, InputStream soneInputStream) throws SoneLimitExceededException {
+		SoneDocument soneDocument = readDocument(originalSone, soneInputStream);
+		if (soneDocument == null) {
+			return null;
+		}
+		return createSone(originalSone, soneDocument);
+	}
+
+	/**
+	 * Reads the document of a Sone from the given input stream. The archive
+	 * pages referenced by the document have to be resolved before the Sone
+	 * can be {@link #createSone(Sone, SoneDocument) created}.
+	 *
+	 * @param originalSone
+	 *            The Sone to update
+	 * @param soneInputStream
+	 *            The input stream to read the document from
+	 * @return The read document, or {@code null} if the document could not be
+	 *         read
+	 * @throws SoneLimitExceededException
+	 *             if the Sone exceeds one of the {@link SoneLimits}
+	 */
+	public SoneDocument readDocument(Sone originalSone, InputStream soneInputStream) throws SoneLimitExceededException {
+		ParsedSone parsedSone;
+		XMLStreamReader xmlStreamReader = null;
+		try {
+			xmlStreamReader = xmlInputFactories.get().createXMLStreamReader(soneInputStream);
+			parsedSone = new SoneReader(xmlStreamReader, preferences.getSoneLimits()).readSone();
+		} catch (XMLStreamException xse1) {
+			logger.log(Level.WARNING, String.format("Could not parse XML for Sone %s!", originalSone), xse1);
+			return null;
+		} finally {
+			close(xmlStreamReader);
+		}
+		if (parsedSone == null) {
+			logger.log(Level.WARNING, String.format("XML for Sone %s does not contain a document element!", originalSone));
+			return null;
+		}
+
+		/* parse archive references. */
+		List<SoneArchive> archives = new ArrayList<SoneArchive>();
+		if (parsedSone.archives != null) {
+			for (ParsedArchive parsedArchive : parsedSone.archives) {
+				if ((parsedArchive.start == null) || (parsedArchive.end == null) || (parsedArchive.key == null)) {
+					logger.log(Level.WARNING, String.format("Downloaded archive for Sone %s with missing data! Start: %s, End: %s, Key: %s", originalSone, parsedArchive.start, parsedArchive.end, parsedArchive.key));
+					return null;
+				}
+				try {
+					long startTime = Long.parseLong(parsedArchive.start);
+					long endTime = Long.parseLong(parsedArchive.end);
+					FreenetURI key = new FreenetURI(parsedArchive.key);
+					if ((startTime >= endTime) || !"CHK".equals(key.getKeyType())) {
+						logger.log(Level.WARNING, String.format("Downloaded Sone %s has invalid archive: %s, %s, %s", originalSone, parsedArchive.start, parsedArchive.end, parsedArchive.key));
+						return null;
+					}
+					archives.add(new SoneArchive(startTime, endTime, key));
+				} catch (NumberFormatException nfe1) {
+					logger.log(Level.WARNING, String.format("Downloaded Sone %s has archive with invalid times: %s, %s", originalSone, parsedArchive.start, parsedArchive.end));
+					return null;
+				} catch (MalformedURLException mue1) {
+					logger.log(Level.WARNING, String.format("Downloaded Sone %s has archive with invalid key: %s", originalSone, parsedArchive.key), mue1);
+					return null;
+				}
+			}
+		}
+		return new SoneDocument(parsedSone, archives);
+	}
+
+	/**
+	 * Reads an archive page of a Sone document from the given input stream
+	 * and {@link SoneDocument#addArchive(SoneArchive, ParsedSone, SoneLimits)
+	 * adds} its posts and replies to the document.
+	 *
+	 * @param soneDocument
+	 *            The document that references the archive page
+	 * @param soneArchive
+	 *            The archive page to read
+	 * @param archiveInputStream
+	 *            The input stream to read the archive page from
+	 * @return {@code true} if the archive page was read, {@code false} if it
+	 *         is not valid
+	 * @throws SoneLimitExceededException
+	 *             if the Sone exceeds one of the {@link SoneLimits}
+	 */
+	public boolean readArchive(SoneDocument soneDocument, SoneArchive soneArchive, InputStream archiveInputStream) throws SoneLimitExceededException {
+		SoneLimits soneLimits = preferences.getSoneLimits();
+		ParsedSone parsedArchive;
+		XMLStreamReader xmlStreamReader = null;
+		try {
+			xmlStreamReader = xmlInputFactories.get().createXMLStreamReader(archiveInputStream);
+			parsedArchive = new SoneReader(xmlStreamReader, soneLimits).readArchive();
+		} catch (XMLStreamException xse1) {
+			logger.log(Level.WARNING, String.format("Could not parse XML for archive %s!", soneArchive), xse1);
+			return false;
+		} finally {
+			close(xmlStreamReader);
+		}
+		if (parsedArchive == null) {
+			logger.log(Level.WARNING, String.format("XML for archive %s does not contain an archive element!", soneArchive));
+			return false;
+		}
+		return soneDocument.addArchive(soneArchive, parsedArchive, soneLimits);
+	}
+
+	/**
+	 * Creates a Sone from the given document. All archive pages referenced by
+	 * the document have to be resolved.
+	 *
+	 * @param originalSone
+	 *            The Sone to update
+	 * @param soneDocument
+	 *            The document of the Sone
+	 * @return The parsed Sone, or {@code null} if the document is not valid or
+	 *         not all of its archive pages have been resolved
+	 */
+	public Sone createSone(Sone originalSone, SoneDocument soneDocument) {
+		synchronized (soneDocument) {
+			if (!soneDocument.getUnresolvedArchives().isEmpty()) {
+				logger.log(Level.WARNING, String.format("Not all archives of Sone %s have been resolved!", originalSone));
+				return null;
+			}
+			return createSone(originalSone, soneDocument.getParsedSone());
+		}
+	}
+
+	/**
+	 * Verifies the given parsed values and creates a new Sone from them. The
+	 * posts, replies, albums, and images of the Sone are not taken from or
+	 * stored in the core; they are only added to the core by
+	 * {@link Core#updateSone(Sone, boolean)} so that a Sone that is never
+	 * stored does not leave any elements behind.
+	 *
+	 * @param originalSone
+	 *            The Sone to update
+	 * @param parsedSone
+	 *            The parsed values
+	 * @return The parsed Sone, or {@code null} if the values are not valid
+	 */
+	Sone createSone(Sone originalSone, ParsedSone parsedSone) {
+		Sone sone = new Sone(originalSone.getId()).setIdentity(originalSone.getIdentity());
+
+		Integer protocolVersion = null;
+		if (parsedSone.protocolVersion != null) {
+			protocolVersion = Numbers.safeParseInteger(parsedSone.protocolVersion);
+		}
+		if (protocolVersion == null) {
+			logger.log(Level.INFO, "No protocol version found, assuming 0.");
+			protocolVersion = 0;
+		}
+
+		if (protocolVersion < 0) {
+			logger.log(Level.WARNING, String.format("Invalid protocol version: %d! Not parsing Sone.", protocolVersion));
+			return null;
+		}
+
+		/* check for valid versions. */
+		if (protocolVersion > MAX_PROTOCOL_VERSION) {
+			logger.log(Level.WARNING, String.format("Unknown protocol version: %d! Not parsing Sone.", protocolVersion));
+			return null;
+		}
+
+		if (parsedSone.time == null) {
+			logger.log(Level.WARNING, String.format("Downloaded time for Sone %s was null!", sone));
+			return null;
+		}
+		try {
+			sone.setTime(Long.parseLong(parsedSone.time));
+		} catch (NumberFormatException nfe1) {
+			logger.log(Level.WARNING, String.format("Downloaded Sone %s with invalid time: %s", sone, parsedSone.time));
+			return null;
+		}
+
+		if (parsedSone.client != null) {
+			if ((parsedSone.client.name == null) || (parsedSone.client.version == null)) {
+				logger.log(Level.WARNING, String.format("Download Sone %s with client XML but missing name or version!", sone));
+				return null;
+			}
+			sone.setClient(new Client(parsedSone.client.name, parsedSone.client.version));
+		}
+
+		if (parsedSone.requestUri != null) {
+			try {
+				sone.setRequestUri(new FreenetURI(parsedSone.requestUri));
+			} catch (MalformedURLException mue1) {
+				logger.log(Level.WARNING, String.format("Downloaded Sone %s has invalid request URI: %s", sone, parsedSone.requestUri), mue1);
+				return null;
+			}
+		}
+
+		if ((parsedSone.insertUri != null) && (sone.getInsertUri() == null)) {
+			try {
+				sone.setInsertUri(new FreenetURI(parsedSone.insertUri));
+				sone.setLatestEdition(Math.max(sone.getRequestUri().getEdition(), sone.getInsertUri().getEdition()));
+			} catch (MalformedURLException mue1) {
+				logger.log(Level.WARNING, String.format("Downloaded Sone %s has invalid insert URI: %s", sone, parsedSone.insertUri), mue1);
+				return null;
+			}
+		}
+
+		ParsedProfile parsedProfile = parsedSone.profile;
+		if (parsedProfile == null) {
+			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no profile!", sone));
+			return null;
+		}
+
+		/* parse profile. */
+		Integer profileBirthDay = Numbers.safeParseInteger(parsedProfile.birthDay);
+		Integer profileBirthMonth = Numbers.safeParseInteger(parsedProfile.birthMonth);
+		Integer profileBirthYear = Numbers.safeParseInteger(parsedProfile.birthYear);
+		Profile profile = new Profile(sone).setFirstName(parsedProfile.firstName).setMiddleName(parsedProfile.middleName).setLastName(parsedProfile.lastName);
+		profile.setBirthDay(profileBirthDay).setBirthMonth(profileBirthMonth).setBirthYear(profileBirthYear);
+
+		/* parse profile fields. */
+		for (String[] field : parsedProfile.fields) {
+			String fieldName = field[0];
+			String fieldValue = (field[1] == null) ? "" : field[1];
+			if (fieldName == null) {
+				logger.log(Level.WARNING, String.format("Downloaded profile field for Sone %s with missing data! Name: %s, Value: %s", sone, fieldName, fieldValue));
+				return null;
+			}
+			try {
+				profile.addField(fieldName).setValue(fieldValue);
+			} catch (IllegalArgumentException iae1) {
+				logger.log(Level.WARNING, String.format("Duplicate field: %s", fieldName), iae1);
+				return null;
+			}
+		}
+
+		if (!verifyElements(sone, parsedSone)) {
+			return null;
+		}
+
+		/*
+		 * all elements are created detached from the core. the recipients of
+		 * posts and the posts of replies are only placeholders that are
+		 * resolved when the Sone is stored by Core.updateSone(Sone).
+		 */
+
+		/* parse posts. */
+		Set<Post> posts = new HashSet<Post>();
+		if (parsedSone.posts == null) {
+			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no posts!", sone));
+		} else {
+			for (ParsedPost parsedPost : parsedSone.posts) {
+				Post post = new PostImpl(parsedPost.id, sone, Long.parseLong(parsedPost.time), parsedPost.text);
+				if ((parsedPost.recipient != null) && (parsedPost.recipient.length() == 43)) {
+					post.setRecipient(new Sone(parsedPost.recipient));
+				}
+				posts.add(post);
+			}
+		}
+
+		/* parse replies. */
+		Set<PostReply> replies = new HashSet<PostReply>();
+		if (parsedSone.replies == null) {
+			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no replies!", sone));
+		} else {
+			for (ParsedReply parsedReply : parsedSone.replies) {
+				replies.add(new PostReply(parsedReply.id, sone, new PostImpl(parsedReply.postId), Long.parseLong(parsedReply.time), parsedReply.text));
+			}
+		}
+
+		/* parse liked post IDs. */
+		Set<String> likedPostIds = new HashSet<String>();
+		if (parsedSone.likedPostIds == null) {
+			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no post likes!", sone));
+		} else {
+			likedPostIds.addAll(parsedSone.likedPostIds);
+		}
+
+		/* parse liked reply IDs. */
+		Set<String> likedReplyIds = new HashSet<String>();
+		if (parsedSone.likedReplyIds == null) {
+			logger.log(Level.WARNING, String.format("Downloaded Sone %s has no reply likes!", sone));
+		} else {
+			likedReplyIds.addAll(parsedSone.likedReplyIds);
+		}
+
+		/* parse albums. */
+		List<Album> topLevelAlbums = new ArrayList<Album>();
+		Map<String, Album> albums = new HashMap<String, Album>();
+		Map<String, Image> images = new HashMap<String, Image>();
+		if (parsedSone.albums != null) {
+			for (ParsedAlbum parsedAlbum : parsedSone.albums) {
+				String description = (parsedAlbum.description == null) ? "" : parsedAlbum.description;
+				Album parent = null;
+				if (parsedAlbum.parent != null) {
+					parent = albums.get(parsedAlbum.parent);
+				}
+				Album album = new Album(parsedAlbum.id).setSone(sone).setTitle(parsedAlbum.title).setDescription(description);
+				albums.put(album.getId(), album);
+				if (parent != null) {
+					parent.addAlbum(album);
+				} else {
+					topLevelAlbums.add(album);
+				}
+				for (ParsedImage parsedImage : parsedAlbum.images) {
+					long creationTime = Numbers.safeParseLong(parsedImage.creationTime, 0L);
+					int imageWidth = Numbers.safeParseInteger(parsedImage.width, 0);
+					int imageHeight = Numbers.safeParseInteger(parsedImage.height, 0);
+					Image image = new Image(parsedImage.id).setSone(sone).setKey(parsedImage.key).setCreationTime(creationTime);
+					image.setTitle(parsedImage.title).setDescription((parsedImage.description == null) ? "" : parsedImage.description);
+					image.setWidth(imageWidth).setHeight(imageHeight);
+					album.addImage(image);
+					images.put(image.getId(), image);
+				}
+				album.setAlbumImage(parsedAlbum.albumImage);
+			}
+		}
+
+		/* process avatar. */
+		if (parsedProfile.avatar != null) {
+			profile.setAvatar(images.get(parsedProfile.avatar));
+		}
+
+		/* okay, apparently everything was parsed correctly. Now import. */
+		/* atomic setter operation on the Sone. */
+		synchronized (sone) {
+			sone.setProfile(profile);
+			sone.setPosts(posts);
+			sone.setReplies(replies);
+			sone.setLikePostIds(likedPostIds);
+			sone.setLikeReplyIds(likedReplyIds);
+			sone.setAlbums(topLevelAlbums);
+		}
+
+		return sone;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Verifies the posts, replies, albums, and images of the given parsed
+	 * values. Nothing is created in the core.
+	 *
+	 * @param sone
+	 *            The Sone being parsed
+	 * @param parsedSone
+	 *            The parsed values
+	 * @return {@code true} if all elements are valid, {@code false} otherwise
+	 */
+	private boolean verifyElements(Sone sone, ParsedSone parsedSone) {
+		if (parsedSone.posts != null) {
+			for (ParsedPost parsedPost : parsedSone.posts) {
+				if ((parsedPost.id == null) || (parsedPost.time == null) || (parsedPost.text == null)) {
+					logger.log(Level.WARNING, String.format("Downloaded post for Sone %s with missing data! ID: %s, Time: %s, Text: %s", sone, parsedPost.id, parsedPost.time, parsedPost.text));
+					return false;
+				}
+				try {
+					Long.parseLong(parsedPost.time);
+				} catch (NumberFormatException nfe1) {
+					logger.log(Level.WARNING, String.format("Downloaded post for Sone %s with invalid time: %s", sone, parsedPost.time));
+					return false;
+				}
+			}
+		}
+		if (parsedSone.replies != null) {
+			for (ParsedReply parsedReply : parsedSone.replies) {
+				if ((parsedReply.id == null) || (parsedReply.postId == null) || (parsedReply.time == null) || (parsedReply.text == null)) {
+					logger.log(Level.WARNING, String.format("Downloaded reply for Sone %s with missing data! ID: %s, Post: %s, Time: %s, Text: %s", sone, parsedReply.id, parsedReply.postId, parsedReply.time, parsedReply.text));
+					return false;
+				}
+				try {
+					Long.parseLong(parsedReply.time);
+				} catch (NumberFormatException nfe1) {
+					logger.log(Level.WARNING, String.format("Downloaded reply for Sone %s with invalid time: %s", sone, parsedReply.time));
+					return false;
+				}
+			}
+		}
+		if (parsedSone.albums != null) {
+			Set<String> albumIds = new HashSet<String>();
+			for (ParsedAlbum parsedAlbum : parsedSone.albums) {
+				if ((parsedAlbum.id == null) || (parsedAlbum.title == null)) {
+					logger.log(Level.WARNING, String.format("Downloaded Sone %s contains invalid album!", sone));
+					return false;
+				}
+				if ((parsedAlbum.parent != null) && !albumIds.contains(parsedAlbum.parent)) {
+					logger.log(Level.WARNING, String.format("Downloaded Sone %s has album with invalid parent!", sone));
+					return false;
+				}
+				albumIds.add(parsedAlbum.id);
+				for (ParsedImage parsedImage : parsedAlbum.images) {
+					if ((parsedImage.id == null) || (parsedImage.creationTime == null) || (parsedImage.key == null) || (parsedImage.title == null) || (parsedImage.width == null) || (parsedImage.height == null)) {
+						logger.log(Level.WARNING, String.format("Downloaded Sone %s contains invalid images!", sone));
+						return false;
+					}
+					int imageWidth = Numbers.safeParseInteger(parsedImage.width, 0);
+					int imageHeight = Numbers.safeParseInteger(parsedImage.height, 0);
+					if ((imageWidth < 1) || (imageHeight < 1)) {
+						logger.log(Level.WARNING, String.format("Downloaded Sone %s contains image %s with invalid dimensions (%s, %s)!", sone, parsedImage.id, parsedImage.width, parsedImage.height));
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the values of a Sone document from an XML stream reader and
+	 * enforces the limits while reading.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class SoneReader {
+
+		/** The XML stream reader. */
+		private final XMLStreamReader xmlStreamReader;
+
+		/** The limits. */
+		private final SoneLimits soneLimits;
+
+		/** The number of likes read so far. */
+		private int likeCount;
+
+		/** The number of images read so far. */
+		private int imageCount;
+
+		/**
+		 * Creates a new Sone reader.
+		 *
+		 * @param xmlStreamReader
+		 *            The XML stream reader
+		 * @param soneLimits
+		 *            The limits to enforce
+		 */
+		public SoneReader(XMLStreamReader xmlStreamReader, SoneLimits soneLimits) {
+			this.xmlStreamReader = xmlStreamReader;
+			this.soneLimits = soneLimits;
+		}
+
+		/**
+		 * Reads the values of a Sone document.
+		 *
+		 * @return The parsed values, or {@code null} if the document does not
+		 *         contain a document element
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private ParsedSone readSone() throws XMLStreamException, SoneLimitExceededException {
+			if (!nextElement()) {
+				return null;
+			}
+			ParsedSone parsedSone = new ParsedSone();
+			while (nextElement()) {
+				String name = xmlStreamReader.getLocalName();
+				if (name.equals("protocol-version")) {
+					parsedSone.protocolVersion = readFirst(parsedSone.protocolVersion);
+				} else if (name.equals("time")) {
+					parsedSone.time = readFirst(parsedSone.time);
+				} else if (name.equals("request-uri")) {
+					parsedSone.requestUri = readFirst(parsedSone.requestUri);
+				} else if (name.equals("insert-uri")) {
+					parsedSone.insertUri = readFirst(parsedSone.insertUri);
+				} else if (name.equals("client") && (parsedSone.client == null)) {
+					parsedSone.client = readClient();
+				} else if (name.equals("profile") && (parsedSone.profile == null)) {
+					parsedSone.profile = readProfile();
+				} else if (name.equals("posts") && (parsedSone.posts == null)) {
+					parsedSone.posts = readPosts();
+				} else if (name.equals("replies") && (parsedSone.replies == null)) {
+					parsedSone.replies = readReplies();
+				} else if (name.equals("post-likes") && (parsedSone.likedPostIds == null)) {
+					parsedSone.likedPostIds = readValues("post-like");
+				} else if (name.equals("reply-likes") && (parsedSone.likedReplyIds == null)) {
+					parsedSone.likedReplyIds = readValues("reply-like");
+				} else if (name.equals("albums") && (parsedSone.albums == null)) {
+					parsedSone.albums = readAlbums();
+				} else if (name.equals("archives") && (parsedSone.archives == null)) {
+					parsedSone.archives = readArchives();
+				} else {
+					skipElement();
+				}
+			}
+			return parsedSone;
+		}
+
+		/**
+		 * Reads the values of an archive page. Only the posts and the replies
+		 * of the returned values are set.
+		 *
+		 * @return The parsed values, or {@code null} if the document does not
+		 *         contain an archive element
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private ParsedSone readArchive() throws XMLStreamException, SoneLimitExceededException {
+			if (!nextElement() || !xmlStreamReader.getLocalName().equals("sone-archive")) {
+				return null;
+			}
+			ParsedSone parsedSone = new ParsedSone();
+			while (nextElement()) {
+				String name = xmlStreamReader.getLocalName();
+				if (name.equals("posts") && (parsedSone.posts == null)) {
+					parsedSone.posts = readPosts();
+				} else if (name.equals("replies") && (parsedSone.replies == null)) {
+					parsedSone.replies = readReplies();
+				} else {
+					skipElement();
+				}
+			}
+			return parsedSone;
+		}
+
+		/**
+		 * Reads the archive references of a Sone.
+		 *
+		 * @return The parsed archive references
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private List<ParsedArchive> readArchives() throws XMLStreamException, SoneLimitExceededException {
+			List<ParsedArchive> parsedArchives = new ArrayList<ParsedArchive>();
+			while (nextElement()) {
+				if (!xmlStreamReader.getLocalName().equals("archive")) {
+					skipElement();
+					continue;
+				}
+				ParsedArchive parsedArchive = new ParsedArchive();
+				while (nextElement()) {
+					String name = xmlStreamReader.getLocalName();
+					if (name.equals("start")) {
+						parsedArchive.start = readFirst(parsedArchive.start);
+					} else if (name.equals("end")) {
+						parsedArchive.end = readFirst(parsedArchive.end);
+					} else if (name.equals("key")) {
+						parsedArchive.key = readFirst(parsedArchive.key);
+					} else {
+						skipElement();
+					}
+				}
+				parsedArchives.add(parsedArchive);
+				if (parsedArchives.size() > MAX_ARCHIVES) {
+					throw new SoneLimitExceededException(String.format("More than %d archives!", MAX_ARCHIVES));
+				}
+			}
+			return parsedArchives;
+		}
+
+		/**
+		 * Reads the client of a Sone.
+		 *
+		 * @return The parsed client
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private ParsedClient readClient() throws XMLStreamException, SoneLimitExceededException {
+			ParsedClient parsedClient = new ParsedClient();
+			while (nextElement()) {
+				String name = xmlStreamReader.getLocalName();
+				if (name.equals("name")) {
+					parsedClient.name = readFirst(parsedClient.name);
+				} else if (name.equals("version")) {
+					parsedClient.version = readFirst(parsedClient.version);
+				} else {
+					skipElement();
+				}
+			}
+			return parsedClient;
+		}
+
+		/**
+		 * Reads the profile of a Sone.
+		 *
+		 * @return The parsed profile
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private ParsedProfile readProfile() throws XMLStreamException, SoneLimitExceededException {
+			ParsedProfile parsedProfile = new ParsedProfile();
+			boolean fieldsRead = false;
+			while (nextElement()) {
+				String name = xmlStreamReader.getLocalName();
+				if (name.equals("first-name")) {
+					parsedProfile.firstName = readFirst(parsedProfile.firstName);
+				} else if (name.equals("middle-name")) {
+					parsedProfile.middleName = readFirst(parsedProfile.middleName);
+				} else if (name.equals("last-name")) {
+					parsedProfile.lastName = readFirst(parsedProfile.lastName);
+				} else if (name.equals("birth-day")) {
+					parsedProfile.birthDay = readFirst(parsedProfile.birthDay);
+				} else if (name.equals("birth-month")) {
+					parsedProfile.birthMonth = readFirst(parsedProfile.birthMonth);
+				} else if (name.equals("birth-year")) {
+					parsedProfile.birthYear = readFirst(parsedProfile.birthYear);
+				} else if (name.equals("avatar")) {
+					parsedProfile.avatar = readFirst(parsedProfile.avatar);
+				} else if (name.equals("fields") && !fieldsRead) {
+					fieldsRead = true;
+					while (nextElement()) {
+						if (xmlStreamReader.getLocalName().equals("field")) {
+							parsedProfile.fields.add(readField());
+						} else {
+							skipElement();
+						}
+					}
+				} else {
+					skipElement();
+				}
+			}
+			return parsedProfile;
+		}
+
+		/**
+		 * Reads a profile field.
+		 *
+		 * @return The name and the value of the field
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private String[] readField() throws XMLStreamException, SoneLimitExceededException {
+			String[] field = new String[2];
+			while (nextElement()) {
+				String name = xmlStreamReader.getLocalName();
+				if (name.equals("field-name")) {
+					field[0] = readFirst(field[0]);
+				} else if (name.equals("field-value")) {
+					field[1] = readFirst(field[1]);
+				} else {
+					skipElement();
+				}
+			}
+			return field;
+		}
+
+		/**
+		 * Reads the posts of a Sone.
+		 *
+		 * @return The parsed posts
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private List<ParsedPost> readPosts() throws XMLStreamException, SoneLimitExceededException {
+			List<ParsedPost> parsedPosts = new ArrayList<ParsedPost>();
+			while (nextElement()) {
+				if (!xmlStreamReader.getLocalName().equals("post")) {
+					skipElement();
+					continue;
+				}
+				ParsedPost parsedPost = new ParsedPost();
+				while (nextElement()) {
+					String name = xmlStreamReader.getLocalName();
+					if (name.equals("id")) {
+						parsedPost.id = readFirst(parsedPost.id);
+					} else if (name.equals("recipient")) {
+						parsedPost.recipient = readFirst(parsedPost.recipient);
+					} else if (name.equals("time")) {
+						parsedPost.time = readFirst(parsedPost.time);
+					} else if (name.equals("text")) {
+						parsedPost.text = readFirst(parsedPost.text);
+					} else {
+						skipElement();
+					}
+				}
+				parsedPosts.add(parsedPost);
+				if (parsedPosts.size() > soneLimits.getMaximumPosts()) {
+					throw new SoneLimitExceededException(String.format("More than %d posts!", soneLimits.getMaximumPosts()));
+				}
+			}
+			return parsedPosts;
+		}
+
+		/**
+		 * Reads the replies of a Sone.
+		 *
+		 * @return The parsed replies
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private List<ParsedReply> readReplies() throws XMLStreamException, SoneLimitExceededException {
+			List<ParsedReply> parsedReplies = new ArrayList<ParsedReply>();
+			while (nextElement()) {
+				if (!xmlStreamReader.getLocalName().equals("reply")) {
+					skipElement();
+					continue;
+				}
+				ParsedReply parsedReply = new ParsedReply();
+				while (nextElement()) {
+					String name = xmlStreamReader.getLocalName();
+					if (name.equals("id")) {
+						parsedReply.id = readFirst(parsedReply.id);
+					} else if (name.equals("post-id")) {
+						parsedReply.postId = readFirst(parsedReply.postId);
+					} else if (name.equals("time")) {
+						parsedReply.time = readFirst(parsedReply.time);
+					} else if (name.equals("text")) {
+						parsedReply.text = readFirst(parsedReply.text);
+					} else {
+						skipElement();
+					}
+				}
+				parsedReplies.add(parsedReply);
+				if (parsedReplies.size() > soneLimits.getMaximumReplies()) {
+					throw new SoneLimitExceededException(String.format("More than %d replies!", soneLimits.getMaximumReplies()));
+				}
+			}
+			return parsedReplies;
+		}
+
+		/**
+		 * Reads the values of all child elements with the given name. Empty
+		 * elements are ignored.
+		 *
+		 * @param elementName
+		 *            The name of the elements to read
+		 * @return The values of the elements
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private List<String> readValues(String elementName) throws XMLStreamException, SoneLimitExceededException {
+			List<String> values = new ArrayList<String>();
+			while (nextElement()) {
+				if (!xmlStreamReader.getLocalName().equals(elementName)) {
+					skipElement();
+					continue;
+				}
+				String value = readText();
+				if (value != null) {
+					values.add(value);
+					if (++likeCount > soneLimits.getMaximumLikes()) {
+						throw new SoneLimitExceededException(String.format("More than %d likes!", soneLimits.getMaximumLikes()));
+					}
+				}
+			}
+			return values;
+		}
+
+		/**
+		 * Reads the albums of a Sone.
+		 *
+		 * @return The parsed albums
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private List<ParsedAlbum> readAlbums() throws XMLStreamException, SoneLimitExceededException {
+			List<ParsedAlbum> parsedAlbums = new ArrayList<ParsedAlbum>();
+			while (nextElement()) {
+				if (!xmlStreamReader.getLocalName().equals("album")) {
+					skipElement();
+					continue;
+				}
+				ParsedAlbum parsedAlbum = new ParsedAlbum();
+				boolean imagesRead = false;
+				while (nextElement()) {
+					String name = xmlStreamReader.getLocalName();
+					if (name.equals("id")) {
+						parsedAlbum.id = readFirst(parsedAlbum.id);
+					} else if (name.equals("parent")) {
+						parsedAlbum.parent = readFirst(parsedAlbum.parent);
+					} else if (name.equals("title")) {
+						parsedAlbum.title = readFirst(parsedAlbum.title);
+					} else if (name.equals("description")) {
+						parsedAlbum.description = readFirst(parsedAlbum.description);
+					} else if (name.equals("album-image")) {
+						parsedAlbum.albumImage = readFirst(parsedAlbum.albumImage);
+					} else if (name.equals("images") && !imagesRead) {
+						imagesRead = true;
+						while (nextElement()) {
+							if (xmlStreamReader.getLocalName().equals("image")) {
+								parsedAlbum.images.add(readImage());
+							} else {
+								skipElement();
+							}
+						}
+					} else {
+						skipElement();
+					}
+				}
+				parsedAlbums.add(parsedAlbum);
+				if (parsedAlbums.size() > soneLimits.getMaximumAlbums()) {
+					throw new SoneLimitExceededException(String.format("More than %d albums!", soneLimits.getMaximumAlbums()));
+				}
+			}
+			return parsedAlbums;
+		}
+
+		/**
+		 * Reads an image.
+		 *
+		 * @return The parsed image
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private ParsedImage readImage() throws XMLStreamException, SoneLimitExceededException {
+			if (++imageCount > soneLimits.getMaximumImages()) {
+				throw new SoneLimitExceededException(String.format("More than %d images!", soneLimits.getMaximumImages()));
+			}
+			ParsedImage parsedImage = new ParsedImage();
+			while (nextElement()) {
+				String name = xmlStreamReader.getLocalName();
+				if (name.equals("id")) {
+					parsedImage.id = readFirst(parsedImage.id);
+				} else if (name.equals("creation-time")) {
+					parsedImage.creationTime = readFirst(parsedImage.creationTime);
+				} else if (name.equals("key")) {
+					parsedImage.key = readFirst(parsedImage.key);
+				} else if (name.equals("title")) {
+					parsedImage.title = readFirst(parsedImage.title);
+				} else if (name.equals("description")) {
+					parsedImage.description = readFirst(parsedImage.description);
+				} else if (name.equals("width")) {
+					parsedImage.width = readFirst(parsedImage.width);
+				} else if (name.equals("height")) {
+					parsedImage.height = readFirst(parsedImage.height);
+				} else {
+					skipElement();
+				}
+			}
+			return parsedImage;
+		}
+
+		/**
+		 * Advances the reader to the next child element of the current element.
+		 *
+		 * @return {@code true} if the reader is positioned at the start of a child
+		 *         element, {@code false} if the end of the current element (or of
+		 *         the document) has been reached
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 */
+		private boolean nextElement() throws XMLStreamException {
+			while (xmlStreamReader.hasNext()) {
+				int event = xmlStreamReader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					return true;
+				}
+				if (event == XMLStreamConstants.END_ELEMENT) {
+					return false;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Reads the text of the current element, unless a value has already been
+		 * read from an earlier element with the same name.
+		 *
+		 * @param currentValue
+		 *            The value read from an earlier element (may be {@code null})
+		 * @return The current value if it is not {@code null}, the text of the
+		 *         current element otherwise
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private String readFirst(String currentValue) throws XMLStreamException, SoneLimitExceededException {
+			if (currentValue != null) {
+				skipElement();
+				return currentValue;
+			}
+			return readText();
+		}
+
+		/**
+		 * Reads the text of the current element and advances the reader to the end
+		 * of the element.
+		 *
+		 * @return The text of the element, or {@code null} if the element is empty
+		 *         or contains other elements
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 * @throws SoneLimitExceededException
+		 *             if the document exceeds a limit
+		 */
+		private String readText() throws XMLStreamException, SoneLimitExceededException {
+			StringBuilder text = null;
+			boolean containsElements = false;
+			int depth = 0;
+			while (true) {
+				int event = xmlStreamReader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					containsElements = true;
+					++depth;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == 0) {
+						return (containsElements || (text == null)) ? null : text.toString();
+					}
+					--depth;
+				} else if ((depth == 0) && ((event == XMLStreamConstants.CHARACTERS) || (event == XMLStreamConstants.CDATA) || (event == XMLStreamConstants.SPACE))) {
+					if (text == null) {
+						text = new StringBuilder();
+					}
+					if ((text.length() + xmlStreamReader.getTextLength()) > soneLimits.getMaximumTextLength()) {
+						throw new SoneLimitExceededException(String.format("Text is longer than %d characters!", soneLimits.getMaximumTextLength()));
+					}
+					text.append(xmlStreamReader.getTextCharacters(), xmlStreamReader.getTextStart(), xmlStreamReader.getTextLength());
+				}
+			}
+		}
+
+		/**
+		 * Advances the reader to the end of the current element.
+		 *
+		 * @throws XMLStreamException
+		 *             if the XML can not be parsed
+		 */
+		private void skipElement() throws XMLStreamException {
+			int depth = 0;
+			while (true) {
+				int event = xmlStreamReader.next();
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					++depth;
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					if (depth == 0) {
+						return;
+					}
+					--depth;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Closes the given XML stream reader, ignoring any exceptions.
+	 *
+	 * @param xmlStreamReader
+	 *            The XML stream reader to close (may be {@code null})
+	 */
+	private static void close(XMLStreamReader xmlStreamReader) {
+		if (xmlStreamReader != null) {
+			try {
+				xmlStreamReader.close();
+			} catch (XMLStreamException xse1) {
+				/* ignore. */
+			}
+		}
+	}
+
+	/**
+	 * The values read from a Sone document.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedSone {
+
+		/** The protocol version. */
+		String protocolVersion;
+
+		/** The time of the Sone. */
+		String time;
+
+		/** The client, or {@code null} if there is no client element. */
+		ParsedClient client;
+
+		/** The request URI. */
+		String requestUri;
+
+		/** The insert URI. */
+		String insertUri;
+
+		/** The profile, or {@code null} if there is no profile element. */
+		ParsedProfile profile;
+
+		/** The posts, or {@code null} if there is no posts element. */
+		List<ParsedPost> posts;
+
+		/** The replies, or {@code null} if there is no replies element. */
+		List<ParsedReply> replies;
+
+		/** The IDs of the liked posts, or {@code null} if there are none. */
+		List<String> likedPostIds;
+
+		/** The IDs of the liked replies, or {@code null} if there are none. */
+		List<String> likedReplyIds;
+
+		/** The albums, or {@code null} if there is no albums element. */
+		List<ParsedAlbum> albums;
+
+		/** The archives, or {@code null} if there is no archives element. */
+		List<ParsedArchive> archives;
+
+	}
+
+	/**
+	 * The values of an archive element.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedArchive {
+
+		/** The start of the period. */
+		String start;
+
+		/** The end of the period. */
+		String end;
+
+		/** The key of the archive page. */
+		String key;
+
+	}
+
+	/**
+	 * The values of a client element.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedClient {
+
+		/** The name of the client. */
+		String name;
+
+		/** The version of the client. */
+		String version;
+
+	}
+
+	/**
+	 * The values of a profile element.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedProfile {
+
+		/** The first name. */
+		String firstName;
+
+		/** The middle name. */
+		String middleName;
+
+		/** The last name. */
+		String lastName;
+
+		/** The day of birth. */
+		String birthDay;
+
+		/** The month of birth. */
+		String birthMonth;
+
+		/** The year of birth. */
+		String birthYear;
+
+		/** The ID of the avatar image. */
+		String avatar;
+
+		/** The names and values of the profile fields. */
+		final List<String[]> fields = new ArrayList<String[]>();
+
+	}
+
+	/**
+	 * The values of a post element.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedPost {
+
+		/** The ID of the post. */
+		String id;
+
+		/** The ID of the recipient. */
+		String recipient;
+
+		/** The time of the post. */
+		String time;
+
+		/** The text of the post. */
+		String text;
+
+	}
+
+	/**
+	 * The values of a reply element.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedReply {
+
+		/** The ID of the reply. */
+		String id;
+
+		/** The ID of the post the reply belongs to. */
+		String postId;
+
+		/** The time of the reply. */
+		String time;
+
+		/** The text of the reply. */
+		String text;
+
+	}
+
+	/**
+	 * The values of an album element.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedAlbum {
+
+		/** The ID of the album. */
+		String id;
+
+		/** The ID of the parent album. */
+		String parent;
+
+		/** The title of the album. */
+		String title;
+
+		/** The description of the album. */
+		String description;
+
+		/** The ID of the album image. */
+		String albumImage;
+
+		/** The images of the album. */
+		final List<ParsedImage> images = new ArrayList<ParsedImage>();
+
+	}
+
+	/**
+	 * The values of an image element.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	static class ParsedImage {
+
+		/** The ID of the image. */
+		String id;
+
+		/** The creation time of the image. */
+		String creationTime;
+
+		/** The key of the image. */
+		String key;
+
+		/** The title of the image. */
+		String title;
+
+		/** The description of the image. */
+		String description;
+
+		/** The width of the image. */
+		String width;
+
+		/** The height of the image. */
+		String height;
+
+	}
+
+}
@@ -0,0 +1,443 @@
+/*
+ * Sone - SoneSnapshot.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import net.pterodactylus.sone.core.SoneParser.ParsedAlbum;
+import net.pterodactylus.sone.core.SoneParser.ParsedClient;
+import net.pterodactylus.sone.core.SoneParser.ParsedImage;
+import net.pterodactylus.sone.core.SoneParser.ParsedPost;
+import net.pterodactylus.sone.core.SoneParser.ParsedProfile;
+import net.pterodactylus.sone.core.SoneParser.ParsedReply;
+import net.pterodactylus.sone.core.SoneParser.ParsedSone;
+import net.pterodactylus.sone.data.Album;
+import net.pterodactylus.sone.data.Client;
+import net.pterodactylus.sone.data.Image;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.PostReply;
+import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.data.Profile.Field;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.util.logging.Logging;
+
+/**
+ * Reads and writes the compact binary snapshots of downloaded Sones that are
+ * kept by the {@link SoneCache}. A snapshot contains the same values as a
+ * Sone document; when it is read, the values are verified by the
+ * {@link SoneParser} in the same way as the values of a downloaded Sone.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneSnapshot {
+
+	/** The logger. */
+	private static final Logger logger = Logging.getLogger(SoneSnapshot.class);
+
+	/** The version of the snapshot format. */
+	private static final int SNAPSHOT_VERSION = 1;
+
+	/** The maximum length of a string in a snapshot, in bytes. */
+	private static final int MAX_SNAPSHOT_STRING_LENGTH = 16 * 1024 * 1024;
+
+	//
+	// STATIC METHODS
+	//
+
+	/**
+	 * Reads a Sone from a snapshot that was written by
+	 * {@link #writeSnapshot(Sone, DataOutput)}. The values of the snapshot are
+	 * verified in the same way as the values of a downloaded Sone.
+	 *
+	 * @param soneParser
+	 *            The Sone parser that verifies the read values
+	 * @param originalSone
+	 *            The Sone to update
+	 * @param dataInput
+	 *            The data input to read the snapshot from
+	 * @return The read Sone, or {@code null} if the snapshot is not valid
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SoneLimitExceededException
+	 *             if the snapshot exceeds one of the {@link SoneLimits}
+	 */
+	public static Sone readSnapshot(SoneParser soneParser, Sone originalSone, DataInput dataInput) throws IOException, SoneLimitExceededException {
+		if (dataInput.readInt() != SNAPSHOT_VERSION) {
+			logger.log(Level.FINE, String.format("Snapshot of Sone %s has unknown version.", originalSone));
+			return null;
+		}
+		ParsedSone parsedSone = new SnapshotReader(dataInput, soneParser.getSoneLimits()).readSone();
+		return soneParser.createSone(originalSone, parsedSone);
+	}
+
+	/**
+	 * Writes a compact binary snapshot of the given Sone that can be read
+	 * again by {@link #readSnapshot(SoneParser, Sone, DataInput)}.
+	 *
+	 * @param sone
+	 *            The Sone to write
+	 * @param dataOutput
+	 *            The data output to write the snapshot to
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public static void writeSnapshot(Sone sone, DataOutput dataOutput) throws IOException {
+		dataOutput.writeInt(SNAPSHOT_VERSION);
+		dataOutput.writeLong(sone.getTime());
+		Client client = sone.getClient();
+		dataOutput.writeBoolean(client != null);
+		if (client != null) {
+			writeString(dataOutput, client.getName());
+			writeString(dataOutput, client.getVersion());
+		}
+		Profile profile = sone.getProfile();
+		writeString(dataOutput, profile.getFirstName());
+		writeString(dataOutput, profile.getMiddleName());
+		writeString(dataOutput, profile.getLastName());
+		writeString(dataOutput, (profile.getBirthDay() != null) ? String.valueOf(profile.getBirthDay()) : null);
+		writeString(dataOutput, (profile.getBirthMonth() != null) ? String.valueOf(profile.getBirthMonth()) : null);
+		writeString(dataOutput, (profile.getBirthYear() != null) ? String.valueOf(profile.getBirthYear()) : null);
+		writeString(dataOutput, profile.getAvatar());
+		List<Field> fields = profile.getFields();
+		dataOutput.writeInt(fields.size());
+		for (Field field : fields) {
+			writeString(dataOutput, field.getName());
+			writeString(dataOutput, field.getValue());
+		}
+		List<Post> posts = sone.getPosts();
+		dataOutput.writeInt(posts.size());
+		for (Post post : posts) {
+			writeString(dataOutput, post.getId());
+			writeString(dataOutput, (post.getRecipient() != null) ? post.getRecipient().getId() : null);
+			dataOutput.writeLong(post.getTime());
+			writeString(dataOutput, post.getText());
+		}
+		Set<PostReply> replies = sone.getReplies();
+		dataOutput.writeInt(replies.size());
+		for (PostReply reply : replies) {
+			writeString(dataOutput, reply.getId());
+			writeString(dataOutput, reply.getPost().getId());
+			dataOutput.writeLong(reply.getTime());
+			writeString(dataOutput, reply.getText());
+		}
+		writeStrings(dataOutput, new ArrayList<String>(sone.getLikedPostIds()));
+		writeStrings(dataOutput, new ArrayList<String>(sone.getLikedReplyIds()));
+		List<Album> albums = sone.getAllAlbums();
+		dataOutput.writeInt(albums.size());
+		for (Album album : albums) {
+			writeString(dataOutput, album.getId());
+			writeString(dataOutput, (album.getParent() != null) ? album.getParent().getId() : null);
+			writeString(dataOutput, album.getTitle());
+			writeString(dataOutput, album.getDescription());
+			writeString(dataOutput, (album.getAlbumImage() != null) ? album.getAlbumImage().getId() : null);
+			List<Image> images = album.getImages();
+			dataOutput.writeInt(images.size());
+			for (Image image : images) {
+				writeString(dataOutput, image.getId());
+				dataOutput.writeLong(image.getCreationTime());
+				writeString(dataOutput, image.getKey());
+				writeString(dataOutput, image.getTitle());
+				writeString(dataOutput, image.getDescription());
+				dataOutput.writeInt(image.getWidth());
+				dataOutput.writeInt(image.getHeight());
+			}
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Writes the given strings, preceded by their number.
+	 *
+	 * @param dataOutput
+	 *            The data output to write to
+	 * @param strings
+	 *            The strings to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static void writeStrings(DataOutput dataOutput, List<String> strings) throws IOException {
+		dataOutput.writeInt(strings.size());
+		for (String string : strings) {
+			writeString(dataOutput, string);
+		}
+	}
+
+	/**
+	 * Writes the given string as its length in bytes followed by its UTF-8
+	 * encoded bytes; {@code null} is written as length {@code -1}.
+	 *
+	 * @param dataOutput
+	 *            The data output to write to
+	 * @param string
+	 *            The string to write (may be {@code null})
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static void writeString(DataOutput dataOutput, String string) throws IOException {
+		if (string == null) {
+			dataOutput.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes("UTF-8");
+		dataOutput.writeInt(bytes.length);
+		dataOutput.write(bytes);
+	}
+
+	/**
+	 * Reads the values of a snapshot from a data input and enforces the
+	 * limits while reading, in the same way the {@link SoneParser} does for
+	 * Sone documents. Every read byte counts against the maximum size of a Sone.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class SnapshotReader {
+
+		/** The data input. */
+		private final DataInput dataInput;
+
+		/** The limits. */
+		private final SoneLimits soneLimits;
+
+		/** The number of bytes that may still be read. */
+		private long remainingSize;
+
+		/** The number of images read so far. */
+		private int imageCount;
+
+		/**
+		 * Creates a new snapshot reader.
+		 *
+		 * @param dataInput
+		 *            The data input
+		 * @param soneLimits
+		 *            The limits to enforce
+		 */
+		public SnapshotReader(DataInput dataInput, SoneLimits soneLimits) {
+			this.dataInput = dataInput;
+			this.soneLimits = soneLimits;
+			this.remainingSize = soneLimits.getMaximumSize();
+		}
+
+		/**
+		 * Reads the values of a snapshot.
+		 *
+		 * @return The parsed values
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 * @throws SoneLimitExceededException
+		 *             if the snapshot exceeds a limit
+		 */
+		private ParsedSone readSone() throws IOException, SoneLimitExceededException {
+			ParsedSone parsedSone = new ParsedSone();
+			parsedSone.protocolVersion = String.valueOf(SoneParser.MAX_PROTOCOL_VERSION);
+			parsedSone.time = String.valueOf(readLong());
+			if (readBoolean()) {
+				parsedSone.client = new ParsedClient();
+				parsedSone.client.name = readString();
+				parsedSone.client.version = readString();
+			}
+			ParsedProfile parsedProfile = new ParsedProfile();
+			parsedProfile.firstName = readString();
+			parsedProfile.middleName = readString();
+			parsedProfile.lastName = readString();
+			parsedProfile.birthDay = readString();
+			parsedProfile.birthMonth = readString();
+			parsedProfile.birthYear = readString();
+			parsedProfile.avatar = readString();
+			for (int fieldCount = readCount(0, Integer.MAX_VALUE, "fields"); fieldCount > 0; --fieldCount) {
+				parsedProfile.fields.add(new String[] { readString(), readString() });
+			}
+			parsedSone.profile = parsedProfile;
+			parsedSone.posts = new ArrayList<ParsedPost>();
+			for (int postCount = readCount(0, soneLimits.getMaximumPosts(), "posts"); postCount > 0; --postCount) {
+				ParsedPost parsedPost = new ParsedPost();
+				parsedPost.id = readString();
+				parsedPost.recipient = readString();
+				parsedPost.time = String.valueOf(readLong());
+				parsedPost.text = readString();
+				parsedSone.posts.add(parsedPost);
+			}
+			parsedSone.replies = new ArrayList<ParsedReply>();
+			for (int replyCount = readCount(0, soneLimits.getMaximumReplies(), "replies"); replyCount > 0; --replyCount) {
+				ParsedReply parsedReply = new ParsedReply();
+				parsedReply.id = readString();
+				parsedReply.postId = readString();
+				parsedReply.time = String.valueOf(readLong());
+				parsedReply.text = readString();
+				parsedSone.replies.add(parsedReply);
+			}
+			parsedSone.likedPostIds = new ArrayList<String>();
+			for (int likeCount = readCount(0, soneLimits.getMaximumLikes(), "likes"); likeCount > 0; --likeCount) {
+				parsedSone.likedPostIds.add(readString());
+			}
+			parsedSone.likedReplyIds = new ArrayList<String>();
+			for (int likeCount = readCount(parsedSone.likedPostIds.size(), soneLimits.getMaximumLikes(), "likes"); likeCount > 0; --likeCount) {
+				parsedSone.likedReplyIds.add(readString());
+			}
+			parsedSone.albums = new ArrayList<ParsedAlbum>();
+			for (int albumCount = readCount(0, soneLimits.getMaximumAlbums(), "albums"); albumCount > 0; --albumCount) {
+				ParsedAlbum parsedAlbum = new ParsedAlbum();
+				parsedAlbum.id = readString();
+				parsedAlbum.parent = readString();
+				parsedAlbum.title = readString();
+				parsedAlbum.description = readString();
+				parsedAlbum.albumImage = readString();
+				for (int albumImageCount = readCount(imageCount, soneLimits.getMaximumImages(), "images"); albumImageCount > 0; --albumImageCount) {
+					ParsedImage parsedImage = new ParsedImage();
+					parsedImage.id = readString();
+					parsedImage.creationTime = String.valueOf(readLong());
+					parsedImage.key = readString();
+					parsedImage.title = readString();
+					parsedImage.description = readString();
+					parsedImage.width = String.valueOf(readInt());
+					parsedImage.height = String.valueOf(readInt());
+					parsedAlbum.images.add(parsedImage);
+					++imageCount;
+				}
+				parsedSone.albums.add(parsedAlbum);
+			}
+			return parsedSone;
+		}
+
+		/**
+		 * Reads a number of elements and verifies it against the given
+		 * maximum.
+		 *
+		 * @param readCount
+		 *            The number of elements of the same kind that have already
+		 *            been read
+		 * @param maximumCount
+		 *            The maximum number of elements
+		 * @param elements
+		 *            The name of the elements, for the error message
+		 * @return The number of elements
+		 * @throws IOException
+		 *             if an I/O error occurs or the number is negative
+		 * @throws SoneLimitExceededException
+		 *             if the number is larger than the maximum
+		 */
+		private int readCount(int readCount, int maximumCount, String elements) throws IOException, SoneLimitExceededException {
+			int count = readInt();
+			if (count < 0) {
+				throw new IOException(String.format("Invalid number of %s: %d", elements, count));
+			}
+			if (count > (maximumCount - readCount)) {
+				throw new SoneLimitExceededException(String.format("More than %d %s!", maximumCount, elements));
+			}
+			return count;
+		}
+
+		/**
+		 * Reads a string that was written by
+		 * {@link SoneSnapshot#writeString(DataOutput, String)}.
+		 *
+		 * @return The read string (may be {@code null})
+		 * @throws IOException
+		 *             if an I/O error occurs or the string is too long
+		 * @throws SoneLimitExceededException
+		 *             if the string exceeds a limit
+		 */
+		private String readString() throws IOException, SoneLimitExceededException {
+			int length = readInt();
+			if (length == -1) {
+				return null;
+			}
+			if ((length < 0) || (length > MAX_SNAPSHOT_STRING_LENGTH)) {
+				throw new IOException(String.format("Invalid string length: %d", length));
+			}
+			consume(length);
+			byte[] bytes = new byte[length];
+			dataInput.readFully(bytes);
+			String string = new String(bytes, "UTF-8");
+			if (string.length() > soneLimits.getMaximumTextLength()) {
+				throw new SoneLimitExceededException(String.format("Text is longer than %d characters!", soneLimits.getMaximumTextLength()));
+			}
+			return string;
+		}
+
+		/**
+		 * Reads an int.
+		 *
+		 * @return The read int
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 * @throws SoneLimitExceededException
+		 *             if the snapshot is too large
+		 */
+		private int readInt() throws IOException, SoneLimitExceededException {
+			consume(4);
+			return dataInput.readInt();
+		}
+
+		/**
+		 * Reads a long.
+		 *
+		 * @return The read long
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 * @throws SoneLimitExceededException
+		 *             if the snapshot is too large
+		 */
+		private long readLong() throws IOException, SoneLimitExceededException {
+			consume(8);
+			return dataInput.readLong();
+		}
+
+		/**
+		 * Reads a boolean.
+		 *
+		 * @return The read boolean
+		 * @throws IOException
+		 *             if an I/O error occurs
+		 * @throws SoneLimitExceededException
+		 *             if the snapshot is too large
+		 */
+		private boolean readBoolean() throws IOException, SoneLimitExceededException {
+			consume(1);
+			return dataInput.readBoolean();
+		}
+
+		/**
+		 * Counts the given number of bytes against the maximum size of a
+		 * Sone.
+		 *
+		 * @param size
+		 *            The number of bytes that are about to be read
+		 * @throws SoneLimitExceededException
+		 *             if the snapshot is too large
+		 */
+		private void consume(int size) throws SoneLimitExceededException {
+			remainingSize -= size;
+			if (remainingSize < 0) {
+				throw new SoneLimitExceededException(String.format("Sone is larger than %d bytes!", soneLimits.getMaximumSize()));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Sone - SoneXmlWriter.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+
+import net.pterodactylus.sone.data.Album;
+import net.pterodactylus.sone.data.Image;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.PostReply;
+import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.data.Profile.Field;
+
+/**
+ * Writes the XML document of a Sone, as it is inserted into Freenet, directly
+ * to a {@link Writer}. The document is written element by element so that it
+ * never has to be held in memory as a whole.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneXmlWriter {
+
+	/** The protocol version of documents without archive pages. */
+	public static final int PROTOCOL_VERSION = 0;
+
+	/** The protocol version of documents that reference archive pages. */
+	public static final int ARCHIVE_PROTOCOL_VERSION = 1;
+
+	/** The writer to write the document to. */
+	private final Writer writer;
+
+	/**
+	 * Creates a new Sone XML writer.
+	 *
+	 * @param writer
+	 *            The writer to write the document to
+	 */
+	public SoneXmlWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Writes the XML document of a Sone. If any archive pages are given, the
+	 * document is written with {@link #ARCHIVE_PROTOCOL_VERSION}. The writer
+	 * is flushed but not closed.
+	 *
+	 * @param time
+	 *            The time of the Sone
+	 * @param clientVersion
+	 *            The version of the client inserting the Sone
+	 * @param profile
+	 *            The profile of the Sone
+	 * @param posts
+	 *            The posts of the Sone
+	 * @param replies
+	 *            The replies of the Sone
+	 * @param likedPostIds
+	 *            The IDs of the posts liked by the Sone
+	 * @param likedReplyIds
+	 *            The IDs of the replies liked by the Sone
+	 * @param albums
+	 *            All albums of the Sone, parents before their children
+	 * @param archives
+	 *            The archive pages containing the older posts and replies
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeSone(long time, String clientVersion, Profile profile, Collection<Post> posts, Collection<PostReply> replies, Collection<String> likedPostIds, Collection<String> likedReplyIds, Collection<Album> albums, Collection<SoneArchive> archives) throws IOException {
+		writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
+		writer.write("<sone>\n");
+		writeElement(1, "time", String.valueOf(time));
+		writeElement(1, "protocol-version", String.valueOf(archives.isEmpty() ? PROTOCOL_VERSION : ARCHIVE_PROTOCOL_VERSION));
+
+		startElement(1, "client");
+		writeElement(2, "name", "Sone");
+		writeElement(2, "version", clientVersion);
+		endElement(1, "client");
+
+		startElement(1, "profile");
+		writeElement(2, "first-name", profile.getFirstName());
+		writeElement(2, "middle-name", profile.getMiddleName());
+		writeElement(2, "last-name", profile.getLastName());
+		writeElement(2, "birth-day", toString(profile.getBirthDay()));
+		writeElement(2, "birth-month", toString(profile.getBirthMonth()));
+		writeElement(2, "birth-year", toString(profile.getBirthYear()));
+		writeElement(2, "avatar", profile.getAvatar());
+		startElement(2, "fields");
+		for (Field field : profile.getFields()) {
+			startElement(3, "field");
+			writeElement(4, "field-name", field.getName());
+			writeElement(4, "field-value", field.getValue());
+			endElement(3, "field");
+		}
+		endElement(2, "fields");
+		endElement(1, "profile");
+
+		writePosts(posts);
+		writeReplies(replies);
+
+		startElement(1, "post-likes");
+		for (String likedPostId : likedPostIds) {
+			writeElement(2, "post-like", likedPostId);
+		}
+		endElement(1, "post-likes");
+
+		startElement(1, "reply-likes");
+		for (String likedReplyId : likedReplyIds) {
+			writeElement(2, "reply-like", likedReplyId);
+		}
+		endElement(1, "reply-likes");
+
+		if (!albums.isEmpty()) {
+			startElement(1, "albums");
+			for (Album album : albums) {
+				writeAlbum(album);
+			}
+			endElement(1, "albums");
+		}
+
+		if (!archives.isEmpty()) {
+			startElement(1, "archives");
+			for (SoneArchive archive : archives) {
+				startElement(2, "archive");
+				writeElement(3, "start", String.valueOf(archive.getStartTime()));
+				writeElement(3, "end", String.valueOf(archive.getEndTime()));
+				writeElement(3, "key", archive.getKey().toString());
+				endElement(2, "archive");
+			}
+			endElement(1, "archives");
+		}
+
+		writer.write("</sone>\n");
+		writer.flush();
+	}
+
+	/**
+	 * Writes the XML document of an archive page. The writer is flushed but
+	 * not closed.
+	 *
+	 * @param posts
+	 *            The posts of the archive page
+	 * @param replies
+	 *            The replies of the archive page
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void writeArchive(Collection<Post> posts, Collection<PostReply> replies) throws IOException {
+		writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
+		writer.write("<sone-archive>\n");
+		writePosts(posts);
+		writeReplies(replies);
+		writer.write("</sone-archive>\n");
+		writer.flush();
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Writes the given posts.
+	 *
+	 * @param posts
+	 *            The posts to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writePosts(Collection<Post> posts) throws IOException {
+		startElement(1, "posts");
+		for (Post post : posts) {
+			startElement(2, "post");
+			writeElement(3, "id", post.getId());
+			writeElement(3, "recipient", (post.getRecipient() != null) ? post.getRecipient().getId() : null);
+			writeElement(3, "time", String.valueOf(post.getTime()));
+			writeElement(3, "text", post.getText());
+			endElement(2, "post");
+		}
+		endElement(1, "posts");
+	}
+
+	/**
+	 * Writes the given replies.
+	 *
+	 * @param replies
+	 *            The replies to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writeReplies(Collection<PostReply> replies) throws IOException {
+		startElement(1, "replies");
+		for (PostReply reply : replies) {
+			startElement(2, "reply");
+			writeElement(3, "id", reply.getId());
+			writeElement(3, "post-id", reply.getPost().getId());
+			writeElement(3, "time", String.valueOf(reply.getTime()));
+			writeElement(3, "text", reply.getText());
+			endElement(2, "reply");
+		}
+		endElement(1, "replies");
+	}
+
+	/**
+	 * Writes the given album and its images.
+	 *
+	 * @param album
+	 *            The album to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writeAlbum(Album album) throws IOException {
+		startElement(2, "album");
+		writeElement(3, "id", album.getId());
+		if (album.getParent() != null) {
+			writeElement(3, "parent", album.getParent().getId());
+		}
+		writeElement(3, "title", album.getTitle());
+		writeElement(3, "description", album.getDescription());
+		writeElement(3, "album-image", (album.getAlbumImage() != null) ? album.getAlbumImage().getId() : null);
+		if (!album.getImages().isEmpty()) {
+			startElement(3, "images");
+			for (Image image : album.getImages()) {
+				startElement(4, "image");
+				writeElement(5, "id", image.getId());
+				writeElement(5, "creation-time", String.valueOf(image.getCreationTime()));
+				writeElement(5, "key", image.getKey());
+				writeElement(5, "title", image.getTitle());
+				writeElement(5, "description", image.getDescription());
+				writeElement(5, "width", String.valueOf(image.getWidth()));
+				writeElement(5, "height", String.valueOf(image.getHeight()));
+				endElement(4, "image");
+			}
+			endElement(3, "images");
+		}
+		endElement(2, "album");
+	}
+
+	/**
+	 * Writes the start tag of an element on a line of its own.
+	 *
+	 * @param depth
+	 *            The indentation depth
+	 * @param name
+	 *            The name of the element
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void startElement(int depth, String name) throws IOException {
+		indent(depth);
+		writer.write('<');
+		writer.write(name);
+		writer.write(">\n");
+	}
+
+	/**
+	 * Writes the end tag of an element on a line of its own.
+	 *
+	 * @param depth
+	 *            The indentation depth
+	 * @param name
+	 *            The name of the element
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void endElement(int depth, String name) throws IOException {
+		indent(depth);
+		writer.write("</");
+		writer.write(name);
+		writer.write(">\n");
+	}
+
+	/**
+	 * Writes an element with the given text on a line of its own.
+	 *
+	 * @param depth
+	 *            The indentation depth
+	 * @param name
+	 *            The name of the element
+	 * @param text
+	 *            The text of the element, or {@code null} for an empty
+	 *            element
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writeElement(int depth, String name, String text) throws IOException {
+		indent(depth);
+		writer.write('<');
+		writer.write(name);
+		writer.write('>');
+		if (text != null) {
+			writeEscaped(text);
+		}
+		writer.write("</");
+		writer.write(name);
+		writer.write(">\n");
+	}
+
+	/**
+	 * Writes the given text, escaping all characters that have a special
+	 * meaning in XML.
+	 *
+	 * @param text
+	 *            The text to write
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void writeEscaped(String text) throws IOException {
+		int start = 0;
+		for (int index = 0; index < text.length(); ++index) {
+			String replacement;
+			switch (text.charAt(index)) {
+			case '&':
+				replacement = "&amp;";
+				break;
+			case '<':
+				replacement = "&lt;";
+				break;
+			case '>':
+				replacement = "&gt;";
+				break;
+			case '"':
+				replacement = "&quot;";
+				break;
+			case '\'':
+				replacement = "&apos;";
+				break;
+			default:
+				continue;
+			}
+			writer.write(text, start, index - start);
+			writer.write(replacement);
+			start = index + 1;
+		}
+		writer.write(text, start, text.length() - start);
+	}
+
+	/**
+	 * Indents the next line.
+	 *
+	 * @param depth
+	 *            The indentation depth
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private void indent(int depth) throws IOException {
+		for (int level = 0; level < depth; ++level) {
+			writer.write('\t');
+		}
+	}
+
+	/**
+	 * Converts the given number to a string.
+	 *
+	 * @param number
+	 *            The number to convert
+	 * @return The number as a string, or {@code null} if the number is
+	 *         {@code null}
+	 */
+	private static String toString(Integer number) {
+		return (number != null) ? String.valueOf(number) : null;
+	}
+
+}
@@ -0,0 +1,214 @@
+/*
+ * Sone - SortedIndex.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Secondary index that maps a key (e.g. the ID of a post) to a sorted list of
+ * elements (e.g. the replies to that post). Lookups never block and return an
+ * immutable list that is only replaced when the elements for its key change;
+ * the cost of a modification is proportional to the number of elements
+ * stored for the affected key.
+ *
+ * @param <T>
+ *            The type of the indexed elements
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SortedIndex<T> {
+
+	/** The key extractor. */
+	private final KeyExtractor<? super T> keyExtractor;
+
+	/** The comparator for the elements of a single key. */
+	private final Comparator<? super T> comparator;
+
+	/** The sorted, immutable element lists, indexed by their key. */
+	private final ConcurrentMap<String, List<T>> elements = new ConcurrentHashMap<String, List<T>>();
+
+	/** The key every element was stored under. */
+	/* synchronize access on this on itself. */
+	private final Map<T, String> elementKeys = new HashMap<T, String>();
+
+	/**
+	 * Creates a new sorted index.
+	 *
+	 * @param keyExtractor
+	 *            The key extractor
+	 * @param comparator
+	 *            The comparator for the elements of a single key
+	 */
+	public SortedIndex(KeyExtractor<? super T> keyExtractor, Comparator<? super T> comparator) {
+		this.keyExtractor = keyExtractor;
+		this.comparator = comparator;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns all elements that are stored for the given key, in the order of
+	 * this index’s comparator.
+	 *
+	 * @param key
+	 *            The key to get the elements for
+	 * @return The elements for the given key (may be empty but never
+	 *         {@code null})
+	 */
+	public List<T> get(String key) {
+		List<T> keyElements = (key == null) ? null : elements.get(key);
+		return (keyElements == null) ? Collections.<T> emptyList() : keyElements;
+	}
+
+	/**
+	 * Returns the number of elements that are stored for the given key.
+	 *
+	 * @param key
+	 *            The key to count the elements for
+	 * @return The number of elements for the given key
+	 */
+	public int size(String key) {
+		return get(key).size();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds the given element to this index. If the element is already stored
+	 * in this index it is removed first so that changes of its key or its
+	 * sort order are picked up.
+	 *
+	 * @param element
+	 *            The element to add
+	 */
+	public void add(T element) {
+		String key = keyExtractor.getKey(element);
+		synchronized (elementKeys) {
+			String oldKey = elementKeys.remove(element);
+			if (oldKey != null) {
+				removeFromKey(oldKey, element);
+			}
+			if (key == null) {
+				return;
+			}
+			elementKeys.put(element, key);
+			List<T> oldElements = get(key);
+			List<T> newElements = new ArrayList<T>(oldElements.size() + 1);
+			newElements.addAll(oldElements);
+			int index = Collections.binarySearch(newElements, element, comparator);
+			newElements.add((index < 0) ? (-index - 1) : index, element);
+			elements.put(key, Collections.unmodifiableList(newElements));
+		}
+	}
+
+	/**
+	 * Adds all given elements to this index.
+	 *
+	 * @param elements
+	 *            The elements to add
+	 */
+	public void addAll(Collection<? extends T> elements) {
+		for (T element : elements) {
+			add(element);
+		}
+	}
+
+	/**
+	 * Removes the given element from this index.
+	 *
+	 * @param element
+	 *            The element to remove
+	 */
+	public void remove(T element) {
+		synchronized (elementKeys) {
+			String key = elementKeys.remove(element);
+			if (key != null) {
+				removeFromKey(key, element);
+			}
+		}
+	}
+
+	/**
+	 * Removes all given elements from this index.
+	 *
+	 * @param elements
+	 *            The elements to remove
+	 */
+	public void removeAll(Collection<? extends T> elements) {
+		for (T element : elements) {
+			remove(element);
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Removes the given element from the element list of the given key. This
+	 * method has to be called with the lock on {@link #elementKeys} held.
+	 *
+	 * @param key
+	 *            The key the element was stored under
+	 * @param element
+	 *            The element to remove
+	 */
+	private void removeFromKey(String key, T element) {
+		List<T> oldElements = get(key);
+		if (oldElements.size() <= 1) {
+			elements.remove(key);
+			return;
+		}
+		List<T> newElements = new ArrayList<T>(oldElements);
+		newElements.remove(element);
+		elements.put(key, Collections.unmodifiableList(newElements));
+	}
+
+	/**
+	 * Extracts the key an element is indexed under.
+	 *
+	 * @param <T>
+	 *            The type of the elements
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static interface KeyExtractor<T> {
+
+		/**
+		 * Returns the key the given element should be indexed under.
+		 *
+		 * @param element
+		 *            The element to get the key for
+		 * @return The key of the element, or {@code null} if the element
+		 *         should not be indexed
+		 */
+		public String getKey(T element);
+
+	}
+
+}
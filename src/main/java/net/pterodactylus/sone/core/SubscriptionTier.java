@@ -0,0 +1,38 @@
+/*
+ * Sone - SubscriptionTier.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+/**
+ * The tiers of USK subscriptions of remote Sones. The tier of a Sone depends
+ * on its relation to the local Sones and determines how eagerly the node
+ * polls for new editions of the Sone.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public enum SubscriptionTier {
+
+	/** The Sone is followed by a local Sone. */
+	FOLLOWED,
+
+	/** The Sone is trusted by a local Sone. */
+	TRUSTED,
+
+	/** The Sone is only known. */
+	KNOWN
+
+}
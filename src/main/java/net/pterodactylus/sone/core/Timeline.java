@@ -0,0 +1,258 @@
+/*
+ * Sone - Timeline.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.util.collection.filter.Filter;
+
+/**
+ * The timeline of a local Sone, i.e. its own posts, the posts of the Sones it
+ * follows, and the posts that are directed at it, sorted newest first. The
+ * timeline is kept current by the {@link Core} whenever posts are added or
+ * removed or the Sone follows or unfollows another Sone, so that reading a
+ * page of it never requires collecting or sorting posts.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class Timeline {
+
+	/** The Sone this timeline belongs to. */
+	private final Sone sone;
+
+	/** The filter for posts that are visible to the Sone. */
+	private final Filter<Post> visibilityFilter;
+
+	/** The posts of this timeline, sorted newest first. */
+	/* modifications are synchronized on this timeline. */
+	private volatile List<Post> posts = Collections.emptyList();
+
+	/** The posts that are visible to the Sone, sorted newest first. */
+	private volatile List<Post> visiblePosts;
+
+	/** The time the visible posts have to be recalculated at. */
+	private volatile long visiblePostsExpiration;
+
+	/** The number of modifications, used to detect stale visible posts. */
+	private volatile int modificationCount;
+
+	/**
+	 * Creates a new, empty timeline.
+	 *
+	 * @param sone
+	 *            The Sone this timeline belongs to
+	 * @param visibilityFilter
+	 *            The filter for posts that are visible to the Sone
+	 */
+	public Timeline(Sone sone, Filter<Post> visibilityFilter) {
+		this.sone = sone;
+		this.visibilityFilter = visibilityFilter;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the Sone this timeline belongs to.
+	 *
+	 * @return The Sone of this timeline
+	 */
+	public Sone getSone() {
+		return sone;
+	}
+
+	/**
+	 * Returns all posts of this timeline that are not from the future, newest
+	 * first. The returned list is immutable.
+	 *
+	 * @return The posts of this timeline
+	 */
+	public List<Post> getPosts() {
+		List<Post> posts = this.posts;
+		long now = System.currentTimeMillis();
+		int firstPost = 0;
+		while ((firstPost < posts.size()) && (posts.get(firstPost).getTime() > now)) {
+			++firstPost;
+		}
+		return posts.subList(firstPost, posts.size());
+	}
+
+	/**
+	 * Returns all posts of this timeline that are visible to the Sone of this
+	 * timeline, newest first. Posts from the future are never visible, not
+	 * even the posts of the Sone itself. The visible posts are only
+	 * recalculated after this timeline has changed, after it has been
+	 * {@link #invalidate() invalidated}, or when a post from the future
+	 * becomes current. The returned list is immutable.
+	 *
+	 * @return The visible posts of this timeline
+	 */
+	public List<Post> getVisiblePosts() {
+		List<Post> visiblePosts = this.visiblePosts;
+		long now = System.currentTimeMillis();
+		if ((visiblePosts != null) && (now < visiblePostsExpiration)) {
+			return visiblePosts;
+		}
+		int modificationCount = this.modificationCount;
+		List<Post> posts = this.posts;
+		long expiration = Long.MAX_VALUE;
+		List<Post> newVisiblePosts = new ArrayList<Post>(posts.size());
+		for (Post post : posts) {
+			/* posts from the future are never visible, whatever the filter says. */
+			if (post.getTime() > now) {
+				expiration = Math.min(expiration, post.getTime());
+			} else if (visibilityFilter.filterObject(post)) {
+				newVisiblePosts.add(post);
+			}
+		}
+		visiblePosts = Collections.unmodifiableList(newVisiblePosts);
+		synchronized (this) {
+			if (modificationCount == this.modificationCount) {
+				this.visiblePosts = visiblePosts;
+				this.visiblePostsExpiration = expiration;
+			}
+		}
+		return visiblePosts;
+	}
+
+	/**
+	 * Returns whether the given post belongs into this timeline.
+	 *
+	 * @param post
+	 *            The post to check
+	 * @return {@code true} if the post belongs into this timeline,
+	 *         {@code false} otherwise
+	 */
+	public boolean isRelevant(Post post) {
+		Sone postSone = post.getSone();
+		if (postSone == null) {
+			return false;
+		}
+		return postSone.equals(sone) || sone.hasFriend(postSone.getId()) || sone.equals(post.getRecipient());
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Replaces all posts of this timeline with the relevant posts from the
+	 * given posts.
+	 *
+	 * @param posts
+	 *            The new posts of this timeline
+	 */
+	public synchronized void setPosts(Collection<? extends Post> posts) {
+		List<Post> newPosts = new ArrayList<Post>(posts.size());
+		Set<Post> addedPosts = new HashSet<Post>(posts.size());
+		for (Post post : posts) {
+			if (isRelevant(post) && addedPosts.add(post)) {
+				newPosts.add(post);
+			}
+		}
+		store(newPosts);
+	}
+
+	/**
+	 * Adds the relevant posts from the given posts to this timeline.
+	 *
+	 * @param posts
+	 *            The posts to add
+	 */
+	public void addPosts(Collection<? extends Post> posts) {
+		updatePosts(Collections.<Post> emptySet(), posts);
+	}
+
+	/**
+	 * Removes the given posts from this timeline.
+	 *
+	 * @param posts
+	 *            The posts to remove
+	 */
+	public void removePosts(Collection<? extends Post> posts) {
+		updatePosts(posts, Collections.<Post> emptySet());
+	}
+
+	/**
+	 * Removes the given removed posts from this timeline and adds the relevant
+	 * posts from the given added posts. A post that is both removed and added
+	 * is only kept if it is still relevant, e.g. after the Sone has
+	 * unfollowed the post’s Sone.
+	 *
+	 * @param removedPosts
+	 *            The posts to remove
+	 * @param addedPosts
+	 *            The posts to add
+	 */
+	public synchronized void updatePosts(Collection<? extends Post> removedPosts, Collection<? extends Post> addedPosts) {
+		Set<Post> relevantPosts = new HashSet<Post>(addedPosts.size());
+		for (Post addedPost : addedPosts) {
+			if (isRelevant(addedPost)) {
+				relevantPosts.add(addedPost);
+			}
+		}
+		if (removedPosts.isEmpty() && relevantPosts.isEmpty()) {
+			return;
+		}
+		Set<Post> replacedPosts = new HashSet<Post>(removedPosts);
+		replacedPosts.addAll(relevantPosts);
+		List<Post> newPosts = new ArrayList<Post>(posts.size() + relevantPosts.size());
+		for (Post post : posts) {
+			if (!replacedPosts.contains(post)) {
+				newPosts.add(post);
+			}
+		}
+		newPosts.addAll(relevantPosts);
+		store(newPosts);
+	}
+
+	/**
+	 * Forces the visible posts to be recalculated on the next access, e.g.
+	 * because the trust of the Sone in another Sone has changed.
+	 */
+	public synchronized void invalidate() {
+		visiblePosts = null;
+		++modificationCount;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Sorts and stores the given posts as the new posts of this timeline. This
+	 * method has to be called with the lock on this timeline held.
+	 *
+	 * @param newPosts
+	 *            The new posts
+	 */
+	private void store(List<Post> newPosts) {
+		Collections.sort(newPosts, Post.TIME_COMPARATOR);
+		posts = Collections.unmodifiableList(newPosts);
+		invalidate();
+	}
+
+}
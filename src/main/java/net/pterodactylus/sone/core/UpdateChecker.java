@@ -27,7 +27,6 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import net.pterodactylus.sone.main.SonePlugin;
-import net.pterodactylus.util.collection.Pair;
 import net.pterodactylus.util.io.Closer;
 import net.pterodactylus.util.logging.Logging;
 import net.pterodactylus.util.version.Version;
@@ -51,6 +50,9 @@ public class UpdateChecker {
 	/** The current latest known edition. */
 	private static final int LATEST_EDITION = 55;
 
+	/** The maximum size of the properties of the Sone homepage. */
+	private static final long MAXIMUM_PROPERTIES_SIZE = 64 * 1024;
+
 	/** The Freenet interface. */
 	private final FreenetInterface freenetInterface;
 
@@ -168,20 +170,7 @@ public class UpdateChecker {
 			public void editionFound(FreenetURI uri, long edition, boolean newKnownGood, boolean newSlot) {
 				logger.log(Level.FINEST, String.format("Found update for %s: %d, %s, %s", uri, edition, newKnownGood, newSlot));
 				if (newKnownGood || newSlot) {
-					Pair<FreenetURI, FetchResult> uriResult = freenetInterface.fetchUri(uri.setMetaString(new String[] { "sone.properties" }));
-					if (uriResult == null) {
-						logger.log(Level.WARNING, String.format("Could not fetch properties of latest homepage: %s", uri));
-						return;
-					}
-					Bucket resultBucket = uriResult.getRight().asBucket();
-					try {
-						parseProperties(resultBucket.getInputStream(), edition);
-						latestEdition = edition;
-					} catch (IOException ioe1) {
-						logger.log(Level.WARNING, String.format("Could not parse sone.properties of %s!", uri), ioe1);
-					} finally {
-						resultBucket.free();
-					}
+					fetchProperties(uri, edition);
 				}
 			}
 		});
@@ -198,6 +187,41 @@ public class UpdateChecker {
 	// PRIVATE ACTIONS
 	//
 
+	/**
+	 * Starts fetching the properties of the given edition of the Sone
+	 * homepage and parses them once they have been fetched.
+	 *
+	 * @param uri
+	 *            The URI of the Sone homepage
+	 * @param edition
+	 *            The edition of the Sone homepage
+	 */
+	private void fetchProperties(final FreenetURI uri, final long edition) {
+		freenetInterface.fetchUri(uri.setMetaString(new String[] { "sone.properties" }), MAXIMUM_PROPERTIES_SIZE, new FreenetInterface.FetchCallback() {
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void fetchSucceeded(FreenetURI propertiesUri, FetchResult fetchResult) {
+				Bucket resultBucket = fetchResult.asBucket();
+				try {
+					parseProperties(resultBucket.getInputStream(), edition);
+					latestEdition = edition;
+				} catch (IOException ioe1) {
+					logger.log(Level.WARNING, String.format("Could not parse sone.properties of %s!", uri), ioe1);
+				} finally {
+					resultBucket.free();
+				}
+			}
+
+			@Override
+			@SuppressWarnings("synthetic-access")
+			public void fetchFailed(FreenetURI propertiesUri, SoneException soneException) {
+				logger.log(Level.WARNING, String.format("Could not fetch properties of latest homepage: %s", uri), soneException);
+			}
+
+		});
+	}
+
 	/**
 	 * Parses the properties of the latest version and fires events, if
 	 * necessary.
@@ -85,6 +85,10 @@ public class WebOfTrustUpdater extends AbstractService {
 	 *            The comment of the trust relation
 	 */
 	public void setTrust(OwnIdentity truster, Identity trustee, Integer score, String comment) {
+		/* update the local trust right away so that it is visible immediately. */
+		if (trustee instanceof DefaultIdentity) {
+			((DefaultIdentity) trustee).setTrust(truster, (score != null) ? new Trust(score, null, 0) : null);
+		}
 		SetTrustJob setTrustJob = new SetTrustJob(truster, trustee, score, comment);
 		if (updateJobs.contains(setTrustJob)) {
 			updateJobs.remove(setTrustJob);
@@ -429,14 +433,8 @@ public class WebOfTrustUpdater extends AbstractService {
 		public void run() {
 			try {
 				if (score != null) {
-					if (trustee instanceof DefaultIdentity) {
-						((DefaultIdentity) trustee).setTrust(truster, new Trust(score, null, 0));
-					}
 					webOfTrustConnector.setTrust(truster, trustee, score, comment);
 				} else {
-					if (trustee instanceof DefaultIdentity) {
-						((DefaultIdentity) trustee).setTrust(truster, null);
-					}
 					webOfTrustConnector.removeTrust(truster, trustee);
 				}
 				finish(true);
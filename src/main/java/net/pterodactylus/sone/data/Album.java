@@ -73,6 +73,9 @@ public class Album implements Fingerprintable {
 	/** The ID of the album picture. */
 	private String albumImage;
 
+	/** The cached fingerprint of this album, {@code null} if it is stale. */
+	private volatile String fingerprint;
+
 	/**
 	 * Creates a new album with a random ID.
 	 */
@@ -147,6 +150,7 @@ public class Album implements Fingerprintable {
 		album.setParent(this);
 		if (!albums.contains(album)) {
 			albums.add(album);
+			albumsChanged();
 		}
 	}
 
@@ -160,6 +164,7 @@ public class Album implements Fingerprintable {
 		Validation.begin().isNotNull("Album", album).check().isEqual("Album Owner", album.sone, sone).isEqual("Album Parent", album.parent, this).check();
 		albums.remove(album);
 		album.removeParent();
+		albumsChanged();
 	}
 
 	/**
@@ -179,6 +184,7 @@ public class Album implements Fingerprintable {
 		}
 		albums.remove(oldIndex);
 		albums.add(oldIndex - 1, album);
+		albumsChanged();
 		return albums.get(oldIndex);
 	}
 
@@ -199,6 +205,7 @@ public class Album implements Fingerprintable {
 		}
 		albums.remove(oldIndex);
 		albums.add(oldIndex + 1, album);
+		albumsChanged();
 		return albums.get(oldIndex);
 	}
 
@@ -238,6 +245,7 @@ public class Album implements Fingerprintable {
 			imageIds.add(image.getId());
 			images.put(image.getId(), image);
 		}
+		fingerprintChanged();
 	}
 
 	/**
@@ -257,6 +265,7 @@ public class Album implements Fingerprintable {
 				albumImage = images.values().iterator().next().getId();
 			}
 		}
+		fingerprintChanged();
 	}
 
 	/**
@@ -276,6 +285,7 @@ public class Album implements Fingerprintable {
 		}
 		imageIds.remove(image.getId());
 		imageIds.add(oldIndex - 1, image.getId());
+		fingerprintChanged();
 		return images.get(imageIds.get(oldIndex));
 	}
 
@@ -296,6 +306,7 @@ public class Album implements Fingerprintable {
 		}
 		imageIds.remove(image.getId());
 		imageIds.add(oldIndex + 1, image.getId());
+		fingerprintChanged();
 		return images.get(imageIds.get(oldIndex));
 	}
 
@@ -321,6 +332,7 @@ public class Album implements Fingerprintable {
 	 */
 	public Album setAlbumImage(String id) {
 		this.albumImage = id;
+		fingerprintChanged();
 		return this;
 	}
 
@@ -385,6 +397,7 @@ public class Album implements Fingerprintable {
 	public Album setTitle(String title) {
 		Validation.begin().isNotNull("Album Title", title).check();
 		this.title = title;
+		fingerprintChanged();
 		return this;
 	}
 
@@ -407,9 +420,45 @@ public class Album implements Fingerprintable {
 	public Album setDescription(String description) {
 		Validation.begin().isNotNull("Album Description", description).check();
 		this.description = description;
+		fingerprintChanged();
 		return this;
 	}
 
+	//
+	// PACKAGE-PRIVATE METHODS
+	//
+
+	/**
+	 * Notifies this album that something that is part of its
+	 * {@link #getFingerprint() fingerprint} has changed. The notification is
+	 * passed on to the parent album, or to the Sone for top-level albums.
+	 */
+	void fingerprintChanged() {
+		synchronized (this) {
+			fingerprint = null;
+		}
+		/* don’t hold the lock while notifying, getFingerprint() locks downwards. */
+		if (parent != null) {
+			parent.fingerprintChanged();
+		} else if (sone != null) {
+			sone.fingerprintChanged();
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Notifies the Sone of this album that its album hierarchy has changed.
+	 */
+	private void albumsChanged() {
+		if (sone != null) {
+			sone.albumsChanged();
+		}
+		fingerprintChanged();
+	}
+
 	//
 	// FINGERPRINTABLE METHODS
 	//
@@ -418,34 +467,31 @@ public class Album implements Fingerprintable {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String getFingerprint() {
-		StringBuilder fingerprint = new StringBuilder();
-		fingerprint.append("Album(");
-		fingerprint.append("ID(").append(id).append(')');
-		fingerprint.append("Title(").append(title).append(')');
-		fingerprint.append("Description(").append(description).append(')');
-		if (albumImage != null) {
-			fingerprint.append("AlbumImage(").append(albumImage).append(')');
+	public synchronized String getFingerprint() {
+		if (fingerprint != null) {
+			return fingerprint;
 		}
+		FingerprintBuilder fingerprintBuilder = new FingerprintBuilder("Album");
+		fingerprintBuilder.add("ID", id);
+		fingerprintBuilder.add("Title", title);
+		fingerprintBuilder.add("Description", description);
+		fingerprintBuilder.add("AlbumImage", albumImage);
 
 		/* add nested albums. */
-		fingerprint.append("Albums(");
+		fingerprintBuilder.add("Albums", albums.size());
 		for (Album album : albums) {
-			fingerprint.append(album.getFingerprint());
+			fingerprintBuilder.add("Album", album.getFingerprint());
 		}
-		fingerprint.append(')');
 
 		/* add images. */
-		fingerprint.append("Images(");
 		for (Image image : getImages()) {
 			if (image.isInserted()) {
-				fingerprint.append(image.getFingerprint());
+				fingerprintBuilder.add("Image", image.getFingerprint());
 			}
 		}
-		fingerprint.append(')');
 
-		fingerprint.append(')');
-		return fingerprint.toString();
+		fingerprint = fingerprintBuilder.build();
+		return fingerprint;
 	}
 
 	//
@@ -0,0 +1,113 @@
+/*
+ * Sone - FingerprintBuilder.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.data;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Builds a {@link Fingerprintable fingerprint} by feeding named values into a
+ * SHA-256 digest. The resulting fingerprint has a fixed size regardless of the
+ * amount of data it covers; nested objects contribute their own (usually
+ * cached) fingerprints instead of their complete data.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class FingerprintBuilder {
+
+	/** The UTF-8 charset. */
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The hexadecimal digits. */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	/** The digest. */
+	private final MessageDigest messageDigest;
+
+	/**
+	 * Creates a new fingerprint builder.
+	 *
+	 * @param type
+	 *            The type of the object the fingerprint is built for
+	 */
+	public FingerprintBuilder(String type) {
+		try {
+			messageDigest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException nsae1) {
+			/* every Java implementation has to support SHA-256. */
+			throw new IllegalStateException("SHA-256 is not available!", nsae1);
+		}
+		update(type);
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Adds the given named value to the fingerprint.
+	 *
+	 * @param name
+	 *            The name of the value
+	 * @param value
+	 *            The value (may be {@code null})
+	 * @return This fingerprint builder
+	 */
+	public FingerprintBuilder add(String name, Object value) {
+		update(name);
+		update((value == null) ? null : String.valueOf(value));
+		return this;
+	}
+
+	/**
+	 * Returns the fingerprint of all values that have been added, as a
+	 * hexadecimal string. This builder must not be used afterwards.
+	 *
+	 * @return The fingerprint
+	 */
+	public String build() {
+		byte[] digest = messageDigest.digest();
+		char[] fingerprint = new char[digest.length * 2];
+		for (int index = 0; index < digest.length; ++index) {
+			fingerprint[index * 2] = HEX_DIGITS[(digest[index] >> 4) & 0x0f];
+			fingerprint[index * 2 + 1] = HEX_DIGITS[digest[index] & 0x0f];
+		}
+		return new String(fingerprint);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Adds the given string, prefixed with its length, to the digest.
+	 *
+	 * @param value
+	 *            The string to add (may be {@code null})
+	 */
+	private void update(String value) {
+		byte[] bytes = (value == null) ? null : value.getBytes(UTF8);
+		int length = (bytes == null) ? -1 : bytes.length;
+		messageDigest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length });
+		if (bytes != null) {
+			messageDigest.update(bytes);
+		}
+	}
+
+}
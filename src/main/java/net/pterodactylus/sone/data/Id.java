@@ -0,0 +1,503 @@
+/*
+ * Sone - Id.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.data;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Set;
+
+import net.pterodactylus.util.validation.Validation;
+
+/**
+ * Compact, immutable representation of the ID of a Sone, a post, or a reply.
+ * Sone IDs (43 characters of Freenet’s base64 encoding of a 256-bit routing
+ * key) are stored as four {@code long}s, post and reply IDs (36-character
+ * UUIDs) as two {@code long}s. IDs that do not have one of these formats, e.g.
+ * from a foreign client, are kept as strings so that every ID can be
+ * converted back to exactly the string it was created from.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public abstract class Id {
+
+	/** The characters of Freenet’s base64 encoding. */
+	private static final char[] BASE64_CHARACTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789~-".toCharArray();
+
+	/** The values of the base64 characters, -1 for invalid characters. */
+	private static final int[] BASE64_VALUES = new int[128];
+
+	/** The lower-case hexadecimal digits. */
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	static {
+		for (int index = 0; index < BASE64_VALUES.length; ++index) {
+			BASE64_VALUES[index] = -1;
+		}
+		for (int index = 0; index < BASE64_CHARACTERS.length; ++index) {
+			BASE64_VALUES[BASE64_CHARACTERS[index]] = index;
+		}
+	}
+
+	/**
+	 * Returns the ID for the given string.
+	 *
+	 * @param id
+	 *            The ID as a string
+	 * @return The ID
+	 */
+	public static Id valueOf(String id) {
+		Validation.begin().isNotNull("ID", id).check();
+		if (id.length() == 36) {
+			Id uuid = Uuid.parse(id);
+			if (uuid != null) {
+				return uuid;
+			}
+		} else if (id.length() == 43) {
+			Id routingKey = RoutingKey.parse(id);
+			if (routingKey != null) {
+				return routingKey;
+			}
+		}
+		return new Text(id);
+	}
+
+	/**
+	 * Returns the ID that was packed into the given {@code long}s.
+	 *
+	 * @see #getPackedLength()
+	 * @param packedLongs
+	 *            The array containing the packed ID
+	 * @param offset
+	 *            The index of the first {@code long} of the packed ID
+	 * @param length
+	 *            The number of {@code long}s of the packed ID
+	 * @return The ID
+	 * @throws IllegalArgumentException
+	 *             if no ID is packed into the given number of {@code long}s
+	 */
+	public static Id valueOf(long[] packedLongs, int offset, int length) throws IllegalArgumentException {
+		if (length == 2) {
+			return new Uuid(packedLongs[offset], packedLongs[offset + 1]);
+		} else if (length == 4) {
+			return new RoutingKey(Arrays.copyOfRange(packedLongs, offset, offset + 4));
+		}
+		throw new IllegalArgumentException("No ID is packed into " + length + " longs!");
+	}
+
+	/**
+	 * Returns an unmodifiable, live view of the given IDs as strings. The
+	 * strings are only created while iterating the view.
+	 *
+	 * @param ids
+	 *            The IDs
+	 * @return The IDs as strings
+	 */
+	public static Set<String> asStrings(final Set<Id> ids) {
+		return new AbstractSet<String>() {
+
+			@Override
+			public Iterator<String> iterator() {
+				final Iterator<Id> idIterator = ids.iterator();
+				return new Iterator<String>() {
+
+					@Override
+					public boolean hasNext() {
+						return idIterator.hasNext();
+					}
+
+					@Override
+					public String next() {
+						return idIterator.next().toString();
+					}
+
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return ids.size();
+			}
+
+			@Override
+			public boolean contains(Object object) {
+				return (object instanceof String) && ids.contains(valueOf((String) object));
+			}
+		};
+	}
+
+	/**
+	 * Adds the IDs for all given strings to the given IDs.
+	 *
+	 * @param ids
+	 *            The IDs to add to
+	 * @param strings
+	 *            The IDs to add, as strings
+	 * @return The given IDs
+	 */
+	public static Set<Id> addAll(Set<Id> ids, Collection<String> strings) {
+		for (String string : strings) {
+			ids.add(valueOf(string));
+		}
+		return ids;
+	}
+
+	//
+	// ACCESSORS
+	//
+
+	/**
+	 * Returns the number of {@code long}s this ID can be packed into. Stores
+	 * that keep a lot of IDs can store the packed {@code long}s in primitive
+	 * arrays instead of keeping the ID objects.
+	 *
+	 * @return The number of packed {@code long}s, or {@code 0} if this ID can
+	 *         not be packed
+	 */
+	public int getPackedLength() {
+		return 0;
+	}
+
+	/**
+	 * Returns a {@code long} of this ID’s packed representation.
+	 *
+	 * @param index
+	 *            The index of the {@code long}, less than the
+	 *            {@link #getPackedLength() packed length}
+	 * @return The {@code long} with the given index
+	 */
+	public long getPackedLong(int index) {
+		throw new IndexOutOfBoundsException("Index " + index + " of " + getPackedLength() + " packed longs!");
+	}
+
+	//
+	// OBJECT METHODS
+	//
+
+	/**
+	 * Returns this ID as the string it was created from.
+	 *
+	 * @return The string representation of this ID
+	 */
+	@Override
+	public abstract String toString();
+
+	/**
+	 * A 128-bit ID in UUID format.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Uuid extends Id {
+
+		/** The most significant bits. */
+		private final long mostSignificantBits;
+
+		/** The least significant bits. */
+		private final long leastSignificantBits;
+
+		/**
+		 * Creates a new UUID ID.
+		 *
+		 * @param mostSignificantBits
+		 *            The most significant bits
+		 * @param leastSignificantBits
+		 *            The least significant bits
+		 */
+		private Uuid(long mostSignificantBits, long leastSignificantBits) {
+			this.mostSignificantBits = mostSignificantBits;
+			this.leastSignificantBits = leastSignificantBits;
+		}
+
+		/**
+		 * Parses a lower-case UUID.
+		 *
+		 * @param id
+		 *            The 36-character ID to parse
+		 * @return The parsed ID, or {@code null} if the ID is not a
+		 *         lower-case UUID
+		 */
+		static Uuid parse(String id) {
+			long mostSignificantBits = 0;
+			long leastSignificantBits = 0;
+			int digits = 0;
+			for (int index = 0; index < 36; ++index) {
+				char character = id.charAt(index);
+				if ((index == 8) || (index == 13) || (index == 18) || (index == 23)) {
+					if (character != '-') {
+						return null;
+					}
+					continue;
+				}
+				int value;
+				if ((character >= '0') && (character <= '9')) {
+					value = character - '0';
+				} else if ((character >= 'a') && (character <= 'f')) {
+					value = character - 'a' + 10;
+				} else {
+					return null;
+				}
+				if (digits < 16) {
+					mostSignificantBits = (mostSignificantBits << 4) | value;
+				} else {
+					leastSignificantBits = (leastSignificantBits << 4) | value;
+				}
+				++digits;
+			}
+			return new Uuid(mostSignificantBits, leastSignificantBits);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getPackedLength() {
+			return 2;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long getPackedLong(int index) {
+			if (index == 0) {
+				return mostSignificantBits;
+			} else if (index == 1) {
+				return leastSignificantBits;
+			}
+			return super.getPackedLong(index);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			long bits = mostSignificantBits ^ leastSignificantBits;
+			return (int) (bits ^ (bits >>> 32));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof Uuid)) {
+				return false;
+			}
+			Uuid uuid = (Uuid) object;
+			return (uuid.mostSignificantBits == mostSignificantBits) && (uuid.leastSignificantBits == leastSignificantBits);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			char[] id = new char[36];
+			int digits = 0;
+			for (int index = 0; index < 36; ++index) {
+				if ((index == 8) || (index == 13) || (index == 18) || (index == 23)) {
+					id[index] = '-';
+					continue;
+				}
+				long bits = (digits < 16) ? mostSignificantBits : leastSignificantBits;
+				id[index] = HEX_DIGITS[(int) (bits >>> (60 - (digits % 16) * 4)) & 0x0f];
+				++digits;
+			}
+			return new String(id);
+		}
+
+	}
+
+	/**
+	 * A 256-bit ID in Freenet’s base64 encoding, as used for the routing keys
+	 * of identities.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class RoutingKey extends Id {
+
+		/** The bits of the routing key, most significant first. */
+		private final long bits0, bits1, bits2, bits3;
+
+		/**
+		 * Creates a new routing key ID.
+		 *
+		 * @param bits
+		 *            The four {@code long}s of the routing key, most
+		 *            significant first
+		 */
+		private RoutingKey(long[] bits) {
+			bits0 = bits[0];
+			bits1 = bits[1];
+			bits2 = bits[2];
+			bits3 = bits[3];
+		}
+
+		/**
+		 * Parses a routing key.
+		 *
+		 * @param id
+		 *            The 43-character ID to parse
+		 * @return The parsed ID, or {@code null} if the ID is not a base64
+		 *         encoded 256-bit routing key
+		 */
+		static RoutingKey parse(String id) {
+			long[] bits = new long[4];
+			int bitCount = 0;
+			for (int index = 0; index < 43; ++index) {
+				char character = id.charAt(index);
+				int value = (character < 128) ? BASE64_VALUES[character] : -1;
+				if (value == -1) {
+					return null;
+				}
+				for (int bit = 5; bit >= 0; --bit) {
+					int bitValue = (value >> bit) & 1;
+					if (bitCount < 256) {
+						bits[bitCount / 64] = (bits[bitCount / 64] << 1) | bitValue;
+					} else if (bitValue != 0) {
+						/* the padding bits have to be zero. */
+						return null;
+					}
+					++bitCount;
+				}
+			}
+			return new RoutingKey(bits);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int getPackedLength() {
+			return 4;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long getPackedLong(int index) {
+			switch (index) {
+			case 0:
+				return bits0;
+			case 1:
+				return bits1;
+			case 2:
+				return bits2;
+			case 3:
+				return bits3;
+			default:
+				return super.getPackedLong(index);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			long bits = bits0 ^ bits1 ^ bits2 ^ bits3;
+			return (int) (bits ^ (bits >>> 32));
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof RoutingKey)) {
+				return false;
+			}
+			RoutingKey routingKey = (RoutingKey) object;
+			return (routingKey.bits0 == bits0) && (routingKey.bits1 == bits1) && (routingKey.bits2 == bits2) && (routingKey.bits3 == bits3);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			long[] bits = new long[] { bits0, bits1, bits2, bits3 };
+			char[] id = new char[43];
+			for (int index = 0; index < 43; ++index) {
+				int value = 0;
+				for (int bit = 0; bit < 6; ++bit) {
+					int bitIndex = index * 6 + bit;
+					int bitValue = (bitIndex < 256) ? (int) (bits[bitIndex / 64] >>> (63 - (bitIndex % 64))) & 1 : 0;
+					value = (value << 1) | bitValue;
+				}
+				id[index] = BASE64_CHARACTERS[value];
+			}
+			return new String(id);
+		}
+
+	}
+
+	/**
+	 * An ID that has none of the known formats and is stored as a string.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	private static class Text extends Id {
+
+		/** The ID. */
+		private final String id;
+
+		/**
+		 * Creates a new text ID.
+		 *
+		 * @param id
+		 *            The ID
+		 */
+		private Text(String id) {
+			this.id = id;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int hashCode() {
+			return id.hashCode();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public boolean equals(Object object) {
+			return (object instanceof Text) && ((Text) object).id.equals(id);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public String toString() {
+			return id;
+		}
+
+	}
+
+}
@@ -55,6 +55,9 @@ public class Image implements Fingerprintable {
 	/** The description of the image. */
 	private String description;
 
+	/** The cached fingerprint of this image, {@code null} if it is stale. */
+	private volatile String fingerprint;
+
 	/**
 	 * Creates a new image with a random ID.
 	 */
@@ -153,6 +156,7 @@ public class Image implements Fingerprintable {
 	public Image setKey(String key) {
 		Validation.begin().isNotNull("New Image Key", key).isEither("Old Image Key", this.key, null, key).check();
 		this.key = key;
+		fingerprintChanged();
 		return this;
 	}
 
@@ -257,6 +261,7 @@ public class Image implements Fingerprintable {
 	public Image setTitle(String title) {
 		Validation.begin().isNotNull("Image Title", title).check();
 		this.title = title;
+		fingerprintChanged();
 		return this;
 	}
 
@@ -279,6 +284,7 @@ public class Image implements Fingerprintable {
 	public Image setDescription(String description) {
 		Validation.begin().isNotNull("Image Description", description).check();
 		this.description = description;
+		fingerprintChanged();
 		return this;
 	}
 
@@ -290,14 +296,28 @@ public class Image implements Fingerprintable {
 	 * {@inheritDoc}
 	 */
 	@Override
-	public String getFingerprint() {
-		StringBuilder fingerprint = new StringBuilder();
-		fingerprint.append("Image(");
-		fingerprint.append("ID(").append(id).append(')');
-		fingerprint.append("Title(").append(title).append(')');
-		fingerprint.append("Description(").append(description).append(')');
-		fingerprint.append(')');
-		return fingerprint.toString();
+	public synchronized String getFingerprint() {
+		if (fingerprint == null) {
+			fingerprint = new FingerprintBuilder("Image").add("ID", id).add("Title", title).add("Description", description).build();
+		}
+		return fingerprint;
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Notifies this image and its album that something that is part of the
+	 * {@link #getFingerprint() fingerprint} of this image has changed.
+	 */
+	private void fingerprintChanged() {
+		synchronized (this) {
+			fingerprint = null;
+		}
+		if (album != null) {
+			album.fingerprintChanged();
+		}
 	}
 
 	//
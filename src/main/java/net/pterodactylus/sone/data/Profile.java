@@ -392,37 +392,19 @@ public class Profile implements Fingerprintable {
 	 */
 	@Override
 	public String getFingerprint() {
-		StringBuilder fingerprint = new StringBuilder();
-		fingerprint.append("Profile(");
-		if (firstName != null) {
-			fingerprint.append("FirstName(").append(firstName).append(')');
-		}
-		if (middleName != null) {
-			fingerprint.append("MiddleName(").append(middleName).append(')');
-		}
-		if (lastName != null) {
-			fingerprint.append("LastName(").append(lastName).append(')');
-		}
-		if (birthDay != null) {
-			fingerprint.append("BirthDay(").append(birthDay).append(')');
-		}
-		if (birthMonth != null) {
-			fingerprint.append("BirthMonth(").append(birthMonth).append(')');
-		}
-		if (birthYear != null) {
-			fingerprint.append("BirthYear(").append(birthYear).append(')');
-		}
-		if (avatar != null) {
-			fingerprint.append("Avatar(").append(avatar).append(')');
-		}
-		fingerprint.append("ContactInformation(");
+		FingerprintBuilder fingerprintBuilder = new FingerprintBuilder("Profile");
+		fingerprintBuilder.add("FirstName", firstName);
+		fingerprintBuilder.add("MiddleName", middleName);
+		fingerprintBuilder.add("LastName", lastName);
+		fingerprintBuilder.add("BirthDay", birthDay);
+		fingerprintBuilder.add("BirthMonth", birthMonth);
+		fingerprintBuilder.add("BirthYear", birthYear);
+		fingerprintBuilder.add("Avatar", avatar);
+		fingerprintBuilder.add("ContactInformation", fields.size());
 		for (Field field : fields) {
-			fingerprint.append(field.getName()).append('(').append(field.getValue()).append(')');
+			fingerprintBuilder.add(field.getName(), field.getValue());
 		}
-		fingerprint.append(")");
-		fingerprint.append(")");
-
-		return fingerprint.toString();
+		return fingerprintBuilder.build();
 	}
 
 	/**
@@ -21,10 +21,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -92,6 +93,45 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 
 	}
 
+	/**
+	 * The sections of a Sone that are stored separately. Every modification
+	 * of a Sone marks the section it modifies so that only
+	 * {@link Sone#getModifiedSections() modified sections} have to be stored
+	 * again.
+	 *
+	 * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+	 */
+	public static enum Section {
+
+		/** The time and the latest edition, changed by inserts. */
+		INSERT,
+
+		/** The profile. */
+		PROFILE,
+
+		/** The posts. */
+		POSTS,
+
+		/** The replies. */
+		REPLIES,
+
+		/** The IDs of the liked posts. */
+		LIKED_POSTS,
+
+		/** The IDs of the liked replies. */
+		LIKED_REPLIES,
+
+		/** The friends. */
+		FRIENDS,
+
+		/** The albums and their images. */
+		ALBUMS,
+
+		/** The Sone-specific options. */
+		OPTIONS,
+
+	}
+
 	/** comparator that sorts Sones by their nice name. */
 	public static final Comparator<Sone> NICE_NAME_COMPARATOR = new Comparator<Sone>() {
 
@@ -204,22 +244,60 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	private volatile boolean known;
 
 	/** All friend Sones. */
-	private final Set<String> friendSones = new CopyOnWriteArraySet<String>();
+	/* the set is immutable and replaced on every modification. */
+	private volatile Set<Id> friendSones = Collections.emptySet();
 
-	/** All posts. */
-	private final Set<Post> posts = new CopyOnWriteArraySet<Post>();
+	/** All posts, sorted by time, newest first. */
+	/* the list is immutable and replaced on every modification. */
+	private volatile List<Post> posts = Collections.emptyList();
 
-	/** All replies. */
-	private final Set<PostReply> replies = new CopyOnWriteArraySet<PostReply>();
+	/** All replies, sorted by time, oldest first. */
+	/* the set is immutable and replaced on every modification. */
+	private volatile Set<PostReply> replies = Collections.emptySet();
 
 	/** The IDs of all liked posts. */
-	private final Set<String> likedPostIds = new CopyOnWriteArraySet<String>();
+	/* the set is immutable and replaced on every modification. */
+	private volatile Set<Id> likedPostIds = Collections.emptySet();
 
 	/** The IDs of all liked replies. */
-	private final Set<String> likedReplyIds = new CopyOnWriteArraySet<String>();
+	/* the set is immutable and replaced on every modification. */
+	private volatile Set<Id> likedReplyIds = Collections.emptySet();
 
 	/** The albums of this Sone. */
-	private final List<Album> albums = new CopyOnWriteArrayList<Album>();
+	/* the list is immutable and replaced on every modification. */
+	private volatile List<Album> albums = Collections.emptyList();
+
+	/** The flattened albums of this Sone, {@code null} if they are stale. */
+	private volatile List<Album> allAlbums;
+
+	/** The number of modifications of the album hierarchy of this Sone. */
+	/* modifications are synchronized on this Sone. */
+	private volatile int albumModificationCount;
+
+	/** The cached fingerprint of this Sone, {@code null} if it is stale. */
+	private volatile String fingerprint;
+
+	/** The cached fingerprint of the profile, {@code null} if it is stale. */
+	private volatile String profileFingerprint;
+
+	/** The cached fingerprint of the posts, {@code null} if it is stale. */
+	private volatile String postsFingerprint;
+
+	/** The cached fingerprint of the replies, {@code null} if it is stale. */
+	private volatile String repliesFingerprint;
+
+	/** The cached fingerprint of the liked posts, {@code null} if it is stale. */
+	private volatile String likedPostsFingerprint;
+
+	/** The cached fingerprint of the liked replies, {@code null} if it is stale. */
+	private volatile String likedRepliesFingerprint;
+
+	/** The cached fingerprint of the albums, {@code null} if it is stale. */
+	private volatile String albumsFingerprint;
+
+	/** The sections modified since they were last stored. */
+	/* synchronize access on this Sone. */
+	private final Set<Section> modifiedSections = EnumSet.allOf(Section.class);
 
 	/** Sone-specific options. */
 	private final Options options = new Options();
@@ -362,6 +440,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 			return;
 		}
 		this.latestEdition = latestEdition;
+		setModified(Section.INSERT);
 	}
 
 	/**
@@ -382,6 +461,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public Sone setTime(long time) {
 		this.time = time;
+		setModified(Section.INSERT);
 		return this;
 	}
 
@@ -430,6 +510,11 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public void setProfile(Profile profile) {
 		this.profile = new Profile(profile);
+		synchronized (this) {
+			profileFingerprint = null;
+			fingerprint = null;
+			modifiedSections.add(Section.PROFILE);
+		}
 	}
 
 	/**
@@ -480,7 +565,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return The friend Sones of this Sone
 	 */
 	public List<String> getFriends() {
-		List<String> friends = new ArrayList<String>(friendSones);
+		List<String> friends = new ArrayList<String>(Id.asStrings(friendSones));
 		return friends;
 	}
 
@@ -493,7 +578,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 *         {@code false} otherwise
 	 */
 	public boolean hasFriend(String friendSoneId) {
-		return friendSones.contains(friendSoneId);
+		return friendSones.contains(Id.valueOf(friendSoneId));
 	}
 
 	/**
@@ -505,7 +590,10 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public Sone addFriend(String friendSone) {
 		if (!friendSone.equals(id)) {
-			friendSones.add(friendSone);
+			synchronized (this) {
+				friendSones = addId(friendSones, friendSone);
+				modifiedSections.add(Section.FRIENDS);
+			}
 		}
 		return this;
 	}
@@ -518,22 +606,22 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone removeFriend(String friendSoneId) {
-		friendSones.remove(friendSoneId);
+		synchronized (this) {
+			friendSones = removeId(friendSones, friendSoneId);
+			modifiedSections.add(Section.FRIENDS);
+		}
 		return this;
 	}
 
 	/**
 	 * Returns the list of posts of this Sone, sorted by time, newest first.
+	 * The returned list is an immutable snapshot that is only replaced when
+	 * the posts of this Sone change.
 	 *
 	 * @return All posts of this Sone
 	 */
 	public List<Post> getPosts() {
-		List<Post> sortedPosts;
-		synchronized (this) {
-			sortedPosts = new ArrayList<Post>(posts);
-		}
-		Collections.sort(sortedPosts, Post.TIME_COMPARATOR);
-		return sortedPosts;
+		return posts;
 	}
 
 	/**
@@ -544,9 +632,13 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone setPosts(Collection<Post> posts) {
+		List<Post> newPosts = new ArrayList<Post>(new LinkedHashSet<Post>(posts));
+		Collections.sort(newPosts, Post.TIME_COMPARATOR);
 		synchronized (this) {
-			this.posts.clear();
-			this.posts.addAll(posts);
+			this.posts = Collections.unmodifiableList(newPosts);
+			postsFingerprint = null;
+			fingerprint = null;
+			modifiedSections.add(Section.POSTS);
 		}
 		return this;
 	}
@@ -559,9 +651,23 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 *            The post to add
 	 */
 	public void addPost(Post post) {
-		if (post.getSone().equals(this) && posts.add(post)) {
-			logger.log(Level.FINEST, String.format("Adding %s to “%s”.", post, getName()));
+		if (!post.getSone().equals(this)) {
+			return;
+		}
+		synchronized (this) {
+			if (posts.contains(post)) {
+				return;
+			}
+			List<Post> newPosts = new ArrayList<Post>(posts.size() + 1);
+			newPosts.addAll(posts);
+			int index = Collections.binarySearch(newPosts, post, Post.TIME_COMPARATOR);
+			newPosts.add((index < 0) ? (-index - 1) : index, post);
+			posts = Collections.unmodifiableList(newPosts);
+			postsFingerprint = null;
+			fingerprint = null;
+			modifiedSections.add(Section.POSTS);
 		}
+		logger.log(Level.FINEST, String.format("Adding %s to “%s”.", post, getName()));
 	}
 
 	/**
@@ -572,17 +678,27 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public void removePost(Post post) {
 		if (post.getSone().equals(this)) {
-			posts.remove(post);
+			synchronized (this) {
+				List<Post> newPosts = new ArrayList<Post>(posts);
+				if (newPosts.remove(post)) {
+					posts = Collections.unmodifiableList(newPosts);
+					postsFingerprint = null;
+					fingerprint = null;
+					modifiedSections.add(Section.POSTS);
+				}
+			}
 		}
 	}
 
 	/**
-	 * Returns all replies this Sone made.
+	 * Returns all replies this Sone made, sorted by time, oldest first. The
+	 * returned set is an immutable snapshot that is only replaced when the
+	 * replies of this Sone change.
 	 *
 	 * @return All replies this Sone made
 	 */
 	public Set<PostReply> getReplies() {
-		return Collections.unmodifiableSet(replies);
+		return replies;
 	}
 
 	/**
@@ -593,8 +709,14 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone setReplies(Collection<PostReply> replies) {
-		this.replies.clear();
-		this.replies.addAll(replies);
+		List<PostReply> newReplies = new ArrayList<PostReply>(replies);
+		Collections.sort(newReplies, Reply.TIME_COMPARATOR);
+		synchronized (this) {
+			this.replies = Collections.unmodifiableSet(new LinkedHashSet<PostReply>(newReplies));
+			repliesFingerprint = null;
+			fingerprint = null;
+			modifiedSections.add(Section.REPLIES);
+		}
 		return this;
 	}
 
@@ -607,7 +729,18 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public void addReply(PostReply reply) {
 		if (reply.getSone().equals(this)) {
-			replies.add(reply);
+			synchronized (this) {
+				if (!replies.contains(reply)) {
+					List<PostReply> newReplies = new ArrayList<PostReply>(replies.size() + 1);
+					newReplies.addAll(replies);
+					int index = Collections.binarySearch(newReplies, reply, Reply.TIME_COMPARATOR);
+					newReplies.add((index < 0) ? (-index - 1) : index, reply);
+					replies = Collections.unmodifiableSet(new LinkedHashSet<PostReply>(newReplies));
+					repliesFingerprint = null;
+					fingerprint = null;
+					modifiedSections.add(Section.REPLIES);
+				}
+			}
 		}
 	}
 
@@ -619,7 +752,16 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public void removeReply(PostReply reply) {
 		if (reply.getSone().equals(this)) {
-			replies.remove(reply);
+			synchronized (this) {
+				if (replies.contains(reply)) {
+					Set<PostReply> newReplies = new LinkedHashSet<PostReply>(replies);
+					newReplies.remove(reply);
+					replies = Collections.unmodifiableSet(newReplies);
+					repliesFingerprint = null;
+					fingerprint = null;
+					modifiedSections.add(Section.REPLIES);
+				}
+			}
 		}
 	}
 
@@ -629,7 +771,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return All liked posts’ IDs
 	 */
 	public Set<String> getLikedPostIds() {
-		return Collections.unmodifiableSet(likedPostIds);
+		return Id.asStrings(likedPostIds);
 	}
 
 	/**
@@ -640,8 +782,11 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone setLikePostIds(Set<String> likedPostIds) {
-		this.likedPostIds.clear();
-		this.likedPostIds.addAll(likedPostIds);
+		Set<Id> newIds = Collections.unmodifiableSet(Id.addAll(new HashSet<Id>(), likedPostIds));
+		synchronized (this) {
+			this.likedPostIds = newIds;
+			likedPostIdsChanged();
+		}
 		return this;
 	}
 
@@ -654,7 +799,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 *         otherwise
 	 */
 	public boolean isLikedPostId(String postId) {
-		return likedPostIds.contains(postId);
+		return likedPostIds.contains(Id.valueOf(postId));
 	}
 
 	/**
@@ -665,7 +810,13 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone addLikedPostId(String postId) {
-		likedPostIds.add(postId);
+		synchronized (this) {
+			Set<Id> newIds = addId(likedPostIds, postId);
+			if (newIds != likedPostIds) {
+				likedPostIds = newIds;
+				likedPostIdsChanged();
+			}
+		}
 		return this;
 	}
 
@@ -677,7 +828,13 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone removeLikedPostId(String postId) {
-		likedPostIds.remove(postId);
+		synchronized (this) {
+			Set<Id> newIds = removeId(likedPostIds, postId);
+			if (newIds != likedPostIds) {
+				likedPostIds = newIds;
+				likedPostIdsChanged();
+			}
+		}
 		return this;
 	}
 
@@ -687,7 +844,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return All liked replies’ IDs
 	 */
 	public Set<String> getLikedReplyIds() {
-		return Collections.unmodifiableSet(likedReplyIds);
+		return Id.asStrings(likedReplyIds);
 	}
 
 	/**
@@ -698,8 +855,11 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone setLikeReplyIds(Set<String> likedReplyIds) {
-		this.likedReplyIds.clear();
-		this.likedReplyIds.addAll(likedReplyIds);
+		Set<Id> newIds = Collections.unmodifiableSet(Id.addAll(new HashSet<Id>(), likedReplyIds));
+		synchronized (this) {
+			this.likedReplyIds = newIds;
+			likedReplyIdsChanged();
+		}
 		return this;
 	}
 
@@ -712,7 +872,7 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 *         otherwise
 	 */
 	public boolean isLikedReplyId(String replyId) {
-		return likedReplyIds.contains(replyId);
+		return likedReplyIds.contains(Id.valueOf(replyId));
 	}
 
 	/**
@@ -723,7 +883,13 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone addLikedReplyId(String replyId) {
-		likedReplyIds.add(replyId);
+		synchronized (this) {
+			Set<Id> newIds = addId(likedReplyIds, replyId);
+			if (newIds != likedReplyIds) {
+				likedReplyIds = newIds;
+				likedReplyIdsChanged();
+			}
+		}
 		return this;
 	}
 
@@ -735,7 +901,13 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return This Sone (for method chaining)
 	 */
 	public Sone removeLikedReplyId(String replyId) {
-		likedReplyIds.remove(replyId);
+		synchronized (this) {
+			Set<Id> newIds = removeId(likedReplyIds, replyId);
+			if (newIds != likedReplyIds) {
+				likedReplyIds = newIds;
+				likedReplyIdsChanged();
+			}
+		}
 		return this;
 	}
 
@@ -745,17 +917,25 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 * @return The albums of this Sone
 	 */
 	public List<Album> getAlbums() {
-		return Collections.unmodifiableList(albums);
+		return albums;
 	}
 
 	/**
 	 * Returns a flattened list of all albums of this Sone. The resulting list
 	 * contains parent albums before child albums so that the resulting list can
-	 * be parsed in a single pass.
+	 * be parsed in a single pass. The returned list is an immutable snapshot
+	 * that is only recalculated when the albums of this Sone change. A list
+	 * that was calculated while the albums changed is returned but not
+	 * cached.
 	 *
 	 * @return The flattened albums
 	 */
 	public List<Album> getAllAlbums() {
+		List<Album> allAlbums = this.allAlbums;
+		if (allAlbums != null) {
+			return allAlbums;
+		}
+		int albumModificationCount = this.albumModificationCount;
 		List<Album> flatAlbums = new ArrayList<Album>();
 		flatAlbums.addAll(albums);
 		int lastAlbumIndex = 0;
@@ -766,7 +946,13 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 			}
 			lastAlbumIndex = previousAlbumCount;
 		}
-		return flatAlbums;
+		allAlbums = Collections.unmodifiableList(flatAlbums);
+		synchronized (this) {
+			if (albumModificationCount == this.albumModificationCount) {
+				this.allAlbums = allAlbums;
+			}
+		}
+		return allAlbums;
 	}
 
 	/**
@@ -791,8 +977,13 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public void addAlbum(Album album) {
 		Validation.begin().isNotNull("Album", album).check().isEqual("Album Owner", album.getSone(), this).check();
-		if (!albums.contains(album)) {
-			albums.add(album);
+		synchronized (this) {
+			if (!albums.contains(album)) {
+				List<Album> newAlbums = new ArrayList<Album>(albums.size() + 1);
+				newAlbums.addAll(albums);
+				newAlbums.add(album);
+				setAlbumList(newAlbums);
+			}
 		}
 	}
 
@@ -804,9 +995,15 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public void setAlbums(Collection<? extends Album> albums) {
 		Validation.begin().isNotNull("Albums", albums).check();
-		this.albums.clear();
+		List<Album> newAlbums = new ArrayList<Album>(albums.size());
 		for (Album album : albums) {
-			addAlbum(album);
+			Validation.begin().isNotNull("Album", album).check().isEqual("Album Owner", album.getSone(), this).check();
+			if (!newAlbums.contains(album)) {
+				newAlbums.add(album);
+			}
+		}
+		synchronized (this) {
+			setAlbumList(newAlbums);
 		}
 	}
 
@@ -818,7 +1015,12 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public void removeAlbum(Album album) {
 		Validation.begin().isNotNull("Album", album).check().isEqual("Album Owner", album.getSone(), this).check();
-		albums.remove(album);
+		synchronized (this) {
+			List<Album> newAlbums = new ArrayList<Album>(albums);
+			if (newAlbums.remove(album)) {
+				setAlbumList(newAlbums);
+			}
+		}
 	}
 
 	/**
@@ -832,13 +1034,17 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public Album moveAlbumUp(Album album) {
 		Validation.begin().isNotNull("Album", album).check().isEqual("Album Owner", album.getSone(), this).isNull("Album Parent", album.getParent()).check();
-		int oldIndex = albums.indexOf(album);
-		if (oldIndex <= 0) {
-			return null;
+		synchronized (this) {
+			List<Album> newAlbums = new ArrayList<Album>(albums);
+			int oldIndex = newAlbums.indexOf(album);
+			if (oldIndex <= 0) {
+				return null;
+			}
+			newAlbums.remove(oldIndex);
+			newAlbums.add(oldIndex - 1, album);
+			setAlbumList(newAlbums);
+			return newAlbums.get(oldIndex);
 		}
-		albums.remove(oldIndex);
-		albums.add(oldIndex - 1, album);
-		return albums.get(oldIndex);
 	}
 
 	/**
@@ -852,13 +1058,40 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 	 */
 	public Album moveAlbumDown(Album album) {
 		Validation.begin().isNotNull("Album", album).check().isEqual("Album Owner", album.getSone(), this).isNull("Album Parent", album.getParent()).check();
-		int oldIndex = albums.indexOf(album);
-		if ((oldIndex < 0) || (oldIndex >= (albums.size() - 1))) {
-			return null;
+		synchronized (this) {
+			List<Album> newAlbums = new ArrayList<Album>(albums);
+			int oldIndex = newAlbums.indexOf(album);
+			if ((oldIndex < 0) || (oldIndex >= (newAlbums.size() - 1))) {
+				return null;
+			}
+			newAlbums.remove(oldIndex);
+			newAlbums.add(oldIndex + 1, album);
+			setAlbumList(newAlbums);
+			return newAlbums.get(oldIndex);
 		}
-		albums.remove(oldIndex);
-		albums.add(oldIndex + 1, album);
-		return albums.get(oldIndex);
+	}
+
+	/**
+	 * Notifies this Sone that the album hierarchy below one of its albums has
+	 * changed so that the {@link #getAllAlbums() flattened albums} have to be
+	 * recalculated.
+	 */
+	synchronized void albumsChanged() {
+		allAlbums = null;
+		++albumModificationCount;
+		albumsFingerprint = null;
+		fingerprint = null;
+		modifiedSections.add(Section.ALBUMS);
+	}
+
+	/**
+	 * Notifies this Sone that the {@link Album#getFingerprint() fingerprint}
+	 * of one of its albums has changed.
+	 */
+	synchronized void fingerprintChanged() {
+		albumsFingerprint = null;
+		fingerprint = null;
+		modifiedSections.add(Section.ALBUMS);
 	}
 
 	/**
@@ -870,55 +1103,188 @@ public class Sone implements Fingerprintable, Comparable<Sone> {
 		return options;
 	}
 
+	/**
+	 * Marks the given section of this Sone as modified.
+	 *
+	 * @param section
+	 *            The modified section
+	 */
+	public synchronized void setModified(Section section) {
+		modifiedSections.add(section);
+	}
+
+	/**
+	 * Returns the sections of this Sone that have been modified since this
+	 * method was last called, and marks all sections as unmodified.
+	 *
+	 * @return The modified sections
+	 */
+	public synchronized Set<Section> getModifiedSections() {
+		Set<Section> sections = EnumSet.copyOf(modifiedSections);
+		modifiedSections.clear();
+		return sections;
+	}
+
 	//
-	// FINGERPRINTABLE METHODS
+	// PRIVATE METHODS
 	//
 
 	/**
-	 * {@inheritDoc}
+	 * Stores the given albums as the new top-level albums of this Sone. This
+	 * method has to be called with the lock on this Sone held.
+	 *
+	 * @param newAlbums
+	 *            The new albums
 	 */
-	@Override
-	public synchronized String getFingerprint() {
-		StringBuilder fingerprint = new StringBuilder();
-		fingerprint.append(profile.getFingerprint());
+	private void setAlbumList(List<Album> newAlbums) {
+		albums = Collections.unmodifiableList(newAlbums);
+		allAlbums = null;
+		++albumModificationCount;
+		albumsFingerprint = null;
+		fingerprint = null;
+		modifiedSections.add(Section.ALBUMS);
+	}
 
-		fingerprint.append("Posts(");
-		for (Post post : getPosts()) {
-			fingerprint.append("Post(").append(post.getId()).append(')');
-		}
-		fingerprint.append(")");
+	/**
+	 * Notifies this Sone that its liked posts have changed.
+	 */
+	private synchronized void likedPostIdsChanged() {
+		likedPostsFingerprint = null;
+		fingerprint = null;
+		modifiedSections.add(Section.LIKED_POSTS);
+	}
 
-		List<PostReply> replies = new ArrayList<PostReply>(getReplies());
-		Collections.sort(replies, Reply.TIME_COMPARATOR);
-		fingerprint.append("Replies(");
-		for (PostReply reply : replies) {
-			fingerprint.append("Reply(").append(reply.getId()).append(')');
+	/**
+	 * Notifies this Sone that its liked replies have changed.
+	 */
+	private synchronized void likedReplyIdsChanged() {
+		likedRepliesFingerprint = null;
+		fingerprint = null;
+		modifiedSections.add(Section.LIKED_REPLIES);
+	}
+
+	/**
+	 * Returns a copy of the given IDs that additionally contains the given
+	 * ID.
+	 *
+	 * @param ids
+	 *            The IDs
+	 * @param id
+	 *            The ID to add
+	 * @return The new immutable IDs, or the given IDs if they already contain
+	 *         the ID
+	 */
+	private static Set<Id> addId(Set<Id> ids, String id) {
+		if (ids.contains(Id.valueOf(id))) {
+			return ids;
 		}
-		fingerprint.append(')');
+		Set<Id> newIds = new HashSet<Id>(ids);
+		newIds.add(Id.valueOf(id));
+		return Collections.unmodifiableSet(newIds);
+	}
 
-		List<String> likedPostIds = new ArrayList<String>(getLikedPostIds());
-		Collections.sort(likedPostIds);
-		fingerprint.append("LikedPosts(");
-		for (String likedPostId : likedPostIds) {
-			fingerprint.append("Post(").append(likedPostId).append(')');
+	/**
+	 * Returns a copy of the given IDs without the given ID.
+	 *
+	 * @param ids
+	 *            The IDs
+	 * @param id
+	 *            The ID to remove
+	 * @return The new immutable IDs, or the given IDs if they do not contain
+	 *         the ID
+	 */
+	private static Set<Id> removeId(Set<Id> ids, String id) {
+		Id removedId = Id.valueOf(id);
+		if (!ids.contains(removedId)) {
+			return ids;
 		}
-		fingerprint.append(')');
+		Set<Id> newIds = new HashSet<Id>(ids);
+		newIds.remove(removedId);
+		return Collections.unmodifiableSet(newIds);
+	}
 
-		List<String> likedReplyIds = new ArrayList<String>(getLikedReplyIds());
-		Collections.sort(likedReplyIds);
-		fingerprint.append("LikedReplies(");
-		for (String likedReplyId : likedReplyIds) {
-			fingerprint.append("Reply(").append(likedReplyId).append(')');
+	/**
+	 * Returns the fingerprint of the given IDs, sorted ascending.
+	 *
+	 * @param type
+	 *            The type of the fingerprinted section
+	 * @param name
+	 *            The name of a single ID
+	 * @param ids
+	 *            The IDs
+	 * @return The fingerprint of the IDs
+	 */
+	private static String getIdsFingerprint(String type, String name, Collection<String> ids) {
+		List<String> sortedIds = new ArrayList<String>(ids);
+		Collections.sort(sortedIds);
+		FingerprintBuilder fingerprintBuilder = new FingerprintBuilder(type);
+		fingerprintBuilder.add(type, sortedIds.size());
+		for (String id : sortedIds) {
+			fingerprintBuilder.add(name, id);
 		}
-		fingerprint.append(')');
+		return fingerprintBuilder.build();
+	}
 
-		fingerprint.append("Albums(");
-		for (Album album : albums) {
-			fingerprint.append(album.getFingerprint());
+	//
+	// FINGERPRINTABLE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The fingerprint is combined from the cached fingerprints of the
+	 * profile, the posts, the replies, the likes, and the albums of this Sone.
+	 * After a modification only the fingerprint of the modified section is
+	 * recalculated.
+	 */
+	@Override
+	public synchronized String getFingerprint() {
+		if (fingerprint != null) {
+			return fingerprint;
+		}
+		if (profileFingerprint == null) {
+			profileFingerprint = profile.getFingerprint();
+		}
+		if (postsFingerprint == null) {
+			FingerprintBuilder postsFingerprintBuilder = new FingerprintBuilder("Posts");
+			postsFingerprintBuilder.add("Posts", posts.size());
+			for (Post post : posts) {
+				postsFingerprintBuilder.add("Post", post.getId());
+			}
+			postsFingerprint = postsFingerprintBuilder.build();
+		}
+		if (repliesFingerprint == null) {
+			FingerprintBuilder repliesFingerprintBuilder = new FingerprintBuilder("Replies");
+			repliesFingerprintBuilder.add("Replies", replies.size());
+			for (PostReply reply : replies) {
+				repliesFingerprintBuilder.add("Reply", reply.getId());
+			}
+			repliesFingerprint = repliesFingerprintBuilder.build();
+		}
+		if (likedPostsFingerprint == null) {
+			likedPostsFingerprint = getIdsFingerprint("LikedPosts", "Post", getLikedPostIds());
+		}
+		if (likedRepliesFingerprint == null) {
+			likedRepliesFingerprint = getIdsFingerprint("LikedReplies", "Reply", getLikedReplyIds());
+		}
+		if (albumsFingerprint == null) {
+			FingerprintBuilder albumsFingerprintBuilder = new FingerprintBuilder("Albums");
+			albumsFingerprintBuilder.add("Albums", albums.size());
+			for (Album album : albums) {
+				albumsFingerprintBuilder.add("Album", album.getFingerprint());
+			}
+			albumsFingerprint = albumsFingerprintBuilder.build();
 		}
-		fingerprint.append(')');
 
-		return fingerprint.toString();
+		FingerprintBuilder fingerprintBuilder = new FingerprintBuilder("Sone");
+		fingerprintBuilder.add("Profile", profileFingerprint);
+		fingerprintBuilder.add("Posts", postsFingerprint);
+		fingerprintBuilder.add("Replies", repliesFingerprint);
+		fingerprintBuilder.add("LikedPosts", likedPostsFingerprint);
+		fingerprintBuilder.add("LikedReplies", likedRepliesFingerprint);
+		fingerprintBuilder.add("Albums", albumsFingerprint);
+		fingerprint = fingerprintBuilder.build();
+		return fingerprint;
 	}
 
 	//
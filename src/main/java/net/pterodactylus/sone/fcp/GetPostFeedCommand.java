@@ -17,17 +17,13 @@
 
 package net.pterodactylus.sone.fcp;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import net.pterodactylus.sone.core.Core;
 import net.pterodactylus.sone.data.Post;
 import net.pterodactylus.sone.data.Sone;
 import net.pterodactylus.sone.freenet.fcp.FcpException;
-import net.pterodactylus.util.collection.filter.Filters;
 import freenet.support.SimpleFieldSet;
 import freenet.support.api.Bucket;
 
@@ -58,19 +54,7 @@ public class GetPostFeedCommand extends AbstractSoneCommand {
 		int startPost = getInt(parameters, "StartPost", 0);
 		int maxPosts = getInt(parameters, "MaxPosts", -1);
 
-		Set<Post> allPosts = new HashSet<Post>();
-		allPosts.addAll(sone.getPosts());
-		for (String friendSoneId : sone.getFriends()) {
-			if (!getCore().hasSone(friendSoneId)) {
-				continue;
-			}
-			allPosts.addAll(getCore().getSone(friendSoneId, false).getPosts());
-		}
-		allPosts.addAll(getCore().getDirectedPosts(sone));
-		allPosts = Filters.filteredSet(allPosts, Post.FUTURE_POSTS_FILTER);
-
-		List<Post> sortedPosts = new ArrayList<Post>(allPosts);
-		Collections.sort(sortedPosts, Post.TIME_COMPARATOR);
+		List<Post> sortedPosts = getCore().getTimeline(sone).getPosts();
 
 		if (sortedPosts.size() < startPost) {
 			return new Response("PostFeed", encodePosts(Collections.<Post> emptyList(), "Posts.", false));
@@ -49,8 +49,8 @@ public class LikePostCommand extends AbstractSoneCommand {
 	public Response execute(SimpleFieldSet parameters, Bucket data, AccessType accessType) throws FcpException {
 		Post post = getPost(parameters, "Post");
 		Sone sone = getSone(parameters, "Sone", true);
-		sone.addLikedPostId(post.getId());
-		return new Response("PostLiked", new SimpleFieldSetBuilder().put("LikeCount", getCore().getLikes(post).size()).get());
+		getCore().likePost(sone, post.getId());
+		return new Response("PostLiked", new SimpleFieldSetBuilder().put("LikeCount", getCore().getLikeCount(post)).get());
 	}
 
 }
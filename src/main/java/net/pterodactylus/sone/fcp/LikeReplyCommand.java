@@ -49,8 +49,8 @@ public class LikeReplyCommand extends AbstractSoneCommand {
 	public Response execute(SimpleFieldSet parameters, Bucket data, AccessType accessType) throws FcpException {
 		PostReply reply = getReply(parameters, "Reply");
 		Sone sone = getSone(parameters, "Sone", true);
-		sone.addLikedReplyId(reply.getId());
-		return new Response("ReplyLiked", new SimpleFieldSetBuilder().put("LikeCount", getCore().getLikes(reply).size()).get());
+		getCore().likeReply(sone, reply.getId());
+		return new Response("ReplyLiked", new SimpleFieldSetBuilder().put("LikeCount", getCore().getLikeCount(reply)).get());
 	}
 
 }
@@ -59,6 +59,8 @@ public class PostAccessor extends ReflectionAccessor {
 			return Filters.filteredList(core.getReplies(post), Reply.FUTURE_REPLY_FILTER);
 		} else if (member.equals("likes")) {
 			return core.getLikes(post);
+		} else if (member.equals("likeCount")) {
+			return core.getLikeCount(post);
 		} else if (member.equals("liked")) {
 			Sone currentSone = (Sone) templateContext.get("currentSone");
 			return (currentSone != null) && (currentSone.isLikedPostId(post.getId()));
@@ -54,6 +54,8 @@ public class ReplyAccessor extends ReflectionAccessor {
 		PostReply reply = (PostReply) object;
 		if ("likes".equals(member)) {
 			return core.getLikes(reply);
+		} else if (member.equals("likeCount")) {
+			return core.getLikeCount(reply);
 		} else if (member.equals("liked")) {
 			Sone currentSone = (Sone) templateContext.get("currentSone");
 			return (currentSone != null) && (currentSone.isLikedReplyId(reply.getId()));
@@ -86,6 +86,8 @@ public class SoneAccessor extends ReflectionAccessor {
 			return (currentSone != null) && currentSone.equals(sone);
 		} else if (member.equals("modified")) {
 			return core.isModifiedSone(sone);
+		} else if (member.equals("insertionDelay")) {
+			return core.getInsertionDelay(sone);
 		} else if (member.equals("status")) {
 			return sone.getStatus();
 		} else if (member.equals("unknown")) {
@@ -84,6 +84,8 @@ public class OptionsPage extends SoneTemplatePage {
 			} else {
 				preferences.setInsertionDelay(insertionDelay);
 			}
+			boolean adaptiveInsertionDelay = request.getHttpRequest().isPartSet("adaptive-insertion-delay");
+			preferences.setAdaptiveInsertionDelay(adaptiveInsertionDelay);
 			Integer postsPerPage = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("posts-per-page", 4), null);
 			if (!preferences.validatePostsPerPage(postsPerPage)) {
 				fieldErrors.add("posts-per-page");
@@ -108,8 +110,62 @@ public class OptionsPage extends SoneTemplatePage {
 			} else {
 				preferences.setPostCutOffLength(postCutOffLength);
 			}
+			Integer concurrentSoneDownloads = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("concurrent-sone-downloads", 3), null);
+			if (!preferences.validateConcurrentSoneDownloads(concurrentSoneDownloads)) {
+				fieldErrors.add("concurrent-sone-downloads");
+			} else {
+				preferences.setConcurrentSoneDownloads(concurrentSoneDownloads);
+			}
 			boolean requireFullAccess = request.getHttpRequest().isPartSet("require-full-access");
 			preferences.setRequireFullAccess(requireFullAccess);
+			boolean periodicKnownSoneChecks = request.getHttpRequest().isPartSet("periodic-known-sone-checks");
+			preferences.setPeriodicKnownSoneChecks(periodicKnownSoneChecks);
+			boolean insertPostArchives = request.getHttpRequest().isPartSet("insert-post-archives");
+			preferences.setInsertPostArchives(insertPostArchives);
+			boolean compressSoneDocuments = request.getHttpRequest().isPartSet("compress-sone-documents");
+			preferences.setCompressSoneDocuments(compressSoneDocuments);
+			Integer maximumSoneSize = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-size", 10), null);
+			if (!preferences.validateMaximumSoneSize(maximumSoneSize)) {
+				fieldErrors.add("maximum-sone-size");
+			} else {
+				preferences.setMaximumSoneSize(maximumSoneSize);
+			}
+			Integer maximumSonePosts = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-posts", 10), null);
+			if (!preferences.validateMaximumSonePosts(maximumSonePosts)) {
+				fieldErrors.add("maximum-sone-posts");
+			} else {
+				preferences.setMaximumSonePosts(maximumSonePosts);
+			}
+			Integer maximumSoneReplies = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-replies", 10), null);
+			if (!preferences.validateMaximumSoneReplies(maximumSoneReplies)) {
+				fieldErrors.add("maximum-sone-replies");
+			} else {
+				preferences.setMaximumSoneReplies(maximumSoneReplies);
+			}
+			Integer maximumSoneLikes = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-likes", 10), null);
+			if (!preferences.validateMaximumSoneLikes(maximumSoneLikes)) {
+				fieldErrors.add("maximum-sone-likes");
+			} else {
+				preferences.setMaximumSoneLikes(maximumSoneLikes);
+			}
+			Integer maximumSoneAlbums = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-albums", 10), null);
+			if (!preferences.validateMaximumSoneAlbums(maximumSoneAlbums)) {
+				fieldErrors.add("maximum-sone-albums");
+			} else {
+				preferences.setMaximumSoneAlbums(maximumSoneAlbums);
+			}
+			Integer maximumSoneImages = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-images", 10), null);
+			if (!preferences.validateMaximumSoneImages(maximumSoneImages)) {
+				fieldErrors.add("maximum-sone-images");
+			} else {
+				preferences.setMaximumSoneImages(maximumSoneImages);
+			}
+			Integer maximumSoneTextLength = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("maximum-sone-text-length", 10), null);
+			if (!preferences.validateMaximumSoneTextLength(maximumSoneTextLength)) {
+				fieldErrors.add("maximum-sone-text-length");
+			} else {
+				preferences.setMaximumSoneTextLength(maximumSoneTextLength);
+			}
 			Integer positiveTrust = Numbers.safeParseInteger(request.getHttpRequest().getPartAsStringFailsafe("positive-trust", 3));
 			if (!preferences.validatePositiveTrust(positiveTrust)) {
 				fieldErrors.add("positive-trust");
@@ -147,11 +203,23 @@ public class OptionsPage extends SoneTemplatePage {
 			templateContext.set("show-custom-avatars", currentSone.getOptions().<ShowCustomAvatars> getEnumOption("ShowCustomAvatars").get().name());
 		}
 		templateContext.set("insertion-delay", preferences.getInsertionDelay());
+		templateContext.set("adaptive-insertion-delay", preferences.isAdaptiveInsertionDelay());
 		templateContext.set("posts-per-page", preferences.getPostsPerPage());
 		templateContext.set("images-per-page", preferences.getImagesPerPage());
 		templateContext.set("characters-per-post", preferences.getCharactersPerPost());
 		templateContext.set("post-cut-off-length", preferences.getPostCutOffLength());
+		templateContext.set("concurrent-sone-downloads", preferences.getConcurrentSoneDownloads());
 		templateContext.set("require-full-access", preferences.isRequireFullAccess());
+		templateContext.set("periodic-known-sone-checks", preferences.isPeriodicKnownSoneChecks());
+		templateContext.set("insert-post-archives", preferences.isInsertPostArchives());
+		templateContext.set("compress-sone-documents", preferences.isCompressSoneDocuments());
+		templateContext.set("maximum-sone-size", preferences.getMaximumSoneSize());
+		templateContext.set("maximum-sone-posts", preferences.getMaximumSonePosts());
+		templateContext.set("maximum-sone-replies", preferences.getMaximumSoneReplies());
+		templateContext.set("maximum-sone-likes", preferences.getMaximumSoneLikes());
+		templateContext.set("maximum-sone-albums", preferences.getMaximumSoneAlbums());
+		templateContext.set("maximum-sone-images", preferences.getMaximumSoneImages());
+		templateContext.set("maximum-sone-text-length", preferences.getMaximumSoneTextLength());
 		templateContext.set("positive-trust", preferences.getPositiveTrust());
 		templateContext.set("negative-trust", preferences.getNegativeTrust());
 		templateContext.set("trust-comment", preferences.getTrustComment());
@@ -59,9 +59,9 @@ public class UnlikePage extends SoneTemplatePage {
 			String returnPage = request.getHttpRequest().getPartAsStringFailsafe("returnPage", 256);
 			Sone currentSone = getCurrentSone(request.getToadletContext());
 			if ("post".equals(type)) {
-				currentSone.removeLikedPostId(id);
+				webInterface.getCore().unlikePost(currentSone, id);
 			} else if ("reply".equals(type)) {
-				currentSone.removeLikedReplyId(id);
+				webInterface.getCore().unlikeReply(currentSone, id);
 			}
 			throw new RedirectException(returnPage);
 		}
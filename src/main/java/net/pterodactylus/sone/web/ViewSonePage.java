@@ -86,7 +86,7 @@ public class ViewSonePage extends SoneTemplatePage {
 		if (sone == null) {
 			return;
 		}
-		List<Post> sonePosts = sone.getPosts();
+		List<Post> sonePosts = new ArrayList<Post>(sone.getPosts());
 		sonePosts.addAll(webInterface.getCore().getDirectedPosts(sone));
 		Collections.sort(sonePosts, Post.TIME_COMPARATOR);
 		Pagination<Post> postPagination = new Pagination<Post>(sonePosts, webInterface.getCore().getPreferences().getPostsPerPage()).setPage(Numbers.safeParseInteger(request.getHttpRequest().getParam("postPage"), 0));
@@ -25,6 +25,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import net.pterodactylus.sone.core.FetchHealth;
 import net.pterodactylus.sone.data.Post;
 import net.pterodactylus.sone.data.PostReply;
 import net.pterodactylus.sone.data.Sone;
@@ -176,11 +177,24 @@ public class GetStatusAjaxPage extends JsonPage {
 		jsonSone.put("status", sone.getStatus().name());
 		jsonSone.put("modified", webInterface.getCore().isModifiedSone(sone));
 		jsonSone.put("locked", webInterface.getCore().isLocked(sone));
+		if (sone.getInsertUri() != null) {
+			jsonSone.put("insertionDelay", webInterface.getCore().getInsertionDelay(sone));
+		}
 		jsonSone.put("lastUpdatedUnknown", sone.getTime() == 0);
 		synchronized (dateFormat) {
 			jsonSone.put("lastUpdated", dateFormat.format(new Date(sone.getTime())));
 		}
 		jsonSone.put("lastUpdatedText", GetTimesAjaxPage.getTime(webInterface, sone.getTime()).getText());
+		FetchHealth fetchHealth = (sone.getInsertUri() == null) ? webInterface.getCore().getFetchHealth(sone) : null;
+		if (fetchHealth != null) {
+			JsonObject jsonFetchHealth = new JsonObject();
+			jsonFetchHealth.put("consecutiveFailures", fetchHealth.getConsecutiveFailures());
+			jsonFetchHealth.put("lastError", fetchHealth.getLastError());
+			jsonFetchHealth.put("parseRejections", fetchHealth.getParseRejections());
+			jsonFetchHealth.put("backoffEnd", fetchHealth.getBackoffEnd());
+			jsonFetchHealth.put("failingChronically", fetchHealth.isFailingChronically());
+			jsonSone.put("fetchHealth", jsonFetchHealth);
+		}
 		return jsonSone;
 	}
 
@@ -55,11 +55,9 @@ public class UnlikeAjaxPage extends JsonPage {
 			return createErrorJsonObject("auth-required");
 		}
 		if ("post".equals(type)) {
-			currentSone.removeLikedPostId(id);
-			webInterface.getCore().touchConfiguration();
+			webInterface.getCore().unlikePost(currentSone, id);
 		} else if ("reply".equals(type)) {
-			currentSone.removeLikedReplyId(id);
-			webInterface.getCore().touchConfiguration();
+			webInterface.getCore().unlikeReply(currentSone, id);
 		} else {
 			return createErrorJsonObject("invalid-type");
 		}
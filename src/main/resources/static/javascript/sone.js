@@ -745,6 +745,13 @@ function ajaxifyPost(postElement) {
 		return false;
 	});
 
+	/* refresh the names of the liking Sones when they are shown first. */
+	(function(postId) {
+		$("#sone .post#post-" + postId + " > .inner-part > .status-line .likes > span").one("mouseenter", function() {
+			updatePostLikes(postId);
+		});
+	})(getPostId(postElement));
+
 	/* convert trust control buttons to javascript functions. */
 	$(postElement).find(".post-trust").submit(function() {
 		trustSone(getPostAuthor(this));
@@ -924,6 +931,13 @@ function ajaxifyReply(replyElement) {
 		unlikeReply(getReplyId(this));
 		return false;
 	});
+
+	/* refresh the names of the liking Sones when they are shown first. */
+	(function(replyId) {
+		$("#sone .reply#reply-" + replyId + " .status-line .likes > span").one("mouseenter", function() {
+			updateReplyLikes(replyId);
+		});
+	})(getReplyId(replyElement));
 	(function(replyElement) {
 		getTranslation("WebInterface.Confirmation.DeleteReplyButton", function(deleteReplyText) {
 			$(replyElement).find(".delete-reply button").each(function() {
@@ -0,0 +1,252 @@
+/*
+ * Sone - KnownElementsTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+import net.pterodactylus.sone.data.Id;
+import net.pterodactylus.util.collection.filter.Filter;
+
+/**
+ * JUnit test case for {@link KnownElements}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class KnownElementsTest extends TestCase {
+
+	/** The ID of a Sone. */
+	private static final Id SONE_ID = Id.valueOf("nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI");
+
+	/** The ID of a post. */
+	private static final Id POST_ID = Id.valueOf("0a5a4c5e-0f3b-4e4e-9c1c-3b2b8d6f1e01");
+
+	/** An ID of a foreign format. */
+	private static final Id TEXT_ID = Id.valueOf("foreign-id");
+
+	/** The log file. */
+	private File logFile;
+
+	//
+	// TESTCASE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		logFile = File.createTempFile("sone-known-elements-", ".log");
+		logFile.delete();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		logFile.delete();
+		new File(logFile.getPath() + ".new").delete();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests adding and removing elements of all kinds of IDs.
+	 */
+	public void testAddAndRemove() {
+		KnownElements knownElements = new KnownElements(logFile);
+		assertTrue("Sone Added", knownElements.add(SONE_ID));
+		assertTrue("Post Added", knownElements.add(POST_ID));
+		assertTrue("Text Added", knownElements.add(TEXT_ID));
+		assertFalse("Post Added Again", knownElements.add(Id.valueOf(POST_ID.toString())));
+		assertEquals("Size", 3, knownElements.size());
+		assertTrue("Sone Known", knownElements.contains(SONE_ID));
+		assertTrue("Post Known", knownElements.contains(POST_ID));
+		assertTrue("Text Known", knownElements.contains(TEXT_ID));
+
+		assertTrue("Post Removed", knownElements.remove(POST_ID));
+		assertFalse("Post Removed Again", knownElements.remove(POST_ID));
+		assertFalse("Post Known", knownElements.contains(POST_ID));
+		assertEquals("Size", 2, knownElements.size());
+	}
+
+	/**
+	 * Tests that saved elements are loaded again, and that only the changes
+	 * since the last save are appended to the log.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void testLog() throws IOException {
+		KnownElements knownElements = new KnownElements(logFile);
+		assertFalse("Missing Log Loaded", knownElements.load());
+		knownElements.add(SONE_ID);
+		knownElements.add(POST_ID);
+		knownElements.save();
+		assertEquals("Records", 2, readRecords().size());
+
+		knownElements.add(TEXT_ID);
+		knownElements.remove(SONE_ID);
+		knownElements.add(POST_ID);
+		knownElements.save();
+		List<String> records = readRecords();
+		assertEquals("Records", 4, records.size());
+		assertTrue("Added Record", records.get(2).endsWith(" " + TEXT_ID));
+		assertEquals("Removed Record", "- " + SONE_ID, records.get(3));
+
+		knownElements.save();
+		assertEquals("Records", 4, readRecords().size());
+
+		KnownElements loadedKnownElements = new KnownElements(logFile);
+		assertTrue("Log Loaded", loadedKnownElements.load());
+		assertEquals("Size", 2, loadedKnownElements.size());
+		assertFalse("Sone Known", loadedKnownElements.contains(SONE_ID));
+		assertTrue("Post Known", loadedKnownElements.contains(POST_ID));
+		assertTrue("Text Known", loadedKnownElements.contains(TEXT_ID));
+	}
+
+	/**
+	 * Tests that the log is rewritten once it contains a lot more records
+	 * than there are known elements.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void testCompaction() throws IOException {
+		KnownElements knownElements = new KnownElements(logFile);
+		List<Id> postIds = new ArrayList<Id>();
+		for (int index = 0; index < 2000; ++index) {
+			Id postId = Id.valueOf(UUID.randomUUID().toString());
+			postIds.add(postId);
+			knownElements.add(postId);
+		}
+		knownElements.save();
+		assertEquals("Records", 2000, readRecords().size());
+
+		for (Id postId : postIds.subList(0, 1900)) {
+			knownElements.remove(postId);
+		}
+		knownElements.add(SONE_ID);
+		knownElements.save();
+		List<String> records = readRecords();
+		assertEquals("Records", 101, records.size());
+		for (String record : records) {
+			assertFalse("Removed Record", record.startsWith("-"));
+		}
+
+		KnownElements loadedKnownElements = new KnownElements(logFile);
+		loadedKnownElements.load();
+		assertEquals("Size", 101, loadedKnownElements.size());
+		assertTrue("Sone Known", loadedKnownElements.contains(SONE_ID));
+		assertFalse("Removed Post Known", loadedKnownElements.contains(postIds.get(0)));
+		for (Id postId : postIds.subList(1900, 2000)) {
+			assertTrue("Post Known", loadedKnownElements.contains(postId));
+		}
+	}
+
+	/**
+	 * Tests that only old elements that do not exist anymore are expired, and
+	 * that invalid records are ignored.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public void testExpire() throws IOException {
+		final Id existingPostId = Id.valueOf(UUID.randomUUID().toString());
+		int today = (int) (System.currentTimeMillis() / (24 * 60 * 60 * 1000));
+		Writer logWriter = new OutputStreamWriter(new FileOutputStream(logFile), "UTF-8");
+		try {
+			logWriter.write("100 " + POST_ID + "\n");
+			logWriter.write("100 " + existingPostId + "\n");
+			logWriter.write(today + " " + SONE_ID + "\n");
+			logWriter.write("100 " + TEXT_ID + "\n");
+			logWriter.write("invalid\n");
+			logWriter.write("yesterday " + UUID.randomUUID() + "\n");
+		} finally {
+			logWriter.close();
+		}
+
+		KnownElements knownElements = new KnownElements(logFile);
+		knownElements.load();
+		assertEquals("Size", 4, knownElements.size());
+		int removedElements = knownElements.expire(180, new Filter<Id>() {
+
+			@Override
+			public boolean filterObject(Id id) {
+				return id.equals(existingPostId);
+			}
+		});
+		assertEquals("Removed Elements", 2, removedElements);
+		assertFalse("Old Post Known", knownElements.contains(POST_ID));
+		assertFalse("Old Text Known", knownElements.contains(TEXT_ID));
+		assertTrue("Existing Post Known", knownElements.contains(existingPostId));
+		assertTrue("Sone Known", knownElements.contains(SONE_ID));
+
+		/* the existing post has been touched and is not expired again. */
+		knownElements.save();
+		KnownElements loadedKnownElements = new KnownElements(logFile);
+		loadedKnownElements.load();
+		assertEquals("Removed Elements", 0, loadedKnownElements.expire(180, new Filter<Id>() {
+
+			@Override
+			public boolean filterObject(Id id) {
+				return false;
+			}
+		}));
+		assertEquals("Size", 2, loadedKnownElements.size());
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Reads all records of the log file.
+	 *
+	 * @return The records of the log file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private List<String> readRecords() throws IOException {
+		List<String> records = new ArrayList<String>();
+		BufferedReader logReader = new BufferedReader(new InputStreamReader(new FileInputStream(logFile), "UTF-8"));
+		try {
+			String record;
+			while ((record = logReader.readLine()) != null) {
+				records.add(record);
+			}
+		} finally {
+			logReader.close();
+		}
+		return records;
+	}
+
+}
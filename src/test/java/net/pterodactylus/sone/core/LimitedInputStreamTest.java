@@ -0,0 +1,134 @@
+/*
+ * Sone - LimitedInputStreamTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test case for {@link LimitedInputStream}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class LimitedInputStreamTest extends TestCase {
+
+	/** The document used in the tests. */
+	private static final byte[] DOCUMENT = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n<sone></sone>\n".getBytes();
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests that plain documents are returned unchanged, that compressed
+	 * documents are decompressed, and that the limit applies to the
+	 * decompressed document.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	@SuppressWarnings("static-method")
+	public void testDecodeDocument() throws IOException {
+		assertTrue("Plain Document", Arrays.equals(DOCUMENT, readFully(LimitedInputStream.decodeDocument(new ByteArrayInputStream(DOCUMENT), DOCUMENT.length))));
+
+		ByteArrayOutputStream compressedOutputStream = new ByteArrayOutputStream();
+		GZIPOutputStream gzipOutputStream = new GZIPOutputStream(compressedOutputStream);
+		gzipOutputStream.write(DOCUMENT);
+		gzipOutputStream.close();
+		byte[] compressedDocument = compressedOutputStream.toByteArray();
+		assertFalse("Compressed Document", Arrays.equals(DOCUMENT, compressedDocument));
+		assertTrue("Decompressed Document", Arrays.equals(DOCUMENT, readFully(LimitedInputStream.decodeDocument(new ByteArrayInputStream(compressedDocument), DOCUMENT.length))));
+
+		assertEquals("Empty Document", 0, readFully(LimitedInputStream.decodeDocument(new ByteArrayInputStream(new byte[0]), DOCUMENT.length)).length);
+		assertTrue("Single Byte", Arrays.equals(new byte[] { 0x1f }, readFully(LimitedInputStream.decodeDocument(new ByteArrayInputStream(new byte[] { 0x1f }), DOCUMENT.length))));
+
+		LimitedInputStream limitedInputStream = LimitedInputStream.decodeDocument(new ByteArrayInputStream(compressedDocument), DOCUMENT.length - 1);
+		try {
+			readFully(limitedInputStream);
+			fail("Decompressed more than the limit.");
+		} catch (IOException ioe1) {
+			/* expected. */
+		}
+		assertTrue("Exceeded", limitedInputStream.isExceeded());
+	}
+
+	/**
+	 * Tests that a limited input stream can be read up to its limit, and that
+	 * reading more fails.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	@SuppressWarnings("static-method")
+	public void testLimit() throws IOException {
+		LimitedInputStream limitedInputStream = new LimitedInputStream(new ByteArrayInputStream(DOCUMENT), DOCUMENT.length);
+		assertTrue("Document", Arrays.equals(DOCUMENT, readFully(limitedInputStream)));
+		assertFalse("Exceeded", limitedInputStream.isExceeded());
+
+		limitedInputStream = new LimitedInputStream(new ByteArrayInputStream(DOCUMENT), DOCUMENT.length - 1);
+		try {
+			readFully(limitedInputStream);
+			fail("Read more than the limit.");
+		} catch (IOException ioe1) {
+			/* expected. */
+		}
+		assertTrue("Exceeded", limitedInputStream.isExceeded());
+
+		limitedInputStream = new LimitedInputStream(new ByteArrayInputStream(DOCUMENT), 2);
+		assertEquals("First Byte", DOCUMENT[0], limitedInputStream.read());
+		assertEquals("Skipped", 1, limitedInputStream.skip(1));
+		try {
+			limitedInputStream.read();
+			fail("Read more than the limit.");
+		} catch (IOException ioe1) {
+			/* expected. */
+		}
+		assertTrue("Exceeded", limitedInputStream.isExceeded());
+		assertFalse("Mark Supported", limitedInputStream.markSupported());
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Reads the given input stream until its end.
+	 *
+	 * @param inputStream
+	 *            The input stream to read
+	 * @return The read bytes
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static byte[] readFully(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		byte[] buffer = new byte[16];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1) {
+			outputStream.write(buffer, 0, read);
+		}
+		return outputStream.toByteArray();
+	}
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Sone - ProcessedEditionsTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test case for {@link ProcessedEditions}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class ProcessedEditionsTest extends TestCase {
+
+	/** The ID of the Sone. */
+	private static final String SONE_ID = "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI";
+
+	/** The ID of another Sone. */
+	private static final String OTHER_SONE_ID = "DAxKQzS48mtaQc7sUVHIgx3fnWZPQBz0EueBreUVWrU";
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests that only editions up to the last processed edition are
+	 * considered processed.
+	 */
+	@SuppressWarnings("static-method")
+	public void testIsProcessed() {
+		ProcessedEditions processedEditions = new ProcessedEditions();
+		assertFalse("Unknown Sone", processedEditions.isProcessed(SONE_ID, 0));
+
+		processedEditions.setProcessed(SONE_ID, 5, new byte[] { 1, 2, 3 });
+		assertTrue("Older Edition", processedEditions.isProcessed(SONE_ID, 4));
+		assertTrue("Same Edition", processedEditions.isProcessed(SONE_ID, 5));
+		assertFalse("Newer Edition", processedEditions.isProcessed(SONE_ID, 6));
+		assertFalse("Unknown Edition", processedEditions.isProcessed(SONE_ID, -1));
+		assertFalse("Other Sone", processedEditions.isProcessed(OTHER_SONE_ID, 4));
+
+		processedEditions.remove(SONE_ID);
+		assertFalse("Removed Sone", processedEditions.isProcessed(SONE_ID, 4));
+	}
+
+	/**
+	 * Tests that only a document with the same digest as the last processed
+	 * document is considered unchanged.
+	 */
+	@SuppressWarnings("static-method")
+	public void testIsUnchanged() {
+		ProcessedEditions processedEditions = new ProcessedEditions();
+		assertFalse("Unknown Sone", processedEditions.isUnchanged(SONE_ID, new byte[] { 1, 2, 3 }));
+
+		processedEditions.setProcessed(SONE_ID, 5, new byte[] { 1, 2, 3 });
+		assertTrue("Same Digest", processedEditions.isUnchanged(SONE_ID, new byte[] { 1, 2, 3 }));
+		assertFalse("Other Digest", processedEditions.isUnchanged(SONE_ID, new byte[] { 1, 2, 4 }));
+		assertFalse("No Digest", processedEditions.isUnchanged(SONE_ID, null));
+		assertFalse("Other Sone", processedEditions.isUnchanged(OTHER_SONE_ID, new byte[] { 1, 2, 3 }));
+
+		processedEditions.setProcessed(SONE_ID, 6, null);
+		assertFalse("Unknown Digest", processedEditions.isUnchanged(SONE_ID, new byte[] { 1, 2, 3 }));
+		assertTrue("Newer Edition Processed", processedEditions.isProcessed(SONE_ID, 6));
+
+		processedEditions.remove(SONE_ID);
+		assertFalse("Removed Sone", processedEditions.isUnchanged(SONE_ID, new byte[] { 1, 2, 3 }));
+	}
+
+}
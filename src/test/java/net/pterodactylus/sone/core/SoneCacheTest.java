@@ -0,0 +1,190 @@
+/*
+ * Sone - SoneCacheTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.File;
+import java.net.MalformedURLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import junit.framework.TestCase;
+import net.pterodactylus.sone.core.Core.Preferences;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.sone.data.impl.PostImpl;
+import net.pterodactylus.sone.freenet.wot.DefaultIdentity;
+import freenet.keys.FreenetURI;
+
+/**
+ * JUnit test case for {@link SoneCache}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneCacheTest extends TestCase {
+
+	/** The ID of the cached Sone. */
+	private static final String SONE_ID = "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI";
+
+	/** The ID of the post. */
+	private static final String POST_ID = "0a5a4c5e-0f3b-4e4e-9c1c-3b2b8d6f1e01";
+
+	/** The key of the archive page. */
+	private static final String ARCHIVE_KEY = "CHK@wZgq8Kh5bNLkwqSUYHWIkFRr~NCRB~SR1Jrbz9TZBoo,bNrBnCtxW~iJrHgdSYGcq4LxtPiTRM-vTddAPBdLOn4,AAMC--8";
+
+	/** The cache directory. */
+	private File directory;
+
+	/** The Sone parser. */
+	private SoneParser soneParser;
+
+	//
+	// TESTCASE METHODS
+	//
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("sone-cache-", "");
+		directory.delete();
+		soneParser = new SoneParser(new Preferences(null) {
+
+			@Override
+			public SoneLimits getSoneLimits() {
+				return new SoneLimits(1024 * 1024, 10, 10, 10, 10, 10, 100);
+			}
+
+		});
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests that a stored Sone is read again, both from the same cache and
+	 * from a newly loaded cache.
+	 *
+	 * @throws MalformedURLException
+	 *             if the key of the archive page is not valid
+	 */
+	public void testStoreAndRead() throws MalformedURLException {
+		SoneCache soneCache = new SoneCache(directory, soneParser);
+		assertNull("Unknown Sone", soneCache.read(createOriginalSone()));
+
+		SoneArchive soneArchive = new SoneArchive(0, SoneArchive.PERIOD, new FreenetURI(ARCHIVE_KEY));
+		soneCache.store(createSone(5), Arrays.asList(soneArchive));
+		assertTrue("Sone Stored", soneCache.contains(SONE_ID));
+		assertEquals("Archives", Collections.singleton(soneArchive), soneCache.getArchives(SONE_ID));
+		assertCachedSone(soneCache.read(createOriginalSone()), 5);
+
+		SoneCache loadedSoneCache = new SoneCache(directory, soneParser);
+		loadedSoneCache.load();
+		assertTrue("Sone Stored", loadedSoneCache.contains(SONE_ID));
+		assertNull("Unread Archives", loadedSoneCache.getArchives(SONE_ID));
+		assertCachedSone(loadedSoneCache.read(createOriginalSone()), 5);
+		assertEquals("Archives", new HashSet<SoneArchive>(Arrays.asList(soneArchive)), loadedSoneCache.getArchives(SONE_ID));
+	}
+
+	/**
+	 * Tests that older editions do not replace a stored Sone, and that removed
+	 * Sones are deleted.
+	 */
+	public void testEditionsAndRemove() {
+		SoneCache soneCache = new SoneCache(directory, soneParser);
+		soneCache.store(createSone(5), Collections.<SoneArchive> emptySet());
+		Sone olderSone = createSone(4);
+		olderSone.setTime(1);
+		soneCache.store(olderSone, Collections.<SoneArchive> emptySet());
+		assertCachedSone(soneCache.read(createOriginalSone()), 5);
+
+		soneCache.store(createSone(6), Collections.<SoneArchive> emptySet());
+		assertCachedSone(soneCache.read(createOriginalSone()), 6);
+		assertTrue("Archives", soneCache.getArchives(SONE_ID).isEmpty());
+
+		soneCache.remove(SONE_ID);
+		assertFalse("Sone Stored", soneCache.contains(SONE_ID));
+		assertNull("Removed Sone", soneCache.read(createOriginalSone()));
+		assertFalse("Cache File", new File(directory, SONE_ID + ".sone").exists());
+		SoneCache loadedSoneCache = new SoneCache(directory, soneParser);
+		loadedSoneCache.load();
+		assertFalse("Sone Stored", loadedSoneCache.contains(SONE_ID));
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates the Sone that is given to the cache when reading.
+	 *
+	 * @return The original Sone
+	 */
+	private static Sone createOriginalSone() {
+		return new Sone(SONE_ID).setIdentity(new DefaultIdentity(SONE_ID, "Test", "USK@" + SONE_ID + ",AQACAAE/WebOfTrust/0"));
+	}
+
+	/**
+	 * Creates a Sone with a single post.
+	 *
+	 * @param edition
+	 *            The edition of the Sone
+	 * @return The created Sone
+	 */
+	private static Sone createSone(long edition) {
+		Sone sone = createOriginalSone().setTime(1340000000000L);
+		sone.setPosts(Arrays.<Post> asList(new PostImpl(POST_ID, sone, 1339000000000L, "Hello!")));
+		sone.setLatestEdition(edition);
+		return sone;
+	}
+
+	/**
+	 * Asserts that the given Sone is the Sone created by
+	 * {@link #createSone(long)} with the given edition.
+	 *
+	 * @param cachedSone
+	 *            The Sone read from the cache
+	 * @param edition
+	 *            The expected edition
+	 */
+	private static void assertCachedSone(Sone cachedSone, long edition) {
+		assertNotNull("Cached Sone", cachedSone);
+		assertEquals("Edition", edition, cachedSone.getLatestEdition());
+		assertEquals("Time", 1340000000000L, cachedSone.getTime());
+		assertEquals("Posts", 1, cachedSone.getPosts().size());
+		assertEquals("Post ID", POST_ID, cachedSone.getPosts().get(0).getId());
+		assertEquals("Post Text", "Hello!", cachedSone.getPosts().get(0).getText());
+	}
+
+}
@@ -0,0 +1,513 @@
+/*
+ * Sone - SoneParserTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.pterodactylus.sone.core.Core.Preferences;
+import net.pterodactylus.sone.data.Album;
+import net.pterodactylus.sone.data.Image;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.PostReply;
+import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.sone.data.impl.PostImpl;
+import net.pterodactylus.sone.freenet.wot.DefaultIdentity;
+import freenet.keys.FreenetURI;
+
+/**
+ * JUnit test case for {@link SoneParser} and {@link SoneXmlWriter}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneParserTest extends TestCase {
+
+	/** The ID of the parsed Sone. */
+	private static final String SONE_ID = "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI";
+
+	/** The ID of the recipient of the post. */
+	private static final String RECIPIENT_ID = "DAxKQzS48mtaQc7sUVHIgx3fnWZPQBz0EueBreUVWrU";
+
+	/** The ID of the post. */
+	private static final String POST_ID = "0a5a4c5e-0f3b-4e4e-9c1c-3b2b8d6f1e01";
+
+	/** The ID of the reply. */
+	private static final String REPLY_ID = "7c1d2e3f-4a5b-4c6d-8e9f-a0b1c2d3e4f5";
+
+	/** The key of the archive page. */
+	private static final String ARCHIVE_KEY = "CHK@wZgq8Kh5bNLkwqSUYHWIkFRr~NCRB~SR1Jrbz9TZBoo,bNrBnCtxW~iJrHgdSYGcq4LxtPiTRM-vTddAPBdLOn4,AAMC--8";
+
+	/** A valid Sone document containing one element of every kind. */
+	private static final String VALID_DOCUMENT = "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n" +
+			"<sone>" +
+			"<time>1340000000000</time>" +
+			"<protocol-version>0</protocol-version>" +
+			"<client><name>Sone</name><version>0.8.1</version></client>" +
+			"<profile>" +
+			"<first-name>First</first-name><last-name>Last</last-name><birth-year>1970</birth-year><avatar>image-1</avatar>" +
+			"<fields><field><field-name>Homepage</field-name><field-value>http://example.com/</field-value></field></fields>" +
+			"</profile>" +
+			"<posts><post><id>" + POST_ID + "</id><recipient>" + RECIPIENT_ID + "</recipient><time>1339000000000</time><text>Hello &amp; welcome!</text></post></posts>" +
+			"<replies><reply><id>" + REPLY_ID + "</id><post-id>" + POST_ID + "</post-id><time>1339500000000</time><text>Reply.</text></reply></replies>" +
+			"<post-likes><post-like>" + POST_ID + "</post-like></post-likes>" +
+			"<reply-likes></reply-likes>" +
+			"<albums><album><id>album-1</id><title>Album</title><description>Description</description>" +
+			"<images><image><id>image-1</id><creation-time>1338000000000</creation-time><key>KSK@image.png</key><title>Image</title><width>640</width><height>480</height></image></images>" +
+			"</album></albums>" +
+			"</sone>\n";
+
+	/** Limits that are not exceeded by {@link #VALID_DOCUMENT}. */
+	private static final SoneLimits SONE_LIMITS = new SoneLimits(1024 * 1024, 10, 10, 10, 10, 10, 100);
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests that all values of a valid document are parsed.
+	 *
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testValidDocument() throws SoneLimitExceededException {
+		Sone sone = parseSone(createSoneParser(SONE_LIMITS), VALID_DOCUMENT);
+		assertNotNull("Sone", sone);
+		assertEquals("Sone ID", SONE_ID, sone.getId());
+		assertEquals("Time", 1340000000000L, sone.getTime());
+		assertEquals("Client Name", "Sone", sone.getClient().getName());
+		assertEquals("Client Version", "0.8.1", sone.getClient().getVersion());
+
+		Profile profile = sone.getProfile();
+		assertEquals("First Name", "First", profile.getFirstName());
+		assertNull("Middle Name", profile.getMiddleName());
+		assertEquals("Last Name", "Last", profile.getLastName());
+		assertNull("Birth Day", profile.getBirthDay());
+		assertEquals("Birth Year", Integer.valueOf(1970), profile.getBirthYear());
+		assertEquals("Avatar", "image-1", profile.getAvatar());
+		assertEquals("Fields", 1, profile.getFields().size());
+		assertEquals("Field Name", "Homepage", profile.getFields().get(0).getName());
+		assertEquals("Field Value", "http://example.com/", profile.getFields().get(0).getValue());
+
+		assertEquals("Posts", 1, sone.getPosts().size());
+		Post post = sone.getPosts().get(0);
+		assertEquals("Post ID", POST_ID, post.getId());
+		assertEquals("Post Recipient", RECIPIENT_ID, post.getRecipient().getId());
+		assertEquals("Post Time", 1339000000000L, post.getTime());
+		assertEquals("Post Text", "Hello & welcome!", post.getText());
+
+		assertEquals("Replies", 1, sone.getReplies().size());
+		PostReply reply = sone.getReplies().iterator().next();
+		assertEquals("Reply ID", REPLY_ID, reply.getId());
+		assertEquals("Reply Post", POST_ID, reply.getPost().getId());
+		assertEquals("Reply Time", 1339500000000L, reply.getTime());
+		assertEquals("Reply Text", "Reply.", reply.getText());
+
+		assertEquals("Liked Posts", Collections.singleton(POST_ID), sone.getLikedPostIds());
+		assertTrue("Liked Replies", sone.getLikedReplyIds().isEmpty());
+
+		assertEquals("Albums", 1, sone.getAlbums().size());
+		Album album = sone.getAlbums().get(0);
+		assertEquals("Album ID", "album-1", album.getId());
+		assertEquals("Album Title", "Album", album.getTitle());
+		assertEquals("Album Description", "Description", album.getDescription());
+		assertEquals("Images", 1, album.getImages().size());
+		Image image = album.getImages().get(0);
+		assertEquals("Image ID", "image-1", image.getId());
+		assertEquals("Image Creation Time", 1338000000000L, image.getCreationTime());
+		assertEquals("Image Key", "KSK@image.png", image.getKey());
+		assertEquals("Image Title", "Image", image.getTitle());
+		assertEquals("Image Description", "", image.getDescription());
+		assertEquals("Image Width", 640, image.getWidth());
+		assertEquals("Image Height", 480, image.getHeight());
+	}
+
+	/**
+	 * Tests that unknown elements and repeated elements are ignored.
+	 *
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testUnknownAndRepeatedElements() throws SoneLimitExceededException {
+		SoneParser soneParser = createSoneParser(SONE_LIMITS);
+		Sone sone = parseSone(soneParser, VALID_DOCUMENT.replace("<time>1340000000000</time>", "<unknown><time>1</time></unknown><time>1340000000000</time><time>2</time>"));
+		assertNotNull("Sone", sone);
+		assertEquals("Time", 1340000000000L, sone.getTime());
+	}
+
+	/**
+	 * Tests that documents that violate the validation rules are rejected.
+	 *
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testInvalidDocuments() throws SoneLimitExceededException {
+		SoneParser soneParser = createSoneParser(SONE_LIMITS);
+		assertNull("Malformed XML", parseSone(soneParser, VALID_DOCUMENT.replace("</time>", "</tim>")));
+		assertNull("No Document Element", parseSone(soneParser, "<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n"));
+		assertNull("Unknown Protocol Version", parseSone(soneParser, VALID_DOCUMENT.replace("<protocol-version>0</protocol-version>", "<protocol-version>2</protocol-version>")));
+		assertNull("Negative Protocol Version", parseSone(soneParser, VALID_DOCUMENT.replace("<protocol-version>0</protocol-version>", "<protocol-version>-1</protocol-version>")));
+		assertNull("Missing Time", parseSone(soneParser, VALID_DOCUMENT.replace("<time>1340000000000</time>", "")));
+		assertNull("Invalid Time", parseSone(soneParser, VALID_DOCUMENT.replace("<time>1340000000000</time>", "<time>yesterday</time>")));
+		assertNull("Missing Client Version", parseSone(soneParser, VALID_DOCUMENT.replace("<version>0.8.1</version>", "")));
+		assertNull("Missing Profile", parseSone(soneParser, VALID_DOCUMENT.replaceAll("<profile>.*</profile>", "")));
+		assertNull("Missing Field Name", parseSone(soneParser, VALID_DOCUMENT.replace("<field-name>Homepage</field-name>", "")));
+		assertNull("Missing Post Text", parseSone(soneParser, VALID_DOCUMENT.replace("<text>Hello &amp; welcome!</text>", "")));
+		assertNull("Invalid Post Time", parseSone(soneParser, VALID_DOCUMENT.replace("<time>1339000000000</time>", "<time>now</time>")));
+		assertNull("Missing Reply Post", parseSone(soneParser, VALID_DOCUMENT.replace("<post-id>" + POST_ID + "</post-id>", "")));
+		assertNull("Missing Album Title", parseSone(soneParser, VALID_DOCUMENT.replace("<title>Album</title>", "")));
+		assertNull("Unknown Album Parent", parseSone(soneParser, VALID_DOCUMENT.replace("<title>Album</title>", "<parent>album-0</parent><title>Album</title>")));
+		assertNull("Missing Image Key", parseSone(soneParser, VALID_DOCUMENT.replace("<key>KSK@image.png</key>", "")));
+		assertNull("Invalid Image Width", parseSone(soneParser, VALID_DOCUMENT.replace("<width>640</width>", "<width>0</width>")));
+		assertNull("Invalid Image Height", parseSone(soneParser, VALID_DOCUMENT.replace("<height>480</height>", "<height>tall</height>")));
+		assertNull("Archive with Invalid Key", parseSone(soneParser, VALID_DOCUMENT.replace("</sone>", "<archives><archive><start>0</start><end>1</end><key>KSK@archive.xml</key></archive></archives></sone>")));
+		assertNull("Archive with Invalid Period", parseSone(soneParser, VALID_DOCUMENT.replace("</sone>", "<archives><archive><start>1</start><end>1</end><key>" + ARCHIVE_KEY + "</key></archive></archives></sone>")));
+	}
+
+	/**
+	 * Tests that every limit is enforced.
+	 */
+	@SuppressWarnings("static-method")
+	public void testLimits() {
+		String secondPost = "<post><id>1b2c3d4e-5f60-4718-8293-a4b5c6d7e8f9</id><time>1339000000001</time><text>Again.</text></post></posts>";
+		assertLimitExceeded("Posts", new SoneLimits(1024 * 1024, 1, 10, 10, 10, 10, 100), VALID_DOCUMENT.replace("</posts>", secondPost));
+		String secondReply = "<reply><id>2b2c3d4e-5f60-4718-8293-a4b5c6d7e8f9</id><post-id>" + POST_ID + "</post-id><time>1339500000001</time><text>Again.</text></reply></replies>";
+		assertLimitExceeded("Replies", new SoneLimits(1024 * 1024, 10, 1, 10, 10, 10, 100), VALID_DOCUMENT.replace("</replies>", secondReply));
+		assertLimitExceeded("Likes", new SoneLimits(1024 * 1024, 10, 10, 1, 10, 10, 100), VALID_DOCUMENT.replace("<reply-likes></reply-likes>", "<reply-likes><reply-like>" + REPLY_ID + "</reply-like></reply-likes>"));
+		assertLimitExceeded("Albums", new SoneLimits(1024 * 1024, 10, 10, 10, 1, 10, 100), VALID_DOCUMENT.replace("</albums>", "<album><id>album-2</id><title>Album</title></album></albums>"));
+		String secondImage = "<image><id>image-2</id><creation-time>1338000000001</creation-time><key>KSK@image2.png</key><title>Image</title><width>640</width><height>480</height></image></images>";
+		assertLimitExceeded("Images", new SoneLimits(1024 * 1024, 10, 10, 10, 10, 1, 100), VALID_DOCUMENT.replace("</images>", secondImage));
+		assertLimitExceeded("Text Length", new SoneLimits(1024 * 1024, 10, 10, 10, 10, 10, 15), VALID_DOCUMENT);
+	}
+
+	/**
+	 * Tests that limits are enforced while the document is read, i.e. before
+	 * the rest of the document is even looked at.
+	 */
+	@SuppressWarnings("static-method")
+	public void testLimitsAreEnforcedWhileReading() {
+		String secondPost = "<post><id>1b2c3d4e-5f60-4718-8293-a4b5c6d7e8f9</id><time>1339000000001</time><text>Again.</text></post></posts>";
+		String truncatedDocument = VALID_DOCUMENT.replace("</posts>", secondPost);
+		truncatedDocument = truncatedDocument.substring(0, truncatedDocument.indexOf("</posts>") + "</posts>".length()) + "<replies><reply><unclosed>";
+		assertLimitExceeded("Posts", new SoneLimits(1024 * 1024, 1, 10, 10, 10, 10, 100), truncatedDocument);
+
+		StringBuilder longText = new StringBuilder();
+		for (int index = 0; index < 101; ++index) {
+			longText.append('x');
+		}
+		truncatedDocument = VALID_DOCUMENT.substring(0, VALID_DOCUMENT.indexOf("Hello &amp; welcome!")) + longText + "<unclosed>";
+		assertLimitExceeded("Text Length", SONE_LIMITS, truncatedDocument);
+	}
+
+	/**
+	 * Tests that a document written by the {@link SoneXmlWriter} is parsed to
+	 * the same values.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testWriterRoundTrip() throws IOException, SoneLimitExceededException {
+		Sone sone = createSone();
+		StringWriter stringWriter = new StringWriter();
+		new SoneXmlWriter(stringWriter).writeSone(sone.getTime(), "0.8.1", sone.getProfile(), sone.getPosts(), sone.getReplies(), sone.getLikedPostIds(), sone.getLikedReplyIds(), sone.getAllAlbums(), Collections.<SoneArchive> emptyList());
+
+		Sone parsedSone = parseSone(createSoneParser(SONE_LIMITS), stringWriter.toString());
+		assertNotNull("Parsed Sone", parsedSone);
+		assertEquals("Client Version", "0.8.1", parsedSone.getClient().getVersion());
+		assertSameSone(sone, parsedSone);
+	}
+
+	/**
+	 * Tests that archive pages written by the {@link SoneXmlWriter} are read
+	 * and that a Sone is only created once all its archive pages have been
+	 * resolved.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testArchiveRoundTrip() throws IOException, SoneLimitExceededException {
+		Sone sone = createSone();
+		Post post = sone.getPosts().get(0);
+		PostReply reply = sone.getReplies().iterator().next();
+		SoneArchive soneArchive = new SoneArchive(SoneArchive.getPeriodStart(post.getTime()), SoneArchive.getPeriodStart(post.getTime()) + SoneArchive.PERIOD, new FreenetURI(ARCHIVE_KEY));
+		assertTrue("Reply in Archive", soneArchive.contains(reply.getTime()));
+
+		StringWriter documentWriter = new StringWriter();
+		new SoneXmlWriter(documentWriter).writeSone(sone.getTime(), "0.8.1", sone.getProfile(), Collections.<Post> emptyList(), Collections.<PostReply> emptyList(), sone.getLikedPostIds(), sone.getLikedReplyIds(), sone.getAllAlbums(), Arrays.asList(soneArchive));
+		StringWriter archiveWriter = new StringWriter();
+		new SoneXmlWriter(archiveWriter).writeArchive(sone.getPosts(), sone.getReplies());
+
+		SoneParser soneParser = createSoneParser(SONE_LIMITS);
+		Sone originalSone = createOriginalSone();
+		SoneDocument soneDocument = soneParser.readDocument(originalSone, toInputStream(documentWriter.toString()));
+		assertNotNull("Document", soneDocument);
+		assertEquals("Archives", Arrays.asList(soneArchive), soneDocument.getArchives());
+		assertEquals("Unresolved Archives", Arrays.asList(soneArchive), soneDocument.getUnresolvedArchives());
+		assertNull("Unresolved Sone", soneParser.createSone(originalSone, soneDocument));
+
+		assertTrue("Archive Read", soneParser.readArchive(soneDocument, soneArchive, toInputStream(archiveWriter.toString())));
+		assertTrue("Unresolved Archives", soneDocument.getUnresolvedArchives().isEmpty());
+		Sone parsedSone = soneParser.createSone(originalSone, soneDocument);
+		assertNotNull("Parsed Sone", parsedSone);
+		assertSameSone(sone, parsedSone);
+
+		/* resolve the archive page from the parsed Sone. */
+		SoneDocument nextSoneDocument = soneParser.readDocument(originalSone, toInputStream(documentWriter.toString()));
+		nextSoneDocument.copyArchive(soneArchive, parsedSone, SONE_LIMITS);
+		assertTrue("Unresolved Archives", nextSoneDocument.getUnresolvedArchives().isEmpty());
+		assertSameSone(sone, soneParser.createSone(originalSone, nextSoneDocument));
+	}
+
+	/**
+	 * Tests that archive pages containing posts outside of their period, and
+	 * archive pages exceeding the limits, are rejected.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testInvalidArchives() throws IOException, SoneLimitExceededException {
+		Sone sone = createSone();
+		SoneArchive soneArchive = new SoneArchive(0, 1, new FreenetURI(ARCHIVE_KEY));
+		StringWriter documentWriter = new StringWriter();
+		new SoneXmlWriter(documentWriter).writeSone(sone.getTime(), "0.8.1", sone.getProfile(), Collections.<Post> emptyList(), Collections.<PostReply> emptyList(), sone.getLikedPostIds(), sone.getLikedReplyIds(), sone.getAllAlbums(), Arrays.asList(soneArchive));
+		StringWriter archiveWriter = new StringWriter();
+		new SoneXmlWriter(archiveWriter).writeArchive(sone.getPosts(), Collections.<PostReply> emptyList());
+
+		SoneParser soneParser = createSoneParser(SONE_LIMITS);
+		SoneDocument soneDocument = soneParser.readDocument(createOriginalSone(), toInputStream(documentWriter.toString()));
+		assertFalse("Post outside of Period", soneParser.readArchive(soneDocument, soneArchive, toInputStream(archiveWriter.toString())));
+		assertFalse("No Archive Element", soneParser.readArchive(soneDocument, soneArchive, toInputStream(documentWriter.toString())));
+		assertEquals("Unresolved Archives", Arrays.asList(soneArchive), soneDocument.getUnresolvedArchives());
+
+		try {
+			soneDocument.copyArchive(new SoneArchive(0, Long.MAX_VALUE, new FreenetURI(ARCHIVE_KEY)), sone, new SoneLimits(1024 * 1024, 10, 10, 10, 10, 10, 5));
+			fail("Copied archive exceeds text length.");
+		} catch (SoneLimitExceededException slee1) {
+			/* expected. */
+		}
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates a Sone parser that uses the given limits.
+	 *
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @return The created Sone parser
+	 */
+	private static SoneParser createSoneParser(final SoneLimits soneLimits) {
+		return new SoneParser(new Preferences(null) {
+
+			@Override
+			public SoneLimits getSoneLimits() {
+				return soneLimits;
+			}
+
+		});
+	}
+
+	/**
+	 * Creates the Sone that is updated by the parser.
+	 *
+	 * @return The original Sone
+	 */
+	private static Sone createOriginalSone() {
+		return new Sone(SONE_ID).setIdentity(new DefaultIdentity(SONE_ID, "Test", "USK@" + SONE_ID + ",AQACAAE/WebOfTrust/0"));
+	}
+
+	/**
+	 * Creates a Sone with one element of every kind.
+	 *
+	 * @return The created Sone
+	 */
+	private static Sone createSone() {
+		Sone sone = createOriginalSone().setTime(1340000000000L);
+		Album album = new Album("album-1").setSone(sone).setTitle("Album").setDescription("An <album> & “more”.");
+		Image image = new Image("image-1").setSone(sone).setKey("KSK@image.png").setCreationTime(1338000000000L);
+		image.setTitle("Image").setDescription("").setWidth(640).setHeight(480);
+		album.addImage(image);
+		sone.setAlbums(Arrays.asList(album));
+
+		Profile profile = new Profile(sone).setFirstName("First").setLastName("Last");
+		profile.setBirthDay(1).setBirthMonth(2).setBirthYear(1970);
+		profile.addField("Homepage").setValue("http://example.com/?a=1&b=2");
+		profile.setAvatar(image);
+		sone.setProfile(profile);
+
+		Post post = new PostImpl(POST_ID, sone, 1339000000000L, "Hello & welcome!\n\n<b>Not bold</b> 'quoted' \"text\".");
+		post.setRecipient(new Sone(RECIPIENT_ID));
+		sone.setPosts(Arrays.asList(post));
+		sone.setReplies(Arrays.asList(new PostReply(REPLY_ID, sone, new PostImpl(POST_ID), 1339000000001L, "Reply.")));
+		sone.setLikePostIds(Collections.singleton(POST_ID));
+		sone.setLikeReplyIds(Collections.singleton(REPLY_ID));
+		return sone;
+	}
+
+	/**
+	 * Parses the given document.
+	 *
+	 * @param soneParser
+	 *            The Sone parser
+	 * @param document
+	 *            The document to parse
+	 * @return The parsed Sone, or {@code null} if the document is not valid
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	private static Sone parseSone(SoneParser soneParser, String document) throws SoneLimitExceededException {
+		return soneParser.parseSone(createOriginalSone(), toInputStream(document));
+	}
+
+	/**
+	 * Asserts that parsing the given document exceeds a limit.
+	 *
+	 * @param message
+	 *            The message of a failed assertion
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @param document
+	 *            The document to parse
+	 */
+	private static void assertLimitExceeded(String message, SoneLimits soneLimits, String document) {
+		try {
+			parseSone(createSoneParser(soneLimits), document);
+			fail(message);
+		} catch (SoneLimitExceededException slee1) {
+			/* expected. */
+		}
+	}
+
+	/**
+	 * Asserts that the given Sones have the same profile, posts, replies,
+	 * likes, albums, and images.
+	 *
+	 * @param expectedSone
+	 *            The expected Sone
+	 * @param actualSone
+	 *            The actual Sone
+	 */
+	private static void assertSameSone(Sone expectedSone, Sone actualSone) {
+		assertEquals("Time", expectedSone.getTime(), actualSone.getTime());
+
+		Profile expectedProfile = expectedSone.getProfile();
+		Profile actualProfile = actualSone.getProfile();
+		assertEquals("First Name", expectedProfile.getFirstName(), actualProfile.getFirstName());
+		assertEquals("Middle Name", expectedProfile.getMiddleName(), actualProfile.getMiddleName());
+		assertEquals("Last Name", expectedProfile.getLastName(), actualProfile.getLastName());
+		assertEquals("Birth Day", expectedProfile.getBirthDay(), actualProfile.getBirthDay());
+		assertEquals("Birth Month", expectedProfile.getBirthMonth(), actualProfile.getBirthMonth());
+		assertEquals("Birth Year", expectedProfile.getBirthYear(), actualProfile.getBirthYear());
+		assertEquals("Avatar", expectedProfile.getAvatar(), actualProfile.getAvatar());
+		assertEquals("Fields", expectedProfile.getFields().size(), actualProfile.getFields().size());
+		for (int fieldIndex = 0; fieldIndex < expectedProfile.getFields().size(); ++fieldIndex) {
+			assertEquals("Field Name", expectedProfile.getFields().get(fieldIndex).getName(), actualProfile.getFields().get(fieldIndex).getName());
+			assertEquals("Field Value", expectedProfile.getFields().get(fieldIndex).getValue(), actualProfile.getFields().get(fieldIndex).getValue());
+		}
+
+		List<Post> expectedPosts = expectedSone.getPosts();
+		List<Post> actualPosts = actualSone.getPosts();
+		assertEquals("Posts", expectedPosts.size(), actualPosts.size());
+		for (int postIndex = 0; postIndex < expectedPosts.size(); ++postIndex) {
+			Post expectedPost = expectedPosts.get(postIndex);
+			Post actualPost = actualPosts.get(postIndex);
+			assertEquals("Post ID", expectedPost.getId(), actualPost.getId());
+			assertEquals("Post Recipient", (expectedPost.getRecipient() != null) ? expectedPost.getRecipient().getId() : null, (actualPost.getRecipient() != null) ? actualPost.getRecipient().getId() : null);
+			assertEquals("Post Time", expectedPost.getTime(), actualPost.getTime());
+			assertEquals("Post Text", expectedPost.getText(), actualPost.getText());
+		}
+
+		assertEquals("Replies", expectedSone.getReplies().size(), actualSone.getReplies().size());
+		for (PostReply expectedReply : expectedSone.getReplies()) {
+			PostReply actualReply = null;
+			for (PostReply reply : actualSone.getReplies()) {
+				if (reply.getId().equals(expectedReply.getId())) {
+					actualReply = reply;
+				}
+			}
+			assertNotNull("Reply", actualReply);
+			assertEquals("Reply Post", expectedReply.getPost().getId(), actualReply.getPost().getId());
+			assertEquals("Reply Time", expectedReply.getTime(), actualReply.getTime());
+			assertEquals("Reply Text", expectedReply.getText(), actualReply.getText());
+		}
+
+		assertEquals("Liked Posts", expectedSone.getLikedPostIds(), actualSone.getLikedPostIds());
+		assertEquals("Liked Replies", expectedSone.getLikedReplyIds(), actualSone.getLikedReplyIds());
+
+		List<Album> expectedAlbums = expectedSone.getAllAlbums();
+		List<Album> actualAlbums = actualSone.getAllAlbums();
+		assertEquals("Albums", expectedAlbums.size(), actualAlbums.size());
+		for (int albumIndex = 0; albumIndex < expectedAlbums.size(); ++albumIndex) {
+			Album expectedAlbum = expectedAlbums.get(albumIndex);
+			Album actualAlbum = actualAlbums.get(albumIndex);
+			assertEquals("Album ID", expectedAlbum.getId(), actualAlbum.getId());
+			assertEquals("Album Title", expectedAlbum.getTitle(), actualAlbum.getTitle());
+			assertEquals("Album Description", expectedAlbum.getDescription(), actualAlbum.getDescription());
+			assertEquals("Album Image", (expectedAlbum.getAlbumImage() != null) ? expectedAlbum.getAlbumImage().getId() : null, (actualAlbum.getAlbumImage() != null) ? actualAlbum.getAlbumImage().getId() : null);
+			assertEquals("Images", expectedAlbum.getImages().size(), actualAlbum.getImages().size());
+			for (int imageIndex = 0; imageIndex < expectedAlbum.getImages().size(); ++imageIndex) {
+				Image expectedImage = expectedAlbum.getImages().get(imageIndex);
+				Image actualImage = actualAlbum.getImages().get(imageIndex);
+				assertEquals("Image ID", expectedImage.getId(), actualImage.getId());
+				assertEquals("Image Creation Time", expectedImage.getCreationTime(), actualImage.getCreationTime());
+				assertEquals("Image Key", expectedImage.getKey(), actualImage.getKey());
+				assertEquals("Image Title", expectedImage.getTitle(), actualImage.getTitle());
+				assertEquals("Image Description", expectedImage.getDescription(), actualImage.getDescription());
+				assertEquals("Image Width", expectedImage.getWidth(), actualImage.getWidth());
+				assertEquals("Image Height", expectedImage.getHeight(), actualImage.getHeight());
+			}
+		}
+	}
+
+	/**
+	 * Returns an input stream of the UTF-8 encoded given document.
+	 *
+	 * @param document
+	 *            The document
+	 * @return An input stream of the document
+	 */
+	private static InputStream toInputStream(String document) {
+		try {
+			return new ByteArrayInputStream(document.getBytes("UTF-8"));
+		} catch (IOException ioe1) {
+			/* every Java implementation has to support UTF-8. */
+			throw new RuntimeException(ioe1);
+		}
+	}
+
+}
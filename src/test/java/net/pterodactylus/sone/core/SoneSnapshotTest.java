@@ -0,0 +1,208 @@
+/*
+ * Sone - SoneSnapshotTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import junit.framework.TestCase;
+import net.pterodactylus.sone.core.Core.Preferences;
+import net.pterodactylus.sone.data.Album;
+import net.pterodactylus.sone.data.Client;
+import net.pterodactylus.sone.data.Image;
+import net.pterodactylus.sone.data.Post;
+import net.pterodactylus.sone.data.PostReply;
+import net.pterodactylus.sone.data.Profile;
+import net.pterodactylus.sone.data.Sone;
+import net.pterodactylus.sone.data.impl.PostImpl;
+import net.pterodactylus.sone.freenet.wot.DefaultIdentity;
+
+/**
+ * JUnit test case for {@link SoneSnapshot}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SoneSnapshotTest extends TestCase {
+
+	/** The ID of the Sone. */
+	private static final String SONE_ID = "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI";
+
+	/** The ID of the post. */
+	private static final String POST_ID = "0a5a4c5e-0f3b-4e4e-9c1c-3b2b8d6f1e01";
+
+	/** The ID of the reply. */
+	private static final String REPLY_ID = "7c1d2e3f-4a5b-4c6d-8e9f-a0b1c2d3e4f5";
+
+	/** Limits that are not exceeded by the Sone of this test. */
+	private static final SoneLimits SONE_LIMITS = new SoneLimits(1024 * 1024, 10, 10, 10, 10, 10, 100);
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests that a read snapshot is written to exactly the same bytes again.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testRoundTrip() throws IOException, SoneLimitExceededException {
+		byte[] snapshot = writeSnapshot(createSone());
+		Sone readSone = readSnapshot(SONE_LIMITS, snapshot);
+		assertNotNull("Read Sone", readSone);
+		assertEquals("Time", 1340000000000L, readSone.getTime());
+		assertEquals("Client Version", "0.8.1", readSone.getClient().getVersion());
+		assertEquals("Posts", 1, readSone.getPosts().size());
+		assertEquals("Replies", 1, readSone.getReplies().size());
+		assertEquals("Albums", 1, readSone.getAllAlbums().size());
+		assertEquals("Avatar", "image-1", readSone.getProfile().getAvatar());
+		assertTrue("Same Snapshot", Arrays.equals(snapshot, writeSnapshot(readSone)));
+	}
+
+	/**
+	 * Tests that snapshots of an unknown version are ignored, and that the
+	 * limits are enforced while a snapshot is read.
+	 *
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	@SuppressWarnings("static-method")
+	public void testVersionAndLimits() throws IOException, SoneLimitExceededException {
+		byte[] snapshot = writeSnapshot(createSone());
+		snapshot[3] = (byte) (snapshot[3] + 1);
+		assertNull("Unknown Version", readSnapshot(SONE_LIMITS, snapshot));
+
+		snapshot[3] = (byte) (snapshot[3] - 1);
+		assertReadFails("Posts", new SoneLimits(1024 * 1024, 0, 10, 10, 10, 10, 100), snapshot);
+		assertReadFails("Images", new SoneLimits(1024 * 1024, 10, 10, 10, 10, 0, 100), snapshot);
+		assertReadFails("Text Length", new SoneLimits(1024 * 1024, 10, 10, 10, 10, 10, 5), snapshot);
+		assertReadFails("Size", new SoneLimits(snapshot.length - 5, 10, 10, 10, 10, 10, 100), snapshot);
+	}
+
+	//
+	// PRIVATE METHODS
+	//
+
+	/**
+	 * Creates a Sone with one element of every kind.
+	 *
+	 * @return The created Sone
+	 */
+	private static Sone createSone() {
+		Sone sone = createOriginalSone().setTime(1340000000000L);
+		sone.setClient(new Client("Sone", "0.8.1"));
+		Album album = new Album("album-1").setSone(sone).setTitle("Album").setDescription("An <album> & “more”.");
+		Image image = new Image("image-1").setSone(sone).setKey("KSK@image.png").setCreationTime(1338000000000L);
+		image.setTitle("Image").setDescription("").setWidth(640).setHeight(480);
+		album.addImage(image);
+		sone.setAlbums(Arrays.asList(album));
+
+		Profile profile = new Profile(sone).setFirstName("First").setLastName("Last");
+		profile.setBirthDay(1).setBirthMonth(2).setBirthYear(1970);
+		profile.addField("Homepage").setValue("http://example.com/");
+		profile.setAvatar(image);
+		sone.setProfile(profile);
+
+		Post post = new PostImpl(POST_ID, sone, 1339000000000L, "Hello & welcome!");
+		sone.setPosts(Arrays.asList(post));
+		sone.setReplies(Collections.singleton(new PostReply(REPLY_ID, sone, new PostImpl(POST_ID), 1339000000001L, "Reply.")));
+		sone.setLikePostIds(Collections.singleton(POST_ID));
+		return sone;
+	}
+
+	/**
+	 * Creates the Sone that is updated when a snapshot is read.
+	 *
+	 * @return The original Sone
+	 */
+	private static Sone createOriginalSone() {
+		return new Sone(SONE_ID).setIdentity(new DefaultIdentity(SONE_ID, "Test", "USK@" + SONE_ID + ",AQACAAE/WebOfTrust/0"));
+	}
+
+	/**
+	 * Writes a snapshot of the given Sone.
+	 *
+	 * @param sone
+	 *            The Sone to write
+	 * @return The snapshot
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static byte[] writeSnapshot(Sone sone) throws IOException {
+		ByteArrayOutputStream snapshotOutputStream = new ByteArrayOutputStream();
+		SoneSnapshot.writeSnapshot(sone, new DataOutputStream(snapshotOutputStream));
+		return snapshotOutputStream.toByteArray();
+	}
+
+	/**
+	 * Reads the given snapshot.
+	 *
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @param snapshot
+	 *            The snapshot to read
+	 * @return The read Sone, or {@code null} if the snapshot is not valid
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws SoneLimitExceededException
+	 *             if a limit is exceeded
+	 */
+	private static Sone readSnapshot(final SoneLimits soneLimits, byte[] snapshot) throws IOException, SoneLimitExceededException {
+		SoneParser soneParser = new SoneParser(new Preferences(null) {
+
+			@Override
+			public SoneLimits getSoneLimits() {
+				return soneLimits;
+			}
+
+		});
+		return SoneSnapshot.readSnapshot(soneParser, createOriginalSone(), new DataInputStream(new ByteArrayInputStream(snapshot)));
+	}
+
+	/**
+	 * Asserts that reading the given snapshot exceeds a limit.
+	 *
+	 * @param message
+	 *            The message of a failed assertion
+	 * @param soneLimits
+	 *            The limits for downloaded Sones
+	 * @param snapshot
+	 *            The snapshot to read
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	private static void assertReadFails(String message, SoneLimits soneLimits, byte[] snapshot) throws IOException {
+		try {
+			readSnapshot(soneLimits, snapshot);
+			fail(message);
+		} catch (SoneLimitExceededException slee1) {
+			/* expected. */
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Sone - SortedIndexTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.core;
+
+import java.util.Comparator;
+import java.util.List;
+
+import junit.framework.TestCase;
+import net.pterodactylus.sone.core.SortedIndex.KeyExtractor;
+
+/**
+ * JUnit test case for {@link SortedIndex}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class SortedIndexTest extends TestCase {
+
+	/** Extracts the key from an element, i.e. everything before the colon. */
+	private static final KeyExtractor<String> KEY_EXTRACTOR = new KeyExtractor<String>() {
+
+		@Override
+		public String getKey(String element) {
+			int colon = element.indexOf(':');
+			return (colon == -1) ? null : element.substring(0, colon);
+		}
+	};
+
+	/** Sorts elements by everything after the colon. */
+	private static final Comparator<String> VALUE_COMPARATOR = new Comparator<String>() {
+
+		@Override
+		public int compare(String leftElement, String rightElement) {
+			return leftElement.substring(leftElement.indexOf(':')).compareTo(rightElement.substring(rightElement.indexOf(':')));
+		}
+	};
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests that elements are returned sorted and only for their key.
+	 */
+	@SuppressWarnings("static-method")
+	public void testAddSorted() {
+		SortedIndex<String> sortedIndex = new SortedIndex<String>(KEY_EXTRACTOR, VALUE_COMPARATOR);
+		sortedIndex.add("a:3");
+		sortedIndex.add("b:2");
+		sortedIndex.add("a:1");
+		sortedIndex.add("a:2");
+		sortedIndex.add("unindexed");
+
+		List<String> elements = sortedIndex.get("a");
+		assertEquals("Size", 3, elements.size());
+		assertEquals("First Element", "a:1", elements.get(0));
+		assertEquals("Second Element", "a:2", elements.get(1));
+		assertEquals("Third Element", "a:3", elements.get(2));
+		assertEquals("Other Key", 1, sortedIndex.size("b"));
+		assertTrue("Unknown Key", sortedIndex.get("c").isEmpty());
+		assertTrue("Null Key", sortedIndex.get(null).isEmpty());
+	}
+
+	/**
+	 * Tests that removed and re-added elements are only stored once.
+	 */
+	@SuppressWarnings("static-method")
+	public void testRemove() {
+		SortedIndex<String> sortedIndex = new SortedIndex<String>(KEY_EXTRACTOR, VALUE_COMPARATOR);
+		sortedIndex.add("a:1");
+		sortedIndex.add("a:2");
+		sortedIndex.add("a:2");
+		assertEquals("Size after re-adding", 2, sortedIndex.size("a"));
+
+		List<String> snapshot = sortedIndex.get("a");
+		sortedIndex.remove("a:1");
+		assertEquals("Snapshot Size", 2, snapshot.size());
+		assertEquals("Size after removal", 1, sortedIndex.size("a"));
+		assertEquals("Remaining Element", "a:2", sortedIndex.get("a").get(0));
+
+		sortedIndex.remove("a:2");
+		sortedIndex.remove("a:3");
+		assertTrue("Empty", sortedIndex.get("a").isEmpty());
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Sone - IdTest.java - Copyright © 2012 David Roden
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.pterodactylus.sone.data;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit test case for {@link Id}.
+ *
+ * @author <a href="mailto:bombe@pterodactylus.net">David ‘Bombe’ Roden</a>
+ */
+public class IdTest extends TestCase {
+
+	//
+	// ACTIONS
+	//
+
+	/**
+	 * Tests that UUIDs are packed into two {@code long}s and converted back
+	 * to the same string.
+	 */
+	@SuppressWarnings("static-method")
+	public void testUuid() {
+		for (int index = 0; index < 100; ++index) {
+			UUID uuid = UUID.randomUUID();
+			Id id = Id.valueOf(uuid.toString());
+			assertEquals("Packed Length", 2, id.getPackedLength());
+			assertEquals("Most Significant Bits", uuid.getMostSignificantBits(), id.getPackedLong(0));
+			assertEquals("Least Significant Bits", uuid.getLeastSignificantBits(), id.getPackedLong(1));
+			assertEquals("String", uuid.toString(), id.toString());
+			assertEquals("Unpacked ID", id, Id.valueOf(new long[] { 0, id.getPackedLong(0), id.getPackedLong(1) }, 1, 2));
+		}
+	}
+
+	/**
+	 * Tests that Sone IDs are packed into four {@code long}s and converted
+	 * back to the same string.
+	 */
+	@SuppressWarnings("static-method")
+	public void testRoutingKey() {
+		for (String soneId : Arrays.asList("nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCI", "DAxKQzS48mtaQc7sUVHIgx3fnWZPQBz0EueBreUVWrU", "AAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", "------------------------------------------8")) {
+			Id id = Id.valueOf(soneId);
+			assertEquals("Packed Length", 4, id.getPackedLength());
+			assertEquals("String", soneId, id.toString());
+			long[] packedLongs = new long[4];
+			for (int index = 0; index < 4; ++index) {
+				packedLongs[index] = id.getPackedLong(index);
+			}
+			Id unpackedId = Id.valueOf(packedLongs, 0, 4);
+			assertEquals("Unpacked ID", id, unpackedId);
+			assertEquals("Unpacked String", soneId, unpackedId.toString());
+		}
+	}
+
+	/**
+	 * Tests that IDs that can not be packed are kept as they are.
+	 */
+	@SuppressWarnings("static-method")
+	public void testText() {
+		for (String text : Arrays.asList("", "foreign-id", "0A5A4C5E-0F3B-4E4E-9C1C-3B2B8D6F1E01", "0a5a4c5e+0f3b-4e4e-9c1c-3b2b8d6f1e01", "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6Bp.I", "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpCJ", "nwa8lHa271k2QvJ8aa0Ov7IHAV-DFOCFgmDt3X6BpäI")) {
+			Id id = Id.valueOf(text);
+			assertEquals("Packed Length of " + text, 0, id.getPackedLength());
+			assertEquals("String", text, id.toString());
+			assertEquals("Equal ID", id, Id.valueOf(text));
+		}
+		try {
+			Id.valueOf("foreign-id").getPackedLong(0);
+			fail("Text ID has packed longs.");
+		} catch (IndexOutOfBoundsException ioobe1) {
+			/* expected. */
+		}
+		try {
+			Id.valueOf(new long[3], 0, 3);
+			fail("ID packed into three longs.");
+		} catch (IllegalArgumentException iae1) {
+			/* expected. */
+		}
+	}
+
+	/**
+	 * Tests that IDs of different kinds are never equal, and that the string
+	 * view of IDs contains the strings of the IDs.
+	 */
+	@SuppressWarnings("static-method")
+	public void testEqualityAndStrings() {
+		Id uuid = Id.valueOf("0a5a4c5e-0f3b-4e4e-9c1c-3b2b8d6f1e01");
+		Id text = Id.valueOf("0A5A4C5E-0F3B-4E4E-9C1C-3B2B8D6F1E01");
+		assertFalse("UUID equals Text", uuid.equals(text));
+		assertFalse("Text equals UUID", text.equals(uuid));
+		assertEquals("Hash Code", uuid.hashCode(), Id.valueOf(uuid.toString()).hashCode());
+
+		Set<Id> ids = Id.addAll(new HashSet<Id>(), Arrays.asList(uuid.toString(), text.toString(), uuid.toString()));
+		assertEquals("IDs", 2, ids.size());
+		Set<String> strings = Id.asStrings(ids);
+		assertEquals("Strings", new HashSet<String>(Arrays.asList(uuid.toString(), text.toString())), strings);
+		assertTrue("Contains UUID", strings.contains(uuid.toString()));
+		assertFalse("Contains other UUID", strings.contains(UUID.randomUUID().toString()));
+	}
+
+}